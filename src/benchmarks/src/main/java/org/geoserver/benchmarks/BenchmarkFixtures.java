@@ -0,0 +1,244 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmarks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogFactory;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.platform.GeoServerResourceLoader;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.memory.MemoryDataStore;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygon;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Builds the data sets used by the benchmarks. Everything is generated out of a fixed seed, so
+ * that two runs (or two releases) work against the very same catalog, features and images, and
+ * their results can be compared.
+ *
+ * <p>Run as a main to dump the feature fixture as a property file, e.g. to load it in a real
+ * GeoServer data directory and compare with a full stack test.
+ */
+public class BenchmarkFixtures {
+
+    /** The seed used for all random generation */
+    public static final long SEED = 20191001L;
+
+    /** The area covered by the generated features */
+    public static final ReferencedEnvelope WORLD =
+            new ReferencedEnvelope(-180, 180, -90, 90, DefaultGeographicCRS.WGS84);
+
+    static final String TYPE_SPEC =
+            "the_geom:Polygon:srid=4326,name:String,population:Integer,area:Double,active:Boolean";
+
+    static final String TYPE_NAME = "polygons";
+
+    private BenchmarkFixtures() {
+        // utility class
+    }
+
+    /**
+     * Builds a catalog with the given number of workspaces, each one containing a single property
+     * store and the given number of layers
+     */
+    public static Catalog createCatalog(int workspaces, int layersPerWorkspace) {
+        CatalogImpl catalog = new CatalogImpl();
+        catalog.setResourceLoader(new GeoServerResourceLoader());
+        CatalogFactory factory = catalog.getFactory();
+
+        StyleInfo style = factory.createStyle();
+        style.setName("polygon");
+        style.setFilename("polygon.sld");
+        catalog.add(style);
+
+        for (int w = 0; w < workspaces; w++) {
+            String wsName = workspaceName(w);
+            WorkspaceInfo ws = factory.createWorkspace();
+            ws.setName(wsName);
+            catalog.add(ws);
+
+            NamespaceInfo ns = factory.createNamespace();
+            ns.setPrefix(wsName);
+            ns.setURI("http://geoserver.org/benchmarks/" + wsName);
+            catalog.add(ns);
+
+            DataStoreInfo ds = factory.createDataStore();
+            ds.setName(wsName + "_store");
+            ds.setWorkspace(ws);
+            ds.setType("Property");
+            ds.setEnabled(true);
+            catalog.add(ds);
+
+            for (int l = 0; l < layersPerWorkspace; l++) {
+                String name = layerName(l);
+                FeatureTypeInfo ft = factory.createFeatureType();
+                ft.setName(name);
+                ft.setNativeName(name);
+                ft.setNamespace(ns);
+                ft.setStore(ds);
+                ft.setEnabled(true);
+                ft.setSRS("EPSG:4326");
+                ft.setNativeBoundingBox(WORLD);
+                ft.setLatLonBoundingBox(WORLD);
+                catalog.add(ft);
+
+                LayerInfo layer = factory.createLayer();
+                layer.setResource(ft);
+                layer.setDefaultStyle(style);
+                layer.setEnabled(true);
+                catalog.add(layer);
+            }
+        }
+
+        return catalog;
+    }
+
+    /** Name of the i-th generated workspace */
+    public static String workspaceName(int i) {
+        return String.format(Locale.ENGLISH, "ws%04d", i);
+    }
+
+    /** Name of the i-th generated layer (inside its workspace) */
+    public static String layerName(int i) {
+        return String.format(Locale.ENGLISH, "layer%05d", i);
+    }
+
+    /** Returns the feature type used by the generated features */
+    public static SimpleFeatureType createFeatureType() {
+        try {
+            return DataUtilities.createType(TYPE_NAME, TYPE_SPEC);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to create the benchmark feature type", e);
+        }
+    }
+
+    /**
+     * Generates the given number of random polygons, each one with {@code vertices} vertices,
+     * spread over {@link #WORLD}
+     */
+    public static List<SimpleFeature> createFeatures(int count, int vertices) {
+        SimpleFeatureType type = createFeatureType();
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(type);
+        GeometryFactory gf = new GeometryFactory();
+        Random random = new Random(SEED);
+        List<SimpleFeature> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double cx = WORLD.getMinX() + random.nextDouble() * WORLD.getWidth();
+            double cy = WORLD.getMinY() + random.nextDouble() * WORLD.getHeight();
+            double radius = 0.1 + random.nextDouble() * 2;
+            Coordinate[] ring = new Coordinate[vertices + 1];
+            for (int v = 0; v < vertices; v++) {
+                double angle = 2 * Math.PI * v / vertices;
+                double r = radius * (0.5 + random.nextDouble() / 2);
+                ring[v] = new Coordinate(cx + r * Math.cos(angle), cy + r * Math.sin(angle));
+            }
+            ring[vertices] = ring[0];
+            Polygon polygon = gf.createPolygon(ring);
+
+            fb.add(polygon);
+            fb.add("feature " + i);
+            fb.add(random.nextInt(1000000));
+            fb.add(polygon.getArea());
+            fb.add(random.nextBoolean());
+            result.add(fb.buildFeature(TYPE_NAME + "." + i));
+        }
+
+        return result;
+    }
+
+    /** Wraps the generated features in a {@link MemoryDataStore} */
+    public static MemoryDataStore createDataStore(int count, int vertices) {
+        MemoryDataStore store = new MemoryDataStore(createFeatureType());
+        store.addFeatures(createFeatures(count, vertices));
+        return store;
+    }
+
+    /**
+     * Paints a reproducible RGB image, with a mix of flat areas and gradients, similar to what a
+     * basemap tile would contain
+     */
+    public static BufferedImage createImage(int width, int height, boolean alpha) {
+        BufferedImage image =
+                new BufferedImage(
+                        width,
+                        height,
+                        alpha ? BufferedImage.TYPE_4BYTE_ABGR : BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setRenderingHint(
+                    RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            graphics.setColor(new Color(240, 238, 230));
+            graphics.fillRect(0, 0, width, height);
+            Random random = new Random(SEED);
+            for (int i = 0; i < 500; i++) {
+                graphics.setColor(
+                        new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+                int x = random.nextInt(width);
+                int y = random.nextInt(height);
+                int w = random.nextInt(width / 8 + 1);
+                int h = random.nextInt(height / 8 + 1);
+                if (i % 2 == 0) {
+                    graphics.fillOval(x, y, w, h);
+                } else {
+                    graphics.drawLine(x, y, x + w, y + h);
+                }
+            }
+        } finally {
+            graphics.dispose();
+        }
+
+        return image;
+    }
+
+    /** Writes the features as a property file, as read by the GeoTools property data store */
+    public static void writePropertyFile(File file, List<SimpleFeature> features)
+            throws IOException {
+        try (PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+            writer.println("_=" + TYPE_SPEC);
+            for (SimpleFeature feature : features) {
+                writer.println(DataUtilities.encodeFeature(feature));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: BenchmarkFixtures <targetDirectory> [featureCount]");
+            System.exit(1);
+        }
+        File directory = new File(args[0]);
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        File target = new File(directory, TYPE_NAME + ".properties");
+        writePropertyFile(target, createFeatures(count, 32));
+        System.out.println("Wrote " + count + " features to " + target.getAbsolutePath());
+    }
+}
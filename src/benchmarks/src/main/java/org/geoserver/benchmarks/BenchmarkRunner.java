@@ -0,0 +1,50 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmarks;
+
+import java.io.File;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks and writes the results in JMH JSON format, so that they can be compared
+ * across releases (e.g., with https://jmh.morethan.io/).
+ *
+ * <p>Usage: {@code java -jar benchmarks.jar [resultFile] [jmh options]}. The result file defaults
+ * to {@code jmh-<version>.json} in the current directory, any other argument is handed over to JMH
+ * (e.g., a regular expression selecting the benchmarks to run).
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        String result = null;
+        String[] jmhArgs = args;
+        if (args.length > 0 && args[0].endsWith(".json")) {
+            result = args[0];
+            jmhArgs = new String[args.length - 1];
+            System.arraycopy(args, 1, jmhArgs, 0, jmhArgs.length);
+        }
+        if (result == null) {
+            String version = BenchmarkRunner.class.getPackage().getImplementationVersion();
+            result = "jmh-" + (version != null ? version : "unknown") + ".json";
+        }
+        File parent = new File(result).getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+
+        Options options =
+                new OptionsBuilder()
+                        .parent(new CommandLineOptions(jmhArgs))
+                        .resultFormat(ResultFormatType.JSON)
+                        .result(result)
+                        .jvmArgsAppend("-Djava.awt.headless=true")
+                        .build();
+        new Runner(options).run();
+    }
+}
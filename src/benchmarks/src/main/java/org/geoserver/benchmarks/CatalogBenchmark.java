@@ -0,0 +1,123 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmarks;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.Predicates;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.util.CloseableIterator;
+import org.geoserver.security.AbstractResourceAccessManager;
+import org.geoserver.security.CatalogMode;
+import org.geoserver.security.SecureCatalogImpl;
+import org.geoserver.security.WorkspaceAccessLimits;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/** Catalog lookups, both on the raw catalog and through the security wrapper */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CatalogBenchmark {
+
+    @Param({"10"})
+    int workspaces;
+
+    @Param({"100", "1000"})
+    int layersPerWorkspace;
+
+    Catalog catalog;
+
+    SecureCatalogImpl secureCatalog;
+
+    String[] names;
+
+    int current;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        catalog = BenchmarkFixtures.createCatalog(workspaces, layersPerWorkspace);
+        secureCatalog = new SecureCatalogImpl(catalog, new OddWorkspaceHider());
+
+        // shuffle the names with a fixed seed, to avoid hitting always the same part of the maps
+        names = new String[1024];
+        Random random = new Random(BenchmarkFixtures.SEED);
+        for (int i = 0; i < names.length; i++) {
+            names[i] =
+                    BenchmarkFixtures.workspaceName(random.nextInt(workspaces))
+                            + ":"
+                            + BenchmarkFixtures.layerName(random.nextInt(layersPerWorkspace));
+        }
+
+        Authentication user = new UsernamePasswordAuthenticationToken("benchmark", null);
+        SecurityContextHolder.getContext().setAuthentication(user);
+    }
+
+    private String nextName() {
+        current = (current + 1) & (names.length - 1);
+        return names[current];
+    }
+
+    @Benchmark
+    public LayerInfo getLayerByName() {
+        return catalog.getLayerByName(nextName());
+    }
+
+    @Benchmark
+    public LayerInfo secureGetLayerByName() {
+        return secureCatalog.getLayerByName(nextName());
+    }
+
+    @Benchmark
+    public int secureGetLayers() {
+        List<LayerInfo> layers = secureCatalog.getLayers();
+        return layers.size();
+    }
+
+    @Benchmark
+    public void secureListLayers(Blackhole blackhole) {
+        try (CloseableIterator<LayerInfo> it =
+                secureCatalog.list(LayerInfo.class, Predicates.acceptAll())) {
+            while (it.hasNext()) {
+                blackhole.consume(it.next());
+            }
+        }
+    }
+
+    /** Hides every other workspace, so that the secure catalog has actual filtering to do */
+    static class OddWorkspaceHider extends AbstractResourceAccessManager {
+
+        @Override
+        public WorkspaceAccessLimits getAccessLimits(
+                Authentication user, WorkspaceInfo workspace) {
+            String name = workspace.getName();
+            boolean odd = (name.charAt(name.length() - 1) - '0') % 2 == 1;
+            if (odd) {
+                return new WorkspaceAccessLimits(CatalogMode.HIDE, false, false, false);
+            }
+            return new WorkspaceAccessLimits(CatalogMode.HIDE, true, true, false);
+        }
+    }
+}
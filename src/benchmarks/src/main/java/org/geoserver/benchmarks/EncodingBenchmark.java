@@ -0,0 +1,124 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.geoserver.wfs.json.GeoJSONBuilder;
+import org.geotools.gml3.GML;
+import org.geotools.gml3.GMLConfiguration;
+import org.geotools.xsd.Encoder;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Polygon;
+import org.opengis.feature.simple.SimpleFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Vector output encoding, GeoJSON through {@link GeoJSONBuilder} and GML 3 through the XSD
+ * encoder backing {@link org.geoserver.wfs.xml.GML3OutputFormat}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodingBenchmark {
+
+    @Param({"10000"})
+    int features;
+
+    @Param({"32"})
+    int vertices;
+
+    List<SimpleFeature> collection;
+
+    MultiPolygon multiPolygon;
+
+    GMLConfiguration gml;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        collection = BenchmarkFixtures.createFeatures(features, vertices);
+        Polygon[] polygons = new Polygon[collection.size()];
+        for (int i = 0; i < polygons.length; i++) {
+            polygons[i] = (Polygon) collection.get(i).getDefaultGeometry();
+        }
+        multiPolygon = new GeometryFactory().createMultiPolygon(polygons);
+        gml = new GMLConfiguration();
+    }
+
+    @Benchmark
+    public long geoJSON() {
+        CountingWriter writer = new CountingWriter();
+        GeoJSONBuilder builder = new GeoJSONBuilder(writer);
+        builder.setNumberOfDecimals(6);
+        builder.object().key("type").value("FeatureCollection");
+        builder.key("features").array();
+        for (SimpleFeature feature : collection) {
+            builder.object().key("type").value("Feature");
+            builder.key("id").value(feature.getID());
+            builder.key("geometry");
+            builder.writeGeom((Polygon) feature.getDefaultGeometry());
+            builder.key("properties").object();
+            builder.key("name").value(feature.getAttribute("name"));
+            builder.key("population").value(feature.getAttribute("population"));
+            builder.key("area").value(feature.getAttribute("area"));
+            builder.key("active").value(feature.getAttribute("active"));
+            builder.endObject();
+            builder.endObject();
+        }
+        builder.endArray();
+        builder.endObject();
+        return writer.count;
+    }
+
+    @Benchmark
+    public long gml3() throws IOException {
+        Encoder encoder = new Encoder(gml);
+        encoder.setIndenting(false);
+        CountingOutputStream out = new CountingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM);
+        encoder.encode(multiPolygon, GML.MultiPolygon, out);
+        return out.getByteCount();
+    }
+
+    /** Discards the output, keeping only track of its size */
+    static class CountingWriter extends Writer {
+
+        long count;
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+    }
+}
@@ -0,0 +1,117 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.geoserver.ows.FlatKvpParser;
+import org.geoserver.ows.KvpParser;
+import org.geoserver.ows.kvp.BooleanKvpParser;
+import org.geoserver.ows.kvp.FormatOptionsKvpParser;
+import org.geoserver.ows.kvp.IntegerKvpParser;
+import org.geoserver.ows.util.KvpMap;
+import org.geoserver.ows.util.KvpUtils;
+import org.geoserver.wfs.kvp.BBoxKvpParser;
+import org.geoserver.wms.kvp.ColorKvpParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The KVP parsing steps the {@link org.geoserver.ows.Dispatcher} goes through for each request:
+ * query string splitting, normalization, parser lookup and value parsing
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KvpParsingBenchmark {
+
+    static final String GETMAP_QUERY =
+            "SERVICE=WMS&VERSION=1.1.1&REQUEST=GetMap&FORMAT=image%2Fpng&TRANSPARENT=true"
+                    + "&LAYERS=ws0001%3Alayer00001,ws0001%3Alayer00002,ws0002%3Alayer00003"
+                    + "&STYLES=,,&SRS=EPSG%3A4326&WIDTH=768&HEIGHT=512"
+                    + "&BBOX=-12.5,35.25,20.125,60.75&BGCOLOR=0xFFFFFF&TILED=true"
+                    + "&FORMAT_OPTIONS=antialias%3Afull%3Bdpi%3A180%3Bquantizer%3Aoctree";
+
+    List<KvpParser> parsers;
+
+    @Setup
+    public void setup() {
+        parsers = new ArrayList<>();
+        parsers.add(new IntegerKvpParser("width"));
+        parsers.add(new IntegerKvpParser("height"));
+        parsers.add(new BooleanKvpParser("transparent"));
+        parsers.add(new BooleanKvpParser("tiled"));
+        parsers.add(new ColorKvpParser("bgcolor"));
+        parsers.add(new BBoxKvpParser());
+        parsers.add(new FormatOptionsKvpParser("format_options"));
+        parsers.add(new FlatKvpParser("layers", String.class));
+        parsers.add(new FlatKvpParser("styles", String.class));
+    }
+
+    @Benchmark
+    public Map<String, Object> parseQueryString() {
+        return KvpUtils.parseQueryString("?" + GETMAP_QUERY);
+    }
+
+    @Benchmark
+    public KvpMap normalize() {
+        return KvpUtils.normalize(KvpUtils.parseQueryString("?" + GETMAP_QUERY));
+    }
+
+    @Benchmark
+    public KvpMap parse() throws Exception {
+        KvpMap kvp = KvpUtils.normalize(KvpUtils.parseQueryString("?" + GETMAP_QUERY));
+        String service = KvpUtils.getSingleValue(kvp, "service");
+        String version = KvpUtils.getSingleValue(kvp, "version");
+        String request = KvpUtils.getSingleValue(kvp, "request");
+
+        // same steps as KvpUtils.parse, minus the application context lookup
+        List<KvpParser> candidates = new ArrayList<>(parsers);
+        KvpUtils.purgeParsers(candidates, service, version, request);
+        for (Object o : kvp.entrySet()) {
+            @SuppressWarnings("unchecked")
+            Map.Entry<String, Object> entry = (Map.Entry<String, Object>) o;
+            Object value = entry.getValue();
+            if (value instanceof String) {
+                Object parsed =
+                        KvpUtils.parseKey(
+                                entry.getKey(),
+                                (String) value,
+                                service,
+                                request,
+                                version,
+                                candidates);
+                if (parsed != null) {
+                    entry.setValue(parsed);
+                }
+            }
+        }
+        return kvp;
+    }
+
+    @Benchmark
+    public List readNested() {
+        return KvpUtils.readNested("(a,b,c)(d,e,f)(g,h,i)(j,k,l)");
+    }
+
+    @Benchmark
+    public List<String> escapedTokens() {
+        return KvpUtils.escapedTokens(
+                "antialias:full;dpi:180;quantizer:octree;layout:legend", ';');
+    }
+}
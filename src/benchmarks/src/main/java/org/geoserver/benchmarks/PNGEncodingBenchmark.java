@@ -0,0 +1,69 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.geoserver.wms.WMSMapContent;
+import org.geoserver.wms.map.png.PNGJWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** PNG encoding through {@link PNGJWriter} */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PNGEncodingBenchmark {
+
+    @Param({"256", "2048"})
+    int size;
+
+    @Param({"false", "true"})
+    boolean alpha;
+
+    @Param({"0.25", "0.9"})
+    float quality;
+
+    BufferedImage image;
+
+    WMSMapContent mapContent;
+
+    PNGJWriter writer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        image = BenchmarkFixtures.createImage(size, size, alpha);
+        mapContent = new WMSMapContent();
+        writer = new PNGJWriter();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mapContent.dispose();
+    }
+
+    @Benchmark
+    public long encode() {
+        CountingOutputStream out = new CountingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM);
+        writer.writePNG(image, out, quality, mapContent);
+        return out.getByteCount();
+    }
+}
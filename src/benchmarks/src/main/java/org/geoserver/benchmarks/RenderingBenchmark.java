@@ -0,0 +1,101 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmarks;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.config.impl.GeoServerImpl;
+import org.geoserver.config.impl.GeoServerInfoImpl;
+import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.WMS;
+import org.geoserver.wms.WMSInfoImpl;
+import org.geoserver.wms.WMSMapContent;
+import org.geoserver.wms.map.RenderedImageMap;
+import org.geoserver.wms.map.RenderedImageMapOutputFormat;
+import org.geotools.data.memory.MemoryDataStore;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.FeatureLayer;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.styling.Style;
+import org.geotools.styling.StyleBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link RenderedImageMapOutputFormat#produceMap(WMSMapContent)} against an in memory store,
+ * isolating the rendering costs from the data access ones
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RenderingBenchmark {
+
+    @Param({"1000", "10000"})
+    int features;
+
+    @Param({"256", "1024"})
+    int size;
+
+    RenderedImageMapOutputFormat format;
+
+    SimpleFeatureSource featureSource;
+
+    Style style;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        GeoServerImpl geoServer = new GeoServerImpl();
+        geoServer.setCatalog(new CatalogImpl());
+        geoServer.setGlobal(new GeoServerInfoImpl(geoServer));
+        geoServer.add(new WMSInfoImpl());
+        format = new RenderedImageMapOutputFormat(new WMS(geoServer));
+
+        MemoryDataStore store = BenchmarkFixtures.createDataStore(features, 32);
+        featureSource = store.getFeatureSource(BenchmarkFixtures.TYPE_NAME);
+
+        StyleBuilder sb = new StyleBuilder();
+        style = sb.createStyle(sb.createPolygonSymbolizer(Color.ORANGE, Color.BLACK, 1));
+    }
+
+    @Benchmark
+    public int produceMap() {
+        GetMapRequest request = new GetMapRequest();
+        request.setFormat("image/png");
+        request.setWidth(size);
+        request.setHeight(size);
+
+        WMSMapContent mapContent = new WMSMapContent(request);
+        mapContent.getViewport()
+                .setBounds(new ReferencedEnvelope(-45, 45, -45, 45, DefaultGeographicCRS.WGS84));
+        mapContent.setMapWidth(size);
+        mapContent.setMapHeight(size);
+        mapContent.setTransparent(true);
+        mapContent.addLayer(new FeatureLayer(featureSource, style));
+        try {
+            RenderedImageMap map = format.produceMap(mapContent);
+            int width = map.getImage().getWidth();
+            map.dispose();
+            return width;
+        } finally {
+            mapContent.dispose();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.arrow;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BaseFixedWidthVector;
+import org.apache.arrow.vector.BaseVariableWidthVector;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.TimeStampMilliTZVector;
+import org.apache.arrow.vector.VarBinaryVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.geoserver.config.GeoServer;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * WFS output format writing an Apache Arrow IPC stream. Features are accumulated in column vectors,
+ * which are sent as a record batch, and then reused, every {@code
+ * org.geoserver.wfs.arrow.batchSize} features (defaults to {@link #DEFAULT_BATCH_SIZE}), so that
+ * the memory used is bounded by the batch size.
+ *
+ * <p>Geometries are stored as WKB, in binary columns marked with the {@code geoarrow.wkb}
+ * extension name, and the schema metadata contains the same "geo" description used by GeoParquet.
+ */
+public class ArrowOutputFormat extends ColumnarOutputFormat {
+
+    public static final String MIME_TYPE = "application/vnd.apache.arrow.stream";
+
+    /** The default number of features in a record batch */
+    public static final int DEFAULT_BATCH_SIZE = 10000;
+
+    static final String EXTENSION_NAME_KEY = "ARROW:extension:name";
+
+    static final String WKB_EXTENSION = "geoarrow.wkb";
+
+    private static int BATCH_SIZE =
+            Integer.valueOf(
+                    System.getProperty(
+                            "org.geoserver.wfs.arrow.batchSize",
+                            String.valueOf(DEFAULT_BATCH_SIZE)));
+
+    private static BufferAllocator ROOT_ALLOCATOR;
+
+    /** Allows to programmatically set the number of features in a record batch */
+    public static void setBatchSize(int batchSize) {
+        BATCH_SIZE = batchSize;
+    }
+
+    static synchronized BufferAllocator getRootAllocator() {
+        if (ROOT_ALLOCATOR == null) {
+            ROOT_ALLOCATOR = new RootAllocator(Long.MAX_VALUE);
+        }
+        return ROOT_ALLOCATOR;
+    }
+
+    public ArrowOutputFormat(GeoServer gs) {
+        super(gs, outputFormats(), MIME_TYPE, "arrow");
+    }
+
+    private static Set<String> outputFormats() {
+        Set<String> formats = new LinkedHashSet<>();
+        formats.add(MIME_TYPE);
+        formats.add("arrow");
+        return formats;
+    }
+
+    @Override
+    public String getCapabilitiesElementName() {
+        return "Arrow";
+    }
+
+    @Override
+    void write(
+            FeatureColumns columns, List<SimpleFeatureCollection> collections, OutputStream output)
+            throws IOException {
+        int batchSize = Math.max(1, BATCH_SIZE);
+        Schema schema = getSchema(columns);
+        try (BufferAllocator allocator =
+                        getRootAllocator().newChildAllocator("wfs-arrow", 0, Long.MAX_VALUE);
+                VectorSchemaRoot root = VectorSchemaRoot.create(schema, allocator)) {
+            root.allocateNew();
+            List<FieldVector> vectors = root.getFieldVectors();
+            // not closed, as that would close the output stream too
+            ArrowStreamWriter writer =
+                    new ArrowStreamWriter(root, null, Channels.newChannel(output));
+            writer.start();
+            int row = 0;
+            boolean written = false;
+            for (SimpleFeatureCollection fc : collections) {
+                try (SimpleFeatureIterator it = fc.features()) {
+                    while (it.hasNext()) {
+                        SimpleFeature feature = it.next();
+                        for (int i = 0; i < columns.size(); i++) {
+                            setValue(columns, i, vectors.get(i), row, feature.getAttribute(i));
+                        }
+                        if (++row == batchSize) {
+                            root.setRowCount(row);
+                            writer.writeBatch();
+                            written = true;
+                            for (FieldVector vector : vectors) {
+                                vector.reset();
+                            }
+                            row = 0;
+                        }
+                    }
+                }
+            }
+            // always write at least one batch, even if empty
+            if (row > 0 || !written) {
+                root.setRowCount(row);
+                writer.writeBatch();
+            }
+            writer.end();
+        }
+    }
+
+    Schema getSchema(FeatureColumns columns) {
+        List<Field> fields = new ArrayList<>();
+        for (int i = 0; i < columns.size(); i++) {
+            ArrowType type = getArrowType(columns.kinds[i], columns.scales[i]);
+            Map<String, String> metadata = null;
+            if (columns.kinds[i] == FeatureColumns.Kind.GEOMETRY) {
+                metadata = Collections.singletonMap(EXTENSION_NAME_KEY, WKB_EXTENSION);
+            }
+            FieldType fieldType = new FieldType(true, type, null, metadata);
+            fields.add(new Field(columns.names[i], fieldType, null));
+        }
+        Map<String, String> metadata = null;
+        if (columns.hasGeometry()) {
+            metadata =
+                    Collections.singletonMap(
+                            FeatureColumns.GEO_METADATA_KEY, columns.getGeoMetadata());
+        }
+        return new Schema(fields, metadata);
+    }
+
+    private ArrowType getArrowType(FeatureColumns.Kind kind, int scale) {
+        switch (kind) {
+            case BOOLEAN:
+                return ArrowType.Bool.INSTANCE;
+            case INTEGER:
+                return new ArrowType.Int(32, true);
+            case LONG:
+                return new ArrowType.Int(64, true);
+            case FLOAT:
+                return new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE);
+            case DOUBLE:
+                return new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+            case DATE:
+                return new ArrowType.Date(DateUnit.DAY);
+            case TIMESTAMP:
+                return new ArrowType.Timestamp(TimeUnit.MILLISECOND, "UTC");
+            case BINARY:
+            case GEOMETRY:
+                return ArrowType.Binary.INSTANCE;
+            case DECIMAL:
+                return new ArrowType.Decimal(FeatureColumns.DECIMAL_PRECISION, scale);
+            default:
+                return ArrowType.Utf8.INSTANCE;
+        }
+    }
+
+    private void setValue(
+            FeatureColumns columns, int column, FieldVector vector, int row, Object value) {
+        if (value == null) {
+            if (vector instanceof BaseFixedWidthVector) {
+                ((BaseFixedWidthVector) vector).setNull(row);
+            } else {
+                ((BaseVariableWidthVector) vector).setNull(row);
+            }
+            return;
+        }
+        switch (columns.kinds[column]) {
+            case BOOLEAN:
+                ((BitVector) vector).setSafe(row, ((Boolean) value) ? 1 : 0);
+                break;
+            case INTEGER:
+                ((IntVector) vector).setSafe(row, ((Number) value).intValue());
+                break;
+            case LONG:
+                ((BigIntVector) vector).setSafe(row, ((Number) value).longValue());
+                break;
+            case FLOAT:
+                ((Float4Vector) vector).setSafe(row, ((Number) value).floatValue());
+                break;
+            case DOUBLE:
+                ((Float8Vector) vector).setSafe(row, ((Number) value).doubleValue());
+                break;
+            case DATE:
+                ((DateDayVector) vector).setSafe(row, FeatureColumns.toEpochDay(value));
+                break;
+            case TIMESTAMP:
+                ((TimeStampMilliTZVector) vector)
+                        .setSafe(row, FeatureColumns.toEpochMillis(value));
+                break;
+            case BINARY:
+            case GEOMETRY:
+                ((VarBinaryVector) vector).setSafe(row, columns.toBytes(value));
+                break;
+            case DECIMAL:
+                ((DecimalVector) vector)
+                        .setSafe(row, FeatureColumns.toDecimal(value, columns.scales[column]));
+                break;
+            default:
+                ((VarCharVector) vector).setSafe(row, FeatureColumns.toUTF8(value));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.arrow;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.geoserver.config.GeoServer;
+import org.geoserver.platform.Operation;
+import org.geoserver.platform.ServiceException;
+import org.geoserver.wfs.WFSGetFeatureOutputFormat;
+import org.geoserver.wfs.request.FeatureCollectionResponse;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.FeatureCollection;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Base class for the output formats writing features in columns. The collections of the response
+ * are written one after the other in a single table, so they must all share the same simple
+ * feature type.
+ */
+abstract class ColumnarOutputFormat extends WFSGetFeatureOutputFormat {
+
+    private final String mimeType;
+
+    private final String extension;
+
+    ColumnarOutputFormat(
+            GeoServer gs, Set<String> outputFormats, String mimeType, String extension) {
+        super(gs, outputFormats);
+        this.mimeType = mimeType;
+        this.extension = extension;
+    }
+
+    @Override
+    public String getMimeType(Object value, Operation operation) throws ServiceException {
+        return mimeType;
+    }
+
+    @Override
+    public String getPreferredDisposition(Object value, Operation operation) {
+        return DISPOSITION_ATTACH;
+    }
+
+    @Override
+    protected String getExtension(FeatureCollectionResponse response) {
+        return extension;
+    }
+
+    @Override
+    protected void write(
+            FeatureCollectionResponse featureCollection, OutputStream output, Operation operation)
+            throws IOException, ServiceException {
+        List<SimpleFeatureCollection> collections = new ArrayList<>();
+        SimpleFeatureType schema = null;
+        for (FeatureCollection fc : featureCollection.getFeatures()) {
+            if (!(fc.getSchema() instanceof SimpleFeatureType)) {
+                throw new ServiceException(
+                        getCapabilitiesElementName() + " output does not support complex features",
+                        ServiceException.INVALID_PARAMETER_VALUE,
+                        "outputFormat");
+            }
+            if (schema == null) {
+                schema = (SimpleFeatureType) fc.getSchema();
+            } else if (!schema.equals(fc.getSchema())) {
+                throw new ServiceException(
+                        getCapabilitiesElementName()
+                                + " output requires all the queries to return the same"
+                                + " feature type",
+                        ServiceException.INVALID_PARAMETER_VALUE,
+                        "outputFormat");
+            }
+            collections.add((SimpleFeatureCollection) fc);
+        }
+        if (schema == null) {
+            throw new ServiceException("No feature collection to encode");
+        }
+        write(new FeatureColumns(schema), collections, output);
+        output.flush();
+    }
+
+    /**
+     * Writes the collections, in order, as a single table. Implementations must not close the
+     * output stream.
+     */
+    abstract void write(
+            FeatureColumns columns, List<SimpleFeatureCollection> collections, OutputStream output)
+            throws IOException;
+}
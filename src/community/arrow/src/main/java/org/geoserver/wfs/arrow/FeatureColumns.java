@@ -0,0 +1,270 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.arrow;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONNull;
+import net.sf.json.JSONObject;
+import org.geotools.referencing.CRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryCollection;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.io.ByteOrderValues;
+import org.locationtech.jts.io.WKBWriter;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * Maps the attributes of a simple feature type to columns, shared by the columnar output formats,
+ * and converts the attribute values to the representation stored in the columns. Geometries are
+ * stored as little endian WKB, described by the GeoParquet "geo" metadata, keeping their Z
+ * ordinates if they have any. Big integers and decimals are stored as 128 bit decimals, rounded to
+ * {@link #DECIMAL_SCALE} fractional digits for the latter.
+ *
+ * <p>Instances reuse the WKB writers, and are not thread safe.
+ */
+class FeatureColumns {
+
+    /** The GeoParquet metadata key, also used in the Arrow schema metadata */
+    static final String GEO_METADATA_KEY = "geo";
+
+    static final String GEOPARQUET_VERSION = "1.0.0";
+
+    /** The precision of the decimal columns, the most a 128 bit decimal can hold */
+    static final int DECIMAL_PRECISION = 38;
+
+    /** The number of fractional digits kept for {@link BigDecimal} attributes */
+    static final int DECIMAL_SCALE = 10;
+
+    /** The size in bytes of the decimal column values */
+    static final int DECIMAL_BYTES = 16;
+
+    /** The column types */
+    enum Kind {
+        BOOLEAN,
+        INTEGER,
+        LONG,
+        FLOAT,
+        DOUBLE,
+        STRING,
+        DATE,
+        TIMESTAMP,
+        BINARY,
+        GEOMETRY,
+        DECIMAL
+    }
+
+    final SimpleFeatureType schema;
+
+    final String[] names;
+
+    final Kind[] kinds;
+
+    /** The scale of each {@link Kind#DECIMAL} column, zero for the other ones */
+    final int[] scales;
+
+    private final WKBWriter wkbWriter = new WKBWriter(2, ByteOrderValues.LITTLE_ENDIAN);
+
+    private final WKBWriter wkbWriterZ = new WKBWriter(3, ByteOrderValues.LITTLE_ENDIAN);
+
+    FeatureColumns(SimpleFeatureType schema) {
+        this.schema = schema;
+        List<AttributeDescriptor> descriptors = schema.getAttributeDescriptors();
+        this.names = new String[descriptors.size()];
+        this.kinds = new Kind[descriptors.size()];
+        this.scales = new int[descriptors.size()];
+        for (int i = 0; i < names.length; i++) {
+            AttributeDescriptor ad = descriptors.get(i);
+            names[i] = ad.getLocalName();
+            kinds[i] = kind(ad.getType().getBinding());
+            if (BigDecimal.class.isAssignableFrom(ad.getType().getBinding())) {
+                scales[i] = DECIMAL_SCALE;
+            }
+        }
+    }
+
+    static Kind kind(Class<?> binding) {
+        if (Geometry.class.isAssignableFrom(binding)) {
+            return Kind.GEOMETRY;
+        } else if (Boolean.class.equals(binding)) {
+            return Kind.BOOLEAN;
+        } else if (Integer.class.equals(binding)
+                || Short.class.equals(binding)
+                || Byte.class.equals(binding)) {
+            return Kind.INTEGER;
+        } else if (Long.class.equals(binding)) {
+            return Kind.LONG;
+        } else if (BigInteger.class.equals(binding)
+                || BigDecimal.class.isAssignableFrom(binding)) {
+            return Kind.DECIMAL;
+        } else if (Float.class.equals(binding)) {
+            return Kind.FLOAT;
+        } else if (Number.class.isAssignableFrom(binding)) {
+            return Kind.DOUBLE;
+        } else if (java.sql.Date.class.isAssignableFrom(binding)) {
+            return Kind.DATE;
+        } else if (java.sql.Time.class.isAssignableFrom(binding)) {
+            // a time of day, with no date, is better represented by its ISO form
+            return Kind.STRING;
+        } else if (Date.class.isAssignableFrom(binding)) {
+            return Kind.TIMESTAMP;
+        } else if (byte[].class.equals(binding)) {
+            return Kind.BINARY;
+        }
+        return Kind.STRING;
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    /** Returns the value of a {@link Kind#DATE} column, as days since the epoch */
+    static int toEpochDay(Object value) {
+        if (value instanceof java.sql.Date) {
+            return (int) ((java.sql.Date) value).toLocalDate().toEpochDay();
+        }
+        return (int) Math.floorDiv(((Date) value).getTime(), 24 * 3600 * 1000L);
+    }
+
+    /** Returns the value of a {@link Kind#TIMESTAMP} column, as milliseconds since the epoch */
+    static long toEpochMillis(Object value) {
+        return ((Date) value).getTime();
+    }
+
+    /**
+     * Returns the value of a {@link Kind#DECIMAL} column, rounded to the column scale
+     *
+     * @throws IllegalArgumentException if the value does not fit in {@link #DECIMAL_PRECISION}
+     *     digits
+     */
+    static BigDecimal toDecimal(Object value, int scale) {
+        BigDecimal decimal;
+        if (value instanceof BigDecimal) {
+            decimal = (BigDecimal) value;
+        } else if (value instanceof BigInteger) {
+            decimal = new BigDecimal((BigInteger) value);
+        } else {
+            decimal = new BigDecimal(value.toString());
+        }
+        decimal = decimal.setScale(scale, RoundingMode.HALF_UP);
+        if (decimal.precision() > DECIMAL_PRECISION) {
+            throw new IllegalArgumentException(
+                    "Value "
+                            + value
+                            + " does not fit a decimal column with precision "
+                            + DECIMAL_PRECISION
+                            + " and scale "
+                            + scale);
+        }
+        return decimal;
+    }
+
+    /**
+     * Returns the unscaled value of a {@link Kind#DECIMAL} column as {@link #DECIMAL_BYTES} big
+     * endian two's complement bytes
+     */
+    static byte[] toDecimalBytes(Object value, int scale) {
+        byte[] unscaled = toDecimal(value, scale).unscaledValue().toByteArray();
+        byte[] result = new byte[DECIMAL_BYTES];
+        byte sign = (byte) (unscaled[0] < 0 ? -1 : 0);
+        int padding = DECIMAL_BYTES - unscaled.length;
+        Arrays.fill(result, 0, padding, sign);
+        System.arraycopy(unscaled, 0, result, padding, unscaled.length);
+        return result;
+    }
+
+    /** Returns the UTF-8 bytes of a {@link Kind#STRING} column value */
+    static byte[] toUTF8(Object value) {
+        return value.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Returns the bytes of a {@link Kind#BINARY} or {@link Kind#GEOMETRY} column value */
+    byte[] toBytes(Object value) {
+        if (value instanceof Geometry) {
+            Geometry geometry = (Geometry) value;
+            return hasZ(geometry) ? wkbWriterZ.write(geometry) : wkbWriter.write(geometry);
+        }
+        return (byte[]) value;
+    }
+
+    /** Returns true if the geometry has Z ordinates, looking at its first coordinate */
+    static boolean hasZ(Geometry geometry) {
+        Coordinate coordinate = geometry.getCoordinate();
+        return coordinate != null && !Double.isNaN(coordinate.getZ());
+    }
+
+    /** Builds the GeoParquet metadata describing the geometry columns */
+    String getGeoMetadata() {
+        JSONObject columns = new JSONObject();
+        for (AttributeDescriptor ad : schema.getAttributeDescriptors()) {
+            if (ad instanceof GeometryDescriptor) {
+                GeometryDescriptor gd = (GeometryDescriptor) ad;
+                JSONObject column = new JSONObject();
+                column.put("encoding", "WKB");
+                column.put("geometry_types", geometryTypes(gd.getType().getBinding()));
+                CoordinateReferenceSystem crs = gd.getCoordinateReferenceSystem();
+                // no crs means OGC:CRS84 in GeoParquet, null means an unknown one
+                if (crs == null) {
+                    column.put("crs", JSONNull.getInstance());
+                } else if (!CRS.equalsIgnoreMetadata(crs, DefaultGeographicCRS.WGS84)) {
+                    // the CRS kinds PROJJSON cannot be written for are reported as unknown
+                    JSONObject projJSON = ProjJSON.encode(crs);
+                    column.put("crs", projJSON != null ? projJSON : JSONNull.getInstance());
+                }
+                columns.put(gd.getLocalName(), column);
+            }
+        }
+        JSONObject geo = new JSONObject();
+        geo.put("version", GEOPARQUET_VERSION);
+        GeometryDescriptor primary = schema.getGeometryDescriptor();
+        if (primary != null) {
+            geo.put("primary_column", primary.getLocalName());
+        }
+        geo.put("columns", columns);
+        return geo.toString();
+    }
+
+    /** Returns true if the feature type has at least a geometry column */
+    boolean hasGeometry() {
+        return schema.getGeometryDescriptor() != null;
+    }
+
+    private static JSONArray geometryTypes(Class<?> binding) {
+        JSONArray types = new JSONArray();
+        if (Point.class.equals(binding)) {
+            types.add("Point");
+        } else if (LineString.class.isAssignableFrom(binding)) {
+            types.add("LineString");
+        } else if (Polygon.class.equals(binding)) {
+            types.add("Polygon");
+        } else if (MultiPoint.class.equals(binding)) {
+            types.add("MultiPoint");
+        } else if (MultiLineString.class.equals(binding)) {
+            types.add("MultiLineString");
+        } else if (MultiPolygon.class.equals(binding)) {
+            types.add("MultiPolygon");
+        } else if (GeometryCollection.class.equals(binding)) {
+            types.add("GeometryCollection");
+        }
+        // an empty list means any geometry type
+        return types;
+    }
+}
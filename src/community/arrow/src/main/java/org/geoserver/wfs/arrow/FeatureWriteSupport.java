@@ -0,0 +1,149 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.arrow;
+
+import java.util.Collections;
+import java.util.Map;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Types;
+import org.opengis.feature.simple.SimpleFeature;
+
+/** Writes simple features as Parquet records, one optional column per attribute */
+class FeatureWriteSupport extends WriteSupport<SimpleFeature> {
+
+    private final FeatureColumns columns;
+
+    private final MessageType schema;
+
+    private RecordConsumer consumer;
+
+    FeatureWriteSupport(FeatureColumns columns) {
+        this.columns = columns;
+        this.schema = getSchema(columns);
+    }
+
+    static MessageType getSchema(FeatureColumns columns) {
+        Types.MessageTypeBuilder builder = Types.buildMessage();
+        for (int i = 0; i < columns.size(); i++) {
+            String name = columns.names[i];
+            switch (columns.kinds[i]) {
+                case BOOLEAN:
+                    builder.optional(PrimitiveTypeName.BOOLEAN).named(name);
+                    break;
+                case INTEGER:
+                    builder.optional(PrimitiveTypeName.INT32).named(name);
+                    break;
+                case LONG:
+                    builder.optional(PrimitiveTypeName.INT64).named(name);
+                    break;
+                case FLOAT:
+                    builder.optional(PrimitiveTypeName.FLOAT).named(name);
+                    break;
+                case DOUBLE:
+                    builder.optional(PrimitiveTypeName.DOUBLE).named(name);
+                    break;
+                case DATE:
+                    builder.optional(PrimitiveTypeName.INT32)
+                            .as(LogicalTypeAnnotation.dateType())
+                            .named(name);
+                    break;
+                case TIMESTAMP:
+                    builder.optional(PrimitiveTypeName.INT64)
+                            .as(
+                                    LogicalTypeAnnotation.timestampType(
+                                            true, LogicalTypeAnnotation.TimeUnit.MILLIS))
+                            .named(name);
+                    break;
+                case BINARY:
+                case GEOMETRY:
+                    builder.optional(PrimitiveTypeName.BINARY).named(name);
+                    break;
+                case DECIMAL:
+                    builder.optional(PrimitiveTypeName.FIXED_LEN_BYTE_ARRAY)
+                            .length(FeatureColumns.DECIMAL_BYTES)
+                            .as(
+                                    LogicalTypeAnnotation.decimalType(
+                                            columns.scales[i], FeatureColumns.DECIMAL_PRECISION))
+                            .named(name);
+                    break;
+                default:
+                    builder.optional(PrimitiveTypeName.BINARY)
+                            .as(LogicalTypeAnnotation.stringType())
+                            .named(name);
+            }
+        }
+        return builder.named(columns.schema.getTypeName());
+    }
+
+    @Override
+    public WriteContext init(Configuration configuration) {
+        Map<String, String> metadata = Collections.emptyMap();
+        if (columns.hasGeometry()) {
+            metadata =
+                    Collections.singletonMap(
+                            FeatureColumns.GEO_METADATA_KEY, columns.getGeoMetadata());
+        }
+        return new WriteContext(schema, metadata);
+    }
+
+    @Override
+    public void prepareForWrite(RecordConsumer recordConsumer) {
+        this.consumer = recordConsumer;
+    }
+
+    @Override
+    public void write(SimpleFeature feature) {
+        consumer.startMessage();
+        for (int i = 0; i < columns.size(); i++) {
+            Object value = feature.getAttribute(i);
+            if (value == null) {
+                continue;
+            }
+            String name = columns.names[i];
+            consumer.startField(name, i);
+            switch (columns.kinds[i]) {
+                case BOOLEAN:
+                    consumer.addBoolean((Boolean) value);
+                    break;
+                case INTEGER:
+                    consumer.addInteger(((Number) value).intValue());
+                    break;
+                case LONG:
+                    consumer.addLong(((Number) value).longValue());
+                    break;
+                case FLOAT:
+                    consumer.addFloat(((Number) value).floatValue());
+                    break;
+                case DOUBLE:
+                    consumer.addDouble(((Number) value).doubleValue());
+                    break;
+                case DATE:
+                    consumer.addInteger(FeatureColumns.toEpochDay(value));
+                    break;
+                case TIMESTAMP:
+                    consumer.addLong(FeatureColumns.toEpochMillis(value));
+                    break;
+                case BINARY:
+                case GEOMETRY:
+                    consumer.addBinary(Binary.fromConstantByteArray(columns.toBytes(value)));
+                    break;
+                case DECIMAL:
+                    byte[] bytes = FeatureColumns.toDecimalBytes(value, columns.scales[i]);
+                    consumer.addBinary(Binary.fromConstantByteArray(bytes));
+                    break;
+                default:
+                    consumer.addBinary(Binary.fromString(value.toString()));
+            }
+            consumer.endField(name, i);
+        }
+        consumer.endMessage();
+    }
+}
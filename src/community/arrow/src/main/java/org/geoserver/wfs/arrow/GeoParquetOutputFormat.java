@@ -0,0 +1,101 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.arrow;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.OutputFile;
+import org.geoserver.config.GeoServer;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * WFS output format writing a GeoParquet file. Parquet buffers a row group in memory, in columnar
+ * form, and writes it to the output once it reaches {@code org.geoserver.wfs.parquet.rowGroupSize}
+ * bytes (defaults to {@link #DEFAULT_ROW_GROUP_SIZE}), so the memory used is bounded by the row
+ * group size, and the file footer is the only part written at the end.
+ */
+public class GeoParquetOutputFormat extends ColumnarOutputFormat {
+
+    public static final String MIME_TYPE = "application/vnd.apache.parquet";
+
+    /** The default row group size, in bytes */
+    public static final int DEFAULT_ROW_GROUP_SIZE = 32 * 1024 * 1024;
+
+    private static int ROW_GROUP_SIZE =
+            Integer.valueOf(
+                    System.getProperty(
+                            "org.geoserver.wfs.parquet.rowGroupSize",
+                            String.valueOf(DEFAULT_ROW_GROUP_SIZE)));
+
+    /** Allows to programmatically set the row group size, in bytes */
+    public static void setRowGroupSize(int rowGroupSize) {
+        ROW_GROUP_SIZE = rowGroupSize;
+    }
+
+    public GeoParquetOutputFormat(GeoServer gs) {
+        super(gs, outputFormats(), MIME_TYPE, "parquet");
+    }
+
+    private static Set<String> outputFormats() {
+        Set<String> formats = new LinkedHashSet<>();
+        formats.add(MIME_TYPE);
+        formats.add("parquet");
+        formats.add("geoparquet");
+        return formats;
+    }
+
+    @Override
+    public String getCapabilitiesElementName() {
+        return "GeoParquet";
+    }
+
+    @Override
+    void write(
+            FeatureColumns columns, List<SimpleFeatureCollection> collections, OutputStream output)
+            throws IOException {
+        try (ParquetWriter<SimpleFeature> writer =
+                new Builder(new StreamOutputFile(output), columns)
+                        .withRowGroupSize(ROW_GROUP_SIZE)
+                        .withCompressionCodec(CompressionCodecName.SNAPPY)
+                        .build()) {
+            for (SimpleFeatureCollection fc : collections) {
+                try (SimpleFeatureIterator it = fc.features()) {
+                    while (it.hasNext()) {
+                        writer.write(it.next());
+                    }
+                }
+            }
+        }
+    }
+
+    static class Builder extends ParquetWriter.Builder<SimpleFeature, Builder> {
+
+        private final FeatureColumns columns;
+
+        Builder(OutputFile file, FeatureColumns columns) {
+            super(file);
+            this.columns = columns;
+        }
+
+        @Override
+        protected Builder self() {
+            return this;
+        }
+
+        @Override
+        protected WriteSupport<SimpleFeature> getWriteSupport(Configuration conf) {
+            return new FeatureWriteSupport(columns);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.arrow;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import javax.measure.IncommensurableException;
+import javax.measure.Unit;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.geotools.metadata.iso.citation.Citations;
+import org.geotools.referencing.AbstractIdentifiedObject;
+import org.geotools.referencing.CRS;
+import org.opengis.parameter.GeneralParameterValue;
+import org.opengis.parameter.ParameterValue;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.IdentifiedObject;
+import org.opengis.referencing.ReferenceIdentifier;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.crs.GeographicCRS;
+import org.opengis.referencing.crs.ProjectedCRS;
+import org.opengis.referencing.cs.CoordinateSystem;
+import org.opengis.referencing.cs.CoordinateSystemAxis;
+import org.opengis.referencing.datum.Ellipsoid;
+import org.opengis.referencing.datum.GeodeticDatum;
+import org.opengis.referencing.datum.PrimeMeridian;
+import org.opengis.referencing.operation.Conversion;
+import org.opengis.referencing.operation.OperationMethod;
+import si.uom.NonSI;
+import si.uom.SI;
+import tec.uom.se.AbstractUnit;
+
+/**
+ * Encodes geographic and projected CRSs in PROJJSON, the CRS encoding of the GeoParquet metadata.
+ * Methods and parameters use their EPSG names when available, as PROJ looks them up by name.
+ */
+class ProjJSON {
+
+    static final String SCHEMA = "https://proj.org/schemas/v0.5/projjson.schema.json";
+
+    /** The ellipsoid axes GeoTools adds to the projection parameters */
+    static final Set<String> ELLIPSOID_PARAMETERS =
+            new HashSet<>(Arrays.asList("semi_major", "semi_minor"));
+
+    /** Returns the PROJJSON of the CRS, or null if it's neither geographic nor projected */
+    static JSONObject encode(CoordinateReferenceSystem crs) {
+        JSONObject json = new JSONObject();
+        json.put("$schema", SCHEMA);
+        if (crs instanceof GeographicCRS) {
+            putGeographic(json, (GeographicCRS) crs);
+        } else if (crs instanceof ProjectedCRS) {
+            putProjected(json, (ProjectedCRS) crs);
+        } else {
+            return null;
+        }
+        return json;
+    }
+
+    private static void putGeographic(JSONObject json, GeographicCRS crs) {
+        json.put("type", "GeographicCRS");
+        json.put("name", crs.getName().getCode());
+        json.put("datum", datum(crs.getDatum()));
+        json.put("coordinate_system", coordinateSystem("ellipsoidal", crs.getCoordinateSystem()));
+        putId(json, crs);
+    }
+
+    private static void putProjected(JSONObject json, ProjectedCRS crs) {
+        json.put("type", "ProjectedCRS");
+        json.put("name", crs.getName().getCode());
+        JSONObject base = new JSONObject();
+        putGeographic(base, crs.getBaseCRS());
+        json.put("base_crs", base);
+        json.put("conversion", conversion(crs.getConversionFromBase()));
+        json.put("coordinate_system", coordinateSystem("Cartesian", crs.getCoordinateSystem()));
+        putId(json, crs);
+    }
+
+    private static JSONObject datum(GeodeticDatum datum) {
+        JSONObject json = new JSONObject();
+        json.put("type", "GeodeticReferenceFrame");
+        json.put("name", datum.getName().getCode());
+
+        Ellipsoid ellipsoid = datum.getEllipsoid();
+        JSONObject ellipsoidJSON = new JSONObject();
+        ellipsoidJSON.put("name", ellipsoid.getName().getCode());
+        double semiMajor = convert(ellipsoid.getAxisUnit(), SI.METRE, ellipsoid.getSemiMajorAxis());
+        if (ellipsoid.isSphere()) {
+            ellipsoidJSON.put("radius", semiMajor);
+        } else {
+            ellipsoidJSON.put("semi_major_axis", semiMajor);
+            ellipsoidJSON.put("inverse_flattening", ellipsoid.getInverseFlattening());
+        }
+        json.put("ellipsoid", ellipsoidJSON);
+
+        PrimeMeridian meridian = datum.getPrimeMeridian();
+        JSONObject meridianJSON = new JSONObject();
+        meridianJSON.put("name", meridian.getName().getCode());
+        meridianJSON.put(
+                "longitude",
+                convert(
+                        meridian.getAngularUnit(),
+                        NonSI.DEGREE_ANGLE,
+                        meridian.getGreenwichLongitude()));
+        json.put("prime_meridian", meridianJSON);
+        return json;
+    }
+
+    private static JSONObject coordinateSystem(String subtype, CoordinateSystem cs) {
+        JSONArray axes = new JSONArray();
+        for (int i = 0; i < cs.getDimension(); i++) {
+            CoordinateSystemAxis axis = cs.getAxis(i);
+            JSONObject json = new JSONObject();
+            json.put("name", axis.getName().getCode());
+            json.put("abbreviation", axis.getAbbreviation());
+            json.put("direction", direction(axis.getDirection().name()));
+            json.put("unit", unit(axis.getUnit()));
+            axes.add(json);
+        }
+        JSONObject json = new JSONObject();
+        json.put("subtype", subtype);
+        json.put("axis", axes);
+        return json;
+    }
+
+    private static JSONObject conversion(Conversion conversion) {
+        JSONObject json = new JSONObject();
+        json.put("name", conversion.getName().getCode());
+        OperationMethod method = conversion.getMethod();
+        JSONObject methodJSON = new JSONObject();
+        methodJSON.put("name", epsgName(method));
+        putId(methodJSON, method);
+        json.put("method", methodJSON);
+
+        JSONArray parameters = new JSONArray();
+        for (GeneralParameterValue value : conversion.getParameterValues().values()) {
+            if (!(value instanceof ParameterValue)
+                    || ELLIPSOID_PARAMETERS.contains(value.getDescriptor().getName().getCode())) {
+                continue;
+            }
+            ParameterValue<?> parameter = (ParameterValue<?>) value;
+            if (!(parameter.getValue() instanceof Number)) {
+                continue;
+            }
+            JSONObject parameterJSON = new JSONObject();
+            parameterJSON.put("name", epsgName(parameter.getDescriptor()));
+            parameterJSON.put("value", parameter.doubleValue());
+            if (parameter.getUnit() != null) {
+                parameterJSON.put("unit", unit(parameter.getUnit()));
+            }
+            putId(parameterJSON, parameter.getDescriptor());
+            parameters.add(parameterJSON);
+        }
+        json.put("parameters", parameters);
+        return json;
+    }
+
+    /** Returns the predefined PROJJSON unit names, or a unit object with its SI factor */
+    private static Object unit(Unit<?> unit) {
+        if (unit == null || AbstractUnit.ONE.equals(unit)) {
+            return "unity";
+        } else if (SI.METRE.equals(unit)) {
+            return "metre";
+        } else if (NonSI.DEGREE_ANGLE.equals(unit)) {
+            return "degree";
+        } else if (SI.RADIAN.equals(unit)) {
+            return "radian";
+        }
+        Unit<?> systemUnit = unit.getSystemUnit();
+        String type;
+        if (SI.METRE.equals(systemUnit)) {
+            type = "LinearUnit";
+        } else if (SI.RADIAN.equals(systemUnit)) {
+            type = "AngularUnit";
+        } else if (AbstractUnit.ONE.equals(systemUnit)) {
+            type = "ScaleUnit";
+        } else {
+            type = "Unit";
+        }
+        JSONObject json = new JSONObject();
+        json.put("type", type);
+        json.put("name", unit.toString());
+        json.put("conversion_factor", convert(unit, systemUnit, 1));
+        return json;
+    }
+
+    /** Turns the axis direction code (e.g., GEOCENTRIC_X) into the PROJJSON one (geocentricX) */
+    static String direction(String code) {
+        StringBuilder sb = new StringBuilder();
+        boolean upper = false;
+        for (char c : code.toLowerCase().toCharArray()) {
+            if (c == '_') {
+                upper = true;
+            } else {
+                sb.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String epsgName(IdentifiedObject object) {
+        String name = AbstractIdentifiedObject.getName(object, Citations.EPSG);
+        return name != null ? name : object.getName().getCode();
+    }
+
+    /** Adds the EPSG identifier of the object, if it has one */
+    private static void putId(JSONObject json, IdentifiedObject object) {
+        Object code = null;
+        if (object instanceof CoordinateReferenceSystem) {
+            try {
+                code = CRS.lookupEpsgCode((CoordinateReferenceSystem) object, false);
+            } catch (FactoryException e) {
+                // not identifiable, no id then
+            }
+        } else {
+            ReferenceIdentifier identifier =
+                    AbstractIdentifiedObject.getIdentifier(object, Citations.EPSG);
+            if (identifier != null) {
+                String value = identifier.getCode();
+                code = value.matches("\\d+") ? (Object) Integer.valueOf(value) : value;
+            }
+        }
+        if (code != null) {
+            JSONObject id = new JSONObject();
+            id.put("authority", "EPSG");
+            id.put("code", code);
+            json.put("id", id);
+        }
+    }
+
+    private static double convert(Unit<?> source, Unit<?> target, double value) {
+        try {
+            return source.getConverterToAny(target).convert(value);
+        } catch (IncommensurableException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
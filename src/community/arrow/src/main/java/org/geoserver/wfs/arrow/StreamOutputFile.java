@@ -0,0 +1,72 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.arrow;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+
+/**
+ * A Parquet {@link OutputFile} writing into a stream. Parquet files are written sequentially, with
+ * the metadata in the footer, so no seeking is needed. Closing the file does not close the stream.
+ */
+class StreamOutputFile implements OutputFile {
+
+    private final OutputStream output;
+
+    StreamOutputFile(OutputStream output) {
+        this.output = output;
+    }
+
+    @Override
+    public PositionOutputStream create(long blockSizeHint) {
+        return new PositionOutputStream() {
+            long position;
+
+            @Override
+            public long getPos() {
+                return position;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                output.write(b);
+                position++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                output.write(b, off, len);
+                position += len;
+            }
+
+            @Override
+            public void flush() throws IOException {
+                output.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                output.flush();
+            }
+        };
+    }
+
+    @Override
+    public PositionOutputStream createOrOverwrite(long blockSizeHint) {
+        return create(blockSizeHint);
+    }
+
+    @Override
+    public boolean supportsBlockSize() {
+        return false;
+    }
+
+    @Override
+    public long defaultBlockSize() {
+        return 0;
+    }
+}
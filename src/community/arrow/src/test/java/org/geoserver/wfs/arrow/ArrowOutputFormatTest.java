@@ -0,0 +1,102 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.arrow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import net.sf.json.JSONObject;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.VarBinaryVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.geoserver.data.test.MockData;
+import org.geoserver.wfs.WFSTestSupport;
+import org.geotools.data.Query;
+import org.junit.Test;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.WKBReader;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class ArrowOutputFormatTest extends WFSTestSupport {
+
+    @Test
+    public void testBasicPolygons() throws Exception {
+        MockHttpServletResponse response =
+                getAsServletResponse(
+                        "wfs?version=1.1.0&request=GetFeature&typeName=cite:BasicPolygons"
+                                + "&outputFormat=arrow");
+        assertEquals(ArrowOutputFormat.MIME_TYPE, response.getContentType());
+        assertEquals(
+                "attachment; filename=BasicPolygons.arrow",
+                response.getHeader("Content-Disposition"));
+
+        int expected = getFeatureSource(MockData.BASIC_POLYGONS).getCount(Query.ALL);
+        try (BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+                ArrowStreamReader reader =
+                        new ArrowStreamReader(
+                                new ByteArrayInputStream(response.getContentAsByteArray()),
+                                allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            Schema schema = root.getSchema();
+            assertEquals(
+                    ArrowOutputFormat.WKB_EXTENSION,
+                    schema.findField("the_geom")
+                            .getMetadata()
+                            .get(ArrowOutputFormat.EXTENSION_NAME_KEY));
+            JSONObject geo =
+                    JSONObject.fromObject(
+                            schema.getCustomMetadata().get(FeatureColumns.GEO_METADATA_KEY));
+            assertEquals("the_geom", geo.getString("primary_column"));
+            assertEquals(
+                    "WKB", geo.getJSONObject("columns").getJSONObject("the_geom").get("encoding"));
+
+            int count = 0;
+            while (reader.loadNextBatch()) {
+                VarBinaryVector geometries = (VarBinaryVector) root.getVector("the_geom");
+                for (int i = 0; i < root.getRowCount(); i++) {
+                    Geometry g = new WKBReader().read(geometries.get(i));
+                    assertNotNull(g);
+                }
+                count += root.getRowCount();
+            }
+            assertEquals(expected, count);
+        }
+    }
+
+    @Test
+    public void testBatches() throws Exception {
+        ArrowOutputFormat.setBatchSize(2);
+        try {
+            MockHttpServletResponse response =
+                    getAsServletResponse(
+                            "wfs?version=1.1.0&request=GetFeature&typeName=sf:PrimitiveGeoFeature"
+                                    + "&outputFormat=arrow");
+            int expected = getFeatureSource(MockData.PRIMITIVEGEOFEATURE).getCount(Query.ALL);
+            try (BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+                    ArrowStreamReader reader =
+                            new ArrowStreamReader(
+                                    new ByteArrayInputStream(response.getContentAsByteArray()),
+                                    allocator)) {
+                VectorSchemaRoot root = reader.getVectorSchemaRoot();
+                int count = 0;
+                int batches = 0;
+                while (reader.loadNextBatch()) {
+                    assertTrue(root.getRowCount() <= 2);
+                    count += root.getRowCount();
+                    batches++;
+                }
+                assertEquals(expected, count);
+                assertEquals((expected + 1) / 2, batches);
+            }
+        } finally {
+            ArrowOutputFormat.setBatchSize(ArrowOutputFormat.DEFAULT_BATCH_SIZE);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.arrow;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.geotools.data.DataUtilities;
+import org.geotools.referencing.crs.DefaultEngineeringCRS;
+import org.junit.Test;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.WKBReader;
+import org.locationtech.jts.io.WKTReader;
+
+public class FeatureColumnsTest {
+
+    @Test
+    public void testDecimalKinds() throws Exception {
+        FeatureColumns columns =
+                new FeatureColumns(
+                        DataUtilities.createType(
+                                "test",
+                                "big:java.math.BigInteger,dec:java.math.BigDecimal,l:Long"));
+        assertEquals(FeatureColumns.Kind.DECIMAL, columns.kinds[0]);
+        assertEquals(FeatureColumns.Kind.DECIMAL, columns.kinds[1]);
+        assertEquals(FeatureColumns.Kind.LONG, columns.kinds[2]);
+        assertEquals(0, columns.scales[0]);
+        assertEquals(FeatureColumns.DECIMAL_SCALE, columns.scales[1]);
+    }
+
+    @Test
+    public void testToDecimal() {
+        BigInteger big = new BigInteger("123456789012345678901234567890");
+        assertEquals(new BigDecimal(big), FeatureColumns.toDecimal(big, 0));
+        assertEquals(new BigDecimal("1.23"), FeatureColumns.toDecimal(new BigDecimal("1.225"), 2));
+
+        byte[] bytes = FeatureColumns.toDecimalBytes(new BigDecimal("-1.5"), 1);
+        assertEquals(FeatureColumns.DECIMAL_BYTES, bytes.length);
+        assertEquals(new BigInteger("-15"), new BigInteger(bytes));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecimalOverflow() {
+        FeatureColumns.toDecimal(BigInteger.TEN.pow(40), 0);
+    }
+
+    @Test
+    public void testGeometryZ() throws Exception {
+        FeatureColumns columns = new FeatureColumns(DataUtilities.createType("test", "geom:Point"));
+        Geometry point3D = new WKTReader().read("POINT (1 2 3)");
+        Geometry read = new WKBReader().read(columns.toBytes(point3D));
+        assertEquals(3, read.getCoordinate().getZ(), 0d);
+
+        Geometry point2D = new WKTReader().read("POINT (1 2)");
+        byte[] bytes = columns.toBytes(point2D);
+        // byte order, type and two ordinates
+        assertEquals(1 + 4 + 16, bytes.length);
+        assertTrue(Double.isNaN(new WKBReader().read(bytes).getCoordinate().getZ()));
+        assertArrayEquals(bytes, columns.toBytes(point2D));
+    }
+
+    @Test
+    public void testProjectedCRS() throws Exception {
+        FeatureColumns columns =
+                new FeatureColumns(DataUtilities.createType("test", "geom:Point:srid=32632"));
+        JSONObject crs =
+                JSONObject.fromObject(columns.getGeoMetadata())
+                        .getJSONObject("columns")
+                        .getJSONObject("geom")
+                        .getJSONObject("crs");
+        assertEquals(ProjJSON.SCHEMA, crs.getString("$schema"));
+        assertEquals("ProjectedCRS", crs.getString("type"));
+        assertEquals(32632, crs.getJSONObject("id").getInt("code"));
+
+        JSONObject base = crs.getJSONObject("base_crs");
+        assertEquals("GeographicCRS", base.getString("type"));
+        assertEquals(4326, base.getJSONObject("id").getInt("code"));
+        JSONObject ellipsoid = base.getJSONObject("datum").getJSONObject("ellipsoid");
+        assertEquals(6378137, ellipsoid.getDouble("semi_major_axis"), 0d);
+        assertEquals(298.257223563, ellipsoid.getDouble("inverse_flattening"), 1e-9);
+
+        JSONObject conversion = crs.getJSONObject("conversion");
+        JSONObject method = conversion.getJSONObject("method");
+        assertEquals("Transverse Mercator", method.getString("name"));
+        assertEquals(9807, method.getJSONObject("id").getInt("code"));
+        Map<String, JSONObject> parameters = new HashMap<>();
+        for (Object parameter : conversion.getJSONArray("parameters")) {
+            parameters.put(((JSONObject) parameter).getString("name"), (JSONObject) parameter);
+        }
+        assertFalse(parameters.containsKey("semi_major"));
+        JSONObject centralMeridian = parameters.get("Longitude of natural origin");
+        assertEquals(9, centralMeridian.getDouble("value"), 0d);
+        assertEquals("degree", centralMeridian.getString("unit"));
+        JSONObject scaleFactor = parameters.get("Scale factor at natural origin");
+        assertEquals(0.9996, scaleFactor.getDouble("value"), 0d);
+        assertEquals("unity", scaleFactor.getString("unit"));
+        assertEquals(500000, parameters.get("False easting").getDouble("value"), 0d);
+        assertEquals("metre", parameters.get("False easting").getString("unit"));
+
+        JSONObject cs = crs.getJSONObject("coordinate_system");
+        assertEquals("Cartesian", cs.getString("subtype"));
+        JSONArray axes = cs.getJSONArray("axis");
+        assertEquals("east", axes.getJSONObject(0).getString("direction"));
+        assertEquals("north", axes.getJSONObject(1).getString("direction"));
+        assertEquals("metre", axes.getJSONObject(1).getString("unit"));
+    }
+
+    @Test
+    public void testUnsupportedCRS() throws Exception {
+        assertNull(ProjJSON.encode(DefaultEngineeringCRS.GENERIC_2D));
+        assertEquals("geocentricX", ProjJSON.direction("GEOCENTRIC_X"));
+        assertEquals("north", ProjJSON.direction("NORTH"));
+    }
+}
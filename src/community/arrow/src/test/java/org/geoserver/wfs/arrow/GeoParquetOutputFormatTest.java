@@ -0,0 +1,58 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.arrow;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.geoserver.data.test.MockData;
+import org.geoserver.wfs.WFSTestSupport;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class GeoParquetOutputFormatTest extends WFSTestSupport {
+
+    static final byte[] MAGIC = "PAR1".getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    public void testPrimitiveGeoFeature() throws Exception {
+        MockHttpServletResponse response =
+                getAsServletResponse(
+                        "wfs?version=1.1.0&request=GetFeature&typeName=sf:PrimitiveGeoFeature"
+                                + "&outputFormat=parquet");
+        assertEquals(GeoParquetOutputFormat.MIME_TYPE, response.getContentType());
+        assertEquals(
+                "attachment; filename=PrimitiveGeoFeature.parquet",
+                response.getHeader("Content-Disposition"));
+
+        // a complete parquet file starts and ends with the magic bytes
+        byte[] bytes = response.getContentAsByteArray();
+        assertEquals(Arrays.toString(MAGIC), Arrays.toString(Arrays.copyOfRange(bytes, 0, 4)));
+        assertEquals(
+                Arrays.toString(MAGIC),
+                Arrays.toString(Arrays.copyOfRange(bytes, bytes.length - 4, bytes.length)));
+    }
+
+    @Test
+    public void testSchema() throws Exception {
+        SimpleFeatureType schema =
+                (SimpleFeatureType)
+                        getCatalog()
+                                .getFeatureTypeByName(getLayerId(MockData.PRIMITIVEGEOFEATURE))
+                                .getFeatureType();
+        MessageType message = FeatureWriteSupport.getSchema(new FeatureColumns(schema));
+        assertEquals(schema.getAttributeCount(), message.getFieldCount());
+        assertEquals(
+                PrimitiveTypeName.BINARY,
+                message.getType("surfaceProperty").asPrimitiveType().getPrimitiveTypeName());
+        assertEquals(
+                PrimitiveTypeName.INT32,
+                message.getType("intProperty").asPrimitiveType().getPrimitiveTypeName());
+    }
+}
@@ -181,7 +181,7 @@ public class FeatureService {
             @RequestParam(name = "time", required = false) String time,
             @PathVariable(name = "itemId") String itemId)
             throws Exception {
-        return items(collectionId, startIndex, limit, bbox, time, null, null, itemId);
+        return items(collectionId, startIndex, limit, bbox, time, null, null, null, itemId);
     }
 
     @GetMapping(path = "collections/{collectionId}/items", name = "getFeatures")
@@ -196,6 +196,7 @@ public class FeatureService {
             @RequestParam(name = "datetime", required = false) String datetime,
             @RequestParam(name = "filter", required = false) String filter,
             @RequestParam(name = "filter-lang", required = false) String filterLanguage,
+            @RequestParam(name = "cursor", required = false) String cursor,
             String itemId)
             throws Exception {
         // build the request in a way core WFS machinery can understand it
@@ -226,6 +227,7 @@ public class FeatureService {
         query.setFilter(mergeFiltersAnd(filters));
         request.setStartIndex(startIndex);
         request.setMaxFeatures(limit);
+        request.setCursor(cursor);
         request.setBaseUrl(APIRequestInfo.get().getBaseURL());
         request.getAdaptedQueries().add(query.getAdaptee());
 
@@ -40,7 +40,8 @@ class FeaturesGetFeature extends org.geoserver.wfs.GetFeature {
             int maxFeatures,
             int count,
             FeatureCollectionResponse result,
-            Map<String, String> kvp) {
+            Map<String, String> kvp,
+            String nextCursor) {
         // can we build the links?
         List<Query> queries = request.getQueries();
         if (queries == null
@@ -78,7 +79,8 @@ class FeaturesGetFeature extends org.geoserver.wfs.GetFeature {
                         "COUNT",
                         "OUTPUTFORMAT",
                         "STARTINDEX",
-                        "LIMIT");
+                        "LIMIT",
+                        "CURSOR");
         kvp = new CaseInsensitiveMap(kvp);
         for (String param : PARAMS_BLACKLIST) {
             kvp.remove(param);
@@ -114,6 +116,9 @@ class FeaturesGetFeature extends org.geoserver.wfs.GetFeature {
         if (count > 0 && offset > -1 && maxFeatures <= count) {
             kvp.put("startIndex", String.valueOf(offset > 0 ? offset + count : count));
             kvp.put("limit", String.valueOf(maxFeatures));
+            if (nextCursor != null) {
+                kvp.put("cursor", nextCursor);
+            }
             result.setNext(buildURL(itemsPath, kvp));
         }
     }
@@ -41,7 +41,8 @@ class WFS3GetFeature extends org.geoserver.wfs.GetFeature {
             int maxFeatures,
             int count,
             FeatureCollectionResponse result,
-            Map<String, String> kvp) {
+            Map<String, String> kvp,
+            String nextCursor) {
         // can we build the links?
         String typename = kvp.get("TYPENAME");
         if (typename == null) {
@@ -0,0 +1,71 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.monitor;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free latency histogram with log-linear buckets (two buckets per power of two, from 1ms to
+ * about four minutes), so that the relative error of the recorded values is bounded like in HDR
+ * histograms, while keeping the number of buckets small enough for Prometheus scraping.
+ */
+public class LatencyHistogram {
+
+    /** The inclusive upper bounds of the buckets, in milliseconds (the last bucket is unbounded) */
+    static final long[] BOUNDS;
+
+    static {
+        long[] bounds = new long[36];
+        int i = 0;
+        bounds[i++] = 1;
+        for (long base = 2; i < bounds.length; base *= 2) {
+            bounds[i++] = base;
+            if (i < bounds.length) {
+                bounds[i++] = base + base / 2;
+            }
+        }
+        BOUNDS = bounds;
+    }
+
+    final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+
+    final LongAdder sum = new LongAdder();
+
+    /** Records a duration, in milliseconds */
+    public void record(long millis) {
+        int idx = Arrays.binarySearch(BOUNDS, Math.max(0, millis));
+        if (idx < 0) {
+            idx = -idx - 1;
+        }
+        buckets.incrementAndGet(idx);
+        sum.add(millis);
+    }
+
+    /** Returns the bucket upper bounds, in milliseconds */
+    public static long[] getBounds() {
+        return BOUNDS.clone();
+    }
+
+    /**
+     * Returns the cumulative counts for each bound, plus a last element for the unbounded bucket,
+     * which is also the total count
+     */
+    public long[] getCumulativeCounts() {
+        long[] result = new long[buckets.length()];
+        long total = 0;
+        for (int i = 0; i < result.length; i++) {
+            total += buckets.get(i);
+            result[i] = total;
+        }
+        return result;
+    }
+
+    /** Returns the sum of the recorded durations, in milliseconds */
+    public long getSum() {
+        return sum.sum();
+    }
+}
@@ -6,25 +6,42 @@
 package org.geoserver.monitor;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
 import org.geoserver.monitor.Query.Comparison;
 import org.geoserver.monitor.Query.SortOrder;
 import org.geoserver.ows.util.OwsUtils;
+import org.geotools.util.logging.Logging;
 
+/**
+ * Monitor DAO keeping the requests in memory: the running ones, and a fixed number of the most
+ * recent completed ones (100 by default, configurable with the {@link #CAPACITY_KEY} monitor
+ * property).
+ */
 public class MemoryMonitorDAO implements MonitorDAO {
 
+    static final Logger LOGGER = Logging.getLogger(MemoryMonitorDAO.class);
+
     public static final String NAME = "memory";
 
-    Queue<RequestData> live = new ConcurrentLinkedQueue<RequestData>();
-    Queue<RequestData> history = new ConcurrentLinkedQueue<RequestData>();
+    /** Monitor property controlling how many completed requests are kept in memory */
+    public static final String CAPACITY_KEY = "memory.capacity";
+
+    public static final int DEFAULT_CAPACITY = 100;
+
+    Map<Long, RequestData> live = new ConcurrentSkipListMap<>();
+    volatile RequestRing history = new RequestRing(DEFAULT_CAPACITY);
 
     AtomicLong REQUEST_ID_GEN = new AtomicLong(1);
 
@@ -34,7 +51,32 @@ public class MemoryMonitorDAO implements MonitorDAO {
     }
 
     @Override
-    public void init(MonitorConfig config) {}
+    public void init(MonitorConfig config) {
+        String capacity = config.getProperties().getProperty(CAPACITY_KEY);
+        if (capacity != null) {
+            history = new RequestRing(parseCapacity(capacity));
+        }
+    }
+
+    /** Parses the configured capacity, falling back on the default one if not valid */
+    static int parseCapacity(String capacity) {
+        try {
+            int value = Integer.parseInt(capacity.trim());
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // logged below
+        }
+        LOGGER.warning(
+                "Invalid "
+                        + CAPACITY_KEY
+                        + " value '"
+                        + capacity
+                        + "', should be a positive integer, using the default of "
+                        + DEFAULT_CAPACITY);
+        return DEFAULT_CAPACITY;
+    }
 
     public RequestData init(RequestData data) {
         data.setId(REQUEST_ID_GEN.getAndIncrement());
@@ -42,69 +84,52 @@ public class MemoryMonitorDAO implements MonitorDAO {
     }
 
     public void add(RequestData data) {
-        live.add(data);
+        live.put(data.getId(), data);
     }
 
-    public void update(RequestData data) {}
+    public void update(RequestData data) {
+        // live requests are not indexed, completed ones need their summary refreshed
+        if (!live.containsKey(data.getId())) {
+            history.update(data);
+        }
+    }
 
     public void save(RequestData data) {
-        live.remove(data);
+        live.remove(data.getId());
         history.add(data);
-
-        if (history.size() > 100) {
-            history.poll();
-        }
     }
 
     public RequestData getRequest(long id) {
-        for (RequestData r : getRequests()) {
-            if (r.getId() == id) {
-                return r;
-            }
-        }
-        return null;
+        RequestData data = live.get(id);
+        return data != null ? data : history.get(id);
     }
 
     public List<RequestData> getRequests() {
-        List<RequestData> requests = new LinkedList();
-        requests.addAll(live);
-        requests.addAll(history);
+        List<RequestData> requests = new ArrayList<>(live.values());
+        requests.addAll(history.list(null, null));
         return requests;
     }
 
     public List<RequestData> getRequests(Query q) {
-        List<RequestData> requests = getRequests();
-
-        List<Predicate> predicates = new ArrayList();
-        if (q.getFilter() != null) {
-            Filter f = q.getFilter();
-            predicates.add(new PropertyCompare(f.getLeft(), f.getType(), f.getRight()));
-        }
-        if (q.getFromDate() != null || q.getToDate() != null) {
-            predicates.add(new DateRange(q.getFromDate(), q.getToDate()));
+        if (!q.getAggregates().isEmpty()) {
+            List<RequestData> requests = new ArrayList<>();
+            aggregate(q, (data, aggregates) -> requests.add(data));
+            return requests;
         }
 
-        int i = 1, count = 0;
-
-        O:
-        for (Iterator<RequestData> it = requests.iterator(); it.hasNext(); ) {
-            RequestData r = it.next();
-            for (Predicate p : predicates) {
-                if (!p.matches(r)) {
-                    it.remove();
-                    continue O;
-                }
+        List<RequestData> requests = new ArrayList<>();
+        DateRange range = new DateRange(q.getFromDate(), q.getToDate());
+        for (RequestData r : live.values()) {
+            if (range.matches(r)) {
+                requests.add(r);
             }
+        }
+        // the ring filters on time without touching the requests
+        requests.addAll(history.list(q.getFromDate(), q.getToDate()));
 
-            if (q.getOffset() != null && q.getOffset() >= i++) {
-                it.remove();
-                continue;
-            }
-            if (q.getCount() != null && q.getCount() <= count) {
-                it.remove();
-                continue;
-            }
-            count++;
+        if (q.getFilter() != null) {
+            Predicate predicate = predicate(q.getFilter());
+            requests.removeIf(r -> !predicate.matches(r));
         }
 
         if (q.getSortBy() != null) {
@@ -112,16 +137,33 @@ public class MemoryMonitorDAO implements MonitorDAO {
         } else if (q.getFromDate() != null || q.getToDate() != null) {
             Collections.sort(requests, new Sorter("startTime", SortOrder.DESC));
         }
-        return requests;
+        return page(requests, q);
     }
 
     public void getRequests(Query query, RequestDataVisitor visitor) {
+        if (!query.getAggregates().isEmpty()) {
+            aggregate(query, visitor);
+            return;
+        }
         for (RequestData r : getRequests(query)) {
             visitor.visit(r);
         }
     }
 
     public long getCount(Query query) {
+        if (query.getFilter() == null
+                && query.getFromDate() == null
+                && query.getToDate() == null
+                && query.getAggregates().isEmpty()) {
+            long count = live.size() + history.size();
+            if (query.getOffset() != null) {
+                count = Math.max(0, count - query.getOffset());
+            }
+            if (query.getCount() != null) {
+                count = Math.min(count, query.getCount());
+            }
+            return count;
+        }
         return getRequests(query).size();
     }
 
@@ -129,6 +171,214 @@ public class MemoryMonitorDAO implements MonitorDAO {
         return getRequests(query).iterator();
     }
 
+    /**
+     * Computes the query aggregates. When the query has no filter, and groups by a dimension
+     * tracked by the ring histograms, the completed requests are not scanned
+     */
+    void aggregate(Query q, RequestDataVisitor visitor) {
+        List<Aggregate> aggregates = new ArrayList<>();
+        for (String spec : q.getAggregates()) {
+            aggregates.add(new Aggregate(spec));
+        }
+        List<String> groupBy = q.getGroupBy();
+        Map<List<Object>, Aggregate.Accumulator[]> groups = new LinkedHashMap<>();
+
+        RequestRing.Dimension dimension = histogramDimension(q, aggregates);
+        if (dimension != null) {
+            history.histogram(
+                    dimension,
+                    (key, count, totalTime, responseLength) -> {
+                        // the histogram key follows the dimension property order
+                        List<Object> groupKey = new ArrayList<>(groupBy.size());
+                        for (String property : groupBy) {
+                            groupKey.add(key.get(dimension.properties.indexOf(property)));
+                        }
+                        for (Aggregate.Accumulator accumulator :
+                                accumulators(groups, groupKey, aggregates)) {
+                            accumulator.add(count, totalTime, responseLength);
+                        }
+                    });
+            for (RequestData r : live.values()) {
+                accumulate(r, groupBy, aggregates, groups);
+            }
+        } else {
+            Query scan = q.clone();
+            scan.getAggregates().clear();
+            scan.getGroupBy().clear();
+            scan.setSortBy(null);
+            scan.setSortOrder(null);
+            scan.setOffset(null);
+            scan.setCount(null);
+            for (RequestData r : getRequests(scan)) {
+                accumulate(r, groupBy, aggregates, groups);
+            }
+        }
+
+        // build the results, sort and page them
+        List<Object[]> results = new ArrayList<>();
+        for (Map.Entry<List<Object>, Aggregate.Accumulator[]> e : groups.entrySet()) {
+            List<Object> key = e.getKey();
+            Aggregate.Accumulator[] accumulators = e.getValue();
+            Object[] row = new Object[key.size() + accumulators.length];
+            for (int i = 0; i < key.size(); i++) {
+                row[i] = key.get(i);
+            }
+            for (int i = 0; i < accumulators.length; i++) {
+                row[key.size() + i] = accumulators[i].value();
+            }
+            results.add(row);
+        }
+        if (q.getSortBy() != null) {
+            int column = groupBy.indexOf(q.getSortBy());
+            if (column < 0) {
+                int aggregate = q.getAggregates().indexOf(q.getSortBy());
+                column = aggregate < 0 ? -1 : groupBy.size() + aggregate;
+            }
+            if (column >= 0) {
+                int sortColumn = column;
+                Comparator<Object[]> comparator =
+                        (r1, r2) -> compareValues(r1[sortColumn], r2[sortColumn]);
+                if (q.getSortOrder() == SortOrder.DESC) {
+                    comparator = comparator.reversed();
+                }
+                Collections.sort(results, comparator);
+            }
+        }
+
+        for (Object[] row : page(results, q)) {
+            RequestData data = new RequestData();
+            for (int i = 0; i < groupBy.size(); i++) {
+                String property = groupBy.get(i);
+                Object value = row[i];
+                if ("resource".equals(property)) {
+                    if (value != null) {
+                        data.getResources().add((String) value);
+                    }
+                } else if (value != null) {
+                    OwsUtils.set(data, property, value);
+                }
+            }
+            visitor.visit(data, Arrays.copyOfRange(row, groupBy.size(), row.length));
+        }
+    }
+
+    /** Returns the histogram dimension that can answer the query, or null if a scan is needed */
+    RequestRing.Dimension histogramDimension(Query q, List<Aggregate> aggregates) {
+        if (q.getFilter() != null || q.getFromDate() != null || q.getToDate() != null) {
+            return null;
+        }
+        for (Aggregate aggregate : aggregates) {
+            if (!aggregate.isHistogramSupported()) {
+                return null;
+            }
+        }
+        Set<String> groupBy = new HashSet<>(q.getGroupBy());
+        if (groupBy.size() != q.getGroupBy().size()) {
+            return null;
+        }
+        for (RequestRing.Dimension dimension : RequestRing.Dimension.values()) {
+            if (groupBy.equals(new HashSet<>(dimension.properties))) {
+                return dimension;
+            }
+        }
+        return null;
+    }
+
+    private void accumulate(
+            RequestData r,
+            List<String> groupBy,
+            List<Aggregate> aggregates,
+            Map<List<Object>, Aggregate.Accumulator[]> groups) {
+        for (List<Object> key : groupKeys(r, groupBy)) {
+            Aggregate.Accumulator[] accumulators = accumulators(groups, key, aggregates);
+            for (Aggregate.Accumulator accumulator : accumulators) {
+                accumulator.add(r);
+            }
+        }
+    }
+
+    private Aggregate.Accumulator[] accumulators(
+            Map<List<Object>, Aggregate.Accumulator[]> groups,
+            List<Object> key,
+            List<Aggregate> aggregates) {
+        return groups.computeIfAbsent(
+                key,
+                k -> {
+                    Aggregate.Accumulator[] result = new Aggregate.Accumulator[aggregates.size()];
+                    for (int i = 0; i < result.length; i++) {
+                        result[i] = aggregates.get(i).accumulator();
+                    }
+                    return result;
+                });
+    }
+
+    /**
+     * Returns the group keys of a request, the "resource" property expands into one key per
+     * resource
+     */
+    private List<List<Object>> groupKeys(RequestData r, List<String> groupBy) {
+        List<List<Object>> keys = new ArrayList<>();
+        keys.add(new ArrayList<>());
+        for (String property : groupBy) {
+            List<?> values;
+            if ("resource".equals(property)) {
+                values =
+                        r.getResources() == null || r.getResources().isEmpty()
+                                ? Collections.singletonList(null)
+                                : r.getResources();
+            } else {
+                values = Collections.singletonList(OwsUtils.get(r, property));
+            }
+            List<List<Object>> expanded = new ArrayList<>();
+            for (List<Object> key : keys) {
+                for (Object value : values) {
+                    List<Object> k = new ArrayList<>(key);
+                    k.add(value);
+                    expanded.add(k);
+                }
+            }
+            keys = expanded;
+        }
+        return keys;
+    }
+
+    @SuppressWarnings("unchecked")
+    static int compareValues(Object o1, Object o2) {
+        if (o1 == null || o2 == null) {
+            return o1 == null ? (o2 == null ? 0 : 1) : -1;
+        }
+        if (o1 instanceof Comparable) {
+            return ((Comparable) o1).compareTo(o2);
+        }
+        return o1.toString().compareTo(o2.toString());
+    }
+
+    static <T> List<T> page(List<T> list, Query q) {
+        int from = q.getOffset() != null ? (int) Math.min(q.getOffset(), list.size()) : 0;
+        int to = list.size();
+        if (q.getCount() != null) {
+            to = (int) Math.min(to, from + q.getCount());
+        }
+        return from == 0 && to == list.size() ? list : new ArrayList<>(list.subList(from, to));
+    }
+
+    static Predicate predicate(Filter f) {
+        if (f instanceof And) {
+            List<Predicate> predicates = new ArrayList<>();
+            for (Filter child : ((And) f).getFilters()) {
+                predicates.add(predicate(child));
+            }
+            return r -> predicates.stream().allMatch(p -> p.matches(r));
+        } else if (f instanceof Or) {
+            List<Predicate> predicates = new ArrayList<>();
+            for (Filter child : ((Or) f).getFilters()) {
+                predicates.add(predicate(child));
+            }
+            return r -> predicates.stream().anyMatch(p -> p.matches(r));
+        }
+        return new PropertyCompare(f.getLeft(), f.getType(), f.getRight());
+    }
+
     public ResourceData getLayer(String name) {
         // TODO Auto-generated method stub
         return null;
@@ -173,6 +423,92 @@ public class MemoryMonitorDAO implements MonitorDAO {
         boolean matches(RequestData data);
     }
 
+    /**
+     * An aggregate function, in the same syntax used by the other DAOs: count(), sum(property),
+     * avg(property), min(property), max(property)
+     */
+    static class Aggregate {
+
+        final String function;
+
+        final String property;
+
+        Aggregate(String spec) {
+            int open = spec.indexOf('(');
+            if (open < 0 || !spec.endsWith(")")) {
+                throw new IllegalArgumentException("Invalid aggregate: " + spec);
+            }
+            function = spec.substring(0, open).trim().toLowerCase();
+            property = spec.substring(open + 1, spec.length() - 1).trim();
+            if (!Arrays.asList("count", "sum", "avg", "min", "max").contains(function)) {
+                throw new IllegalArgumentException("Unsupported aggregate: " + spec);
+            }
+        }
+
+        /** The histograms track count, and total time and response length sums */
+        boolean isHistogramSupported() {
+            return "count".equals(function)
+                    || (("sum".equals(function) || "avg".equals(function))
+                            && ("totalTime".equals(property)
+                                    || "responseLength".equals(property)));
+        }
+
+        Accumulator accumulator() {
+            return new Accumulator();
+        }
+
+        class Accumulator {
+            long count;
+
+            double sum;
+
+            Comparable extreme;
+
+            /** Adds a histogram entry */
+            void add(long count, long totalTime, long responseLength) {
+                this.count += count;
+                sum += "totalTime".equals(property) ? totalTime : responseLength;
+            }
+
+            @SuppressWarnings("unchecked")
+            void add(RequestData r) {
+                if ("count".equals(function)) {
+                    count++;
+                    return;
+                }
+                Object value = OwsUtils.get(r, property);
+                if (value == null) {
+                    return;
+                }
+                count++;
+                if (value instanceof Number) {
+                    sum += ((Number) value).doubleValue();
+                }
+                if (value instanceof Comparable) {
+                    Comparable c = (Comparable) value;
+                    if (extreme == null
+                            || ("min".equals(function) && c.compareTo(extreme) < 0)
+                            || ("max".equals(function) && c.compareTo(extreme) > 0)) {
+                        extreme = c;
+                    }
+                }
+            }
+
+            Object value() {
+                switch (function) {
+                    case "count":
+                        return count;
+                    case "sum":
+                        return (long) sum;
+                    case "avg":
+                        return count == 0 ? null : sum / count;
+                    default:
+                        return extreme;
+                }
+            }
+        }
+    }
+
     static class DateRange implements Predicate {
 
         Date from;
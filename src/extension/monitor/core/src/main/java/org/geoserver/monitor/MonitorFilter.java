@@ -26,6 +26,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.geoserver.filters.GeoServerFilter;
 import org.geoserver.monitor.RequestData.Status;
+import org.geoserver.ows.Dispatcher;
 import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.security.SecurityUtils;
 import org.geoserver.wms.map.RenderTimeStatistics;
@@ -131,31 +132,59 @@ public class MonitorFilter implements GeoServerFilter {
         data.setRemoteUserAgent(req.getHeader("user-agent"));
 
         // wrap the request and response
-        request = new MonitorServletRequest(req, monitor.getConfig().getMaxBodySize());
-        response = new MonitorServletResponse(resp);
+        MonitorServletRequest monitoredRequest =
+                new MonitorServletRequest(req, monitor.getConfig().getMaxBodySize());
+        MonitorServletResponse monitoredResponse = new MonitorServletResponse(resp);
 
         monitor.update();
 
+        // asynchronous OWS requests are still running when the chain returns
+        Dispatcher.addAsyncCompletionTask(
+                monitoredRequest,
+                () -> complete(monitoredRequest, monitoredResponse, req, resp, null));
+
         // execute the request
         Throwable error = null;
         try {
-            chain.doFilter(request, response);
+            chain.doFilter(monitoredRequest, monitoredResponse);
         } catch (Throwable t) {
             error = t;
         }
 
-        data = monitor.current();
+        if (Dispatcher.isAsync(monitoredRequest)) {
+            // the thread running the request completes it, just release this one
+            Monitor.REQUEST.remove();
+        } else {
+            complete(monitoredRequest, monitoredResponse, req, resp, error);
+        }
+
+        if (error != null) {
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            } else {
+                throw new RuntimeException(error);
+            }
+        }
+    }
 
-        data.setBody(getBody((MonitorServletRequest) request));
-        data.setBodyContentLength(((MonitorServletRequest) request).getBytesRead());
+    /** Fills in the request data once the request is done, and completes its monitoring */
+    void complete(
+            MonitorServletRequest request,
+            MonitorServletResponse response,
+            HttpServletRequest req,
+            HttpServletResponse resp,
+            Throwable error) {
+        RequestData data = monitor.current();
+
+        data.setBody(getBody(request));
+        data.setBodyContentLength(request.getBytesRead());
         data.setResponseContentType(response.getContentType());
-        data.setResponseLength(((MonitorServletResponse) response).getContentLength());
-        data.setResponseStatus(((MonitorServletResponse) response).getStatus());
+        data.setResponseLength(response.getContentLength());
+        data.setResponseStatus(response.getStatus());
 
         // GWC headers integration.
-        String cacheResult =
-                ((MonitorServletResponse) response).getHeader(GEOWEBCACHE_CACHE_RESULT);
-        String missReason = ((MonitorServletResponse) response).getHeader(GEOWEBCACHE_MISS_REASON);
+        String cacheResult = response.getHeader(GEOWEBCACHE_CACHE_RESULT);
+        String missReason = response.getHeader(GEOWEBCACHE_MISS_REASON);
         data.setCacheResult(cacheResult);
         data.setMissReason(missReason);
 
@@ -200,14 +229,6 @@ public class MonitorFilter implements GeoServerFilter {
         // Execution Audit
         task.setExecutionAudit(executionAudit);
         postProcessExecutor.execute(task);
-
-        if (error != null) {
-            if (error instanceof RuntimeException) {
-                throw (RuntimeException) error;
-            } else {
-                throw new RuntimeException(error);
-            }
-        }
     }
 
     public void destroy() {
@@ -0,0 +1,369 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.monitor;
+
+import com.google.common.cache.CacheStats;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.ResourceCacheStatistics;
+import org.geoserver.config.impl.GeoServerLifecycleHandler;
+import org.geoserver.wms.map.QuickTileCache;
+
+/**
+ * Collects request metrics out of the completed {@link RequestData}, and writes them in the
+ * Prometheus text exposition format.
+ *
+ * <p>The following metrics are exported:
+ *
+ * <ul>
+ *   <li>{@code geoserver_request_duration_seconds}: latency histogram by service, operation and
+ *       output format
+ *   <li>{@code geoserver_layer_request_duration_seconds}: latency histogram by layer
+ *   <li>{@code geoserver_response_bytes_total}: bytes sent, by service, operation and output format
+ *   <li>{@code geoserver_request_errors_total}: failed requests, by service and operation
+ *   <li>{@code geoserver_resource_pool_cache_*}: the {@link org.geoserver.catalog.ResourcePool}
+ *       cache statistics
+ *   <li>{@code geoserver_meta_tile_cache_*}: the WMS meta tile {@link QuickTileCache} statistics
+ * </ul>
+ *
+ * Recording a request does not take locks, besides the first time a label combination is seen.
+ * Each metric tracks up to {@link #MAX_SERIES_KEY} label combinations (1000 by default), the
+ * requests with label combinations seen after that are accounted in a single series with all the
+ * labels set to {@link #OTHER}. The collection can be disabled setting the {@link #ENABLED_KEY}
+ * monitor property to false. These properties are read at startup, and again when the GeoServer
+ * configuration is reloaded or reset.
+ */
+public class RequestMetrics implements RequestDataListener, GeoServerLifecycleHandler {
+
+    /** Monitor property enabling the metrics collection, defaults to true */
+    public static final String ENABLED_KEY = "metrics.enabled";
+
+    /** Monitor property holding the maximum number of label combinations tracked per metric */
+    public static final String MAX_SERIES_KEY = "metrics.maxSeries";
+
+    public static final int DEFAULT_MAX_SERIES = 1000;
+
+    /** The label value of the series collecting the label combinations beyond the limit */
+    static final String OTHER = "other";
+
+    static final String PREFIX = "geoserver_";
+
+    final MonitorConfig config;
+
+    final Catalog catalog;
+
+    QuickTileCache tileCache;
+
+    volatile boolean enabled;
+
+    volatile int maxSeries;
+
+    final Map<List<String>, LatencyHistogram> requestLatency = new ConcurrentHashMap<>();
+
+    final Map<List<String>, LatencyHistogram> layerLatency = new ConcurrentHashMap<>();
+
+    final Map<List<String>, LongAdder> responseBytes = new ConcurrentHashMap<>();
+
+    final Map<List<String>, LongAdder> errors = new ConcurrentHashMap<>();
+
+    public RequestMetrics(MonitorConfig config, Catalog catalog) {
+        this.config = config;
+        this.catalog = catalog;
+        loadSettings();
+    }
+
+    /** Sets the WMS meta tile cache whose statistics are exported, if any */
+    public void setTileCache(QuickTileCache tileCache) {
+        this.tileCache = tileCache;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    int getMaxSeries() {
+        return maxSeries;
+    }
+
+    /** Reads the metrics settings out of the monitor properties */
+    void loadSettings() {
+        Properties properties = config.getProperties();
+        enabled = Boolean.parseBoolean(properties.getProperty(ENABLED_KEY, "true"));
+        int max = DEFAULT_MAX_SERIES;
+        String value = properties.getProperty(MAX_SERIES_KEY);
+        if (value != null) {
+            try {
+                max = Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                // use the default
+            }
+        }
+        maxSeries = max;
+    }
+
+    @Override
+    public void onReset() {
+        loadSettings();
+    }
+
+    @Override
+    public void onDispose() {}
+
+    @Override
+    public void beforeReload() {}
+
+    @Override
+    public void onReload() {
+        loadSettings();
+    }
+
+    @Override
+    public void requestStarted(RequestData rd) {}
+
+    @Override
+    public void requestUpdated(RequestData rd) {}
+
+    @Override
+    public void requestCompleted(RequestData rd) {
+        if (!isEnabled()) {
+            return;
+        }
+        String service = service(rd);
+        String operation = label(rd.getOperation());
+        String format = format(rd.getResponseContentType());
+        long time = rd.getTotalTime();
+
+        int maxSeries = getMaxSeries();
+        List<String> key = Arrays.asList(service, operation, format);
+        series(requestLatency, key, maxSeries, LatencyHistogram::new).record(time);
+        series(responseBytes, key, maxSeries, LongAdder::new).add(rd.getResponseLength());
+        List<String> resources = rd.getResources();
+        if (resources != null) {
+            for (String resource : resources) {
+                List<String> layer = Arrays.asList(label(resource));
+                series(layerLatency, layer, maxSeries, LatencyHistogram::new).record(time);
+            }
+        }
+        if (isError(rd)) {
+            List<String> errorKey = Arrays.asList(service, operation);
+            series(errors, errorKey, maxSeries, LongAdder::new).increment();
+        }
+    }
+
+    /**
+     * Returns the series for the given labels, or the {@link #OTHER} one if the metric already
+     * tracks the maximum number of series. The limit can be exceeded by a few series when
+     * requests with new labels complete concurrently.
+     */
+    static <T> T series(
+            Map<List<String>, T> metric, List<String> key, int maxSeries, Supplier<T> factory) {
+        T series = metric.get(key);
+        if (series != null) {
+            return series;
+        }
+        if (metric.size() >= maxSeries) {
+            key = Collections.nCopies(key.size(), OTHER);
+        }
+        return metric.computeIfAbsent(key, k -> factory.get());
+    }
+
+    @Override
+    public void requestPostProcessed(RequestData rd) {}
+
+    /** Clears all the collected metrics */
+    public void reset() {
+        requestLatency.clear();
+        layerLatency.clear();
+        responseBytes.clear();
+        errors.clear();
+    }
+
+    /** Writes the metrics in the Prometheus text exposition format, version 0.0.4 */
+    public void write(Writer w) throws IOException {
+        List<String> requestLabels = Arrays.asList("service", "operation", "format");
+        writeHistograms(
+                w,
+                "request_duration_seconds",
+                "Request duration, by service, operation and output format",
+                requestLabels,
+                requestLatency);
+        writeHistograms(
+                w,
+                "layer_request_duration_seconds",
+                "Duration of the requests involving a layer",
+                Arrays.asList("layer"),
+                layerLatency);
+        writeCounters(
+                w,
+                "response_bytes_total",
+                "Bytes sent, by service, operation and output format",
+                requestLabels,
+                responseBytes);
+        writeCounters(
+                w,
+                "request_errors_total",
+                "Failed requests, by service and operation",
+                Arrays.asList("service", "operation"),
+                errors);
+        if (catalog != null && catalog.getResourcePool() != null) {
+            writeCacheStatistics(w, catalog.getResourcePool().getCacheStatistics());
+        }
+        if (tileCache != null) {
+            writeTileCacheStatistics(w, tileCache.size(), tileCache.getStatistics());
+        }
+    }
+
+    void writeHistograms(
+            Writer w,
+            String name,
+            String help,
+            List<String> labels,
+            Map<List<String>, LatencyHistogram> histograms)
+            throws IOException {
+        header(w, name, help, "histogram");
+        long[] bounds = LatencyHistogram.BOUNDS;
+        for (Map.Entry<List<String>, LatencyHistogram> e : histograms.entrySet()) {
+            String series = labels(labels, e.getKey());
+            LatencyHistogram histogram = e.getValue();
+            long[] counts = histogram.getCumulativeCounts();
+            String prefix = "{" + series + ",le=\"";
+            for (int i = 0; i < bounds.length; i++) {
+                sample(w, name + "_bucket", prefix + bounds[i] / 1000d + "\"}", counts[i]);
+            }
+            long count = counts[counts.length - 1];
+            sample(w, name + "_bucket", prefix + "+Inf\"}", count);
+            sample(w, name + "_sum", "{" + series + "}", histogram.getSum() / 1000d);
+            sample(w, name + "_count", "{" + series + "}", count);
+        }
+    }
+
+    void writeCounters(
+            Writer w,
+            String name,
+            String help,
+            List<String> labels,
+            Map<List<String>, LongAdder> counters)
+            throws IOException {
+        header(w, name, help, "counter");
+        for (Map.Entry<List<String>, LongAdder> e : counters.entrySet()) {
+            sample(w, name, "{" + labels(labels, e.getKey()) + "}", e.getValue().sum());
+        }
+    }
+
+    void writeCacheStatistics(Writer w, List<ResourceCacheStatistics> statistics)
+            throws IOException {
+        String[][] metrics = {
+            {"resource_pool_cache_size", "gauge", "Number of entries in the resource pool caches"},
+            {"resource_pool_cache_weight_bytes", "gauge", "Estimated weight of the cache entries"},
+            {"resource_pool_cache_hits_total", "counter", "Resource pool cache hits"},
+            {"resource_pool_cache_misses_total", "counter", "Resource pool cache misses"},
+            {"resource_pool_cache_evictions_total", "counter", "Resource pool cache evictions"}
+        };
+        for (int i = 0; i < metrics.length; i++) {
+            String name = metrics[i][0];
+            header(w, name, metrics[i][2], metrics[i][1]);
+            for (ResourceCacheStatistics stats : statistics) {
+                long value = cacheValue(stats, i);
+                // negative values mean the statistic is not tracked by the cache policy
+                if (value >= 0) {
+                    String series = "{cache=\"" + escape(stats.getName()) + "\"}";
+                    sample(w, name, series, value);
+                }
+            }
+        }
+    }
+
+    void writeTileCacheStatistics(Writer w, long size, CacheStats stats) throws IOException {
+        header(w, "meta_tile_cache_size", "Number of meta tiles in the WMS tile cache", "gauge");
+        sample(w, "meta_tile_cache_size", "", size);
+        header(w, "meta_tile_cache_hits_total", "WMS meta tile cache hits", "counter");
+        sample(w, "meta_tile_cache_hits_total", "", stats.hitCount());
+        header(w, "meta_tile_cache_misses_total", "WMS meta tile cache misses", "counter");
+        sample(w, "meta_tile_cache_misses_total", "", stats.missCount());
+        header(w, "meta_tile_cache_evictions_total", "WMS meta tile cache evictions", "counter");
+        sample(w, "meta_tile_cache_evictions_total", "", stats.evictionCount());
+    }
+
+    private long cacheValue(ResourceCacheStatistics stats, int metric) {
+        switch (metric) {
+            case 0:
+                return stats.getSize();
+            case 1:
+                return stats.getWeight();
+            case 2:
+                return stats.getHitCount();
+            case 3:
+                return stats.getMissCount();
+            default:
+                return stats.getEvictionCount();
+        }
+    }
+
+    private void header(Writer w, String name, String help, String type) throws IOException {
+        w.write("# HELP " + PREFIX + name + " " + help + "\n");
+        w.write("# TYPE " + PREFIX + name + " " + type + "\n");
+    }
+
+    private void sample(Writer w, String name, String labels, Object value) throws IOException {
+        w.write(PREFIX);
+        w.write(name);
+        w.write(labels);
+        w.write(' ');
+        w.write(String.valueOf(value));
+        w.write('\n');
+    }
+
+    private String labels(List<String> names, List<String> values) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < names.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(names.get(i)).append("=\"").append(escape(values.get(i))).append('"');
+        }
+        return sb.toString();
+    }
+
+    static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    static boolean isError(RequestData rd) {
+        Integer status = rd.getResponseStatus();
+        return rd.getStatus() == RequestData.Status.FAILED
+                || rd.getError() != null
+                || (status != null && status >= 400);
+    }
+
+    /** The OWS service, or the request category for non OWS requests */
+    static String service(RequestData rd) {
+        if (rd.getService() != null) {
+            return rd.getService();
+        }
+        return Objects.toString(rd.getCategory(), "");
+    }
+
+    static String format(String contentType) {
+        if (contentType == null) {
+            return "";
+        }
+        int idx = contentType.indexOf(';');
+        return (idx > 0 ? contentType.substring(0, idx) : contentType).trim();
+    }
+
+    static String label(String value) {
+        return value == null ? "" : value;
+    }
+}
@@ -0,0 +1,336 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.monitor;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Fixed capacity ring buffer of completed requests, used by {@link MemoryMonitorDAO}.
+ *
+ * <p>The fields used for lookups and aggregations (id, start time, total time, response length,
+ * service and operation) are stored in a compact, fixed size record layout in a direct buffer, so
+ * that scans by id or time do not need to touch the request objects. Per service, operation,
+ * service/operation and resource histograms (count, total time, response length) are kept up to
+ * date as requests enter and leave the ring, allowing aggregations without scanning.
+ */
+class RequestRing {
+
+    /** The histogram dimensions, along with the request properties they group by */
+    enum Dimension {
+        ALL(),
+        SERVICE("service"),
+        OPERATION("operation"),
+        SERVICE_OPERATION("service", "operation"),
+        RESOURCE("resource");
+
+        final List<String> properties;
+
+        Dimension(String... properties) {
+            this.properties = Collections.unmodifiableList(Arrays.asList(properties));
+        }
+    }
+
+    /** Receives the histogram entries of a dimension */
+    interface HistogramVisitor {
+        void visit(List<String> key, long count, long totalTime, long responseLength);
+    }
+
+    // record layout
+    static final int ID = 0;
+    static final int START_TIME = 8;
+    static final int TOTAL_TIME = 16;
+    static final int RESPONSE_LENGTH = 24;
+    static final int SERVICE = 32;
+    static final int OPERATION = 36;
+    static final int SERVICE_OPERATION = 40;
+    static final int RECORD_SIZE = 48;
+
+    static final long NO_TIME = Long.MIN_VALUE;
+
+    final int capacity;
+
+    final ByteBuffer records;
+
+    final RequestData[] requests;
+
+    final int[][] resources;
+
+    final Histogram[] histograms = new Histogram[Dimension.values().length];
+
+    final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** The next slot to be written */
+    int head;
+
+    int size;
+
+    RequestRing(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Ring capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.records = ByteBuffer.allocateDirect(capacity * RECORD_SIZE);
+        this.requests = new RequestData[capacity];
+        this.resources = new int[capacity][];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new Histogram();
+        }
+    }
+
+    /** Adds a request, evicting the oldest one if the ring is full */
+    void add(RequestData data) {
+        lock.writeLock().lock();
+        try {
+            if (size == capacity) {
+                account(head, -1);
+            } else {
+                size++;
+            }
+            write(head, data);
+            account(head, 1);
+            head = (head + 1) % capacity;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Refreshes the stored fields of a request, returns false if the request is not in the ring */
+    boolean update(RequestData data) {
+        lock.writeLock().lock();
+        try {
+            int slot = find(data.getId());
+            if (slot < 0) {
+                return false;
+            }
+            account(slot, -1);
+            write(slot, data);
+            account(slot, 1);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    RequestData get(long id) {
+        lock.readLock().lock();
+        try {
+            int slot = find(id);
+            return slot < 0 ? null : requests[slot];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the requests whose start time falls in the given range, bounds included and nullable,
+     * oldest first
+     */
+    List<RequestData> list(Date from, Date to) {
+        long min = from != null ? from.getTime() : NO_TIME;
+        long max = to != null ? to.getTime() : Long.MAX_VALUE;
+        boolean timeFilter = from != null || to != null;
+        lock.readLock().lock();
+        try {
+            List<RequestData> result = new ArrayList<>(timeFilter ? 16 : size);
+            for (int i = 0, slot = oldest(); i < size; i++, slot = (slot + 1) % capacity) {
+                if (timeFilter) {
+                    long time = records.getLong(slot * RECORD_SIZE + START_TIME);
+                    if (time == NO_TIME || time < min || time > max) {
+                        continue;
+                    }
+                }
+                result.add(requests[slot]);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Visits the non empty histogram entries for the given dimension */
+    void histogram(Dimension dimension, HistogramVisitor visitor) {
+        lock.readLock().lock();
+        try {
+            histograms[dimension.ordinal()].accept(visitor);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            Arrays.fill(requests, null);
+            Arrays.fill(resources, null);
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = new Histogram();
+            }
+            head = 0;
+            size = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int oldest() {
+        return size < capacity ? 0 : head;
+    }
+
+    private int find(long id) {
+        // scan from the newest, recent requests are the most likely to be looked up
+        for (int i = 0, slot = (head - 1 + capacity) % capacity;
+                i < size;
+                i++, slot = (slot - 1 + capacity) % capacity) {
+            if (records.getLong(slot * RECORD_SIZE + ID) == id) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void write(int slot, RequestData data) {
+        int offset = slot * RECORD_SIZE;
+        String service = data.getService();
+        String operation = data.getOperation();
+        Date startTime = data.getStartTime();
+        records.putLong(offset + ID, data.getId());
+        records.putLong(offset + START_TIME, startTime != null ? startTime.getTime() : NO_TIME);
+        records.putLong(offset + TOTAL_TIME, data.getTotalTime());
+        records.putLong(offset + RESPONSE_LENGTH, data.getResponseLength());
+        records.putInt(offset + SERVICE, code(Dimension.SERVICE, service));
+        records.putInt(offset + OPERATION, code(Dimension.OPERATION, operation));
+        records.putInt(
+                offset + SERVICE_OPERATION,
+                code(Dimension.SERVICE_OPERATION, service, operation));
+
+        List<String> names = data.getResources();
+        int[] codes;
+        if (names == null || names.isEmpty()) {
+            codes = new int[] {code(Dimension.RESOURCE, (String) null)};
+        } else {
+            codes = new int[names.size()];
+            for (int i = 0; i < codes.length; i++) {
+                codes[i] = code(Dimension.RESOURCE, names.get(i));
+            }
+        }
+        resources[slot] = codes;
+        requests[slot] = data;
+    }
+
+    private int code(Dimension dimension, String... key) {
+        return histograms[dimension.ordinal()].code(Arrays.asList(key));
+    }
+
+    /** Adds (sign 1) or removes (sign -1) the contribution of a slot to the histograms */
+    private void account(int slot, int sign) {
+        int offset = slot * RECORD_SIZE;
+        long totalTime = records.getLong(offset + TOTAL_TIME);
+        long responseLength = records.getLong(offset + RESPONSE_LENGTH);
+        histograms[Dimension.ALL.ordinal()].add(0, sign, totalTime, responseLength);
+        histograms[Dimension.SERVICE.ordinal()]
+                .add(records.getInt(offset + SERVICE), sign, totalTime, responseLength);
+        histograms[Dimension.OPERATION.ordinal()]
+                .add(records.getInt(offset + OPERATION), sign, totalTime, responseLength);
+        histograms[Dimension.SERVICE_OPERATION.ordinal()]
+                .add(records.getInt(offset + SERVICE_OPERATION), sign, totalTime, responseLength);
+        for (int code : resources[slot]) {
+            histograms[Dimension.RESOURCE.ordinal()].add(code, sign, totalTime, responseLength);
+        }
+        if (sign < 0) {
+            requests[slot] = null;
+            resources[slot] = null;
+        }
+    }
+
+    /**
+     * Count, total time and response length sums, indexed by a dictionary encoded key. The codes of
+     * the keys no longer used by any request in the ring are recycled, so that the dictionary size
+     * is bounded by the ring contents, rather than by all the keys ever seen.
+     */
+    static class Histogram {
+
+        final Map<List<String>, Integer> codes = new HashMap<>();
+
+        final List<List<String>> keys = new ArrayList<>();
+
+        /** The codes released, available for new keys */
+        final Deque<Integer> free = new ArrayDeque<>();
+
+        long[] counts = new long[16];
+
+        long[] totalTimes = new long[16];
+
+        long[] responseLengths = new long[16];
+
+        Histogram() {
+            // the ALL dimension uses the empty key, always at code 0
+            code(Collections.emptyList());
+        }
+
+        int code(List<String> key) {
+            Integer code = codes.get(key);
+            if (code == null) {
+                if (!free.isEmpty()) {
+                    code = free.pop();
+                    codes.put(key, code);
+                    keys.set(code, key);
+                    return code;
+                }
+                code = keys.size();
+                codes.put(key, code);
+                keys.add(key);
+                if (code >= counts.length) {
+                    int length = counts.length * 2;
+                    counts = Arrays.copyOf(counts, length);
+                    totalTimes = Arrays.copyOf(totalTimes, length);
+                    responseLengths = Arrays.copyOf(responseLengths, length);
+                }
+            }
+            return code;
+        }
+
+        void add(int code, int sign, long totalTime, long responseLength) {
+            counts[code] += sign;
+            totalTimes[code] += sign * totalTime;
+            responseLengths[code] += sign * responseLength;
+            // code 0 is the empty key, used by the ALL dimension, always kept
+            if (sign < 0 && counts[code] == 0 && code != 0) {
+                codes.remove(keys.get(code));
+                keys.set(code, null);
+                totalTimes[code] = 0;
+                responseLengths[code] = 0;
+                free.push(code);
+            }
+        }
+
+        void accept(HistogramVisitor visitor) {
+            for (int i = 0; i < keys.size(); i++) {
+                if (counts[i] > 0) {
+                    visitor.visit(keys.get(i), counts[i], totalTimes[i], responseLengths[i]);
+                }
+            }
+        }
+    }
+}
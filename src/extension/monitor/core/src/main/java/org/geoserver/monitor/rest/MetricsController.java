@@ -0,0 +1,44 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.monitor.rest;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import javax.servlet.http.HttpServletResponse;
+import org.geoserver.monitor.RequestMetrics;
+import org.geoserver.rest.ResourceNotFoundException;
+import org.geoserver.rest.RestBaseController;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/** Exposes the {@link RequestMetrics} for Prometheus scraping */
+@RestController
+@RequestMapping(path = RestBaseController.ROOT_PATH + "/monitor/metrics")
+public class MetricsController extends RestBaseController {
+
+    static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    RequestMetrics metrics;
+
+    @Autowired
+    public MetricsController(RequestMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @GetMapping
+    public void getMetrics(HttpServletResponse response) throws IOException {
+        if (!metrics.isEnabled()) {
+            throw new ResourceNotFoundException("Request metrics collection is disabled");
+        }
+        response.setContentType(PROMETHEUS_CONTENT_TYPE);
+        Writer writer = new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8);
+        metrics.write(writer);
+        writer.flush();
+    }
+}
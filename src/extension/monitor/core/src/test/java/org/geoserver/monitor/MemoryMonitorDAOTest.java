@@ -5,7 +5,19 @@
  */
 package org.geoserver.monitor;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.geoserver.monitor.Query.Comparison;
+import org.geoserver.monitor.Query.SortOrder;
 import org.junit.BeforeClass;
+import org.junit.Test;
 
 public class MemoryMonitorDAOTest extends MonitorDAOTestSupport {
 
@@ -14,4 +26,138 @@ public class MemoryMonitorDAOTest extends MonitorDAOTestSupport {
         dao = new MemoryMonitorDAO();
         setUpData();
     }
+
+    @Test
+    public void testCapacity() throws Exception {
+        MonitorConfig config = new MonitorConfig();
+        config.getProperties().put(MemoryMonitorDAO.CAPACITY_KEY, "5");
+        MemoryMonitorDAO memory = new MemoryMonitorDAO();
+        memory.init(config);
+        new MonitorTestData(memory).setup();
+
+        // only the 5 most recent requests are kept, the histograms follow the evictions
+        assertEquals(5, memory.getRequests().size());
+        assertNull(memory.getRequest(15));
+        assertNotNull(memory.getRequest(16));
+        assertEquals(5, memory.getCount(new Query()));
+
+        List<RequestData> datas = new ArrayList<>();
+        List<Object> aggs = new ArrayList<>();
+        memory.getRequests(
+                new Query()
+                        .properties("service")
+                        .aggregate("count()")
+                        .group("service")
+                        .sort("service", SortOrder.ASC),
+                collector(datas, aggs));
+        assertEquals(3, datas.size());
+        assertEquals("bam", datas.get(0).getService());
+        assertEquals("bar", datas.get(1).getService());
+        assertEquals("foo", datas.get(2).getService());
+        assertEquals(Arrays.asList(2l, 1l, 2l), aggs);
+    }
+
+    @Test
+    public void testInvalidCapacity() throws Exception {
+        assertEquals(50, MemoryMonitorDAO.parseCapacity(" 50 "));
+        assertEquals(MemoryMonitorDAO.DEFAULT_CAPACITY, MemoryMonitorDAO.parseCapacity("abc"));
+        assertEquals(MemoryMonitorDAO.DEFAULT_CAPACITY, MemoryMonitorDAO.parseCapacity("0"));
+
+        MonitorConfig config = new MonitorConfig();
+        config.getProperties().put(MemoryMonitorDAO.CAPACITY_KEY, "many");
+        MemoryMonitorDAO memory = new MemoryMonitorDAO();
+        memory.init(config);
+        assertEquals(MemoryMonitorDAO.DEFAULT_CAPACITY, memory.history.capacity);
+    }
+
+    @Test
+    public void testHistogramKeysRecycled() throws Exception {
+        RequestRing ring = new RequestRing(2);
+        for (int i = 0; i < 100; i++) {
+            RequestData data = new RequestData();
+            data.setId(i);
+            data.setService("service" + i);
+            data.setResources(Arrays.asList("layer" + i));
+            ring.add(data);
+        }
+        // only the keys of the requests still in the ring are kept, plus the empty one
+        RequestRing.Histogram services = ring.histograms[RequestRing.Dimension.SERVICE.ordinal()];
+        assertEquals(3, services.codes.size());
+        assertTrue(services.keys.size() <= 4);
+        RequestRing.Histogram layers = ring.histograms[RequestRing.Dimension.RESOURCE.ordinal()];
+        assertEquals(3, layers.codes.size());
+
+        List<String> visited = new ArrayList<>();
+        ring.histogram(
+                RequestRing.Dimension.SERVICE,
+                (key, count, totalTime, responseLength) -> visited.add(key.get(0)));
+        Collections.sort(visited);
+        assertEquals(Arrays.asList("service98", "service99"), visited);
+    }
+
+    @Test
+    public void testAggregateHistogram() throws Exception {
+        List<RequestData> datas = new ArrayList<>();
+        List<Object> aggs = new ArrayList<>();
+        dao.getRequests(
+                new Query()
+                        .properties("service", "operation")
+                        .aggregate("count()")
+                        .group("service", "operation")
+                        .sort("count()", SortOrder.DESC)
+                        .page(1l, 2l),
+                collector(datas, aggs));
+
+        // the first group would be the requests without service
+        assertEquals(2, datas.size());
+        assertEquals("foo", datas.get(0).getService());
+        assertEquals("x", datas.get(0).getOperation());
+        assertEquals(4l, aggs.get(0));
+        assertEquals("bam", datas.get(1).getService());
+        assertEquals("y", datas.get(1).getOperation());
+        assertEquals(2l, aggs.get(1));
+    }
+
+    @Test
+    public void testAggregateResource() throws Exception {
+        List<RequestData> datas = new ArrayList<>();
+        List<Object> aggs = new ArrayList<>();
+        dao.getRequests(
+                new Query().aggregate("count()").group("resource").sort("resource", SortOrder.ASC),
+                collector(datas, aggs));
+
+        List<String> resources = new ArrayList<>();
+        for (RequestData data : datas) {
+            resources.addAll(data.getResources());
+        }
+        int widgets = resources.indexOf("widgets");
+        assertEquals(3l, aggs.get(widgets));
+    }
+
+    @Test
+    public void testAggregateScan() throws Exception {
+        List<RequestData> datas = new ArrayList<>();
+        List<Object> aggs = new ArrayList<>();
+        dao.getRequests(
+                new Query()
+                        .properties("service")
+                        .filter("service", null, Comparison.NEQ)
+                        .aggregate("count()", "max(path)")
+                        .group("service")
+                        .sort("count()", SortOrder.DESC),
+                collector(datas, aggs));
+
+        assertEquals(4, datas.size());
+        assertEquals("foo", datas.get(0).getService());
+        assertEquals(Arrays.asList(4l, "/foo"), aggs.subList(0, 2));
+        assertEquals("bam", datas.get(1).getService());
+        assertEquals(Arrays.asList(3l, "/bam"), aggs.subList(2, 4));
+    }
+
+    private RequestDataVisitor collector(List<RequestData> datas, List<Object> aggs) {
+        return (data, aggregates) -> {
+            datas.add(data);
+            aggs.addAll(Arrays.asList(aggregates));
+        };
+    }
 }
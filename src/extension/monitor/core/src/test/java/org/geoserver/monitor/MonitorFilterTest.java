@@ -18,6 +18,7 @@ import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
+import org.geoserver.ows.Dispatcher;
 import org.geoserver.wms.map.RenderTimeStatistics;
 import org.junit.After;
 import org.junit.Before;
@@ -80,6 +81,39 @@ public class MonitorFilterTest {
         assertNull(data.getHttpReferer());
     }
 
+    @Test
+    public void testAsync() throws Exception {
+        // the chain returns while the dispatcher is still running the request
+        chain =
+                new MockFilterChain(
+                        new HttpServlet() {
+                            @Override
+                            public void service(ServletRequest req, ServletResponse res)
+                                    throws ServletException, IOException {
+                                req.setAttribute(Dispatcher.ASYNC_KEY, true);
+                            }
+                        });
+
+        HttpServletRequest req = request("GET", "/foo/bar", "12.34.56.78", null, null);
+        filter.doFilter(req, response(), chain);
+        assertNull(dao.getLast());
+        assertNull(filter.monitor.current());
+        RequestData data = dao.request;
+
+        // the dispatcher thread, with the monitor thread local transferred, completes it
+        Thread thread =
+                new Thread(
+                        () -> {
+                            Monitor.REQUEST.set(data);
+                            Dispatcher.runAsyncCompletionTasks(req);
+                        });
+        thread.start();
+        thread.join();
+        assertSame(data, dao.getLast());
+        assertEquals(RequestData.Status.FINISHED, data.getStatus());
+        assertEquals("/foo/bar", data.getPath());
+    }
+
     @Test
     public void testWithBody() throws Exception {
         chain =
@@ -0,0 +1,156 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.monitor;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.cache.CacheStats;
+import java.io.StringWriter;
+import java.util.Arrays;
+import org.geoserver.monitor.RequestData.Status;
+import org.junit.Test;
+
+public class RequestMetricsTest {
+
+    @Test
+    public void testHistogramBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(0);
+        histogram.record(1);
+        histogram.record(5);
+        histogram.record(6);
+        histogram.record(7);
+        histogram.record(Long.MAX_VALUE / 2);
+
+        long[] bounds = LatencyHistogram.getBounds();
+        assertArrayEquals(new long[] {1, 2, 3, 4, 6, 8}, Arrays.copyOf(bounds, 6));
+        long[] counts = histogram.getCumulativeCounts();
+        // 0 and 1 fall in the first bucket, 5 and 6 in the "le 6" one, 7 in "le 8"
+        assertArrayEquals(new long[] {2, 2, 2, 2, 4, 5}, Arrays.copyOf(counts, 6));
+        assertEquals(5, counts[bounds.length - 1]);
+        assertEquals(6, counts[bounds.length]);
+    }
+
+    @Test
+    public void testExposition() throws Exception {
+        RequestMetrics metrics = new RequestMetrics(new MonitorConfig(), null);
+        metrics.requestCompleted(request("WMS", "GetMap", "image/png", 3, 1000, "topp:states"));
+        metrics.requestCompleted(request("WMS", "GetMap", "image/png", 10, 500, "topp:states"));
+        RequestData failed = request("WFS", "GetFeature", "text/xml; subtype=gml/3.1.1", 2, 0);
+        failed.setStatus(Status.FAILED);
+        metrics.requestCompleted(failed);
+
+        StringWriter writer = new StringWriter();
+        metrics.write(writer);
+        String text = writer.toString();
+
+        String wms = "service=\"WMS\",operation=\"GetMap\",format=\"image/png\"";
+        assertThat(
+                text,
+                containsString(
+                        "geoserver_request_duration_seconds_bucket{" + wms + ",le=\"0.003\"} 1\n"));
+        assertThat(
+                text,
+                containsString(
+                        "geoserver_request_duration_seconds_bucket{" + wms + ",le=\"+Inf\"} 2\n"));
+        assertThat(
+                text, containsString("geoserver_request_duration_seconds_sum{" + wms + "} 0.013"));
+        assertThat(text, containsString("geoserver_request_duration_seconds_count{" + wms + "} 2"));
+        assertThat(
+                text,
+                containsString(
+                        "geoserver_layer_request_duration_seconds_count{layer=\"topp:states\"} 2"));
+        assertThat(text, containsString("geoserver_response_bytes_total{" + wms + "} 1500"));
+        String wfs = "service=\"WFS\",operation=\"GetFeature\"";
+        assertThat(text, containsString("geoserver_request_errors_total{" + wfs + "} 1"));
+        assertThat(text, not(containsString("geoserver_request_errors_total{service=\"WMS\"")));
+    }
+
+    @Test
+    public void testTileCacheStatistics() throws Exception {
+        RequestMetrics metrics = new RequestMetrics(new MonitorConfig(), null);
+        StringWriter writer = new StringWriter();
+        metrics.writeTileCacheStatistics(writer, 3, new CacheStats(10, 4, 0, 0, 0, 2));
+        String text = writer.toString();
+
+        assertThat(text, containsString("# TYPE geoserver_meta_tile_cache_size gauge\n"));
+        assertThat(text, containsString("geoserver_meta_tile_cache_size 3\n"));
+        assertThat(text, containsString("geoserver_meta_tile_cache_hits_total 10\n"));
+        assertThat(text, containsString("geoserver_meta_tile_cache_misses_total 4\n"));
+        assertThat(text, containsString("geoserver_meta_tile_cache_evictions_total 2\n"));
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        MonitorConfig config = new MonitorConfig();
+        config.getProperties().put(RequestMetrics.ENABLED_KEY, "false");
+        RequestMetrics metrics = new RequestMetrics(config, null);
+        metrics.requestCompleted(request("WMS", "GetMap", "image/png", 3, 1000));
+
+        StringWriter writer = new StringWriter();
+        metrics.write(writer);
+        assertThat(writer.toString(), not(containsString("WMS")));
+    }
+
+    @Test
+    public void testReload() throws Exception {
+        MonitorConfig config = new MonitorConfig();
+        RequestMetrics metrics = new RequestMetrics(config, null);
+        assertTrue(metrics.isEnabled());
+
+        // the settings are not parsed again for each request
+        config.getProperties().put(RequestMetrics.ENABLED_KEY, "false");
+        config.getProperties().put(RequestMetrics.MAX_SERIES_KEY, "10");
+        assertTrue(metrics.isEnabled());
+        assertEquals(RequestMetrics.DEFAULT_MAX_SERIES, metrics.getMaxSeries());
+
+        metrics.onReload();
+        assertFalse(metrics.isEnabled());
+        assertEquals(10, metrics.getMaxSeries());
+    }
+
+    @Test
+    public void testMaxSeries() throws Exception {
+        MonitorConfig config = new MonitorConfig();
+        config.getProperties().put(RequestMetrics.MAX_SERIES_KEY, "2");
+        RequestMetrics metrics = new RequestMetrics(config, null);
+        for (int i = 0; i < 5; i++) {
+            metrics.requestCompleted(request("WMS", "GetMap", "image/png", 3, 10, "layer" + i));
+        }
+        // the layers beyond the limit are accounted together
+        assertEquals(3, metrics.layerLatency.size());
+        StringWriter writer = new StringWriter();
+        metrics.write(writer);
+        String text = writer.toString();
+        String count = "geoserver_layer_request_duration_seconds_count";
+        assertThat(text, containsString(count + "{layer=\"layer1\"} 1"));
+        assertThat(text, containsString(count + "{layer=\"other\"} 3"));
+        assertThat(text, not(containsString("layer=\"layer2\"")));
+    }
+
+    private RequestData request(
+            String service,
+            String operation,
+            String format,
+            long time,
+            long length,
+            String... layers) {
+        RequestData data = new RequestData();
+        data.setService(service);
+        data.setOperation(operation);
+        data.setResponseContentType(format);
+        data.setTotalTime(time);
+        data.setResponseLength(length);
+        data.setResources(Arrays.asList(layers));
+        data.setStatus(Status.FINISHED);
+        return data;
+    }
+}
@@ -0,0 +1,465 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.mapbox;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryCollection;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+
+/**
+ * Encodes features straight into the Mapbox Vector Tile protocol buffers format. The geometry
+ * commands are computed from the coordinate sequences into a reused int array, and each feature is
+ * appended to the encoded form of its layer right away, so the only objects allocated per feature
+ * are the entries of new attribute keys and values.
+ *
+ * <p>Geometries are expected in tile coordinates, and are not clipped. The output matches the one
+ * of the {@code java-vector-tile} encoder, with polygon exterior rings in clockwise order (in tile
+ * coordinates, with the Y axis pointing down) and holes in counter-clockwise order, as required by
+ * the specification.
+ */
+final class MVTEncoder {
+
+    static final int MOVE_TO = 1;
+
+    static final int LINE_TO = 2;
+
+    static final int CLOSE_PATH = 7;
+
+    static final int POINT = 1;
+
+    static final int LINESTRING = 2;
+
+    static final int POLYGON = 3;
+
+    static final int VERSION = 2;
+
+    private final int extent;
+
+    private final Map<String, Layer> layers = new LinkedHashMap<>();
+
+    /** The commands of the current feature */
+    private int[] commands = new int[256];
+
+    private int commandCount;
+
+    /** The key and value indexes of the current feature */
+    private int[] tags = new int[32];
+
+    private int tagCount;
+
+    /** The cursor position, commands are relative to it */
+    private int x, y;
+
+    MVTEncoder(int extent) {
+        this.extent = extent;
+    }
+
+    /**
+     * Adds a feature to the tile. Empty geometries are skipped, as well as the ones that collapse
+     * to nothing once rounded, and geometry collections are split into one feature per member.
+     *
+     * @param id the feature id, not encoded if negative
+     */
+    void addFeature(String layerName, long id, Map<String, ?> attributes, Geometry geometry) {
+        if (geometry == null || geometry.isEmpty()) {
+            return;
+        }
+        if (geometry instanceof GeometryCollection
+                && !(geometry instanceof MultiPoint)
+                && !(geometry instanceof MultiLineString)
+                && !(geometry instanceof MultiPolygon)) {
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                addFeature(layerName, id, attributes, geometry.getGeometryN(i));
+            }
+            return;
+        }
+        int type = encodeGeometry(geometry);
+        if (type == 0) {
+            return;
+        }
+        Layer layer = layers.get(layerName);
+        if (layer == null) {
+            layer = new Layer(layerName);
+            layers.put(layerName, layer);
+        }
+        tagCount = 0;
+        for (Map.Entry<String, ?> e : attributes.entrySet()) {
+            Object value = e.getValue();
+            if (value == null) {
+                continue;
+            }
+            ensureTags(2);
+            tags[tagCount++] = layer.key(e.getKey());
+            tags[tagCount++] = layer.value(value);
+        }
+        layer.writeFeature(id, tags, tagCount, type, commands, commandCount);
+    }
+
+    /** Returns the encoded tile */
+    byte[] encode() {
+        int size = 0;
+        for (Layer layer : layers.values()) {
+            int layerSize = layer.size();
+            size += 1 + ProtobufBuffer.varintSize(layerSize) + layerSize;
+        }
+        ProtobufBuffer tile = new ProtobufBuffer(size);
+        for (Layer layer : layers.values()) {
+            tile.writeKey(3, ProtobufBuffer.LENGTH_DELIMITED);
+            tile.writeVarint(layer.size());
+            layer.writeTo(tile);
+        }
+        return tile.toByteArray();
+    }
+
+    /** Returns the commands of a geometry, for testing purposes */
+    int[] getCommands(Geometry geometry) {
+        encodeGeometry(geometry);
+        return Arrays.copyOf(commands, commandCount);
+    }
+
+    /**
+     * Computes the geometry commands into {@link #commands}
+     *
+     * @return the geometry type, or 0 if there is nothing to encode
+     */
+    private int encodeGeometry(Geometry geometry) {
+        commandCount = 0;
+        x = 0;
+        y = 0;
+        if (geometry instanceof Point || geometry instanceof MultiPoint) {
+            int count = 0;
+            add(0);
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                CoordinateSequence cs = ((Point) geometry.getGeometryN(i)).getCoordinateSequence();
+                if (cs.size() > 0) {
+                    moveCursor(cs, 0);
+                    count++;
+                }
+            }
+            commands[0] = command(MOVE_TO, count);
+            return count > 0 ? POINT : 0;
+        } else if (geometry instanceof LineString || geometry instanceof MultiLineString) {
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                LineString line = (LineString) geometry.getGeometryN(i);
+                CoordinateSequence cs = line.getCoordinateSequence();
+                path(cs, cs.size(), false, false);
+            }
+            return commandCount > 0 ? LINESTRING : 0;
+        } else if (geometry instanceof Polygon || geometry instanceof MultiPolygon) {
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                Polygon polygon = (Polygon) geometry.getGeometryN(i);
+                if (ring(polygon.getExteriorRing(), true)) {
+                    for (int j = 0; j < polygon.getNumInteriorRing(); j++) {
+                        ring(polygon.getInteriorRingN(j), false);
+                    }
+                }
+            }
+            return commandCount > 0 ? POLYGON : 0;
+        }
+        return 0;
+    }
+
+    /** Encodes a ring, exterior rings are turned clockwise and holes counter-clockwise */
+    private boolean ring(LineString ring, boolean exterior) {
+        CoordinateSequence cs = ring.getCoordinateSequence();
+        int n = cs.size();
+        if (n > 1 && cs.getX(0) == cs.getX(n - 1) && cs.getY(0) == cs.getY(n - 1)) {
+            // the closing point is implied by the ClosePath command
+            n--;
+        }
+        double area = signedArea(cs, n);
+        return path(cs, n, exterior ? area < 0 : area > 0, true);
+    }
+
+    /**
+     * Encodes a MoveTo command to the first point and a LineTo to the others, skipping the points
+     * falling on the previous one once rounded. Paths that collapse to a single point, or rings
+     * that collapse to less than three points, are left out.
+     */
+    private boolean path(CoordinateSequence cs, int n, boolean reverse, boolean ring) {
+        if (n == 0) {
+            return false;
+        }
+        int start = commandCount;
+        int startX = x, startY = y;
+        add(command(MOVE_TO, 1));
+        moveCursor(cs, reverse ? n - 1 : 0);
+        int firstX = x, firstY = y;
+        int lineToIndex = commandCount;
+        add(0);
+        int count = 0;
+        for (int i = 1; i < n; i++) {
+            int index = reverse ? n - 1 - i : i;
+            int px = (int) Math.round(cs.getX(index));
+            int py = (int) Math.round(cs.getY(index));
+            if (px == x && py == y) {
+                continue;
+            }
+            add(ProtobufBuffer.zigZag(px - x));
+            add(ProtobufBuffer.zigZag(py - y));
+            x = px;
+            y = py;
+            count++;
+        }
+        if (ring && count > 0 && x == firstX && y == firstY) {
+            // the last point fell back on the first, ClosePath will take care of it
+            commandCount -= 2;
+            count--;
+            x -= unZigZag(commands[commandCount]);
+            y -= unZigZag(commands[commandCount + 1]);
+        }
+        if (count < (ring ? 2 : 1)) {
+            commandCount = start;
+            x = startX;
+            y = startY;
+            return false;
+        }
+        commands[lineToIndex] = command(LINE_TO, count);
+        if (ring) {
+            add(command(CLOSE_PATH, 1));
+        }
+        return true;
+    }
+
+    /** Twice the signed area of the ring, positive if counter-clockwise with the Y axis up */
+    static double signedArea(CoordinateSequence cs, int n) {
+        if (n < 3) {
+            return 0;
+        }
+        double x0 = cs.getX(0);
+        double y0 = cs.getY(0);
+        double sum = 0;
+        for (int i = 1; i < n - 1; i++) {
+            double x1 = cs.getX(i) - x0;
+            double y1 = cs.getY(i) - y0;
+            double x2 = cs.getX(i + 1) - x0;
+            double y2 = cs.getY(i + 1) - y0;
+            sum += x1 * y2 - x2 * y1;
+        }
+        return sum;
+    }
+
+    private void moveCursor(CoordinateSequence cs, int index) {
+        int px = (int) Math.round(cs.getX(index));
+        int py = (int) Math.round(cs.getY(index));
+        add(ProtobufBuffer.zigZag(px - x));
+        add(ProtobufBuffer.zigZag(py - y));
+        x = px;
+        y = py;
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int command(int id, int count) {
+        return (count << 3) | id;
+    }
+
+    private void add(int command) {
+        if (commandCount == commands.length) {
+            commands = Arrays.copyOf(commands, commands.length * 2);
+        }
+        commands[commandCount++] = command;
+    }
+
+    private void ensureTags(int extra) {
+        if (tagCount + extra > tags.length) {
+            tags = Arrays.copyOf(tags, tags.length * 2);
+        }
+    }
+
+    /** A layer of the tile, with its features and attribute dictionaries already encoded */
+    private final class Layer {
+
+        final byte[] name;
+
+        final ProtobufBuffer features = new ProtobufBuffer(4096);
+
+        final ProtobufBuffer keys = new ProtobufBuffer(256);
+
+        final ProtobufBuffer values = new ProtobufBuffer(1024);
+
+        final IndexMap keyIndex = new IndexMap();
+
+        final IndexMap valueIndex = new IndexMap();
+
+        final ProtobufBuffer scratch = new ProtobufBuffer(64);
+
+        Layer(String name) {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+        }
+
+        int key(String key) {
+            int index = keyIndex.get(key);
+            if (index < 0) {
+                index = keyIndex.add(key);
+                keys.writeString(3, key);
+            }
+            return index;
+        }
+
+        int value(Object value) {
+            int index = valueIndex.get(value);
+            if (index < 0) {
+                index = valueIndex.add(value);
+                scratch.reset();
+                writeValue(scratch, value);
+                values.writeKey(4, ProtobufBuffer.LENGTH_DELIMITED);
+                values.writeVarint(scratch.size());
+                values.write(scratch);
+            }
+            return index;
+        }
+
+        /** Writes a Value message, using the same types as the java-vector-tile encoder */
+        private void writeValue(ProtobufBuffer out, Object value) {
+            if (value instanceof String) {
+                out.writeString(1, (String) value);
+            } else if (value instanceof Integer || value instanceof Long) {
+                out.writeKey(6, ProtobufBuffer.VARINT);
+                out.writeVarint(ProtobufBuffer.zigZag(((Number) value).longValue()));
+            } else if (value instanceof Float) {
+                out.writeKey(2, ProtobufBuffer.FIXED32);
+                out.writeFixed32(Float.floatToIntBits((Float) value));
+            } else if (value instanceof Double) {
+                out.writeKey(3, ProtobufBuffer.FIXED64);
+                out.writeFixed64(Double.doubleToLongBits((Double) value));
+            } else if (value instanceof BigDecimal) {
+                out.writeString(1, value.toString());
+            } else if (value instanceof Number) {
+                out.writeKey(3, ProtobufBuffer.FIXED64);
+                out.writeFixed64(Double.doubleToLongBits(((Number) value).doubleValue()));
+            } else if (value instanceof Boolean) {
+                out.writeKey(7, ProtobufBuffer.VARINT);
+                out.writeVarint((Boolean) value ? 1 : 0);
+            } else {
+                out.writeString(1, value.toString());
+            }
+        }
+
+        void writeFeature(
+                long id, int[] tags, int tagCount, int type, int[] commands, int commandCount) {
+            int tagsSize = ProtobufBuffer.packedSize(tags, tagCount);
+            int geometrySize = ProtobufBuffer.packedSize(commands, commandCount);
+            int size = 2 + 1 + ProtobufBuffer.varintSize(geometrySize) + geometrySize;
+            if (id >= 0) {
+                size += 1 + ProtobufBuffer.varintSize(id);
+            }
+            if (tagCount > 0) {
+                size += 1 + ProtobufBuffer.varintSize(tagsSize) + tagsSize;
+            }
+            features.writeKey(2, ProtobufBuffer.LENGTH_DELIMITED);
+            features.writeVarint(size);
+            if (id >= 0) {
+                features.writeKey(1, ProtobufBuffer.VARINT);
+                features.writeVarint(id);
+            }
+            if (tagCount > 0) {
+                features.writePacked(2, tags, tagCount);
+            }
+            features.writeKey(3, ProtobufBuffer.VARINT);
+            features.writeVarint(type);
+            features.writePacked(4, commands, commandCount);
+        }
+
+        int size() {
+            return 1
+                    + ProtobufBuffer.varintSize(name.length)
+                    + name.length
+                    + features.size()
+                    + keys.size()
+                    + values.size()
+                    + 1
+                    + ProtobufBuffer.varintSize(extent)
+                    + 1
+                    + ProtobufBuffer.varintSize(VERSION);
+        }
+
+        void writeTo(ProtobufBuffer out) {
+            out.writeBytes(1, name);
+            out.write(features);
+            out.write(keys);
+            out.write(values);
+            out.writeKey(5, ProtobufBuffer.VARINT);
+            out.writeVarint(extent);
+            out.writeKey(15, ProtobufBuffer.VARINT);
+            out.writeVarint(VERSION);
+        }
+    }
+
+    /** Open addressing hash map from objects to their insertion index, without boxing */
+    static final class IndexMap {
+
+        private Object[] keys = new Object[16];
+
+        private int[] indexes = new int[16];
+
+        private int size;
+
+        /** Returns the index of the key, or -1 if missing */
+        int get(Object key) {
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask; keys[i] != null; i = (i + 1) & mask) {
+                if (keys[i].equals(key)) {
+                    return indexes[i];
+                }
+            }
+            return -1;
+        }
+
+        /** Adds a missing key, and returns its index */
+        int add(Object key) {
+            if ((size + 1) * 2 > keys.length) {
+                rehash();
+            }
+            int index = size++;
+            insert(key, index);
+            return index;
+        }
+
+        int size() {
+            return size;
+        }
+
+        private void insert(Object key, int index) {
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            while (keys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            indexes[i] = index;
+        }
+
+        private void rehash() {
+            Object[] oldKeys = keys;
+            int[] oldIndexes = indexes;
+            keys = new Object[oldKeys.length * 2];
+            indexes = new int[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null) {
+                    insert(oldKeys[i], oldIndexes[i]);
+                }
+            }
+        }
+
+        private static int hash(Object key) {
+            int h = key.hashCode() * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -10,8 +10,6 @@ import java.awt.Rectangle;
 import java.io.IOException;
 import java.util.Map;
 import java.util.logging.Logger;
-import no.ecc.vectortile.VectorTileEncoder;
-import no.ecc.vectortile.VectorTileEncoderNoClip;
 import org.geoserver.wms.WMSMapContent;
 import org.geoserver.wms.map.RawMap;
 import org.geoserver.wms.vector.VectorTileBuilder;
@@ -23,13 +21,11 @@ import org.locationtech.jts.geom.Geometry;
 public class MapBoxTileBuilder implements VectorTileBuilder {
     private static final Logger LOGGER = Logging.getLogger(MapBoxTileBuilder.class);
 
-    private VectorTileEncoder encoder;
+    private MVTEncoder encoder;
 
     public MapBoxTileBuilder(Rectangle mapSize, ReferencedEnvelope mapArea) {
         final int extent = Math.max(mapSize.width, mapSize.height);
-        final int polygonClipBuffer = extent / 32;
-        final boolean autoScale = false;
-        this.encoder = new VectorTileEncoderNoClip(extent, polygonClipBuffer, autoScale);
+        this.encoder = new MVTEncoder(extent);
     }
 
     @Override
@@ -39,19 +35,35 @@ public class MapBoxTileBuilder implements VectorTileBuilder {
             String geometryName,
             Geometry geometry,
             Map<String, Object> properties) {
-        int id = -1;
-        if (featureId.matches(".*\\.[0-9]+")) {
-            try {
-                id = Integer.parseInt(featureId.split("\\.")[1]);
-            } catch (NumberFormatException e) {
-            }
-        }
-
+        long id = getNumericId(featureId);
         if (id < 0) {
             LOGGER.warning("Cannot obtain numeric id from featureId: " + featureId);
         }
 
-        encoder.addFeature(layerName, properties, geometry, id);
+        encoder.addFeature(layerName, id, properties, geometry);
+    }
+
+    /**
+     * Parses the digits after the last dot of the feature id, without going through regular
+     * expressions, as this is called for every feature
+     *
+     * @return the numeric id, or -1 if the id does not end with a dot followed by digits
+     */
+    static long getNumericId(String featureId) {
+        int dot = featureId.lastIndexOf('.');
+        int length = featureId.length();
+        if (dot < 0 || dot == length - 1 || length - dot > 19) {
+            return -1;
+        }
+        long id = 0;
+        for (int i = dot + 1; i < length; i++) {
+            char c = featureId.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            id = id * 10 + (c - '0');
+        }
+        return id;
     }
 
     @Override
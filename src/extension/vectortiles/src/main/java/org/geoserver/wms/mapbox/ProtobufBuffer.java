@@ -0,0 +1,131 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.mapbox;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/** A growable byte buffer with the primitive protocol buffers encodings */
+final class ProtobufBuffer {
+
+    static final int VARINT = 0;
+
+    static final int FIXED64 = 1;
+
+    static final int LENGTH_DELIMITED = 2;
+
+    static final int FIXED32 = 5;
+
+    private byte[] bytes;
+
+    private int size;
+
+    ProtobufBuffer(int capacity) {
+        this.bytes = new byte[Math.max(16, capacity)];
+    }
+
+    /** Number of bytes needed to encode the value as a varint */
+    static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /** Number of bytes needed to encode the values as a packed repeated field, without the key */
+    static int packedSize(int[] values, int count) {
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            size += varintSize(values[i] & 0xFFFFFFFFL);
+        }
+        return size;
+    }
+
+    static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    void writeVarint(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[size++] = (byte) value;
+    }
+
+    void writeKey(int field, int wireType) {
+        writeVarint((field << 3) | wireType);
+    }
+
+    void writeFixed32(int value) {
+        ensureCapacity(4);
+        for (int i = 0; i < 4; i++) {
+            bytes[size++] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    void writeFixed64(long value) {
+        ensureCapacity(8);
+        for (int i = 0; i < 8; i++) {
+            bytes[size++] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    void writeBytes(byte[] value, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(value, offset, bytes, size, length);
+        size += length;
+    }
+
+    /** Writes a length delimited field with the given contents */
+    void writeBytes(int field, byte[] value) {
+        writeKey(field, LENGTH_DELIMITED);
+        writeVarint(value.length);
+        writeBytes(value, 0, value.length);
+    }
+
+    void writeString(int field, String value) {
+        writeBytes(field, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Writes the values as a packed repeated field, unsigned */
+    void writePacked(int field, int[] values, int count) {
+        writeKey(field, LENGTH_DELIMITED);
+        writeVarint(packedSize(values, count));
+        for (int i = 0; i < count; i++) {
+            writeVarint(values[i] & 0xFFFFFFFFL);
+        }
+    }
+
+    /** Appends the contents of another buffer */
+    void write(ProtobufBuffer other) {
+        writeBytes(other.bytes, 0, other.size);
+    }
+
+    void reset() {
+        size = 0;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+}
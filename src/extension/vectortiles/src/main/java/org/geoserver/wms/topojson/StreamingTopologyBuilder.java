@@ -0,0 +1,547 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.topojson;
+
+import static org.geoserver.wms.topojson.TopoJSONBuilderFactory.MIME_TYPE;
+
+import com.google.common.base.Charsets;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.geoserver.wms.WMSMapContent;
+import org.geoserver.wms.map.RawMap;
+import org.geoserver.wms.vector.DeferredFileOutputStreamWebMap;
+import org.geoserver.wms.vector.VectorTileBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.renderer.lite.RendererUtilities;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryCollection;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+
+/**
+ * A {@link TopologyBuilder} alternative that writes the topology as the features arrive, instead
+ * of keeping them all in memory until the end. The arcs are quantized and delta encoded right away,
+ * and the objects of each layer are written as JSON, both in temporary streams that spill to disk
+ * once they grow past {@link #SPILL_THRESHOLD} bytes. The final document is assembled from them in
+ * {@link #build(WMSMapContent)}.
+ *
+ * <p>Arcs with the same quantized coordinates, in the same or in the opposite direction, are
+ * written only once, and referenced by index (or by the one's complement of the index when
+ * reversed). They are looked up by a 64 bits hash of their quantized coordinates, and compared
+ * with the coordinates of the arcs with the same hash. At most {@link ArcIndex#MAX_ORDINATES}
+ * quantized ordinates are kept for the comparison, the arcs written past that are not deduplicated.
+ *
+ * <p>The output matches the one of {@link TopologyBuilder}, but for the arc deduplication.
+ */
+public class StreamingTopologyBuilder implements VectorTileBuilder {
+
+    /** Size after which the arcs and the layers are moved from memory to temporary files */
+    static final int SPILL_THRESHOLD = 64 * 1024;
+
+    /** Quantization scale, coordinates are rounded to a tenth of pixel */
+    static final double SCALE = 10;
+
+    private static final Gson GSON = new Gson();
+
+    private final AffineTransform screenToWorld;
+
+    private final DeferredFileOutputStream arcsOutput;
+
+    private final Writer arcs;
+
+    private int arcCount;
+
+    private final ArcIndex arcIndex = new ArcIndex();
+
+    /** Quantized coordinates of the current arc, x and y interleaved */
+    private long[] arc = new long[256];
+
+    private final char[] digits = new char[20];
+
+    private final Map<String, LayerWriter> layers = new LinkedHashMap<>();
+
+    public StreamingTopologyBuilder(Rectangle mapSize, ReferencedEnvelope mapArea) {
+        AffineTransform worldToScreen = RendererUtilities.worldToScreenTransform(mapArea, mapSize);
+        this.screenToWorld = new AffineTransform(worldToScreen);
+        try {
+            this.screenToWorld.invert();
+        } catch (NoninvertibleTransformException e) {
+            throw new RuntimeException(e);
+        }
+        this.arcsOutput = new DeferredFileOutputStream(SPILL_THRESHOLD, "arcs", ".topojson", null);
+        this.arcs = new OutputStreamWriter(arcsOutput, Charsets.UTF_8);
+    }
+
+    @Override
+    public void addFeature(
+            String layerName,
+            String featureId,
+            String geometryName,
+            Geometry geometry,
+            Map<String, Object> properties) {
+        if (geometry.isEmpty()) {
+            return;
+        }
+        if (geometry instanceof GeometryCollection && geometry.getNumGeometries() == 1) {
+            geometry = geometry.getGeometryN(0);
+        }
+        try {
+            LayerWriter layer = layers.get(layerName);
+            if (layer == null) {
+                layer = new LayerWriter();
+                layers.put(layerName, layer);
+            }
+            JsonWriter json = layer.json;
+            json.beginObject();
+            json.name("type").value(geometry.getGeometryType());
+            if (featureId != null) {
+                json.name("id").value(featureId);
+            }
+            if (!properties.isEmpty()) {
+                json.name("properties");
+                writeProperties(json, properties);
+            }
+            writeGeometry(json, geometry);
+            json.endObject();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        // nothing to do if the tile was built, otherwise the streams are still open
+        close(arcsOutput);
+        delete(arcsOutput);
+        for (LayerWriter layer : layers.values()) {
+            close(layer.output);
+            delete(layer.output);
+        }
+    }
+
+    @Override
+    public RawMap build(WMSMapContent mapContent) throws IOException {
+        final int threshold = 8096;
+        try (DeferredFileOutputStream out =
+                        new DeferredFileOutputStream(threshold, "topology", ".topojson", null);
+                Writer writer = new OutputStreamWriter(out, Charsets.UTF_8)) {
+            arcs.close();
+            for (LayerWriter layer : layers.values()) {
+                layer.close();
+            }
+
+            writer.write("{\"type\":\"Topology\",\"count\":");
+            writer.write(String.valueOf(arcCount));
+            if (!screenToWorld.isIdentity()) {
+                writer.write(",\"transform\":{\"scale\":[");
+                writer.write(Double.toString(screenToWorld.getScaleX()));
+                writer.write(',');
+                writer.write(Double.toString(screenToWorld.getScaleY()));
+                writer.write("],\"translate\":[");
+                writer.write(Double.toString(screenToWorld.getTranslateX()));
+                writer.write(',');
+                writer.write(Double.toString(screenToWorld.getTranslateY()));
+                writer.write("]}");
+            }
+            writer.write(",\"arcs\":[");
+            writer.flush();
+            arcsOutput.writeTo(out);
+            writer.write("],\"objects\":{");
+            boolean first = true;
+            for (Map.Entry<String, LayerWriter> e : layers.entrySet()) {
+                if (!first) {
+                    writer.write(',');
+                }
+                first = false;
+                writer.write(GSON.toJson(e.getKey()));
+                writer.write(':');
+                writer.flush();
+                e.getValue().output.writeTo(out);
+            }
+            writer.write("}}");
+            writer.flush();
+            writer.close();
+
+            long length;
+            RawMap map;
+            if (out.isInMemory()) {
+                byte[] data = out.getData();
+                length = data.length;
+                map = new RawMap(mapContent, data, MIME_TYPE);
+            } else {
+                File f = out.getFile();
+                length = f.length();
+                map = new DeferredFileOutputStreamWebMap(mapContent, out, MIME_TYPE);
+            }
+
+            map.setResponseHeader("Content-Length", String.valueOf(length));
+            return map;
+        } finally {
+            delete(arcsOutput);
+            for (LayerWriter layer : layers.values()) {
+                delete(layer.output);
+            }
+        }
+    }
+
+    /** Returns the temporary files the arcs and the layers spilled to, for testing purposes */
+    List<File> getTemporaryFiles() {
+        List<File> files = new ArrayList<>();
+        if (arcsOutput.getFile() != null) {
+            files.add(arcsOutput.getFile());
+        }
+        for (LayerWriter layer : layers.values()) {
+            if (layer.output.getFile() != null) {
+                files.add(layer.output.getFile());
+            }
+        }
+        return files;
+    }
+
+    private void close(DeferredFileOutputStream output) {
+        try {
+            output.close();
+        } catch (IOException e) {
+            // the stream is being discarded anyways
+        }
+    }
+
+    private void delete(DeferredFileOutputStream output) {
+        File file = output.getFile();
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    private void writeGeometry(JsonWriter json, Geometry geometry) throws IOException {
+        if (geometry instanceof Point) {
+            Point point = (Point) geometry;
+            json.name("coordinates");
+            json.beginArray().value(point.getX()).value(point.getY()).endArray();
+        } else if (geometry instanceof MultiPoint) {
+            json.name("coordinates").beginArray();
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                Point point = (Point) geometry.getGeometryN(i);
+                json.beginArray().value(point.getX()).value(point.getY()).endArray();
+            }
+            json.endArray();
+        } else if (geometry instanceof LineString) {
+            json.name("arcs").beginArray();
+            json.value(addArc((LineString) geometry));
+            json.endArray();
+        } else if (geometry instanceof MultiLineString) {
+            json.name("arcs").beginArray();
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                json.beginArray().value(addArc((LineString) geometry.getGeometryN(i))).endArray();
+            }
+            json.endArray();
+        } else if (geometry instanceof Polygon) {
+            json.name("arcs");
+            writeRings(json, (Polygon) geometry);
+        } else if (geometry instanceof MultiPolygon) {
+            json.name("arcs").beginArray();
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                writeRings(json, (Polygon) geometry.getGeometryN(i));
+            }
+            json.endArray();
+        } else if (geometry instanceof GeometryCollection) {
+            json.name("geometries").beginArray();
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                Geometry member = geometry.getGeometryN(i);
+                json.beginObject();
+                json.name("type").value(member.getGeometryType());
+                writeGeometry(json, member);
+                json.endObject();
+            }
+            json.endArray();
+        } else {
+            throw new IllegalArgumentException(
+                    "Unknown geometry type: " + geometry.getGeometryType());
+        }
+    }
+
+    private void writeRings(JsonWriter json, Polygon polygon) throws IOException {
+        json.beginArray();
+        json.beginArray().value(addArc(polygon.getExteriorRing())).endArray();
+        for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+            json.beginArray().value(addArc(polygon.getInteriorRingN(i))).endArray();
+        }
+        json.endArray();
+    }
+
+    /** Same conversions as {@link TopoJSONEncoder} */
+    @SuppressWarnings("unchecked")
+    private void writeProperties(JsonWriter json, Map<String, Object> properties)
+            throws IOException {
+        json.beginObject();
+        for (Map.Entry<String, Object> e : properties.entrySet()) {
+            Object value = e.getValue();
+            if (value instanceof Map) {
+                Map<String, Object> map = (Map<String, Object>) value;
+                if (!map.isEmpty()) {
+                    json.name(e.getKey());
+                    writeProperties(json, map);
+                }
+            } else if (value instanceof Boolean) {
+                json.name(e.getKey()).value((Boolean) value);
+            } else if (value instanceof Number) {
+                Number n = (Number) value;
+                if (n instanceof Double && n.doubleValue() % 1 == 0) {
+                    n = Long.valueOf(n.longValue());
+                } else if (n instanceof Float && n.floatValue() % 1 == 0) {
+                    n = Integer.valueOf(n.intValue());
+                }
+                json.name(e.getKey()).value(n);
+            } else {
+                json.name(e.getKey()).value(String.valueOf(value));
+            }
+        }
+        json.endObject();
+    }
+
+    /**
+     * Quantizes the line, and writes it as a new arc unless an equal one has already been written
+     *
+     * @return the index of the arc, or its one's complement if the arc is reversed
+     */
+    private int addArc(LineString line) throws IOException {
+        CoordinateSequence cs = line.getCoordinateSequence();
+        int size = 0;
+        for (int i = 0; i < cs.size(); i++) {
+            long x = Math.round(cs.getX(i) * SCALE);
+            long y = Math.round(cs.getY(i) * SCALE);
+            if (size > 0 && x == arc[size - 2] && y == arc[size - 1]) {
+                continue;
+            }
+            if (size + 2 > arc.length) {
+                arc = Arrays.copyOf(arc, arc.length * 2);
+            }
+            arc[size++] = x;
+            arc[size++] = y;
+        }
+
+        long forward = ArcIndex.hash(arc, size, false);
+        int index = arcIndex.get(forward, arc, size, false);
+        if (index >= 0) {
+            return index;
+        }
+        index = arcIndex.get(ArcIndex.hash(arc, size, true), arc, size, true);
+        if (index >= 0) {
+            return ~index;
+        }
+
+        index = arcCount++;
+        arcIndex.put(forward, index, arc, size);
+        writeArc(size);
+        return index;
+    }
+
+    private void writeArc(int size) throws IOException {
+        boolean delta = !screenToWorld.isIdentity();
+        if (arcCount > 1) {
+            arcs.write(',');
+        }
+        arcs.write('[');
+        for (int i = 0; i < size; i += 2) {
+            if (i > 0) {
+                arcs.write(',');
+            }
+            arcs.write('[');
+            if (delta && i > 0) {
+                writeTenths(arc[i] - arc[i - 2]);
+                arcs.write(',');
+                writeTenths(arc[i + 1] - arc[i - 1]);
+            } else {
+                writeTenths(arc[i]);
+                arcs.write(',');
+                writeTenths(arc[i + 1]);
+            }
+            arcs.write(']');
+        }
+        arcs.write(']');
+    }
+
+    /** Writes a quantized value, with a decimal digit only if needed */
+    private void writeTenths(long value) throws IOException {
+        if (value < 0) {
+            arcs.write('-');
+            value = -value;
+        }
+        long tenths = value % 10;
+        value /= 10;
+        int start = digits.length;
+        do {
+            digits[--start] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        arcs.write(digits, start, digits.length - start);
+        if (tenths != 0) {
+            arcs.write('.');
+            arcs.write((char) ('0' + tenths));
+        }
+    }
+
+    /** The objects of a layer, as a GeometryCollection */
+    private static final class LayerWriter {
+
+        final DeferredFileOutputStream output =
+                new DeferredFileOutputStream(SPILL_THRESHOLD, "layer", ".topojson", null);
+
+        final JsonWriter json = new JsonWriter(new OutputStreamWriter(output, Charsets.UTF_8));
+
+        LayerWriter() {
+            try {
+                json.setLenient(true);
+                json.beginObject();
+                json.name("type").value("GeometryCollection");
+                json.name("geometries").beginArray();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        void close() throws IOException {
+            json.endArray();
+            json.endObject();
+            json.close();
+        }
+    }
+
+    /**
+     * Open addressing hash map from the arc hashes to the arc indexes, without boxing. The
+     * quantized coordinates of the arcs are kept as well, in a single array, to tell apart the arcs
+     * whose hashes collide.
+     */
+    static final class ArcIndex {
+
+        /** Maximum number of ordinates kept, arcs are no longer indexed past it */
+        static final int MAX_ORDINATES = 1 << 20;
+
+        private long[] hashes = new long[64];
+
+        /** The arc index plus one, zero marks the empty slots */
+        private int[] indexes = new int[64];
+
+        /** Position of each arc in {@link #ordinates}, where its size precedes its ordinates */
+        private int[] offsets = new int[64];
+
+        private long[] ordinates = new long[1024];
+
+        private int ordinatesSize;
+
+        private int size;
+
+        /** Hashes the quantized coordinates, in the given direction */
+        static long hash(long[] coordinates, int size, boolean reverse) {
+            long h = 0x9E3779B97F4A7C15L * (size + 1);
+            for (int i = 0; i < size; i += 2) {
+                int j = reverse ? size - 2 - i : i;
+                h = mix(h ^ coordinates[j]);
+                h = mix(h ^ coordinates[j + 1]);
+            }
+            return h;
+        }
+
+        private static long mix(long h) {
+            h *= 0xBF58476D1CE4E5B9L;
+            h ^= h >>> 31;
+            h *= 0x94D049BB133111EBL;
+            return h ^ (h >>> 29);
+        }
+
+        /**
+         * Returns the index of the arc equal to the given coordinates, read in the given direction,
+         * or -1 if not found
+         */
+        int get(long hash, long[] coordinates, int size, boolean reverse) {
+            int mask = hashes.length - 1;
+            for (int i = (int) hash & mask; indexes[i] != 0; i = (i + 1) & mask) {
+                if (hashes[i] == hash && equals(offsets[i], coordinates, size, reverse)) {
+                    return indexes[i] - 1;
+                }
+            }
+            return -1;
+        }
+
+        private boolean equals(int offset, long[] coordinates, int size, boolean reverse) {
+            if (ordinates[offset] != size) {
+                return false;
+            }
+            for (int i = 0; i < size; i += 2) {
+                int j = reverse ? size - 2 - i : i;
+                if (ordinates[offset + 1 + i] != coordinates[j]
+                        || ordinates[offset + 2 + i] != coordinates[j + 1]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Indexes the arc, unless the ordinates kept so far already reached {@link #MAX_ORDINATES}
+         *
+         * @return true if the arc has been indexed
+         */
+        boolean put(long hash, int index, long[] coordinates, int size) {
+            if (ordinatesSize + size + 1 > MAX_ORDINATES) {
+                return false;
+            }
+            if (ordinatesSize + size + 1 > ordinates.length) {
+                int length = Math.max(ordinates.length * 2, ordinatesSize + size + 1);
+                ordinates = Arrays.copyOf(ordinates, Math.min(length, MAX_ORDINATES));
+            }
+            int offset = ordinatesSize;
+            ordinates[ordinatesSize++] = size;
+            System.arraycopy(coordinates, 0, ordinates, ordinatesSize, size);
+            ordinatesSize += size;
+
+            if ((this.size + 1) * 2 > hashes.length) {
+                long[] oldHashes = hashes;
+                int[] oldIndexes = indexes;
+                int[] oldOffsets = offsets;
+                hashes = new long[oldHashes.length * 2];
+                indexes = new int[oldHashes.length * 2];
+                offsets = new int[oldHashes.length * 2];
+                for (int i = 0; i < oldHashes.length; i++) {
+                    if (oldIndexes[i] != 0) {
+                        insert(oldHashes[i], oldIndexes[i], oldOffsets[i]);
+                    }
+                }
+            }
+            insert(hash, index + 1, offset);
+            this.size++;
+            return true;
+        }
+
+        private void insert(long hash, int value, int offset) {
+            int mask = hashes.length - 1;
+            int i = (int) hash & mask;
+            while (indexes[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            hashes[i] = hash;
+            indexes[i] = value;
+            offsets[i] = offset;
+        }
+    }
+}
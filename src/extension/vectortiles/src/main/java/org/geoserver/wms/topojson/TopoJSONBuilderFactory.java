@@ -17,6 +17,18 @@ public class TopoJSONBuilderFactory implements VectorTileBuilderFactory {
 
     public static final Set<String> OUTPUT_FORMATS = ImmutableSet.of(MIME_TYPE, "topojson");
 
+    private boolean streaming = true;
+
+    /**
+     * Whether the topology is written as the features arrive ({@link StreamingTopologyBuilder}),
+     * or kept in memory and written at the end ({@link TopologyBuilder})
+     *
+     * @param streaming
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
     @Override
     public Set<String> getOutputFormats() {
         return OUTPUT_FORMATS;
@@ -29,6 +41,9 @@ public class TopoJSONBuilderFactory implements VectorTileBuilderFactory {
 
     @Override
     public VectorTileBuilder newBuilder(Rectangle screenSize, ReferencedEnvelope mapArea) {
+        if (streaming) {
+            return new StreamingTopologyBuilder(screenSize, mapArea);
+        }
         return new TopologyBuilder(screenSize, mapArea);
     }
 }
@@ -0,0 +1,349 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.vector;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import javax.xml.namespace.QName;
+import org.geoserver.catalog.CatalogException;
+import org.geoserver.catalog.MetadataMap;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.config.ConfigurationListenerAdapter;
+import org.geoserver.config.GeoServer;
+import org.geoserver.config.GeoServerInfo;
+import org.geoserver.config.impl.GeoServerLifecycleHandler;
+import org.geoserver.wfs.TransactionEvent;
+import org.geoserver.wfs.TransactionListener;
+import org.geoserver.wfs.WFSException;
+import org.geotools.feature.NameImpl;
+import org.geotools.util.logging.Logging;
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.feature.type.Name;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * Caches the geometries of vector tiles after they have been transformed to the tile CRS and
+ * generalized for a zoom level, so that the other tiles of the same zoom level (e.g., while seeding
+ * with GWC) can skip the most expensive part of the pipeline. The zoom level is identified by the
+ * generalization distance, snapped to a quarter of a power of two, so that tiles of the same level
+ * share both the cache entries and the generalization tolerance.
+ *
+ * <p>The cache is disabled by default, it is enabled by setting the {@link #MAX_WEIGHT_KEY} key in
+ * the global settings metadata to the maximum estimated memory footprint of the geometries, in
+ * bytes. The geometries of a layer are invalidated when the layer is modified by a WFS transaction,
+ * all of them are invalidated on catalog changes.
+ *
+ * <p>Entries are keyed by the qualified feature type name and the feature id, so the callers should
+ * not use the cache when the geometries depend on the query too (e.g., SQL view parameters).
+ */
+public class GeneralizedGeometryCache
+        implements TransactionListener, GeoServerLifecycleHandler, CatalogListener {
+
+    static final Logger LOGGER = Logging.getLogger(GeneralizedGeometryCache.class);
+
+    /** Key in the global settings metadata holding the maximum cache size, in bytes */
+    public static final String MAX_WEIGHT_KEY = "vectorTilesGeometryCacheMaxWeight";
+
+    /** Default maximum cache size, zero, the cache is disabled */
+    public static final long MAX_WEIGHT_DEFAULT = 0;
+
+    /** Number of zoom keys for each power of two of the generalization distance */
+    static final int ZOOM_STEPS = 4;
+
+    /** Rough size of a cache entry besides the coordinates, in bytes */
+    static final int ENTRY_OVERHEAD = 128;
+
+    private volatile Cache<GeometryKey, Geometry> cache;
+
+    private long maxWeight = -1;
+
+    /** Incremented when the layer changes, keys of older generations are not looked up anymore */
+    private final ConcurrentHashMap<Name, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    public GeneralizedGeometryCache(GeoServer geoServer) {
+        configure(geoServer.getGlobal());
+        geoServer.getCatalog().addListener(this);
+        geoServer.addListener(
+                new ConfigurationListenerAdapter() {
+                    public void handleGlobalChange(
+                            GeoServerInfo global,
+                            List<String> propertyNames,
+                            List<Object> oldValues,
+                            List<Object> newValues) {
+                        configure(global);
+                    }
+
+                    public void reloaded() {
+                        invalidateAll();
+                        configure(geoServer.getGlobal());
+                    }
+                });
+    }
+
+    /** For testing only */
+    GeneralizedGeometryCache(long maxWeight) {
+        configure(maxWeight);
+    }
+
+    /** Sets up the cache bounds from the global settings metadata */
+    void configure(GeoServerInfo global) {
+        long maxWeight = MAX_WEIGHT_DEFAULT;
+        MetadataMap metadata = global != null ? global.getMetadata() : null;
+        if (metadata != null) {
+            Long weight = metadata.get(MAX_WEIGHT_KEY, Long.class);
+            if (weight != null && weight >= 0) {
+                maxWeight = weight;
+            }
+        }
+        configure(maxWeight);
+    }
+
+    private synchronized void configure(long maxWeight) {
+        if (maxWeight == this.maxWeight) {
+            return;
+        }
+        LOGGER.config("Vector tiles geometry cache max weight set to " + maxWeight + " bytes");
+        this.maxWeight = maxWeight;
+        if (maxWeight > 0) {
+            this.cache =
+                    CacheBuilder.newBuilder()
+                            .recordStats()
+                            .maximumWeight(maxWeight)
+                            .weigher((GeometryKey k, Geometry g) -> weight(g))
+                            .build();
+        } else {
+            this.cache = null;
+        }
+    }
+
+    static int weight(Geometry geometry) {
+        return ENTRY_OVERHEAD + geometry.getNumPoints() * 2 * Double.BYTES;
+    }
+
+    /** Returns true if the cache is enabled */
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /** Snaps a generalization distance to the zoom level key */
+    static int getZoomKey(double distance) {
+        return (int) Math.round(Math.log(distance) / Math.log(2) * ZOOM_STEPS);
+    }
+
+    /** Returns the generalization distance of a zoom level key */
+    static double getDistance(int zoomKey) {
+        return Math.pow(2, zoomKey / (double) ZOOM_STEPS);
+    }
+
+    /**
+     * Returns a view of the cache for the geometries of a layer, transformed to the given CRS and
+     * generalized with the given distance, or null if the cache is disabled
+     *
+     * @param typeName the qualified name of the feature type, layers with the same local name in
+     *     different namespaces do not share their entries
+     */
+    public LayerCache getLayerCache(
+            Name typeName, CoordinateReferenceSystem targetCrs, double distance) {
+        Cache<GeometryKey, Geometry> cache = this.cache;
+        if (cache == null || !(distance > 0) || Double.isInfinite(distance)) {
+            return null;
+        }
+        Name layer = normalize(typeName);
+        long generation = generations.computeIfAbsent(layer, l -> new AtomicLong()).get();
+        return new LayerCache(
+                cache, new LayerKey(layer, generation, targetCrs, getZoomKey(distance)));
+    }
+
+    /** Drops the geometries of a layer */
+    public void invalidate(Name typeName) {
+        Name layer = normalize(typeName);
+        generations.computeIfAbsent(layer, l -> new AtomicLong()).incrementAndGet();
+        Cache<GeometryKey, Geometry> cache = this.cache;
+        if (cache != null) {
+            cache.asMap().keySet().removeIf(k -> k.layer.layer.equals(layer));
+        }
+    }
+
+    /** Makes sure names coming from different sources (e.g., QName vs Name) compare equal */
+    static Name normalize(Name name) {
+        String ns = name.getNamespaceURI();
+        return new NameImpl(ns == null || ns.isEmpty() ? null : ns, name.getLocalPart());
+    }
+
+    /** Drops all the geometries */
+    public void invalidateAll() {
+        generations.values().forEach(AtomicLong::incrementAndGet);
+        Cache<GeometryKey, Geometry> cache = this.cache;
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    /** Returns the hit, miss and eviction statistics of the cache, or null if disabled */
+    public CacheStats getStatistics() {
+        Cache<GeometryKey, Geometry> cache = this.cache;
+        return cache != null ? cache.stats() : null;
+    }
+
+    /** Returns the number of geometries in the cache */
+    public long size() {
+        Cache<GeometryKey, Geometry> cache = this.cache;
+        return cache != null ? cache.size() : 0;
+    }
+
+    @Override
+    public void dataStoreChange(TransactionEvent event) throws WFSException {
+        QName layerName = event.getLayerName();
+        if (layerName != null) {
+            invalidate(new NameImpl(layerName.getNamespaceURI(), layerName.getLocalPart()));
+        } else {
+            invalidateAll();
+        }
+    }
+
+    @Override
+    public void handleAddEvent(CatalogAddEvent event) throws CatalogException {
+        // nothing to do
+    }
+
+    @Override
+    public void handleRemoveEvent(CatalogRemoveEvent event) throws CatalogException {
+        invalidateAll();
+    }
+
+    @Override
+    public void handleModifyEvent(CatalogModifyEvent event) throws CatalogException {
+        // nothing to do, wait for the post modify
+    }
+
+    @Override
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) throws CatalogException {
+        invalidateAll();
+    }
+
+    @Override
+    public void reloaded() {
+        invalidateAll();
+    }
+
+    @Override
+    public void onReset() {
+        // data might have changed in the meantime
+        invalidateAll();
+    }
+
+    @Override
+    public void onDispose() {
+        invalidateAll();
+    }
+
+    @Override
+    public void beforeReload() {
+        // nothing to do
+    }
+
+    @Override
+    public void onReload() {
+        invalidateAll();
+    }
+
+    /** The geometries of a layer, in a target CRS, for a zoom level */
+    public static class LayerCache {
+
+        private final Cache<GeometryKey, Geometry> cache;
+
+        private final LayerKey layer;
+
+        LayerCache(Cache<GeometryKey, Geometry> cache, LayerKey layer) {
+            this.cache = cache;
+            this.layer = layer;
+        }
+
+        /** The generalization distance to be used for the geometries of this zoom level */
+        public double getDistance() {
+            return GeneralizedGeometryCache.getDistance(layer.zoomKey);
+        }
+
+        /** Returns the cached geometry of the feature, computing it if missing */
+        public Geometry get(String featureId, Callable<Geometry> loader) throws Exception {
+            try {
+                return cache.get(new GeometryKey(layer, featureId), loader);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof Exception ? (Exception) cause : e;
+            }
+        }
+    }
+
+    static final class LayerKey {
+        final Name layer;
+
+        final long generation;
+
+        final CoordinateReferenceSystem crs;
+
+        final int zoomKey;
+
+        LayerKey(Name layer, long generation, CoordinateReferenceSystem crs, int zoomKey) {
+            this.layer = layer;
+            this.generation = generation;
+            this.crs = crs;
+            this.zoomKey = zoomKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            LayerKey that = (LayerKey) o;
+            return generation == that.generation
+                    && zoomKey == that.zoomKey
+                    && layer.equals(that.layer)
+                    && Objects.equals(crs, that.crs);
+        }
+
+        @Override
+        public int hashCode() {
+            // the CRS is left out, its hash code is expensive to compute
+            return Objects.hash(layer, generation, zoomKey);
+        }
+    }
+
+    static final class GeometryKey {
+        final LayerKey layer;
+
+        final String featureId;
+
+        GeometryKey(LayerKey layer, String featureId) {
+            this.layer = layer;
+            this.featureId = featureId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            GeometryKey that = (GeometryKey) o;
+            return featureId.equals(that.featureId) && layer.equals(that.layer);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * layer.hashCode() + featureId.hashCode();
+        }
+    }
+}
@@ -23,6 +23,11 @@ public abstract class Pipeline {
                     return geom;
                 }
 
+                @Override
+                final Geometry execute(Geometry geom, Pipeline stop) {
+                    return geom;
+                }
+
                 @Override
                 protected final Geometry _run(Geometry geom) {
                     throw new UnsupportedOperationException();
@@ -57,6 +62,51 @@ public abstract class Pipeline {
         return next.execute(g);
     }
 
+    /**
+     * Execute the pipeline up to, and excluding, the given step.
+     *
+     * @param geom
+     * @param stop The first step not to be executed
+     * @return
+     * @throws Exception
+     */
+    Geometry execute(Geometry geom, Pipeline stop) throws Exception {
+        if (this == stop) {
+            return geom;
+        }
+        Geometry g = _run(geom);
+        if (g == null || g.isEmpty()) {
+            return EMPTY;
+        }
+        return next.execute(g, stop);
+    }
+
+    /**
+     * Returns the last part of the pipeline, made of steps that can run concurrently, or {@link
+     * #END} if the last step cannot.
+     *
+     * @return
+     */
+    Pipeline getConcurrentTail() {
+        Pipeline tail = this;
+        for (Pipeline step = this; step != END; step = step.next) {
+            if (!step.isConcurrent()) {
+                tail = step.next;
+            }
+        }
+        return tail;
+    }
+
+    /**
+     * Whether this step can process different geometries concurrently, and in any order. Steps
+     * keeping state across geometries must return false.
+     *
+     * @return
+     */
+    protected boolean isConcurrent() {
+        return true;
+    }
+
     /**
      * Implementation of the pipeline. A unary operation on a geometry.
      *
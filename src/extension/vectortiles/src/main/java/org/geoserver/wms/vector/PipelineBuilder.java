@@ -87,6 +87,16 @@ public class PipelineBuilder {
         this.context = context;
     }
 
+    /**
+     * Returns a new builder sharing the context of this one, to build a separate pipeline for the
+     * same tile
+     *
+     * @return
+     */
+    public PipelineBuilder fork() {
+        return new PipelineBuilder(context);
+    }
+
     /**
      * @param renderingArea The extent of the tile in target CRS
      * @param paintArea The extent of the tile in screen/pixel coordinates
@@ -255,6 +265,12 @@ public class PipelineBuilder {
             }
             return preProcessed;
         }
+
+        /** The screen map makes the result depend on the geometries seen before */
+        @Override
+        protected boolean isConcurrent() {
+            return false;
+        }
     }
 
     /**
@@ -292,6 +308,44 @@ public class PipelineBuilder {
         return this;
     }
 
+    /**
+     * The simplification tolerance, expressed in the target CRS
+     *
+     * @param isTransformToScreenCoordinates Use screen coordinate space simplification tolerance
+     * @return
+     */
+    public double getTargetSimplificationDistance(boolean isTransformToScreenCoordinates) {
+        double distance = context.targetCRSSimplificationDistance;
+        return isTransformToScreenCoordinates ? distance * PIXEL_BASE_SAMPLE_SIZE : distance;
+    }
+
+    /**
+     * Transform from source CRS to target, and simplify in the target CRS with the given
+     * tolerance. The result does not depend on the tile, only on the tolerance, so it can be
+     * shared among the tiles of a zoom level.
+     *
+     * @param distanceTolerance The simplification tolerance in the target CRS
+     * @return
+     */
+    public PipelineBuilder generalize(double distanceTolerance) {
+        addLast(new Transform(context.sourceToTargetCrs));
+        addLast(new Simplify(distanceTolerance));
+        return this;
+    }
+
+    /**
+     * Transform from target CRS to screen coordinates
+     *
+     * @param transformToScreenCoordinates Does nothing if false
+     * @return
+     */
+    public PipelineBuilder targetToScreen(boolean transformToScreenCoordinates) {
+        if (transformToScreenCoordinates) {
+            addLast(new Transform(context.targetToScreen));
+        }
+        return this;
+    }
+
     /**
      * Clip to the area of the tile plus its gutter
      *
@@ -37,4 +37,10 @@ public interface VectorTileBuilder {
      * @throws IOException
      */
     WebMap build(WMSMapContent mapContent) throws IOException;
+
+    /**
+     * Releases the resources held by the builder. Called once the tile has been built, or when
+     * building it failed
+     */
+    default void dispose() {}
 }
@@ -11,10 +11,15 @@ import static org.geotools.renderer.lite.VectorMapRenderUtils.getStyleQuery;
 import com.google.common.base.Stopwatch;
 import java.awt.Rectangle;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.annotation.Nullable;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wms.MapProducerCapabilities;
 import org.geoserver.wms.WMSMapContent;
@@ -27,6 +32,8 @@ import org.geotools.feature.FeatureIterator;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.map.Layer;
 import org.geotools.renderer.lite.VectorMapRenderUtils;
+import org.geotools.styling.FeatureTypeStyle;
+import org.geotools.styling.Style;
 import org.geotools.util.factory.Hints;
 import org.geotools.util.logging.Logging;
 import org.locationtech.jts.geom.Geometry;
@@ -45,6 +52,24 @@ public class VectorTileMapOutputFormat extends AbstractMapOutputFormat {
     /** A logger for this class. */
     private static final Logger LOGGER = Logging.getLogger(VectorTileMapOutputFormat.class);
 
+    /** Default number of features going through the pipeline together */
+    public static final int DEFAULT_PIPELINE_BATCH_SIZE = 256;
+
+    /** Threads running the pipeline, defaults to the number of processors */
+    private static final int PIPELINE_THREADS =
+            Integer.getInteger(
+                    "org.geoserver.wms.vector.pipelineThreads",
+                    Runtime.getRuntime().availableProcessors());
+
+    private static ForkJoinPool PIPELINE_POOL;
+
+    static synchronized ForkJoinPool getPipelinePool() {
+        if (PIPELINE_POOL == null) {
+            PIPELINE_POOL = new ForkJoinPool(Math.max(1, PIPELINE_THREADS));
+        }
+        return PIPELINE_POOL;
+    }
+
     private final VectorTileBuilderFactory tileBuilderFactory;
 
     private boolean clipToMapBounds;
@@ -54,6 +79,12 @@ public class VectorTileMapOutputFormat extends AbstractMapOutputFormat {
 
     private boolean transformToScreenCoordinates;
 
+    private boolean parallelPipeline = true;
+
+    private int pipelineBatchSize = DEFAULT_PIPELINE_BATCH_SIZE;
+
+    private GeneralizedGeometryCache geometryCache;
+
     public VectorTileMapOutputFormat(VectorTileBuilderFactory tileBuilderFactory) {
         super(tileBuilderFactory.getMimeType(), tileBuilderFactory.getOutputFormats());
         this.tileBuilderFactory = tileBuilderFactory;
@@ -82,6 +113,35 @@ public class VectorTileMapOutputFormat extends AbstractMapOutputFormat {
         this.transformToScreenCoordinates = useScreenCoords;
     }
 
+    /**
+     * Should the transformation, clipping and simplification of the geometries run in parallel,
+     * for layers with many features in the tile
+     *
+     * @param parallel
+     */
+    public void setParallelPipeline(boolean parallel) {
+        this.parallelPipeline = parallel;
+    }
+
+    /**
+     * Number of features going through the pipeline together, tiles with less features than this
+     * are processed serially
+     *
+     * @param batchSize
+     */
+    public void setPipelineBatchSize(int batchSize) {
+        this.pipelineBatchSize = batchSize;
+    }
+
+    /**
+     * Cache of the geometries transformed to the target CRS and generalized, used when enabled
+     *
+     * @param geometryCache
+     */
+    public void setGeometryCache(GeneralizedGeometryCache geometryCache) {
+        this.geometryCache = geometryCache;
+    }
+
     @Override
     public WebMap produceMap(final WMSMapContent mapContent) throws ServiceException, IOException {
         checkNotNull(mapContent);
@@ -103,38 +163,97 @@ public class VectorTileMapOutputFormat extends AbstractMapOutputFormat {
         VectorTileBuilder vectorTileBuilder;
         vectorTileBuilder = this.tileBuilderFactory.newBuilder(paintArea, renderingArea);
 
-        CoordinateReferenceSystem sourceCrs;
-        for (Layer layer : mapContent.layers()) {
+        try {
+            CoordinateReferenceSystem sourceCrs;
+            for (Layer layer : mapContent.layers()) {
 
-            FeatureSource<?, ?> featureSource = layer.getFeatureSource();
-            GeometryDescriptor geometryDescriptor =
-                    featureSource.getSchema().getGeometryDescriptor();
-            if (null == geometryDescriptor) {
-                continue;
-            }
+                FeatureSource<?, ?> featureSource = layer.getFeatureSource();
+                GeometryDescriptor geometryDescriptor =
+                        featureSource.getSchema().getGeometryDescriptor();
+                if (null == geometryDescriptor) {
+                    continue;
+                }
 
-            sourceCrs = geometryDescriptor.getType().getCoordinateReferenceSystem();
-            int buffer =
-                    VectorMapRenderUtils.getComputedBuffer(
-                            mapContent.getBuffer(),
-                            VectorMapRenderUtils.getFeatureStyles(
-                                    layer,
-                                    paintArea,
-                                    VectorMapRenderUtils.getMapScale(mapContent, renderingArea),
-                                    (FeatureType) featureSource.getSchema()));
-            Pipeline pipeline =
-                    getPipeline(mapContent, renderingArea, paintArea, sourceCrs, buffer);
+                sourceCrs = geometryDescriptor.getType().getCoordinateReferenceSystem();
+                int buffer =
+                        VectorMapRenderUtils.getComputedBuffer(
+                                mapContent.getBuffer(),
+                                VectorMapRenderUtils.getFeatureStyles(
+                                        layer,
+                                        paintArea,
+                                        VectorMapRenderUtils.getMapScale(mapContent, renderingArea),
+                                        (FeatureType) featureSource.getSchema()));
+                Query query = getStyleQuery(layer, mapContent);
+                query.getHints().remove(Hints.SCREENMAP);
+
+                FeatureCollection<?, ?> features = featureSource.getFeatures(query);
+
+                if (geometryCache != null
+                        && geometryCache.isEnabled()
+                        && isCacheable(layer, query)) {
+                    PipelineBuilder builder =
+                            getPipelineBuilder(renderingArea, paintArea, sourceCrs, buffer);
+                    GeneralizedGeometryCache.LayerCache layerCache =
+                            geometryCache.getLayerCache(
+                                    featureSource.getSchema().getName(),
+                                    renderingArea.getCoordinateReferenceSystem(),
+                                    builder.getTargetSimplificationDistance(
+                                            transformToScreenCoordinates));
+                    if (layerCache != null) {
+                        run(
+                                features,
+                                builder,
+                                layerCache,
+                                geometryDescriptor,
+                                vectorTileBuilder,
+                                layer);
+                        continue;
+                    }
+                }
 
-            Query query = getStyleQuery(layer, mapContent);
-            query.getHints().remove(Hints.SCREENMAP);
+                Pipeline pipeline =
+                        getPipeline(mapContent, renderingArea, paintArea, sourceCrs, buffer);
+                run(features, pipeline, geometryDescriptor, vectorTileBuilder, layer);
+            }
 
-            FeatureCollection<?, ?> features = featureSource.getFeatures(query);
+            return vectorTileBuilder.build(mapContent);
+        } finally {
+            // releases the temporary resources, also when building the tile failed
+            vectorTileBuilder.dispose();
+        }
+    }
 
-            run(features, pipeline, geometryDescriptor, vectorTileBuilder, layer);
+    /**
+     * Returns true if the geometries returned by the query depend only on the layer and the feature
+     * id, and can thus be looked up in the geometry cache
+     */
+    static boolean isCacheable(Layer layer, Query query) {
+        // SQL views parameters and feature versions change the geometries behind the same ids
+        if (hasViewParams(query) || hasViewParams(layer.getQuery())) {
+            return false;
         }
+        if (query.getVersion() != null
+                || (layer.getQuery() != null && layer.getQuery().getVersion() != null)) {
+            return false;
+        }
+        // rendering transformations generate their own features
+        Style style = layer.getStyle();
+        if (style != null) {
+            for (FeatureTypeStyle fts : style.featureTypeStyles()) {
+                if (fts.getTransformation() != null) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
 
-        WebMap map = vectorTileBuilder.build(mapContent);
-        return map;
+    private static boolean hasViewParams(Query query) {
+        if (query == null || query.getHints() == null) {
+            return false;
+        }
+        Object params = query.getHints().get(Hints.VIRTUAL_TABLE_PARAMETERS);
+        return params != null && !(params instanceof Map && ((Map<?, ?>) params).isEmpty());
     }
 
     protected Pipeline getPipeline(
@@ -143,23 +262,28 @@ public class VectorTileMapOutputFormat extends AbstractMapOutputFormat {
             final Rectangle paintArea,
             CoordinateReferenceSystem sourceCrs,
             int buffer) {
-        Pipeline pipeline;
+        final PipelineBuilder builder =
+                getPipelineBuilder(renderingArea, paintArea, sourceCrs, buffer);
+
+        return builder.preprocess()
+                .transform(transformToScreenCoordinates)
+                .clip(clipToMapBounds, transformToScreenCoordinates)
+                .simplify(transformToScreenCoordinates)
+                .collapseCollections()
+                .build();
+    }
+
+    private PipelineBuilder getPipelineBuilder(
+            final ReferencedEnvelope renderingArea,
+            final Rectangle paintArea,
+            CoordinateReferenceSystem sourceCrs,
+            int buffer) {
         try {
-            final PipelineBuilder builder =
-                    PipelineBuilder.newBuilder(
-                            renderingArea, paintArea, sourceCrs, overSamplingFactor, buffer);
-
-            pipeline =
-                    builder.preprocess()
-                            .transform(transformToScreenCoordinates)
-                            .clip(clipToMapBounds, transformToScreenCoordinates)
-                            .simplify(transformToScreenCoordinates)
-                            .collapseCollections()
-                            .build();
+            return PipelineBuilder.newBuilder(
+                    renderingArea, paintArea, sourceCrs, overSamplingFactor, buffer);
         } catch (FactoryException e) {
             throw new ServiceException(e);
         }
-        return pipeline;
     }
 
     private Map<String, Object> getProperties(ComplexAttribute feature) {
@@ -188,40 +312,98 @@ public class VectorTileMapOutputFormat extends AbstractMapOutputFormat {
             GeometryDescriptor geometryDescriptor,
             VectorTileBuilder vectorTileBuilder,
             Layer layer) {
+        // the steps before the tail keep state, and run here in feature order
+        Pipeline concurrentTail = pipeline.getConcurrentTail();
+        FeatureStep step = null;
+        if (concurrentTail != Pipeline.END) {
+            step = (feature, geometry) -> concurrentTail.execute(geometry);
+        }
+        run(features, pipeline, concurrentTail, step, geometryDescriptor, vectorTileBuilder, layer);
+    }
+
+    /**
+     * Runs the pipeline looking up the generalized geometries in the cache. Geometries that have
+     * been altered by the preprocessing (e.g., cut by the projection handler, or replaced by the
+     * screen map) are generalized every time, as they depend on the tile.
+     */
+    void run(
+            FeatureCollection<?, ?> features,
+            PipelineBuilder builder,
+            GeneralizedGeometryCache.LayerCache layerCache,
+            GeometryDescriptor geometryDescriptor,
+            VectorTileBuilder vectorTileBuilder,
+            Layer layer) {
+        Pipeline preprocess = builder.fork().preprocess().build();
+        Pipeline generalize = builder.fork().generalize(layerCache.getDistance()).build();
+        Pipeline finish =
+                builder.fork()
+                        .targetToScreen(transformToScreenCoordinates)
+                        .clip(clipToMapBounds, transformToScreenCoordinates)
+                        .collapseCollections()
+                        .build();
+        FeatureStep step =
+                (feature, geometry) -> {
+                    Geometry generalized;
+                    if (geometry == feature.getDefaultGeometryProperty().getValue()) {
+                        String featureId = feature.getIdentifier().toString();
+                        generalized = layerCache.get(featureId, () -> generalize.execute(geometry));
+                    } else {
+                        generalized = generalize.execute(geometry);
+                    }
+                    if (generalized == null || generalized.isEmpty()) {
+                        return null;
+                    }
+                    return finish.execute(generalized);
+                };
+        run(features, preprocess, Pipeline.END, step, geometryDescriptor, vectorTileBuilder, layer);
+    }
+
+    /**
+     * Runs the serial part of the pipeline, up to {@code stop}, on each feature, and then the
+     * concurrent step, if any, in batches
+     */
+    private void run(
+            FeatureCollection<?, ?> features,
+            Pipeline pipeline,
+            Pipeline stop,
+            @Nullable FeatureStep step,
+            GeometryDescriptor geometryDescriptor,
+            VectorTileBuilder vectorTileBuilder,
+            Layer layer) {
         Stopwatch sw = Stopwatch.createStarted();
         int count = 0;
         int total = 0;
         Feature feature;
 
+        int batchSize = Math.max(1, pipelineBatchSize);
+        List<PendingFeature> batch = new ArrayList<>();
+        final String geometryName = geometryDescriptor.getName().getLocalPart();
+
         try (FeatureIterator<?> it = features.features()) {
             while (it.hasNext()) {
                 feature = it.next();
                 total++;
                 Geometry originalGeom;
-                Geometry finalGeom;
+                Geometry preparedGeom;
 
                 originalGeom = (Geometry) feature.getDefaultGeometryProperty().getValue();
                 try {
-                    finalGeom = pipeline.execute(originalGeom);
+                    preparedGeom = pipeline.execute(originalGeom, stop);
                 } catch (Exception processingException) {
-                    processingException.printStackTrace();
+                    LOGGER.log(Level.FINE, "Failed to process geometry", processingException);
                     continue;
                 }
-                if (finalGeom.isEmpty()) {
+                if (preparedGeom == null || preparedGeom.isEmpty()) {
                     continue;
                 }
-
-                final String layerName = feature.getName().getLocalPart();
-                final String featureId = feature.getIdentifier().toString();
-                final String geometryName = geometryDescriptor.getName().getLocalPart();
-
-                final Map<String, Object> properties = getProperties(feature);
-
-                vectorTileBuilder.addFeature(
-                        layerName, featureId, geometryName, finalGeom, properties);
-                count++;
+                batch.add(new PendingFeature(feature, preparedGeom));
+                if (batch.size() >= batchSize) {
+                    count += addFeatures(batch, step, geometryName, vectorTileBuilder);
+                    batch.clear();
+                }
             }
         }
+        count += addFeatures(batch, step, geometryName, vectorTileBuilder);
         sw.stop();
         if (LOGGER.isLoggable(Level.FINE)) {
             String msg =
@@ -233,6 +415,108 @@ public class VectorTileMapOutputFormat extends AbstractMapOutputFormat {
         }
     }
 
+    /**
+     * Runs the concurrent step on a batch of features, in parallel if the batch is large enough,
+     * and then adds them to the tile in their original order
+     */
+    private int addFeatures(
+            List<PendingFeature> batch,
+            @Nullable FeatureStep step,
+            String geometryName,
+            VectorTileBuilder vectorTileBuilder) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        if (step != null) {
+            if (parallelPipeline && batch.size() >= pipelineBatchSize) {
+                getPipelinePool().invoke(new PipelineTask(batch, 0, batch.size(), step));
+            } else {
+                for (PendingFeature pending : batch) {
+                    pending.process(step);
+                }
+            }
+        }
+        int count = 0;
+        for (PendingFeature pending : batch) {
+            Geometry finalGeom = pending.geometry;
+            if (finalGeom == null || finalGeom.isEmpty()) {
+                continue;
+            }
+            Feature feature = pending.feature;
+            final String layerName = feature.getName().getLocalPart();
+            final String featureId = feature.getIdentifier().toString();
+
+            final Map<String, Object> properties = getProperties(feature);
+
+            vectorTileBuilder.addFeature(layerName, featureId, geometryName, finalGeom, properties);
+            count++;
+        }
+        return count;
+    }
+
+    /** The part of the pipeline that can run concurrently on different features */
+    @FunctionalInterface
+    interface FeatureStep {
+        Geometry apply(Feature feature, Geometry geometry) throws Exception;
+    }
+
+    /** A feature whose geometry still needs to go through the concurrent part of the pipeline */
+    static final class PendingFeature {
+
+        final Feature feature;
+
+        Geometry geometry;
+
+        PendingFeature(Feature feature, Geometry geometry) {
+            this.feature = feature;
+            this.geometry = geometry;
+        }
+
+        void process(FeatureStep step) {
+            try {
+                geometry = step.apply(feature, geometry);
+            } catch (Exception processingException) {
+                LOGGER.log(Level.FINE, "Failed to process geometry", processingException);
+                geometry = null;
+            }
+        }
+    }
+
+    /** Splits a batch of features until the slices are small enough to be processed directly */
+    static final class PipelineTask extends RecursiveAction {
+
+        static final int SLICE_SIZE = 16;
+
+        final List<PendingFeature> features;
+
+        final int from;
+
+        final int to;
+
+        final FeatureStep step;
+
+        PipelineTask(List<PendingFeature> features, int from, int to, FeatureStep step) {
+            this.features = features;
+            this.from = from;
+            this.to = to;
+            this.step = step;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SLICE_SIZE) {
+                for (int i = from; i < to; i++) {
+                    features.get(i).process(step);
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(
+                        new PipelineTask(features, from, mid, step),
+                        new PipelineTask(features, mid, to, step));
+            }
+        }
+    }
+
     /** @return {@code null}, not a raster format. */
     @Override
     public MapProducerCapabilities getCapabilities(String format) {
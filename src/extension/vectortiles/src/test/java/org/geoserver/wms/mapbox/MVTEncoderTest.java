@@ -0,0 +1,126 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.mapbox;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.List;
+import java.util.Map;
+import no.ecc.vectortile.VectorTileDecoder;
+import org.junit.Test;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKTReader;
+
+/** Checks the encoder against the examples of the Mapbox Vector Tile specification */
+public class MVTEncoderTest {
+
+    private Geometry geom(String wkt) throws ParseException {
+        return new WKTReader().read(wkt);
+    }
+
+    private int[] commands(String wkt) throws ParseException {
+        return new MVTEncoder(4096).getCommands(geom(wkt));
+    }
+
+    @Test
+    public void testPoints() throws Exception {
+        assertArrayEquals(new int[] {9, 50, 34}, commands("POINT(25 17)"));
+        assertArrayEquals(new int[] {17, 10, 14, 3, 9}, commands("MULTIPOINT((5 7), (3 2))"));
+    }
+
+    @Test
+    public void testLines() throws Exception {
+        assertArrayEquals(
+                new int[] {9, 4, 4, 18, 0, 16, 16, 0}, commands("LINESTRING(2 2, 2 10, 10 10)"));
+        assertArrayEquals(
+                new int[] {9, 4, 4, 18, 0, 16, 16, 0, 9, 17, 17, 10, 4, 8},
+                commands("MULTILINESTRING((2 2, 2 10, 10 10), (1 1, 3 5))"));
+        // collapses to a single point once rounded
+        assertArrayEquals(new int[0], commands("LINESTRING(0 0, 0.1 0.1)"));
+    }
+
+    @Test
+    public void testPolygons() throws Exception {
+        assertArrayEquals(
+                new int[] {9, 6, 12, 18, 10, 12, 24, 44, 15},
+                commands("POLYGON((3 6, 8 12, 20 34, 3 6))"));
+        // same ring in the opposite direction, gets reversed
+        assertArrayEquals(
+                new int[] {9, 16, 24, 18, 24, 44, 33, 55, 15},
+                commands("POLYGON((3 6, 20 34, 8 12, 3 6))"));
+        assertArrayEquals(
+                new int[] {
+                    9, 0, 0, 26, 20, 0, 0, 20, 19, 0, 15, 9, 22, 2, 26, 18, 0, 0, 18, 17, 0, 15, 9,
+                    4, 13, 26, 0, 8, 8, 0, 0, 7, 15
+                },
+                commands(
+                        "MULTIPOLYGON(((0 0, 10 0, 10 10, 0 10, 0 0)), "
+                                + "((11 11, 20 11, 20 20, 11 20, 11 11), "
+                                + "(13 13, 13 17, 17 17, 17 13, 13 13)))"));
+        // collapses once rounded
+        assertArrayEquals(new int[0], commands("POLYGON((0 0, 0.1 0.1, 0.2 0, 0 0))"));
+    }
+
+    @Test
+    public void testAttributes() throws Exception {
+        MVTEncoder encoder = new MVTEncoder(256);
+        Map<String, Object> attributes =
+                ImmutableMap.of("s", "abc", "i", 42, "l", -7L, "d", 1.5, "b", true);
+        encoder.addFeature("layer", 1, attributes, geom("POINT(1 1)"));
+        encoder.addFeature("layer", 2, attributes, geom("POINT(2 2)"));
+
+        VectorTileDecoder decoder = new VectorTileDecoder();
+        decoder.setAutoScale(false);
+        List<VectorTileDecoder.Feature> features = decoder.decode(encoder.encode()).asList();
+        assertEquals(2, features.size());
+        for (VectorTileDecoder.Feature feature : features) {
+            assertEquals("layer", feature.getLayerName());
+            Map<String, Object> decoded = feature.getAttributes();
+            assertEquals("abc", decoded.get("s"));
+            assertEquals(42L, decoded.get("i"));
+            assertEquals(-7L, decoded.get("l"));
+            assertEquals(1.5, decoded.get("d"));
+            assertEquals(true, decoded.get("b"));
+        }
+        assertEquals(1, features.get(0).getId());
+        assertEquals(2, features.get(1).getId());
+    }
+
+    @Test
+    public void testManyKeys() throws Exception {
+        MVTEncoder encoder = new MVTEncoder(256);
+        for (int i = 0; i < 100; i++) {
+            encoder.addFeature("layer", i, ImmutableMap.of("k" + (i % 40), i), geom("POINT(1 1)"));
+        }
+
+        VectorTileDecoder decoder = new VectorTileDecoder();
+        decoder.setAutoScale(false);
+        List<VectorTileDecoder.Feature> features = decoder.decode(encoder.encode()).asList();
+        assertEquals(100, features.size());
+        for (int i = 0; i < 100; i++) {
+            Map<String, Object> attributes = features.get(i).getAttributes();
+            assertEquals(1, attributes.size());
+            assertEquals((long) i, attributes.get("k" + (i % 40)));
+        }
+    }
+
+    @Test
+    public void testPolygonRoundTrip() throws Exception {
+        Geometry polygon =
+                geom("POLYGON((0 0, 0 100, 100 100, 100 0, 0 0), (10 10, 20 10, 20 20, 10 10))");
+        MVTEncoder encoder = new MVTEncoder(256);
+        encoder.addFeature("layer", 1, ImmutableMap.of(), polygon);
+
+        VectorTileDecoder decoder = new VectorTileDecoder();
+        decoder.setAutoScale(false);
+        List<VectorTileDecoder.Feature> features = decoder.decode(encoder.encode()).asList();
+        assertEquals(1, features.size());
+        assertTrue(polygon.equalsTopo(features.get(0).getGeometry()));
+    }
+}
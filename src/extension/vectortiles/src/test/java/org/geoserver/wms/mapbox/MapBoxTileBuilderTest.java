@@ -177,6 +177,16 @@ public class MapBoxTileBuilderTest {
         assertEquals(0, features.get("Lines").get(1).getId());
     }
 
+    @Test
+    public void testNumericId() {
+        assertEquals(27, MapBoxTileBuilder.getNumericId("Lines.27"));
+        assertEquals(5, MapBoxTileBuilder.getNumericId("ns.Lines.5"));
+        assertEquals(-1, MapBoxTileBuilder.getNumericId("Lines.a27"));
+        assertEquals(-1, MapBoxTileBuilder.getNumericId("Lines."));
+        assertEquals(-1, MapBoxTileBuilder.getNumericId("an_id"));
+        assertEquals(-1, MapBoxTileBuilder.getNumericId("Lines.12345678901234567890"));
+    }
+
     private MapBoxTileBuilder tileBuilder(int width, int height) {
         MapBoxTileBuilderFactory builderFact = new MapBoxTileBuilderFactory();
         Rectangle screenSize = new Rectangle(width, height);
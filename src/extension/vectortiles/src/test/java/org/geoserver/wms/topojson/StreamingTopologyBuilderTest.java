@@ -0,0 +1,190 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.topojson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.awt.Rectangle;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import org.geoserver.wms.WMSMapContent;
+import org.geoserver.wms.map.RawMap;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.Test;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKTReader;
+
+public class StreamingTopologyBuilderTest {
+
+    private Geometry geom(String wkt) throws ParseException {
+        return new WKTReader().read(wkt);
+    }
+
+    private JsonObject build(StreamingTopologyBuilder builder) throws Exception {
+        RawMap map = builder.build(mock(WMSMapContent.class));
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        map.writeTo(bos);
+        return new JsonParser().parse(bos.toString("UTF-8")).getAsJsonObject();
+    }
+
+    private StreamingTopologyBuilder builder() {
+        ReferencedEnvelope mapArea =
+                new ReferencedEnvelope(0, 256, 0, 256, DefaultGeographicCRS.WGS84);
+        return new StreamingTopologyBuilder(new Rectangle(256, 256), mapArea);
+    }
+
+    @Test
+    public void testTopology() throws Exception {
+        StreamingTopologyBuilder builder = builder();
+        builder.addFeature(
+                "lines",
+                "lines.1",
+                "geom",
+                geom("LINESTRING(0 0, 10.26 0, 10.26 10)"),
+                ImmutableMap.of("name", "first", "value", 1.0));
+        builder.addFeature(
+                "points",
+                "points.1",
+                "geom",
+                geom("POINT(5 5)"),
+                ImmutableMap.of("flag", true, "nested", ImmutableMap.of("a", 1)));
+        builder.addFeature(
+                "lines",
+                "lines.2",
+                "geom",
+                geom("MULTILINESTRING((0 0, 0 10), (20 20, 30 30))"),
+                Collections.emptyMap());
+
+        JsonObject topology = build(builder);
+        assertEquals("Topology", topology.get("type").getAsString());
+        assertEquals(3, topology.get("count").getAsInt());
+        assertTrue(topology.has("transform"));
+
+        // quantized to a tenth of pixel, and delta encoded
+        JsonArray arcs = topology.getAsJsonArray("arcs");
+        assertEquals(3, arcs.size());
+        assertEquals("[[0,0],[10.3,0],[0,10]]", arcs.get(0).toString());
+
+        JsonObject objects = topology.getAsJsonObject("objects");
+        JsonArray lines = objects.getAsJsonObject("lines").getAsJsonArray("geometries");
+        assertEquals(2, lines.size());
+        JsonObject first = lines.get(0).getAsJsonObject();
+        assertEquals("LineString", first.get("type").getAsString());
+        assertEquals("lines.1", first.get("id").getAsString());
+        assertEquals("first", first.getAsJsonObject("properties").get("name").getAsString());
+        assertEquals("1", first.getAsJsonObject("properties").get("value").toString());
+        assertEquals("[0]", first.get("arcs").toString());
+        JsonObject second = lines.get(1).getAsJsonObject();
+        assertEquals("MultiLineString", second.get("type").getAsString());
+        assertFalse(second.has("properties"));
+        assertEquals("[[1],[2]]", second.get("arcs").toString());
+
+        JsonArray points = objects.getAsJsonObject("points").getAsJsonArray("geometries");
+        JsonObject point = points.get(0).getAsJsonObject();
+        assertEquals("Point", point.get("type").getAsString());
+        assertEquals("[5.0,5.0]", point.get("coordinates").toString());
+        JsonObject properties = point.getAsJsonObject("properties");
+        assertTrue(properties.get("flag").getAsBoolean());
+        assertEquals(1, properties.getAsJsonObject("nested").get("a").getAsInt());
+    }
+
+    @Test
+    public void testSharedArcs() throws Exception {
+        StreamingTopologyBuilder builder = builder();
+        Geometry line = geom("LINESTRING(0 0, 10 0, 10 10)");
+        builder.addFeature("lines", "lines.1", "geom", line, Collections.emptyMap());
+        builder.addFeature("lines", "lines.2", "geom", line, Collections.emptyMap());
+        builder.addFeature("lines", "lines.3", "geom", line.reverse(), Collections.emptyMap());
+        // same once quantized
+        builder.addFeature(
+                "lines",
+                "lines.4",
+                "geom",
+                geom("LINESTRING(0.01 0, 10 0, 10 10)"),
+                Collections.emptyMap());
+
+        JsonObject topology = build(builder);
+        assertEquals(1, topology.get("count").getAsInt());
+        assertEquals(1, topology.getAsJsonArray("arcs").size());
+        JsonArray lines =
+                topology.getAsJsonObject("objects")
+                        .getAsJsonObject("lines")
+                        .getAsJsonArray("geometries");
+        assertEquals("[0]", lines.get(0).getAsJsonObject().get("arcs").toString());
+        assertEquals("[0]", lines.get(1).getAsJsonObject().get("arcs").toString());
+        // reversed arcs are referenced with the one's complement of the index
+        assertEquals("[-1]", lines.get(2).getAsJsonObject().get("arcs").toString());
+        assertEquals("[0]", lines.get(3).getAsJsonObject().get("arcs").toString());
+    }
+
+    @Test
+    public void testArcIndex() {
+        StreamingTopologyBuilder.ArcIndex index = new StreamingTopologyBuilder.ArcIndex();
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(index.put(i * 31L, i, new long[] {i, 0, i, 1}, 4));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, index.get(i * 31L, new long[] {i, 0, i, 1}, 4, false));
+            assertEquals(i, index.get(i * 31L, new long[] {i, 1, i, 0}, 4, true));
+        }
+        assertEquals(-1, index.get(-5, new long[] {0, 0, 0, 1}, 4, false));
+    }
+
+    @Test
+    public void testArcIndexCollisions() {
+        StreamingTopologyBuilder.ArcIndex index = new StreamingTopologyBuilder.ArcIndex();
+        long[] first = {0, 0, 10, 10};
+        long[] second = {5, 5, 20, 20};
+        index.put(42, 0, first, 4);
+        index.put(42, 1, second, 4);
+        // same hash, told apart by the coordinates
+        assertEquals(0, index.get(42, first, 4, false));
+        assertEquals(1, index.get(42, second, 4, false));
+        assertEquals(-1, index.get(42, new long[] {0, 0, 10, 11}, 4, false));
+        assertEquals(-1, index.get(42, first, 2, false));
+    }
+
+    @Test
+    public void testArcIndexLimit() {
+        StreamingTopologyBuilder.ArcIndex index = new StreamingTopologyBuilder.ArcIndex();
+        long[] large = new long[StreamingTopologyBuilder.ArcIndex.MAX_ORDINATES - 2];
+        assertTrue(index.put(1, 0, large, large.length));
+        // no room left, the arc is not indexed
+        assertFalse(index.put(2, 1, new long[] {0, 0, 1, 1}, 4));
+        assertEquals(-1, index.get(2, new long[] {0, 0, 1, 1}, 4, false));
+    }
+
+    @Test
+    public void testDispose() throws Exception {
+        StreamingTopologyBuilder builder = builder();
+        // enough features to spill the layer to disk
+        for (int i = 0; i < 5000; i++) {
+            builder.addFeature(
+                    "lines",
+                    "lines." + i,
+                    "geom",
+                    geom("LINESTRING(" + i + " 0, " + i + " 10)"),
+                    ImmutableMap.of("name", "feature number " + i));
+        }
+        List<File> files = builder.getTemporaryFiles();
+        assertFalse(files.isEmpty());
+        // the tile is never built, the files are removed anyways
+        builder.dispose();
+        for (File file : files) {
+            assertFalse(file.exists());
+        }
+    }
+}
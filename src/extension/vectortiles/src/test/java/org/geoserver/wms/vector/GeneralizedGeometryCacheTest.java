@@ -0,0 +1,138 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.vector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.namespace.QName;
+import org.geoserver.wfs.TransactionEvent;
+import org.geoserver.wfs.TransactionEventType;
+import org.geotools.feature.NameImpl;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.Test;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.WKTReader;
+
+public class GeneralizedGeometryCacheTest {
+
+    static final NameImpl POINTS = new NameImpl("http://test", "points");
+
+    static final NameImpl LINES = new NameImpl("http://test", "lines");
+
+    @Test
+    public void testZoomKey() {
+        // distances halve at each zoom level
+        double distance = 156543.03392804097 / 256;
+        for (int z = 0; z < 20; z++) {
+            int key = GeneralizedGeometryCache.getZoomKey(distance / Math.pow(2, z));
+            assertEquals(GeneralizedGeometryCache.getZoomKey(distance) - 4 * z, key);
+        }
+        // close distances share the same key, and the same canonical distance
+        assertEquals(
+                GeneralizedGeometryCache.getZoomKey(1.0),
+                GeneralizedGeometryCache.getZoomKey(1.05));
+        assertEquals(1.0, GeneralizedGeometryCache.getDistance(0), 0d);
+        assertEquals(0.5, GeneralizedGeometryCache.getDistance(-4), 0d);
+    }
+
+    @Test
+    public void testDisabled() {
+        GeneralizedGeometryCache cache = new GeneralizedGeometryCache(0);
+        assertFalse(cache.isEnabled());
+        assertNull(cache.getLayerCache(POINTS, DefaultGeographicCRS.WGS84, 1));
+    }
+
+    @Test
+    public void testLookup() throws Exception {
+        GeneralizedGeometryCache cache = new GeneralizedGeometryCache(1024 * 1024);
+        assertTrue(cache.isEnabled());
+        Geometry point = new WKTReader().read("POINT(1 1)");
+        AtomicInteger loads = new AtomicInteger();
+
+        GeneralizedGeometryCache.LayerCache layerCache =
+                cache.getLayerCache(POINTS, DefaultGeographicCRS.WGS84, 1);
+        assertSame(point, layerCache.get("p.1", () -> load(point, loads)));
+        assertSame(point, layerCache.get("p.1", () -> load(point, loads)));
+        assertEquals(1, loads.get());
+
+        // another zoom level
+        cache.getLayerCache(POINTS, DefaultGeographicCRS.WGS84, 2)
+                .get("p.1", () -> load(point, loads));
+        assertEquals(2, loads.get());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testTransactionInvalidatesLayer() throws Exception {
+        GeneralizedGeometryCache cache = new GeneralizedGeometryCache(1024 * 1024);
+        Geometry point = new WKTReader().read("POINT(1 1)");
+        AtomicInteger loads = new AtomicInteger();
+        cache.getLayerCache(POINTS, DefaultGeographicCRS.WGS84, 1)
+                .get("p.1", () -> load(point, loads));
+        cache.getLayerCache(LINES, DefaultGeographicCRS.WGS84, 1)
+                .get("l.1", () -> load(point, loads));
+        assertEquals(2, cache.size());
+
+        cache.dataStoreChange(
+                new TransactionEvent(
+                        TransactionEventType.POST_UPDATE,
+                        null,
+                        new QName("http://test", "points"),
+                        null));
+        assertEquals(1, cache.size());
+
+        GeneralizedGeometryCache.LayerCache layerCache =
+                cache.getLayerCache(POINTS, DefaultGeographicCRS.WGS84, 1);
+        assertNotNull(layerCache);
+        layerCache.get("p.1", () -> load(point, loads));
+        assertEquals(3, loads.get());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testSameLocalNameDifferentNamespace() throws Exception {
+        GeneralizedGeometryCache cache = new GeneralizedGeometryCache(1024 * 1024);
+        Geometry p1 = new WKTReader().read("POINT(1 1)");
+        Geometry p2 = new WKTReader().read("POINT(2 2)");
+        AtomicInteger loads = new AtomicInteger();
+        NameImpl otherPoints = new NameImpl("http://other", "points");
+
+        assertSame(
+                p1,
+                cache.getLayerCache(POINTS, DefaultGeographicCRS.WGS84, 1)
+                        .get("points.1", () -> load(p1, loads)));
+        assertSame(
+                p2,
+                cache.getLayerCache(otherPoints, DefaultGeographicCRS.WGS84, 1)
+                        .get("points.1", () -> load(p2, loads)));
+        assertEquals(2, loads.get());
+
+        // invalidation hits only the layer in the transaction namespace
+        cache.dataStoreChange(
+                new TransactionEvent(
+                        TransactionEventType.POST_UPDATE,
+                        null,
+                        new QName("http://other", "points"),
+                        null));
+        assertEquals(1, cache.size());
+        assertSame(
+                p1,
+                cache.getLayerCache(POINTS, DefaultGeographicCRS.WGS84, 1)
+                        .get("points.1", () -> load(p2, loads)));
+    }
+
+    private Geometry load(Geometry geometry, AtomicInteger loads) {
+        loads.incrementAndGet();
+        return geometry;
+    }
+}
@@ -41,6 +41,7 @@ import org.geotools.referencing.CRS;
 import org.geotools.styling.NamedLayer;
 import org.geotools.styling.Style;
 import org.geotools.styling.StyledLayerDescriptor;
+import org.geotools.util.factory.Hints;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -48,6 +49,7 @@ import org.junit.Test;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.io.ParseException;
+import org.mockito.ArgumentCaptor;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.GeometryDescriptor;
@@ -355,6 +357,98 @@ public class VectorTileMapOutputFormatTest {
                         any(Map.class));
     }
 
+    @Test
+    public void testParallelPipeline() throws Exception {
+        ReferencedEnvelope mapBounds = new ReferencedEnvelope(-90, 90, 0, 180, WGS84);
+        Rectangle renderingArea = new Rectangle(256, 256);
+
+        // serial run first, to get the expected order
+        outputFormat.setParallelPipeline(false);
+        outputFormat.produceMap(createMapContent(mapBounds, renderingArea, 32, pointLayer));
+        ArgumentCaptor<String> serialIds = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Geometry> serialGeoms = ArgumentCaptor.forClass(Geometry.class);
+        verify(tileBuilderMock, times(4))
+                .addFeature(
+                        eq("points"),
+                        serialIds.capture(),
+                        eq("geom"),
+                        serialGeoms.capture(),
+                        any(Map.class));
+
+        // then with tiny batches, all processed in parallel
+        reset(tileBuilderMock);
+        outputFormat.setParallelPipeline(true);
+        outputFormat.setPipelineBatchSize(1);
+        outputFormat.produceMap(createMapContent(mapBounds, renderingArea, 32, pointLayer));
+        ArgumentCaptor<String> parallelIds = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Geometry> parallelGeoms = ArgumentCaptor.forClass(Geometry.class);
+        verify(tileBuilderMock, times(4))
+                .addFeature(
+                        eq("points"),
+                        parallelIds.capture(),
+                        eq("geom"),
+                        parallelGeoms.capture(),
+                        any(Map.class));
+
+        assertEquals(serialIds.getAllValues(), parallelIds.getAllValues());
+        assertEquals(serialGeoms.getAllValues(), parallelGeoms.getAllValues());
+    }
+
+    @Test
+    public void testGeometryCache() throws Exception {
+        ReferencedEnvelope mapBounds = new ReferencedEnvelope(-90, 90, 0, 180, WGS84);
+        Rectangle renderingArea = new Rectangle(256, 256);
+        GeneralizedGeometryCache cache = new GeneralizedGeometryCache(1024 * 1024);
+        outputFormat.setGeometryCache(cache);
+
+        // the first run fills the cache
+        outputFormat.produceMap(createMapContent(mapBounds, renderingArea, 32, pointLayer));
+        ArgumentCaptor<String> ids = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Geometry> geoms = ArgumentCaptor.forClass(Geometry.class);
+        verify(tileBuilderMock, times(4))
+                .addFeature(
+                        eq("points"), ids.capture(), eq("geom"), geoms.capture(), any(Map.class));
+        assertEquals(4, cache.size());
+        assertEquals(0, cache.getStatistics().hitCount());
+
+        // the second one reads from it, with the same results
+        reset(tileBuilderMock);
+        outputFormat.produceMap(createMapContent(mapBounds, renderingArea, 32, pointLayer));
+        ArgumentCaptor<String> cachedIds = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Geometry> cachedGeoms = ArgumentCaptor.forClass(Geometry.class);
+        verify(tileBuilderMock, times(4))
+                .addFeature(
+                        eq("points"),
+                        cachedIds.capture(),
+                        eq("geom"),
+                        cachedGeoms.capture(),
+                        any(Map.class));
+        assertEquals(4, cache.getStatistics().hitCount());
+        assertEquals(ids.getAllValues(), cachedIds.getAllValues());
+        assertEquals(geoms.getAllValues(), cachedGeoms.getAllValues());
+    }
+
+    @Test
+    public void testGeometryCacheSkippedWithViewParams() throws Exception {
+        ReferencedEnvelope mapBounds = new ReferencedEnvelope(-90, 90, 0, 180, WGS84);
+        Rectangle renderingArea = new Rectangle(256, 256);
+        GeneralizedGeometryCache cache = new GeneralizedGeometryCache(1024 * 1024);
+        outputFormat.setGeometryCache(cache);
+
+        WMSMapContent mapContent = createMapContent(mapBounds, renderingArea, 32, pointLayer);
+        FeatureLayer layer = (FeatureLayer) mapContent.layers().get(0);
+        Query query = new Query();
+        Map<String, String> viewParams = new HashMap<>();
+        viewParams.put("year", "2019");
+        query.setHints(new Hints(Hints.VIRTUAL_TABLE_PARAMETERS, viewParams));
+        layer.setQuery(query);
+        assertFalse(VectorTileMapOutputFormat.isCacheable(layer, getStyleQuery(layer, mapContent)));
+
+        // the geometries depend on the parameters, they are not cached
+        outputFormat.produceMap(mapContent);
+        assertEquals(0, cache.size());
+    }
+
     @Test
     public void testCQLfilter() throws Exception {
         ReferencedEnvelope mapBounds = new ReferencedEnvelope(-90, 90, 0, 180, WGS84);
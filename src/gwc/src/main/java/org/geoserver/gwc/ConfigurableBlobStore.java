@@ -19,6 +19,7 @@ import java.util.logging.Logger;
 import org.geoserver.gwc.config.GWCConfig;
 import org.geoserver.gwc.layer.GeoServerTileLayer;
 import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.wms.map.SharedLabelIndex;
 import org.geotools.util.logging.Logging;
 import org.geowebcache.layer.TileLayer;
 import org.geowebcache.storage.BlobStore;
@@ -111,6 +112,8 @@ public class ConfigurableBlobStore implements BlobStore {
 
     @Override
     public boolean delete(String layerName) throws StorageException {
+        // the labels shared across the meta tiles go away with the tiles
+        SharedLabelIndex.invalidate(layerName);
         // NOTE that if the blobstore has already been configured, the user must
         // always call setConfig() for
         // setting the new configuration
@@ -133,6 +136,7 @@ public class ConfigurableBlobStore implements BlobStore {
 
     @Override
     public boolean deleteByGridsetId(String layerName, String gridSetId) throws StorageException {
+        SharedLabelIndex.invalidate(layerName);
         // Check if the blobstore has already been configured
         if (configured.get()) {
             // Increment the number of current operations
@@ -173,6 +177,7 @@ public class ConfigurableBlobStore implements BlobStore {
 
     @Override
     public boolean delete(TileRange obj) throws StorageException {
+        SharedLabelIndex.invalidate(obj.getLayerName());
         // Check if the blobstore has already been configured
         if (configured.get()) {
             // Increment the number of current operations
@@ -311,6 +316,7 @@ public class ConfigurableBlobStore implements BlobStore {
 
     @Override
     public boolean rename(String oldLayerName, String newLayerName) throws StorageException {
+        SharedLabelIndex.invalidate(oldLayerName);
         // Check if the blobstore has already been configured
         if (configured.get()) {
             // Increment the number of current operations
@@ -627,6 +633,7 @@ public class ConfigurableBlobStore implements BlobStore {
     @Override
     public boolean deleteByParameters(String layerName, Map<String, String> parameters)
             throws StorageException {
+        SharedLabelIndex.invalidate(layerName);
         // Check if the blobstore has already been configured
         if (configured.get()) {
             // Increment the number of current operations
@@ -648,6 +655,7 @@ public class ConfigurableBlobStore implements BlobStore {
     @Override
     public boolean deleteByParametersId(String layerName, String parametersId)
             throws StorageException {
+        SharedLabelIndex.invalidate(layerName);
         // Check if the blobstore has already been configured
         if (configured.get()) {
             // Increment the number of current operations
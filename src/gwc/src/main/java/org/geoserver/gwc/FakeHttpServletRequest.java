@@ -12,6 +12,7 @@ import java.security.Principal;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
@@ -57,6 +58,8 @@ class FakeHttpServletRequest implements HttpServletRequest {
 
     private Optional<HttpServletRequest> original;
 
+    private Map<String, Object> attributes = new HashMap<>();
+
     public FakeHttpServletRequest(Map<String, String> parameterMap, Cookie[] cookies) {
         this(parameterMap, cookies, null);
     }
@@ -204,11 +207,11 @@ class FakeHttpServletRequest implements HttpServletRequest {
     }
 
     public Object getAttribute(String arg0) {
-        throw new ServletDebugException();
+        return attributes.get(arg0);
     }
 
     public Enumeration getAttributeNames() {
-        throw new ServletDebugException();
+        return Collections.enumeration(attributes.keySet());
     }
 
     public String getCharacterEncoding() {
@@ -345,11 +348,11 @@ class FakeHttpServletRequest implements HttpServletRequest {
     }
 
     public void removeAttribute(String arg0) {
-        throw new ServletDebugException();
+        attributes.remove(arg0);
     }
 
     public void setAttribute(String arg0, Object arg1) {
-        throw new ServletDebugException();
+        attributes.put(arg0, arg1);
     }
 
     public void setCharacterEncoding(String arg0) throws UnsupportedEncodingException {
@@ -1394,12 +1394,31 @@ public class GWC implements DisposableBean, InitializingBean, ApplicationContext
      */
     public Resource dispatchOwsRequest(final Map<String, String> params, Cookie[] cookies)
             throws Exception {
+        return dispatchOwsRequest(params, cookies, Collections.emptyMap());
+    }
+
+    /**
+     * Dispatches a request to the GeoServer OWS {@link Dispatcher}, setting the given attributes on
+     * the HTTP request. The attributes cannot be set by external clients, so they can carry hints
+     * meant for the internal requests only
+     *
+     * @param params the KVP map of OWS parameters
+     * @param cookies
+     * @param attributes the HTTP request attributes
+     * @return an http response wrapper where to grab the raw dispatcher response from
+     */
+    public Resource dispatchOwsRequest(
+            final Map<String, String> params, Cookie[] cookies, Map<String, Object> attributes)
+            throws Exception {
 
         // If the WORKSPACE parameter is set, remove it and use it to set the workspace of the
         // request
         String workspace = params.remove(WORKSPACE_PARAM);
 
         FakeHttpServletRequest req = new FakeHttpServletRequest(params, cookies, workspace);
+        for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+            req.setAttribute(attribute.getKey(), attribute.getValue());
+        }
         FakeHttpServletResponse resp = new FakeHttpServletResponse();
 
         Request request = Dispatcher.REQUEST.get();
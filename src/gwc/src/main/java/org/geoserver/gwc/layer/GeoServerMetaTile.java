@@ -138,6 +138,22 @@ public class GeoServerMetaTile extends MetaTile {
         }
     }
 
+    /** Returns the area covered by the tiles of this meta tile, that is, without the gutter */
+    public BoundingBox getTilesBounds() {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (long[] tileIndex : getTilesGridPositions()) {
+            BoundingBox tileBounds = gridSubset.boundsFromIndex(tileIndex);
+            minX = Math.min(minX, tileBounds.getMinX());
+            minY = Math.min(minY, tileBounds.getMinY());
+            maxX = Math.max(maxX, tileBounds.getMaxX());
+            maxY = Math.max(maxY, tileBounds.getMaxY());
+        }
+        return new BoundingBox(minX, minY, maxX, maxY);
+    }
+
     /** Checks if this meta tile has a gutter, or not */
     private boolean metaHasGutter() {
         if (this.gutter == null) {
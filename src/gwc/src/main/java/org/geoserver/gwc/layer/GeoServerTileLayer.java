@@ -58,6 +58,8 @@ import org.geoserver.wms.WMS;
 import org.geoserver.wms.WebMap;
 import org.geoserver.wms.capabilities.CapabilityUtil;
 import org.geoserver.wms.capabilities.LegendSample;
+import org.geoserver.wms.map.SharedLabelIndex;
+import org.geoserver.wms.map.png.PNGJWriter;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
 import org.geotools.util.NumberRange;
@@ -578,7 +580,7 @@ public class GeoServerTileLayer extends TileLayer implements ProxyLayer {
             metaX = metaY = 1;
         }
 
-        returnTile = getMetatilingReponse(tile, true, metaX, metaY);
+        returnTile = getMetatilingReponse(tile, true, metaX, metaY, false);
 
         sendTileRequestedEvent(returnTile);
 
@@ -603,7 +605,11 @@ public class GeoServerTileLayer extends TileLayer implements ProxyLayer {
     }
 
     private ConveyorTile getMetatilingReponse(
-            ConveyorTile tile, final boolean tryCache, final int metaX, final int metaY)
+            ConveyorTile tile,
+            final boolean tryCache,
+            final int metaX,
+            final int metaY,
+            final boolean seeding)
             throws GeoWebCacheException, IOException {
 
         final GridSubset gridSubset = getGridSubset(tile.getGridSetId());
@@ -637,7 +643,7 @@ public class GeoServerTileLayer extends TileLayer implements ProxyLayer {
                 WebMap map;
                 try {
                     long requestTime = System.currentTimeMillis();
-                    map = dispatchGetMap(tile, metaTile);
+                    map = dispatchGetMap(tile, metaTile, seeding);
                     checkNotNull(map, "Did not obtain a WebMap from GeoServer's Dispatcher");
                     metaTile.setWebMap(map);
                     saveTiles(metaTile, tile, requestTime);
@@ -683,16 +689,17 @@ public class GeoServerTileLayer extends TileLayer implements ProxyLayer {
         return metaKey.toString();
     }
 
-    private WebMap dispatchGetMap(final ConveyorTile tile, final MetaTile metaTile)
+    private WebMap dispatchGetMap(
+            final ConveyorTile tile, final MetaTile metaTile, final boolean seeding)
             throws Exception {
 
-        Map<String, String> params = buildGetMap(tile, metaTile);
+        Map<String, String> params = buildGetMap(tile, metaTile, seeding);
         WebMap map;
         try {
             HttpServletRequest actualRequest = tile.servletReq;
             Cookie[] cookies = actualRequest == null ? null : actualRequest.getCookies();
 
-            GWC.get().dispatchOwsRequest(params, cookies);
+            GWC.get().dispatchOwsRequest(params, cookies, buildAttributes(metaTile));
             map = WEB_MAP.get();
             if (!(map instanceof WebMap)) {
                 throw new IllegalStateException("Expected: RenderedImageMap, got " + map);
@@ -726,7 +733,19 @@ public class GeoServerTileLayer extends TileLayer implements ProxyLayer {
         return metaTile;
     }
 
-    private Map<String, String> buildGetMap(final ConveyorTile tile, final MetaTile metaTile)
+    /** Builds the HTTP request attributes of the internal GetMap request for the meta tile */
+    private Map<String, Object> buildAttributes(MetaTile metaTile) {
+        WMS wms = getWms();
+        if (wms != null && wms.isSharedLabelIndex() && metaTile instanceof GeoServerMetaTile) {
+            // let the meta tiles know about the labels already painted by their neighbours
+            BoundingBox core = ((GeoServerMetaTile) metaTile).getTilesBounds();
+            return Collections.singletonMap(SharedLabelIndex.CORE_AREA_KEY, core.toString());
+        }
+        return Collections.emptyMap();
+    }
+
+    private Map<String, String> buildGetMap(
+            final ConveyorTile tile, final MetaTile metaTile, final boolean seeding)
             throws ParameterException {
 
         Map<String, String> params = new HashMap<String, String>();
@@ -762,9 +781,32 @@ public class GeoServerTileLayer extends TileLayer implements ProxyLayer {
         }
         params.putAll(filteredParams);
 
+        WMS wms = getWms();
+        if (seeding && wms != null && wms.isPngFastSeeding() && format.startsWith("image/png")) {
+            // seeding encodes lots of tiles nobody is waiting for, favour speed over size
+            addFormatOption(params, PNGJWriter.PROFILE, PNGJWriter.Profile.FAST.name());
+        }
         return params;
     }
 
+    /** Adds a format option, preserving the ones already in the parameters */
+    private void addFormatOption(Map<String, String> params, String key, String value) {
+        String paramName = "FORMAT_OPTIONS";
+        for (String name : params.keySet()) {
+            if (paramName.equalsIgnoreCase(name)) {
+                paramName = name;
+                break;
+            }
+        }
+        String formatOptions = params.get(paramName);
+        String option = key + ":" + value;
+        if (formatOptions == null || formatOptions.isEmpty()) {
+            params.put(paramName, option);
+        } else {
+            params.put(paramName, formatOptions + ";" + option);
+        }
+    }
+
     private boolean tryCacheFetch(ConveyorTile tile) {
         int expireCache = this.getExpireCache((int) tile.getTileIndex()[2]);
         if (expireCache != GWCVars.CACHE_DISABLE_CACHE) {
@@ -801,7 +843,7 @@ public class GeoServerTileLayer extends TileLayer implements ProxyLayer {
     @Override
     public ConveyorTile getNoncachedTile(ConveyorTile tile) throws GeoWebCacheException {
         try {
-            return getMetatilingReponse(tile, false, 1, 1);
+            return getMetatilingReponse(tile, false, 1, 1, false);
         } catch (IOException e) {
             throw new GeoWebCacheException(e);
         }
@@ -810,7 +852,7 @@ public class GeoServerTileLayer extends TileLayer implements ProxyLayer {
     @Override
     public ConveyorTile doNonMetatilingRequest(ConveyorTile tile) throws GeoWebCacheException {
         try {
-            return getMetatilingReponse(tile, true, 1, 1);
+            return getMetatilingReponse(tile, true, 1, 1, false);
         } catch (IOException e) {
             throw new GeoWebCacheException(e);
         }
@@ -838,7 +880,7 @@ public class GeoServerTileLayer extends TileLayer implements ProxyLayer {
         if (!tile.getMimeType().supportsTiling()) {
             metaX = metaY = 1;
         }
-        getMetatilingReponse(tile, tryCache, metaX, metaY);
+        getMetatilingReponse(tile, tryCache, metaX, metaY, true);
     }
 
     /** @see org.geowebcache.layer.TileLayer#getGridSubsets() */
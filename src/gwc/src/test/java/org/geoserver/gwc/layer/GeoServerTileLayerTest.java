@@ -77,6 +77,7 @@ import org.geoserver.wms.WMSMapContent;
 import org.geoserver.wms.capabilities.LegendSample;
 import org.geoserver.wms.map.RenderedImageMap;
 import org.geoserver.wms.map.RenderedImageMapResponse;
+import org.geoserver.wms.map.png.PNGJWriter;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
@@ -633,7 +634,9 @@ public class GeoServerTileLayerTest {
 
         Resource mockResult = mock(Resource.class);
         ArgumentCaptor<Map> argument = ArgumentCaptor.forClass(Map.class);
-        Mockito.when(mockGWC.dispatchOwsRequest(argument.capture(), (Cookie[]) any()))
+        Mockito.when(
+                        mockGWC.dispatchOwsRequest(
+                                argument.capture(), (Cookie[]) any(), (Map) any()))
                 .thenReturn(mockResult);
 
         BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB);
@@ -676,6 +679,62 @@ public class GeoServerTileLayerTest {
         verify(mockGWC, times(1)).getResponseEncoder(eq(mimeType), isA(RenderedImageMap.class));
     }
 
+    @Test
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void testPngFastSeeding() throws Exception {
+        ArgumentCaptor<Map> argument = ArgumentCaptor.forClass(Map.class);
+        Mockito.when(
+                        mockGWC.dispatchOwsRequest(
+                                argument.capture(), (Cookie[]) any(), (Map) any()))
+                .thenReturn(mock(Resource.class));
+
+        MimeType mimeType = MimeType.createFromFormat("image/png");
+        when(mockGWC.getResponseEncoder(eq(mimeType), (RenderedImageMap) any()))
+                .thenReturn(mock(RenderedImageMapResponse.class));
+        StorageBroker storageBroker = mock(StorageBroker.class);
+        when(storageBroker.get((TileObject) any())).thenReturn(false);
+
+        WMS wms = mock(WMS.class);
+        when(wms.isPngFastSeeding()).thenReturn(true);
+        layerInfoTileLayer = new GeoServerTileLayer(layerInfo, defaults, gridSetBroker);
+        layerInfoTileLayer.setWms(wms);
+
+        // seeding adds the fast profile to the existing format options
+        Map<String, String> parameters = Collections.singletonMap("FORMAT_OPTIONS", "dpi:180");
+        BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB);
+        GeoServerTileLayer.WEB_MAP.set(
+                new RenderedImageMap(new WMSMapContent(), image, "image/png"));
+        layerInfoTileLayer.seedTile(
+                new ConveyorTile(
+                        storageBroker,
+                        layerInfoTileLayer.getName(),
+                        "EPSG:4326",
+                        new long[] {0, 0, 0},
+                        mimeType,
+                        parameters,
+                        null,
+                        null),
+                false);
+        assertEquals(
+                "dpi:180;" + PNGJWriter.PROFILE + ":" + PNGJWriter.Profile.FAST.name(),
+                argument.getValue().get("FORMAT_OPTIONS"));
+
+        // the tiles requested by the clients are encoded as usual
+        GeoServerTileLayer.WEB_MAP.set(
+                new RenderedImageMap(new WMSMapContent(), image, "image/png"));
+        layerInfoTileLayer.getTile(
+                new ConveyorTile(
+                        storageBroker,
+                        layerInfoTileLayer.getName(),
+                        "EPSG:4326",
+                        new long[] {1, 0, 0},
+                        mimeType,
+                        parameters,
+                        new MockHttpServletRequest(),
+                        new MockHttpServletResponse()));
+        assertEquals("dpi:180", argument.getValue().get("FORMAT_OPTIONS"));
+    }
+
     @Test
     public void testGetMimeTypes() throws Exception {
 
@@ -0,0 +1,162 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.ToIntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geotools.util.logging.Logging;
+
+/**
+ * A {@link Map} backed by a Guava {@link Cache}, evicting entries once their total estimated
+ * memory footprint goes beyond a given threshold, or once they have not been accessed for a given
+ * amount of time. Used by the {@link ResourcePool} as an alternative to the soft reference based
+ * caches, which under GC pressure tend to be flushed all at once.
+ *
+ * <p>Evicted and removed entries are handed to the disposer, replaced ones are not (same as the
+ * soft reference based caches).
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class BoundedResourceCache<K, V> extends AbstractMap<K, V> {
+
+    static final Logger LOGGER = Logging.getLogger(BoundedResourceCache.class);
+
+    final String name;
+
+    final Cache<K, V> cache;
+
+    final ConcurrentMap<K, V> map;
+
+    final AtomicLong weight = new AtomicLong();
+
+    final ToIntFunction<V> weigher;
+
+    final BiConsumer<K, V> disposer;
+
+    /**
+     * Builds a new cache
+     *
+     * @param name The cache name, used for logging and statistics
+     * @param maxWeight The maximum estimated footprint of the cache, in bytes
+     * @param expireAfterAccess The number of seconds after which an entry that has not been
+     *     accessed gets evicted, or a zero or negative value to never expire entries
+     * @param weigher Estimates the memory footprint of a value, in bytes
+     * @param disposer Invoked when an entry gets evicted or removed, can be null
+     */
+    public BoundedResourceCache(
+            String name,
+            long maxWeight,
+            long expireAfterAccess,
+            ToIntFunction<V> weigher,
+            BiConsumer<K, V> disposer) {
+        this.name = name;
+        this.weigher = weigher;
+        this.disposer = disposer;
+        CacheBuilder<K, V> builder =
+                CacheBuilder.newBuilder()
+                        .recordStats()
+                        .maximumWeight(maxWeight)
+                        .weigher((Weigher<K, V>) (k, v) -> weigh(v))
+                        .removalListener((RemovalListener<K, V>) n -> onRemoval(n));
+        if (expireAfterAccess > 0) {
+            builder = builder.expireAfterAccess(expireAfterAccess, TimeUnit.SECONDS);
+        }
+        this.cache = builder.build();
+        this.map = cache.asMap();
+    }
+
+    private void onRemoval(RemovalNotification<K, V> notification) {
+        K key = notification.getKey();
+        V value = notification.getValue();
+        if (value == null) {
+            return;
+        }
+        weight.addAndGet(-weigh(value));
+        if (disposer != null && notification.getCause() != RemovalCause.REPLACED) {
+            try {
+                disposer.accept(key, value);
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Error disposing entry " + key + " of " + name, e);
+            }
+        }
+    }
+
+    private int weigh(V value) {
+        // guava requires a non negative weight
+        return Math.max(1, weigher.applyAsInt(value));
+    }
+
+    @Override
+    public V get(Object key) {
+        // going through the cache to have the hit/miss statistics tracked
+        return key == null ? null : cache.getIfPresent(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key != null && map.containsKey(key);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        V previous = map.put(key, value);
+        weight.addAndGet(weigh(value));
+        return previous;
+    }
+
+    @Override
+    public V remove(Object key) {
+        return map.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return map.entrySet();
+    }
+
+    /** Performs pending maintenance, such as evicting expired entries */
+    public void cleanUp() {
+        cache.cleanUp();
+    }
+
+    /** Returns a snapshot of the cache statistics */
+    public ResourceCacheStatistics getStatistics() {
+        CacheStats stats = cache.stats();
+        return new ResourceCacheStatistics(
+                name,
+                ResourcePool.CachePolicy.BOUNDED,
+                cache.size(),
+                weight.get(),
+                stats.hitCount(),
+                stats.missCount(),
+                stats.evictionCount());
+    }
+}
@@ -684,6 +684,18 @@ public interface CatalogFacade {
     /** @return the number of catalog objects of the requested type that match the given filter */
     public <T extends CatalogInfo> int count(final Class<T> of, final Filter filter);
 
+    /**
+     * Returns an estimate of the number of catalog objects of the requested type that match the
+     * given filter, for callers that do not need an exact figure (e.g., to size a paged listing).
+     * Implementations can override to provide a cheaper computation, the default delegates to
+     * {@link #count(Class, Filter)}.
+     *
+     * @return the estimated number of objects matching the filter
+     */
+    default <T extends CatalogInfo> int estimateCount(final Class<T> of, final Filter filter) {
+        return count(of, filter);
+    }
+
     /**
      * @return {@code true} if {@link #list} can sort objects of the given type by the given
      *     property name, {@code false} otherwise
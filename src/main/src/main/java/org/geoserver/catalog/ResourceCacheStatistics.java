@@ -0,0 +1,98 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+/**
+ * A snapshot of the usage statistics of one of the {@link ResourcePool} caches. Caches that do not
+ * track hits and misses (e.g., the ones using the {@link ResourcePool.CachePolicy#SOFT} policy)
+ * report -1 for the values they cannot compute.
+ */
+public class ResourceCacheStatistics {
+
+    final String name;
+
+    final ResourcePool.CachePolicy policy;
+
+    final long size;
+
+    final long weight;
+
+    final long hitCount;
+
+    final long missCount;
+
+    final long evictionCount;
+
+    public ResourceCacheStatistics(
+            String name,
+            ResourcePool.CachePolicy policy,
+            long size,
+            long weight,
+            long hitCount,
+            long missCount,
+            long evictionCount) {
+        this.name = name;
+        this.policy = policy;
+        this.size = size;
+        this.weight = weight;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+    }
+
+    /** The cache name, e.g. "featureTypeCache" */
+    public String getName() {
+        return name;
+    }
+
+    /** The policy used to evict entries from the cache */
+    public ResourcePool.CachePolicy getPolicy() {
+        return policy;
+    }
+
+    /** The number of entries currently in the cache */
+    public long getSize() {
+        return size;
+    }
+
+    /** The estimated memory footprint of the cache entries, in bytes */
+    public long getWeight() {
+        return weight;
+    }
+
+    /** Number of lookups that found a value in the cache */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /** Number of lookups that did not find a value in the cache */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /** Number of entries evicted due to size or time constraints */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public String toString() {
+        return "ResourceCacheStatistics [name="
+                + name
+                + ", policy="
+                + policy
+                + ", size="
+                + size
+                + ", weight="
+                + weight
+                + ", hitCount="
+                + hitCount
+                + ", missCount="
+                + missCount
+                + ", evictionCount="
+                + evictionCount
+                + "]";
+    }
+}
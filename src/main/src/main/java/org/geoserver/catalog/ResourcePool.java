@@ -107,6 +107,8 @@ import org.geotools.ows.wmts.WebMapTileServer;
 import org.geotools.ows.wmts.model.WMTSCapabilities;
 import org.geotools.ows.wmts.model.WMTSLayer;
 import org.geotools.referencing.CRS;
+import org.geotools.styling.FeatureTypeStyle;
+import org.geotools.styling.SLD;
 import org.geotools.styling.Style;
 import org.geotools.styling.StyleImpl;
 import org.geotools.styling.StyledLayerDescriptor;
@@ -199,6 +201,49 @@ public class ResourcePool {
     /** Default number of hard references */
     static int FEATURETYPE_CACHE_SIZE_DEFAULT = 100;
 
+    /**
+     * Key in the {@link org.geoserver.config.GeoServerInfo} metadata map holding the cache policy,
+     * one of the {@link CachePolicy} names
+     */
+    public static final String CACHE_POLICY_KEY = "resourcePoolCachePolicy";
+
+    /**
+     * Key in the {@link org.geoserver.config.GeoServerInfo} metadata map holding the maximum
+     * estimated memory footprint of each cache, in bytes, when using the {@link
+     * CachePolicy#BOUNDED} policy
+     */
+    public static final String CACHE_MAX_WEIGHT_KEY = "resourcePoolCacheMaxWeight";
+
+    /**
+     * Key in the {@link org.geoserver.config.GeoServerInfo} metadata map holding the number of
+     * seconds after which an unused entry is evicted, when using the {@link CachePolicy#BOUNDED}
+     * policy
+     */
+    public static final String CACHE_EXPIRE_AFTER_ACCESS_KEY = "resourcePoolCacheExpireAfterAccess";
+
+    /** Default maximum estimated memory footprint of each bounded cache (64MB) */
+    public static final long CACHE_MAX_WEIGHT_DEFAULT = 64 * 1024 * 1024;
+
+    /** Default expiration time of the bounded caches entries (0, never expire) */
+    public static final long CACHE_EXPIRE_AFTER_ACCESS_DEFAULT = 0;
+
+    /**
+     * The policies used to evict entries from the feature type and style caches. Coverage readers
+     * are always soft cached, as they cannot be safely disposed while still in use
+     */
+    public enum CachePolicy {
+        /**
+         * The default, keeps a fixed number of hard references and soft references to the rest
+         * (styles and CRSs are kept in unbounded maps)
+         */
+        SOFT,
+        /**
+         * Keeps entries up to a maximum estimated memory footprint, and optionally up to a maximum
+         * time since the last access, evicting the least recently used ones first
+         */
+        BOUNDED
+    }
+
     Catalog catalog;
     Map<String, CoordinateReferenceSystem> crsCache;
     DataStoreCache dataStoreCache;
@@ -211,6 +256,10 @@ public class ResourcePool {
     Map<StyleInfo, Style> styleCache;
     List<Listener> listeners;
     ThreadPoolExecutor coverageExecutor;
+    CachePolicy cachePolicy = CachePolicy.SOFT;
+    long cacheMaxWeight = CACHE_MAX_WEIGHT_DEFAULT;
+    long cacheExpireAfterAccess = CACHE_EXPIRE_AFTER_ACCESS_DEFAULT;
+    int featureTypeCacheSize = FEATURETYPE_CACHE_SIZE_DEFAULT;
     CatalogRepository repository;
     EntityResolverProvider entityResolverProvider;
 
@@ -279,6 +328,10 @@ public class ResourcePool {
     }
 
     protected Map<String, CoordinateReferenceSystem> createCrsCache() {
+        if (cachePolicy == CachePolicy.BOUNDED) {
+            return new BoundedResourceCache<>(
+                    "crsCache", cacheMaxWeight, cacheExpireAfterAccess, crs -> CRS_WEIGHT, null);
+        }
         return new HashMap<String, CoordinateReferenceSystem>();
     }
 
@@ -317,6 +370,14 @@ public class ResourcePool {
     protected Map<String, FeatureType> createFeatureTypeCache(int size) {
         // for each feature type we cache two versions, one with the projection policy applied, one
         // without it
+        if (cachePolicy == CachePolicy.BOUNDED) {
+            return new BoundedResourceCache<>(
+                    "featureTypeCache",
+                    cacheMaxWeight,
+                    cacheExpireAfterAccess,
+                    ResourcePool::estimateFeatureTypeWeight,
+                    this::disposeFeatureType);
+        }
         return new FeatureTypeCache(size * 2);
     }
 
@@ -335,6 +396,14 @@ public class ResourcePool {
     protected Map<String, List<AttributeTypeInfo>> createFeatureTypeAttributeCache(int size) {
         // for each feature type we cache two versions, one with the projection policy applied, one
         // without it
+        if (cachePolicy == CachePolicy.BOUNDED) {
+            return new BoundedResourceCache<>(
+                    "featureTypeAttributeCache",
+                    cacheMaxWeight,
+                    cacheExpireAfterAccess,
+                    attributes -> ATTRIBUTE_WEIGHT * (attributes.size() + 1),
+                    null);
+        }
         return new FeatureTypeAttributeCache(size * 2);
     }
 
@@ -348,6 +417,9 @@ public class ResourcePool {
     }
 
     protected Map<CoverageHintReaderKey, GridCoverageReader> createHintCoverageReaderCache() {
+        // readers are not subject to the bounded policy: evicting one by size would dispose it
+        // while in flight requests might still be using it, the soft cache only disposes readers
+        // nobody can reach anymore
         return new CoverageHintReaderCache();
     }
 
@@ -361,6 +433,14 @@ public class ResourcePool {
     }
 
     protected Map<StyleInfo, StyledLayerDescriptor> createSldCache() {
+        if (cachePolicy == CachePolicy.BOUNDED) {
+            return new BoundedResourceCache<>(
+                    "sldCache",
+                    cacheMaxWeight,
+                    cacheExpireAfterAccess,
+                    ResourcePool::estimateSldWeight,
+                    null);
+        }
         return new HashMap<StyleInfo, StyledLayerDescriptor>();
     }
 
@@ -374,6 +454,14 @@ public class ResourcePool {
     }
 
     protected Map<StyleInfo, Style> createStyleCache() {
+        if (cachePolicy == CachePolicy.BOUNDED) {
+            return new BoundedResourceCache<>(
+                    "styleCache",
+                    cacheMaxWeight,
+                    cacheExpireAfterAccess,
+                    ResourcePool::estimateStyleWeight,
+                    null);
+        }
         return new HashMap<StyleInfo, Style>();
     }
 
@@ -406,11 +494,76 @@ public class ResourcePool {
      */
     public void setFeatureTypeCacheSize(int featureTypeCacheSize) {
         synchronized (this) {
+            this.featureTypeCacheSize = featureTypeCacheSize;
+            featureTypeCache.clear();
+            featureTypeCache = createFeatureTypeCache(featureTypeCacheSize);
+            featureTypeAttributeCache.clear();
+            featureTypeAttributeCache = createFeatureTypeAttributeCache(featureTypeCacheSize);
+        }
+    }
+
+    /**
+     * Sets the policy used to evict entries from the CRS, feature type and style caches (the
+     * coverage reader cache always uses soft references). When using {@link CachePolicy#BOUNDED}
+     * each cache is limited to the given estimated memory footprint, and entries not used for
+     * {@code expireAfterAccess} seconds are evicted (zero or a negative value means no
+     * expiration).
+     *
+     * <p>A warning that calling this method will blow away the existing caches, if the
+     * configuration actually changed.
+     */
+    public void setCachePolicy(CachePolicy policy, long maxWeight, long expireAfterAccess) {
+        synchronized (this) {
+            if (policy == cachePolicy
+                    && maxWeight == cacheMaxWeight
+                    && expireAfterAccess == cacheExpireAfterAccess) {
+                return;
+            }
+            this.cachePolicy = policy;
+            this.cacheMaxWeight = maxWeight;
+            this.cacheExpireAfterAccess = expireAfterAccess;
+
+            synchronized (crsCache) {
+                crsCache = createCrsCache();
+            }
             featureTypeCache.clear();
             featureTypeCache = createFeatureTypeCache(featureTypeCacheSize);
             featureTypeAttributeCache.clear();
             featureTypeAttributeCache = createFeatureTypeAttributeCache(featureTypeCacheSize);
+            hintCoverageReaderCache.clear();
+            hintCoverageReaderCache = createHintCoverageReaderCache();
+            sldCache.clear();
+            sldCache = createSldCache();
+            styleCache.clear();
+            styleCache = createStyleCache();
+        }
+    }
+
+    /** Returns the policy used to evict entries from the caches */
+    public CachePolicy getCachePolicy() {
+        return cachePolicy;
+    }
+
+    /**
+     * Returns a snapshot of the usage statistics of the CRS, feature type, style and coverage
+     * reader caches.
+     */
+    public List<ResourceCacheStatistics> getCacheStatistics() {
+        List<ResourceCacheStatistics> result = new ArrayList<>();
+        result.add(getCacheStatistics("crsCache", crsCache));
+        result.add(getCacheStatistics("featureTypeCache", featureTypeCache));
+        result.add(getCacheStatistics("featureTypeAttributeCache", featureTypeAttributeCache));
+        result.add(getCacheStatistics("hintCoverageReaderCache", hintCoverageReaderCache));
+        result.add(getCacheStatistics("sldCache", sldCache));
+        result.add(getCacheStatistics("styleCache", styleCache));
+        return result;
+    }
+
+    private ResourceCacheStatistics getCacheStatistics(String name, Map<?, ?> cache) {
+        if (cache instanceof BoundedResourceCache) {
+            return ((BoundedResourceCache<?, ?>) cache).getStatistics();
         }
+        return new ResourceCacheStatistics(name, CachePolicy.SOFT, cache.size(), -1, -1, -1, -1);
     }
 
     /**
@@ -2317,19 +2470,23 @@ public class ResourcePool {
         }
 
         protected void dispose(String key, FeatureType featureType) {
-            String id = key.substring(0, key.indexOf(PROJECTION_POLICY_SEPARATOR));
-            FeatureTypeInfo info = catalog.getFeatureType(id);
-            if (info != null) {
-                LOGGER.fine("Disposing feature type '" + info.getName() + "'/" + id);
-                fireDisposed(info, featureType);
-                if (null != featureTypeAttributeCache.remove(id)) {
-                    LOGGER.fine(
-                            "AttributeType cache cleared for feature type '"
-                                    + info.getName()
-                                    + "'/"
-                                    + id
-                                    + " as a side effect of its cache disposal");
-                }
+            disposeFeatureType(key, featureType);
+        }
+    }
+
+    void disposeFeatureType(String key, FeatureType featureType) {
+        String id = key.substring(0, key.indexOf(PROJECTION_POLICY_SEPARATOR));
+        FeatureTypeInfo info = catalog.getFeatureType(id);
+        if (info != null) {
+            LOGGER.fine("Disposing feature type '" + info.getName() + "'/" + id);
+            fireDisposed(info, featureType);
+            if (null != featureTypeAttributeCache.remove(id)) {
+                LOGGER.fine(
+                        "AttributeType cache cleared for feature type '"
+                                + info.getName()
+                                + "'/"
+                                + id
+                                + " as a side effect of its cache disposal");
             }
         }
     }
@@ -2396,20 +2553,53 @@ public class ResourcePool {
             extends CatalogResourceCache<CoverageHintReaderKey, GridCoverageReader> {
 
         protected void dispose(CoverageHintReaderKey key, GridCoverageReader reader) {
-            CoverageStoreInfo info = catalog.getCoverageStore(key.id);
-            if (info != null) {
-                String name = info.getName();
-                LOGGER.fine("Disposing coverage store '" + name + "'");
+            disposeCoverageReader(key, reader);
+        }
+    }
 
-                fireDisposed(info, reader);
-            }
-            try {
-                reader.dispose();
-            } catch (Exception e) {
-                LOGGER.warning("Error occured disposing coverage reader '" + info.getName() + "'");
-                LOGGER.log(Level.FINE, "", e);
-            }
+    void disposeCoverageReader(CoverageHintReaderKey key, GridCoverageReader reader) {
+        CoverageStoreInfo info = catalog.getCoverageStore(key.id);
+        if (info != null) {
+            String name = info.getName();
+            LOGGER.fine("Disposing coverage store '" + name + "'");
+
+            fireDisposed(info, reader);
+        }
+        try {
+            reader.dispose();
+        } catch (Exception e) {
+            LOGGER.warning("Error occured disposing coverage reader '" + key.id + "'");
+            LOGGER.log(Level.FINE, "", e);
+        }
+    }
+
+    /** Rough estimate of the memory used by a CRS (the referencing objects are shared) */
+    static final int CRS_WEIGHT = 4 * 1024;
+
+    /** Rough estimate of the memory used by an attribute description */
+    static final int ATTRIBUTE_WEIGHT = 512;
+
+    /** Rough estimate of the memory used by a style rule, filters and symbolizers included */
+    static final int RULE_WEIGHT = 2 * 1024;
+
+    static int estimateFeatureTypeWeight(FeatureType featureType) {
+        return ATTRIBUTE_WEIGHT * (featureType.getDescriptors().size() + 1);
+    }
+
+    static int estimateStyleWeight(Style style) {
+        int weight = RULE_WEIGHT;
+        for (FeatureTypeStyle fts : style.featureTypeStyles()) {
+            weight += RULE_WEIGHT * fts.rules().size();
+        }
+        return weight;
+    }
+
+    static int estimateSldWeight(StyledLayerDescriptor sld) {
+        int weight = RULE_WEIGHT;
+        for (Style style : SLD.styles(sld)) {
+            weight += estimateStyleWeight(style);
         }
+        return weight;
     }
 
     /**
@@ -5,12 +5,15 @@
  */
 package org.geoserver.catalog;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.logging.Logger;
 import org.geoserver.config.ConfigurationListenerAdapter;
 import org.geoserver.config.GeoServer;
 import org.geoserver.config.GeoServerInfo;
 import org.geoserver.config.GeoServerReinitializer;
 import org.geoserver.util.EntityResolverProvider;
+import org.geotools.util.logging.Logging;
 
 /**
  * Initializes parameters of the {@link ResourcePool} class from configuration.
@@ -19,6 +22,8 @@ import org.geoserver.util.EntityResolverProvider;
  */
 public class ResourcePoolInitializer implements GeoServerReinitializer {
 
+    static final Logger LOGGER = Logging.getLogger(ResourcePoolInitializer.class);
+
     GeoServer gs;
     EntityResolverProvider resolverProvider;
 
@@ -34,6 +39,7 @@ public class ResourcePoolInitializer implements GeoServerReinitializer {
         if (cacheSize > 0) {
             gs.getCatalog().getResourcePool().setFeatureTypeCacheSize(cacheSize);
         }
+        configureCachePolicy(global);
 
         geoServer.addListener(
                 new ConfigurationListenerAdapter() {
@@ -50,6 +56,7 @@ public class ResourcePoolInitializer implements GeoServerReinitializer {
                                     .getResourcePool()
                                     .setFeatureTypeCacheSize(featureTypeCacheSize.intValue());
                         }
+                        configureCachePolicy(global);
                         gs.getCatalog()
                                 .getResourcePool()
                                 .setCoverageExecutor(
@@ -59,4 +66,35 @@ public class ResourcePoolInitializer implements GeoServerReinitializer {
 
         gs.getCatalog().getResourcePool().setEntityResolverProvider(resolverProvider);
     }
+
+    /** Sets up the resource pool cache policy based on the global settings metadata */
+    void configureCachePolicy(GeoServerInfo global) {
+        MetadataMap metadata = global.getMetadata();
+        ResourcePool.CachePolicy policy = ResourcePool.CachePolicy.SOFT;
+        long maxWeight = ResourcePool.CACHE_MAX_WEIGHT_DEFAULT;
+        long expireAfterAccess = ResourcePool.CACHE_EXPIRE_AFTER_ACCESS_DEFAULT;
+        if (metadata != null) {
+            String policyName = metadata.get(ResourcePool.CACHE_POLICY_KEY, String.class);
+            if (policyName != null) {
+                try {
+                    policy = ResourcePool.CachePolicy.valueOf(policyName.trim().toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    LOGGER.warning(
+                            "Unrecognized resource pool cache policy '"
+                                    + policyName
+                                    + "', valid values are "
+                                    + Arrays.toString(ResourcePool.CachePolicy.values()));
+                }
+            }
+            Long weight = metadata.get(ResourcePool.CACHE_MAX_WEIGHT_KEY, Long.class);
+            if (weight != null && weight > 0) {
+                maxWeight = weight;
+            }
+            Long expire = metadata.get(ResourcePool.CACHE_EXPIRE_AFTER_ACCESS_KEY, Long.class);
+            if (expire != null) {
+                expireAfterAccess = expire;
+            }
+        }
+        gs.getCatalog().getResourcePool().setCachePolicy(policy, maxWeight, expireAfterAccess);
+    }
 }
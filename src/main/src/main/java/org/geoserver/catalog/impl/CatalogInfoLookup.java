@@ -4,12 +4,18 @@
  */
 package org.geoserver.catalog.impl;
 
+import com.google.common.collect.Iterables;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.function.Function;
@@ -26,6 +32,11 @@ import org.opengis.feature.type.Name;
  * A support index for {@link DefaultCatalogFacade}, can perform fast lookups of {@link CatalogInfo}
  * objects by id or by "name", where the name is defined by a a user provided mapping function.
  *
+ * <p>Secondary indexes can be registered via {@link #addIndex(String, Function)}, they map the
+ * value of a property (e.g., the store id for resources) to all the objects sharing it, and are
+ * kept in synch as objects are added, updated and removed, allowing {@link #list(String, String,
+ * Class, Predicate)} to avoid a full scan.
+ *
  * <p>The lookups by predicate have been tested and optimized for performance, in particular the
  * current for loops turned out to be significantly faster than building and returning streams
  *
@@ -37,6 +48,7 @@ class CatalogInfoLookup<T extends CatalogInfo> {
     ConcurrentHashMap<Class<T>, Map<String, T>> idMultiMap = new ConcurrentHashMap<>();
     ConcurrentHashMap<Class<T>, Map<Name, T>> nameMultiMap = new ConcurrentHashMap<>();
     Function<T, Name> nameMapper;
+    Map<String, SecondaryIndex<T>> indexes = new ConcurrentHashMap<>();
     static final Predicate TRUE = x -> true;
 
     public CatalogInfoLookup(Function<T, Name> nameMapper) {
@@ -44,6 +56,17 @@ class CatalogInfoLookup<T extends CatalogInfo> {
         this.nameMapper = nameMapper;
     }
 
+    /**
+     * Registers a secondary index. Must be called before any object is added to the lookup.
+     *
+     * @param name The index name, to be used in {@link #list(String, String, Class, Predicate)}
+     * @param keysMapper Returns the keys an object should be indexed under, null keys are ignored
+     */
+    public CatalogInfoLookup<T> addIndex(String name, Function<T, Collection<String>> keysMapper) {
+        indexes.put(name, new SecondaryIndex<>(keysMapper));
+        return this;
+    }
+
     <K> Map<K, T> getMapForValue(ConcurrentHashMap<Class<T>, Map<K, T>> maps, T value) {
         Class<T> vc;
         if (Proxy.isProxyClass(value.getClass())) {
@@ -74,7 +97,14 @@ class CatalogInfoLookup<T extends CatalogInfo> {
         Name name = nameMapper.apply(value);
         nameMap.put(name, value);
         Map<String, T> idMap = getMapForValue(idMultiMap, value);
-        return idMap.put(value.getId(), value);
+        T previous = idMap.put(value.getId(), value);
+        for (SecondaryIndex<T> index : indexes.values()) {
+            if (previous != null) {
+                index.remove(previous);
+            }
+            index.add(value);
+        }
+        return previous;
     }
 
     public Collection<T> values() {
@@ -91,7 +121,13 @@ class CatalogInfoLookup<T extends CatalogInfo> {
         Map<Name, T> nameMap = getMapForValue(nameMultiMap, value);
         nameMap.remove(name);
         Map<String, T> idMap = getMapForValue(idMultiMap, value);
-        return idMap.remove(value.getId());
+        T removed = idMap.remove(value.getId());
+        if (removed != null) {
+            for (SecondaryIndex<T> index : indexes.values()) {
+                index.remove(removed);
+            }
+        }
+        return removed;
     }
 
     /** Updates the value in the name map. The new value must be a ModificationProxy */
@@ -106,11 +142,17 @@ class CatalogInfoLookup<T extends CatalogInfo> {
             nameMap.remove(oldName);
             nameMap.put(newName, actualValue);
         }
+        for (SecondaryIndex<T> index : indexes.values()) {
+            index.update(actualValue, proxiedValue);
+        }
     }
 
     public void clear() {
         idMultiMap.clear();
         nameMultiMap.clear();
+        for (SecondaryIndex<T> index : indexes.values()) {
+            index.clear();
+        }
     }
 
     /**
@@ -144,6 +186,132 @@ class CatalogInfoLookup<T extends CatalogInfo> {
         return result;
     }
 
+    /**
+     * Lazily looks up objects by class and matching predicate. Unlike {@link #list(Class,
+     * Predicate)} no intermediate list is built, and the predicate is evaluated only as the
+     * iteration proceeds, allowing callers to stop as soon as they have collected enough results.
+     * The iteration order is the same as {@link #list(Class, Predicate)}.
+     *
+     * @param clazz
+     * @param predicate
+     * @return
+     */
+    <U extends CatalogInfo> Iterable<U> iterable(Class<U> clazz, Predicate<U> predicate) {
+        Iterable<U> all = Iterables.concat(getValueCollections(clazz, true));
+        if (predicate == TRUE) {
+            return all;
+        }
+        return Iterables.filter(all, predicate::test);
+    }
+
+    /**
+     * Lazily looks up objects by class and matching predicate, sorted by the name computed by the
+     * name mapper. The per class name maps are already sorted, so this is just a merge of them.
+     *
+     * @param clazz
+     * @param predicate
+     * @param ascending
+     * @return
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    <U extends CatalogInfo> Iterable<U> sortedByName(
+            Class<U> clazz, Predicate<U> predicate, boolean ascending) {
+        Comparator<T> comparator = this::compareNames;
+        if (!ascending) {
+            comparator = comparator.reversed();
+        }
+        Iterable<U> all =
+                Iterables.mergeSorted(
+                        getValueCollections(clazz, ascending), (Comparator) comparator);
+        if (predicate == TRUE) {
+            return all;
+        }
+        return Iterables.filter(all, predicate::test);
+    }
+
+    /**
+     * Counts the objects by class and matching predicate, without building an intermediate list
+     *
+     * @param clazz
+     * @param predicate
+     * @return
+     */
+    <U extends CatalogInfo> int count(Class<U> clazz, Predicate<U> predicate) {
+        int count = 0;
+        for (Collection<U> values : getValueCollections(clazz, true)) {
+            if (predicate == TRUE) {
+                count += values.size();
+            } else {
+                for (U u : values) {
+                    if (predicate.test(u)) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <U extends CatalogInfo> List<Collection<U>> getValueCollections(
+            Class<U> clazz, boolean ascending) {
+        List<Collection<U>> result = new ArrayList<>();
+        for (Class<T> key : nameMultiMap.keySet()) {
+            if (clazz.isAssignableFrom(key)) {
+                Map<Name, T> valueMap = nameMultiMap.get(key);
+                if (valueMap != null) {
+                    if (ascending) {
+                        result.add((Collection<U>) valueMap.values());
+                    } else {
+                        NavigableMap<Name, T> sorted = (NavigableMap<Name, T>) valueMap;
+                        result.add((Collection<U>) sorted.descendingMap().values());
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Looks up objects by class and matching predicate, among the ones having the given key in the
+     * specified secondary index. The cost is proportional to the number of objects sharing the key,
+     * instead of the total number of objects in the lookup.
+     *
+     * @param index The name of an index registered with {@link #addIndex(String, Function)}
+     * @param key The key to look for
+     * @param clazz
+     * @param predicate
+     * @return
+     */
+    <U extends CatalogInfo> List<U> list(
+            String index, String key, Class<U> clazz, Predicate<U> predicate) {
+        SecondaryIndex<T> secondary = indexes.get(index);
+        if (secondary == null) {
+            throw new IllegalArgumentException("Unknown index " + index);
+        }
+        ArrayList<U> result = new ArrayList<U>();
+        for (T v : secondary.get(key)) {
+            if (clazz.isInstance(v)) {
+                final U u = (U) v;
+                if (predicate == TRUE || predicate.test(u)) {
+                    result.add(u);
+                }
+            }
+        }
+        // same order as the name based lookups
+        if (result.size() > 1) {
+            result.sort((a, b) -> compareNames((T) a, (T) b));
+        }
+
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compareNames(T a, T b) {
+        Comparable<Object> na = (Comparable<Object>) nameMapper.apply(a);
+        return na.compareTo(nameMapper.apply(b));
+    }
+
     /**
      * Looks up a CatalogInfo by class and identifier
      *
@@ -248,4 +416,85 @@ class CatalogInfoLookup<T extends CatalogInfo> {
 
         return this;
     }
+
+    /**
+     * A secondary index, mapping keys to the objects sharing them, in turn keyed by id
+     *
+     * @param <T>
+     */
+    static final class SecondaryIndex<T extends CatalogInfo> {
+
+        final Function<T, Collection<String>> keysMapper;
+
+        final ConcurrentHashMap<String, Map<String, T>> entries = new ConcurrentHashMap<>();
+
+        SecondaryIndex(Function<T, Collection<String>> keysMapper) {
+            this.keysMapper = keysMapper;
+        }
+
+        Collection<T> get(String key) {
+            if (key == null) {
+                return Collections.emptyList();
+            }
+            Map<String, T> values = entries.get(key);
+            if (values == null) {
+                return Collections.emptyList();
+            }
+            return values.values();
+        }
+
+        void add(T value) {
+            add(keys(value), value);
+        }
+
+        void add(Collection<String> keys, T value) {
+            for (String key : keys) {
+                entries.computeIfAbsent(key, k -> new ConcurrentHashMap<>())
+                        .put(value.getId(), value);
+            }
+        }
+
+        void remove(T value) {
+            remove(keys(value), value);
+        }
+
+        void remove(Collection<String> keys, T value) {
+            String id = value.getId();
+            for (String key : keys) {
+                entries.computeIfPresent(
+                        key,
+                        (k, values) -> {
+                            values.remove(id);
+                            return values.isEmpty() ? null : values;
+                        });
+            }
+        }
+
+        /**
+         * Moves the actual value from the keys it currently has, to the ones of the proxied value
+         * (about to be committed)
+         */
+        void update(T actualValue, T proxiedValue) {
+            Collection<String> oldKeys = keys(actualValue);
+            Collection<String> newKeys = keys(proxiedValue);
+            if (!oldKeys.equals(newKeys)) {
+                remove(oldKeys, actualValue);
+                add(newKeys, actualValue);
+            }
+        }
+
+        void clear() {
+            entries.clear();
+        }
+
+        private Set<String> keys(T value) {
+            Collection<String> keys = keysMapper.apply(value);
+            if (keys == null || keys.isEmpty()) {
+                return Collections.emptySet();
+            }
+            Set<String> result = new HashSet<>(keys);
+            result.remove(null);
+            return result;
+        }
+    }
 }
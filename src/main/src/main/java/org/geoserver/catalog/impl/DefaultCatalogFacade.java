@@ -6,16 +6,21 @@
 package org.geoserver.catalog.impl;
 
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Ordering;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Function;
@@ -91,10 +96,42 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
                             s.getWorkspace() != null ? s.getWorkspace().getId() : null,
                             s.getName());
 
+    /** Index of stores by workspace id */
+    static final String STORES_BY_WORKSPACE = "workspace";
+
+    /** Index of resources by store id */
+    static final String RESOURCES_BY_STORE = "store";
+
+    /** Index of layers by id of the styles they use, either as default or alternate style */
+    static final String LAYERS_BY_STYLE = "style";
+
+    static final Function<StoreInfo, Collection<String>> STORE_WORKSPACE_KEYS =
+            s -> Collections.singleton(s.getWorkspace() != null ? s.getWorkspace().getId() : null);
+
+    static final Function<ResourceInfo, Collection<String>> RESOURCE_STORE_KEYS =
+            r -> Collections.singleton(r.getStore() != null ? r.getStore().getId() : null);
+
+    static final Function<LayerInfo, Collection<String>> LAYER_STYLE_KEYS =
+            l -> {
+                List<String> keys = new ArrayList<>();
+                if (l.getDefaultStyle() != null) {
+                    keys.add(l.getDefaultStyle().getId());
+                }
+                if (l.getStyles() != null) {
+                    for (StyleInfo style : l.getStyles()) {
+                        if (style != null) {
+                            keys.add(style.getId());
+                        }
+                    }
+                }
+                return keys;
+            };
+
     static final class LayerInfoLookup extends CatalogInfoLookup<LayerInfo> {
 
         public LayerInfoLookup() {
             super(LAYER_NAME_MAPPER);
+            addIndex(LAYERS_BY_STYLE, LAYER_STYLE_KEYS);
         }
 
         public void update(ResourceInfo proxiedValue) {
@@ -121,15 +158,14 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
     }
 
     /** Contains the stores keyed by implementation class */
-    protected CatalogInfoLookup<StoreInfo> stores = new CatalogInfoLookup<>(STORE_NAME_MAPPER);
+    protected CatalogInfoLookup<StoreInfo> stores = newStoreLookup();
 
     /** The default store keyed by workspace id */
     protected Map<String, DataStoreInfo> defaultStores =
             new ConcurrentHashMap<String, DataStoreInfo>();
 
     /** resources */
-    protected CatalogInfoLookup<ResourceInfo> resources =
-            new CatalogInfoLookup<>(RESOURCE_NAME_MAPPER);
+    protected CatalogInfoLookup<ResourceInfo> resources = newResourceLookup();
 
     /** The default namespace */
     protected volatile NamespaceInfo defaultNamespace;
@@ -161,6 +197,16 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
     /** the catalog */
     private CatalogImpl catalog;
 
+    static CatalogInfoLookup<StoreInfo> newStoreLookup() {
+        return new CatalogInfoLookup<>(STORE_NAME_MAPPER)
+                .addIndex(STORES_BY_WORKSPACE, STORE_WORKSPACE_KEYS);
+    }
+
+    static CatalogInfoLookup<ResourceInfo> newResourceLookup() {
+        return new CatalogInfoLookup<>(RESOURCE_NAME_MAPPER)
+                .addIndex(RESOURCES_BY_STORE, RESOURCE_STORE_KEYS);
+    }
+
     public DefaultCatalogFacade(Catalog catalog) {
         setCatalog(catalog);
     }
@@ -237,7 +283,12 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
             ws = workspace;
         }
 
-        List<T> matches = stores.list(clazz, s -> ws.equals(s.getWorkspace()));
+        List<T> matches =
+                stores.list(
+                        STORES_BY_WORKSPACE,
+                        ws.getId(),
+                        clazz,
+                        s -> ws.equals(s.getWorkspace()));
         return ModificationProxy.createList(matches, clazz);
     }
 
@@ -384,7 +435,12 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
     }
 
     public <T extends ResourceInfo> List<T> getResourcesByStore(StoreInfo store, Class<T> clazz) {
-        List<T> matches = resources.list(clazz, r -> store.equals(r.getStore()));
+        List<T> matches =
+                resources.list(
+                        RESOURCES_BY_STORE,
+                        store.getId(),
+                        clazz,
+                        r -> store.equals(r.getStore()));
         return ModificationProxy.createList(matches, clazz);
     }
 
@@ -454,6 +510,8 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
     public List<LayerInfo> getLayers(StyleInfo style) {
         List<LayerInfo> matches =
                 layers.list(
+                        LAYERS_BY_STYLE,
+                        style.getId(),
                         LayerInfo.class,
                         li -> style.equals(li.getDefaultStyle()) || li.getStyles().contains(style));
         return ModificationProxy.createList(matches, LayerInfo.class);
@@ -906,7 +964,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
 
         // stores
         if (stores == null) {
-            stores = new CatalogInfoLookup<>(STORE_NAME_MAPPER);
+            stores = newStoreLookup();
         }
         for (Object o : stores.values()) {
             resolve((StoreInfoImpl) o);
@@ -922,7 +980,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
 
         // resources
         if (resources == null) {
-            resources = new CatalogInfoLookup<>(RESOURCE_NAME_MAPPER);
+            resources = newResourceLookup();
         }
         for (Object o : resources.values()) {
             resolve((ResourceInfo) o);
@@ -1013,8 +1071,26 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
     }
 
     @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
     public <T extends CatalogInfo> int count(final Class<T> of, final Filter filter) {
-        return Iterables.size(iterable(of, filter, null));
+        // counts straight on the lookups, no need to build lists and wrap in proxies
+        Predicate<T> predicate = toPredicate(filter);
+        if (PublishedInfo.class.equals(of)) {
+            return layers.count(LayerInfo.class, (Predicate) predicate)
+                    + layerGroups.count(LayerGroupInfo.class, (Predicate) predicate);
+        } else if (MapInfo.class.isAssignableFrom(of)) {
+            return Iterables.size(sortedIterable(of, filter, null, null, null));
+        }
+        return getLookup(of).count(of, predicate);
+    }
+
+    /**
+     * The in memory lookups can count without materializing any result, the estimate is thus the
+     * exact count
+     */
+    @Override
+    public <T extends CatalogInfo> int estimateCount(Class<T> of, Filter filter) {
+        return count(of, filter);
     }
 
     /**
@@ -1068,7 +1144,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
             }
         }
 
-        Iterable<T> iterable = iterable(of, filter, sortOrder);
+        Iterable<T> iterable = sortedIterable(of, filter, offset, count, sortOrder);
 
         if (offset != null && offset.intValue() > 0) {
             iterable = Iterables.skip(iterable, offset.intValue());
@@ -1078,11 +1154,145 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
             iterable = Iterables.limit(iterable, count.intValue());
         }
 
-        Iterator<T> iterator = iterable.iterator();
+        // proxies are created only for the objects actually returned
+        Iterator<T> iterator =
+                Iterators.transform(iterable.iterator(), t -> ModificationProxy.create(t, of));
 
         return new CloseableIteratorAdapter<T>(iterator);
     }
 
+    /**
+     * Returns the (unwrapped) objects matching the filter, in the requested order. The filter is
+     * evaluated lazily, so that when no sorting is requested, or the sort is on the name the
+     * lookups are already sorted on, the iteration stops as soon as offset + count results are
+     * found. When sorting on other properties only the first offset + count objects are kept in
+     * memory and sorted, instead of the whole filtered list.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    <T extends CatalogInfo> Iterable<T> sortedIterable(
+            final Class<T> of,
+            final Filter filter,
+            @Nullable Integer offset,
+            @Nullable Integer count,
+            @Nullable SortBy[] sortByList) {
+        Predicate<T> predicate = toPredicate(filter);
+        if (MapInfo.class.isAssignableFrom(of)) {
+            return (Iterable<T>) Iterables.filter(maps, m -> predicate.test((T) m));
+        }
+
+        boolean sorted = sortByList != null && sortByList.length > 0;
+        CatalogInfoLookup<?> lookup = PublishedInfo.class.equals(of) ? null : getLookup(of);
+        if (sorted && lookup != null && sortByList.length == 1) {
+            SortBy sortBy = sortByList[0];
+            if (isNameSorted(of, sortBy.getPropertyName().getPropertyName())) {
+                boolean ascending = !SortOrder.DESCENDING.equals(sortBy.getSortOrder());
+                return lookup.sortedByName(of, predicate, ascending);
+            }
+        }
+
+        Iterable<T> filtered;
+        if (lookup != null) {
+            filtered = lookup.iterable(of, predicate);
+        } else {
+            filtered =
+                    Iterables.concat(
+                            (Iterable<T>) layers.iterable(LayerInfo.class, (Predicate) predicate),
+                            (Iterable<T>)
+                                    layerGroups.iterable(
+                                            LayerGroupInfo.class, (Predicate) predicate));
+        }
+        if (!sorted) {
+            return filtered;
+        }
+
+        Comparator<Object> comparator = comparator(sortByList);
+        if (count != null && count.intValue() >= 0) {
+            long limit = (long) count.intValue() + (offset != null ? Math.max(0, offset) : 0);
+            return leastOf(filtered, comparator, (int) Math.min(limit, Integer.MAX_VALUE));
+        }
+        List<T> all = Lists.newArrayList(filtered);
+        all.sort(comparator);
+        return all;
+    }
+
+    /**
+     * Returns true if the objects of the given type are kept sorted by the given property in the
+     * lookups. This is the case for workspaces and namespaces, whose lookup names do not contain
+     * the container id
+     */
+    private boolean isNameSorted(Class<?> of, String property) {
+        if (WorkspaceInfo.class.isAssignableFrom(of)) {
+            return "name".equals(property);
+        } else if (NamespaceInfo.class.isAssignableFrom(of)) {
+            return "prefix".equals(property) || "name".equals(property);
+        }
+        return false;
+    }
+
+    /**
+     * Returns the lookup containing the objects of the given type (layers and groups are kept
+     * separate, so {@link PublishedInfo} has no lookup on its own)
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends CatalogInfo> CatalogInfoLookup<T> getLookup(Class<T> of) {
+        CatalogInfoLookup<?> lookup;
+        if (NamespaceInfo.class.isAssignableFrom(of)) {
+            lookup = namespaces;
+        } else if (WorkspaceInfo.class.isAssignableFrom(of)) {
+            lookup = workspaces;
+        } else if (StoreInfo.class.isAssignableFrom(of)) {
+            lookup = stores;
+        } else if (ResourceInfo.class.isAssignableFrom(of)) {
+            lookup = resources;
+        } else if (LayerInfo.class.isAssignableFrom(of)) {
+            lookup = layers;
+        } else if (LayerGroupInfo.class.isAssignableFrom(of)) {
+            lookup = layerGroups;
+        } else if (StyleInfo.class.isAssignableFrom(of)) {
+            lookup = styles;
+        } else {
+            throw new IllegalArgumentException("Unknown type: " + of);
+        }
+        return (CatalogInfoLookup<T>) lookup;
+    }
+
+    /**
+     * Returns the first {@code k} elements according to the comparator, in order, keeping at most
+     * {@code k} elements in memory. Unlike {@link Ordering#leastOf(Iterable, int)} equal elements
+     * are returned in iteration order, so that paging through the results is consistent with a
+     * stable full sort.
+     */
+    static <T> List<T> leastOf(Iterable<T> iterable, Comparator<Object> comparator, int k) {
+        if (k == 0) {
+            return Collections.emptyList();
+        }
+        // max heap on (value, position), the head is the worst of the current best k
+        Comparator<Map.Entry<Integer, T>> entryComparator =
+                (e1, e2) -> {
+                    int result = comparator.compare(e1.getValue(), e2.getValue());
+                    return result != 0 ? result : Integer.compare(e1.getKey(), e2.getKey());
+                };
+        PriorityQueue<Map.Entry<Integer, T>> heap =
+                new PriorityQueue<>(Math.min(k, 1024), entryComparator.reversed());
+        int position = 0;
+        for (T value : iterable) {
+            Map.Entry<Integer, T> entry = new AbstractMap.SimpleImmutableEntry<>(position++, value);
+            if (heap.size() < k) {
+                heap.add(entry);
+            } else if (entryComparator.compare(entry, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(entry);
+            }
+        }
+        List<Map.Entry<Integer, T>> entries = new ArrayList<>(heap);
+        entries.sort(entryComparator);
+        List<T> result = new ArrayList<>(entries.size());
+        for (Map.Entry<Integer, T> entry : entries) {
+            result.add(entry.getValue());
+        }
+        return result;
+    }
+
     @SuppressWarnings("unchecked")
     public <T extends CatalogInfo> Iterable<T> iterable(
             final Class<T> of, final Filter filter, final SortBy[] sortByList) {
@@ -1112,15 +1322,8 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
             throw new IllegalArgumentException("Unknown type: " + of);
         }
 
-        if (null != sortByList) {
-            for (int i = sortByList.length - 1; i >= 0; i--) {
-                SortBy sortBy = sortByList[i];
-                Ordering<Object> ordering = Ordering.from(comparator(sortBy));
-                if (SortOrder.DESCENDING.equals(sortBy.getSortOrder())) {
-                    ordering = ordering.reverse();
-                }
-                all = ordering.sortedCopy(all);
-            }
+        if (null != sortByList && sortByList.length > 0) {
+            all = Ordering.from(comparator(sortByList)).sortedCopy(all);
         }
 
         return ModificationProxy.createList(all, of);
@@ -1134,6 +1337,19 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         }
     }
 
+    /** Combines the sort orders, the first one being the primary one */
+    private Comparator<Object> comparator(final SortBy[] sortByList) {
+        Comparator<Object> result = null;
+        for (SortBy sortBy : sortByList) {
+            Comparator<Object> comparator = comparator(sortBy);
+            if (SortOrder.DESCENDING.equals(sortBy.getSortOrder())) {
+                comparator = comparator.reversed();
+            }
+            result = result == null ? comparator : result.thenComparing(comparator);
+        }
+        return result;
+    }
+
     private Comparator<Object> comparator(final SortBy sortOrder) {
         return new Comparator<Object>() {
             @Override
@@ -0,0 +1,657 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.config;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.ServletResponse;
+import javax.servlet.ServletResponseWrapper;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.commons.lang3.ArrayUtils;
+import org.geoserver.catalog.CatalogException;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.PublishedInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.filters.GZIPResponseWrapper;
+import org.geoserver.ows.AbstractDispatcherCallback;
+import org.geoserver.ows.LocalPublished;
+import org.geoserver.ows.LocalWorkspace;
+import org.geoserver.ows.Request;
+import org.geoserver.ows.Response;
+import org.geoserver.ows.URLMangler.URLType;
+import org.geoserver.ows.util.ResponseUtils;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.Operation;
+import org.geoserver.platform.ServiceException;
+import org.geoserver.security.impl.DataAccessRuleDAO;
+import org.geotools.util.logging.Logging;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Caches the encoded GetCapabilities documents, so that the catalog does not need to be scanned,
+ * and the bounding boxes and dimensions recomputed, on every request.
+ *
+ * <p>Documents are cached by service, version, virtual service workspace or layer, user name and
+ * security roles, base URL (after proxy mangling) and request parameters, and are dropped on
+ * catalog and configuration changes. A change to an object that belongs to a workspace only drops
+ * the global documents and the ones of that workspace. The documents cached before the last change
+ * of the {@link DataAccessRuleDAO} rules are not used anymore. Other changes the catalog is not
+ * notified about (e.g., new values in a time dimension, rules of a custom {@link
+ * org.geoserver.security.ResourceAccessManager}) are not tracked, the time to live bounds how long
+ * they are ignored. The documents of workspaces not affected by a change keep reporting the update
+ * sequence at the time they were cached.
+ *
+ * <p>The cache is disabled by default, it is enabled by setting "CAPABILITIES_CACHE_MAX_SIZE" to
+ * the maximum size of the cached documents, in megabytes, either as a system, environment or
+ * servlet context variable. "CAPABILITIES_CACHE_TTL" sets the time to live of the documents in
+ * seconds, {@link #DEFAULT_TIME_TO_LIVE} by default, zero meaning no expiration, while
+ * "CAPABILITIES_CACHE_GZIP" keeps a gzipped copy of the documents, to be returned to clients
+ * accepting it, along with a "Vary: Accept-Encoding" header. The gzipped copy is not used when the
+ * response is already being compressed by the {@link org.geoserver.filters.GZIPFilter}.
+ */
+public class CapabilitiesCacheCallback extends AbstractDispatcherCallback
+        implements CatalogListener {
+
+    static final Logger LOGGER = Logging.getLogger(CapabilitiesCacheCallback.class);
+
+    /** The services whose capabilities are cached by default */
+    public static final Set<String> DEFAULT_SERVICES =
+            new HashSet<>(Arrays.asList("WMS", "WFS", "WCS"));
+
+    /** The default time to live of the documents, in seconds */
+    public static final long DEFAULT_TIME_TO_LIVE = 300;
+
+    static final String GLOBAL_UPDATE_SEQUENCE = "updateSequence";
+
+    private volatile Cache<CacheKey, CachedDocument> cache;
+
+    private long maxSize;
+
+    private long timeToLive;
+
+    private boolean gzip;
+
+    private Set<String> services = DEFAULT_SERVICES;
+
+    /** Incremented on every invalidation, documents started before it are not cached */
+    private long generation;
+
+    /** Set when a global change other than the update sequence is about to happen */
+    private volatile boolean globalChanged;
+
+    public CapabilitiesCacheCallback(GeoServer gs) {
+        this(
+                parseLong(GeoServerExtensions.getProperty("CAPABILITIES_CACHE_MAX_SIZE"), 0)
+                        * 1024
+                        * 1024,
+                parseLong(
+                        GeoServerExtensions.getProperty("CAPABILITIES_CACHE_TTL"),
+                        DEFAULT_TIME_TO_LIVE),
+                Boolean.parseBoolean(GeoServerExtensions.getProperty("CAPABILITIES_CACHE_GZIP")));
+        gs.getCatalog().addListener(this);
+        gs.addListener(
+                new ConfigurationListenerAdapter() {
+                    @Override
+                    public void handleGlobalChange(
+                            GeoServerInfo global,
+                            List<String> propertyNames,
+                            List<Object> oldValues,
+                            List<Object> newValues) {
+                        // the update sequence changes along with every catalog change, which
+                        // is handled with more precision already
+                        for (String name : propertyNames) {
+                            if (!GLOBAL_UPDATE_SEQUENCE.equalsIgnoreCase(name)) {
+                                globalChanged = true;
+                                invalidateAll();
+                                break;
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void handlePostGlobalChange(GeoServerInfo global) {
+                        if (globalChanged) {
+                            globalChanged = false;
+                            invalidateAll();
+                        }
+                    }
+
+                    @Override
+                    public void handleSettingsAdded(SettingsInfo settings) {
+                        invalidate(settings.getWorkspace());
+                    }
+
+                    @Override
+                    public void handleSettingsPostModified(SettingsInfo settings) {
+                        invalidate(settings.getWorkspace());
+                    }
+
+                    @Override
+                    public void handleSettingsRemoved(SettingsInfo settings) {
+                        invalidate(settings.getWorkspace());
+                    }
+
+                    @Override
+                    public void handlePostServiceChange(ServiceInfo service) {
+                        invalidate(service.getWorkspace());
+                    }
+
+                    @Override
+                    public void handleServiceRemove(ServiceInfo service) {
+                        invalidate(service.getWorkspace());
+                    }
+
+                    @Override
+                    public void reloaded() {
+                        invalidateAll();
+                    }
+                });
+    }
+
+    /**
+     * Builds a cache with the given limits
+     *
+     * @param maxSize Maximum size of the cached documents in bytes, zero disables the cache
+     * @param timeToLive Time to live of the documents in seconds, zero means no expiration
+     * @param gzip Whether to keep a gzipped copy of the documents
+     */
+    CapabilitiesCacheCallback(long maxSize, long timeToLive, boolean gzip) {
+        this.gzip = gzip;
+        configure(maxSize, timeToLive);
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(
+                    "Capabilities cache max size: "
+                            + maxSize
+                            + " bytes, time to live: "
+                            + timeToLive
+                            + " seconds");
+        }
+    }
+
+    private static long parseLong(String value, long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            LOGGER.warning("Invalid capabilities cache setting: " + value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Sets up the cache limits, dropping the cached documents
+     *
+     * @param maxSize Maximum size of the cached documents in bytes, zero disables the cache
+     * @param timeToLive Time to live of the documents in seconds, zero means no expiration
+     */
+    public synchronized void configure(long maxSize, long timeToLive) {
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        generation++;
+        if (maxSize > 0) {
+            CacheBuilder<CacheKey, CachedDocument> builder =
+                    CacheBuilder.newBuilder()
+                            .recordStats()
+                            .maximumWeight(maxSize)
+                            .weigher((CacheKey k, CachedDocument d) -> d.weight());
+            if (timeToLive > 0) {
+                builder.expireAfterWrite(timeToLive, TimeUnit.SECONDS);
+            }
+            this.cache = builder.build();
+        } else {
+            this.cache = null;
+        }
+    }
+
+    /** Returns true if the cache is enabled */
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    /**
+     * Enables/disables keeping a gzipped copy of the documents. The cached documents are dropped,
+     * so that the new ones are weighted along with their gzipped copy
+     */
+    public void setGzip(boolean gzip) {
+        this.gzip = gzip;
+        invalidateAll();
+    }
+
+    public Set<String> getServices() {
+        return services;
+    }
+
+    /** Sets the services whose capabilities documents are cached, in upper case */
+    public void setServices(Set<String> services) {
+        this.services = services;
+    }
+
+    /** Returns the number of cached documents */
+    public long size() {
+        Cache<CacheKey, CachedDocument> cache = this.cache;
+        return cache != null ? cache.size() : 0;
+    }
+
+    /** Returns the hit, miss and eviction statistics of the cache, or null if disabled */
+    public CacheStats getStatistics() {
+        Cache<CacheKey, CachedDocument> cache = this.cache;
+        return cache != null ? cache.stats() : null;
+    }
+
+    /** Drops all the cached documents */
+    public synchronized void invalidateAll() {
+        generation++;
+        Cache<CacheKey, CachedDocument> cache = this.cache;
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * Drops the global documents and the ones of the given workspace, or all of them if the
+     * workspace is null
+     */
+    public void invalidate(WorkspaceInfo workspace) {
+        invalidate(workspace != null ? workspace.getName() : null);
+    }
+
+    synchronized void invalidate(String workspace) {
+        if (workspace == null) {
+            invalidateAll();
+            return;
+        }
+        generation++;
+        Cache<CacheKey, CachedDocument> cache = this.cache;
+        if (cache != null) {
+            cache.asMap()
+                    .keySet()
+                    .removeIf(k -> k.workspace == null || k.workspace.equals(workspace));
+        }
+    }
+
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    synchronized void put(CacheKey key, CachedDocument document, long generation) {
+        Cache<CacheKey, CachedDocument> cache = this.cache;
+        if (cache != null && this.generation == generation) {
+            cache.put(key, document);
+        }
+    }
+
+    CachedDocument get(CacheKey key) {
+        Cache<CacheKey, CachedDocument> cache = this.cache;
+        return cache != null ? cache.getIfPresent(key) : null;
+    }
+
+    @Override
+    public Response responseDispatched(
+            Request request, Operation operation, Object result, Response response) {
+        if (isCacheable(request, operation)) {
+            boolean encodable = gzip && !isCompressed(request.getHttpResponse());
+            return new CachingResponse(
+                    response,
+                    getKey(request, operation),
+                    encodable,
+                    encodable && acceptsGzip(request));
+        }
+
+        return response;
+    }
+
+    /** Only GET capabilities requests to the configured services are cached */
+    private boolean isCacheable(Request request, Operation operation) {
+        return cache != null
+                && request.isGet()
+                && request.getHttpRequest() != null
+                && "GetCapabilities".equalsIgnoreCase(operation.getId())
+                && services.contains(operation.getService().getId().toUpperCase());
+    }
+
+    private boolean acceptsGzip(Request request) {
+        String accept = request.getHttpRequest().getHeader(HttpHeaders.ACCEPT_ENCODING);
+        return accept != null && accept.toLowerCase().contains("gzip");
+    }
+
+    /** Returns true if the response is wrapped by the {@link org.geoserver.filters.GZIPFilter} */
+    static boolean isCompressed(ServletResponse response) {
+        while (response != null) {
+            if (response instanceof GZIPResponseWrapper) {
+                return true;
+            }
+            response =
+                    response instanceof ServletResponseWrapper
+                            ? ((ServletResponseWrapper) response).getResponse()
+                            : null;
+        }
+        return false;
+    }
+
+    CacheKey getKey(Request request, Operation operation) {
+        String version =
+                operation.getService().getVersion() != null
+                        ? operation.getService().getVersion().toString()
+                        : request.getVersion();
+        WorkspaceInfo workspace = LocalWorkspace.get();
+        PublishedInfo published = LocalPublished.get();
+
+        // the roles decide which layers are visible, and data access rules can also be bound to
+        // specific users
+        Set<String> roles = new TreeSet<>();
+        String user = null;
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null && auth.getAuthorities() != null) {
+            for (GrantedAuthority authority : auth.getAuthorities()) {
+                roles.add(authority.getAuthority());
+            }
+        }
+        if (auth != null && !(auth instanceof AnonymousAuthenticationToken)) {
+            user = auth.getName();
+        }
+
+        // the URL manglers might take into account proxy headers
+        HttpServletRequest httpRequest = request.getHttpRequest();
+        String baseURL =
+                ResponseUtils.buildURL(
+                        ResponseUtils.baseURL(httpRequest), null, null, URLType.SERVICE);
+
+        Map<String, String> kvp = new TreeMap<>();
+        Map<?, ?> rawKvp = request.getRawKvp();
+        if (rawKvp != null) {
+            for (Map.Entry<?, ?> entry : rawKvp.entrySet()) {
+                kvp.put(
+                        String.valueOf(entry.getKey()).toUpperCase(),
+                        entry.getValue() instanceof Object[]
+                                ? Arrays.toString((Object[]) entry.getValue())
+                                : String.valueOf(entry.getValue()));
+            }
+        }
+
+        // data access rule changes are not notified, a new version of the rules changes the key
+        DataAccessRuleDAO rules = DataAccessRuleDAO.get();
+
+        return new CacheKey(
+                operation.getService().getId().toUpperCase(),
+                version,
+                workspace != null ? workspace.getName() : null,
+                published != null ? published.getName() : null,
+                user,
+                roles,
+                baseURL + httpRequest.getServletPath(),
+                kvp,
+                rules != null ? rules.getLastModified() : 0);
+    }
+
+    @Override
+    public void handleAddEvent(CatalogAddEvent event) throws CatalogException {
+        invalidate(event.getSource());
+    }
+
+    @Override
+    public void handleRemoveEvent(CatalogRemoveEvent event) throws CatalogException {
+        invalidate(event.getSource());
+    }
+
+    @Override
+    public void handleModifyEvent(CatalogModifyEvent event) throws CatalogException {
+        // the object might be moving to another workspace, drop the documents of the old one
+        invalidate(event.getSource());
+    }
+
+    @Override
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) throws CatalogException {
+        invalidate(event.getSource());
+    }
+
+    @Override
+    public void reloaded() {
+        invalidateAll();
+    }
+
+    /** Drops the documents the catalog object can show up in */
+    void invalidate(CatalogInfo info) {
+        invalidate(getWorkspaceName(info));
+    }
+
+    /**
+     * Returns the name of the workspace the object belongs to, or null if it's global and can show
+     * up in any document
+     */
+    static String getWorkspaceName(CatalogInfo info) {
+        WorkspaceInfo workspace = null;
+        if (info instanceof WorkspaceInfo) {
+            workspace = (WorkspaceInfo) info;
+        } else if (info instanceof NamespaceInfo) {
+            return ((NamespaceInfo) info).getPrefix();
+        } else if (info instanceof StoreInfo) {
+            workspace = ((StoreInfo) info).getWorkspace();
+        } else if (info instanceof ResourceInfo) {
+            NamespaceInfo ns = ((ResourceInfo) info).getNamespace();
+            return ns != null ? ns.getPrefix() : null;
+        } else if (info instanceof LayerInfo) {
+            ResourceInfo resource = ((LayerInfo) info).getResource();
+            return resource != null ? getWorkspaceName(resource) : null;
+        } else if (info instanceof LayerGroupInfo) {
+            workspace = ((LayerGroupInfo) info).getWorkspace();
+        } else if (info instanceof StyleInfo) {
+            workspace = ((StyleInfo) info).getWorkspace();
+        }
+        return workspace != null ? workspace.getName() : null;
+    }
+
+    /** The key of a cached document */
+    static final class CacheKey {
+        final String service;
+
+        final String version;
+
+        final String workspace;
+
+        final String layer;
+
+        final String user;
+
+        final Set<String> roles;
+
+        final String baseURL;
+
+        final Map<String, String> kvp;
+
+        final long rulesModified;
+
+        CacheKey(
+                String service,
+                String version,
+                String workspace,
+                String layer,
+                String user,
+                Set<String> roles,
+                String baseURL,
+                Map<String, String> kvp,
+                long rulesModified) {
+            this.service = service;
+            this.version = version;
+            this.workspace = workspace;
+            this.layer = layer;
+            this.user = user;
+            this.roles = roles;
+            this.baseURL = baseURL;
+            this.kvp = kvp;
+            this.rulesModified = rulesModified;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            CacheKey that = (CacheKey) o;
+            return rulesModified == that.rulesModified
+                    && Objects.equals(service, that.service)
+                    && Objects.equals(version, that.version)
+                    && Objects.equals(workspace, that.workspace)
+                    && Objects.equals(layer, that.layer)
+                    && Objects.equals(user, that.user)
+                    && Objects.equals(roles, that.roles)
+                    && Objects.equals(baseURL, that.baseURL)
+                    && Objects.equals(kvp, that.kvp);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(
+                    service, version, workspace, layer, user, roles, baseURL, kvp, rulesModified);
+        }
+    }
+
+    /**
+     * An encoded document, along with its gzipped version. Both are computed before the document is
+     * cached, as the cache weighs the documents only once
+     */
+    static final class CachedDocument {
+        final byte[] bytes;
+
+        final byte[] gzipped;
+
+        CachedDocument(byte[] bytes, boolean gzip) throws IOException {
+            this.bytes = bytes;
+            this.gzipped = gzip ? gzip(bytes) : null;
+        }
+
+        /** Returns the gzipped document, compressing it on the fly if no copy was kept */
+        byte[] getGzipped() throws IOException {
+            return gzipped != null ? gzipped : gzip(bytes);
+        }
+
+        int weight() {
+            return bytes.length + (gzipped != null ? gzipped.length : 0);
+        }
+
+        private static byte[] gzip(byte[] bytes) throws IOException {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(bytes.length / 4 + 64);
+            try (GZIPOutputStream zos = new GZIPOutputStream(bos)) {
+                zos.write(bytes);
+            }
+            return bos.toByteArray();
+        }
+    }
+
+    /** A Response wrapper returning the cached document, or caching the delegate output */
+    private class CachingResponse extends Response {
+
+        Response delegate;
+
+        CacheKey key;
+
+        /** Whether the encoding depends on the client Accept-Encoding header */
+        boolean encodable;
+
+        boolean gzipped;
+
+        public CachingResponse(
+                Response delegate, CacheKey key, boolean encodable, boolean gzipped) {
+            super(delegate.getBinding());
+            this.delegate = delegate;
+            this.key = key;
+            this.encodable = encodable;
+            this.gzipped = gzipped;
+        }
+
+        public boolean canHandle(Operation operation) {
+            return delegate.canHandle(operation);
+        }
+
+        public String getMimeType(Object value, Operation operation) throws ServiceException {
+            return delegate.getMimeType(value, operation);
+        }
+
+        public String[][] getHeaders(Object value, Operation operation) throws ServiceException {
+            String[][] headers = delegate.getHeaders(value, operation);
+            if (encodable) {
+                // let the HTTP caches know the plain and gzipped documents are different
+                headers = addHeader(headers, HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            }
+            if (gzipped) {
+                headers = addHeader(headers, HttpHeaders.CONTENT_ENCODING, "gzip");
+            }
+            return headers;
+        }
+
+        private String[][] addHeader(String[][] headers, String name, String value) {
+            String[] header = {name, value};
+            return headers == null ? new String[][] {header} : ArrayUtils.add(headers, header);
+        }
+
+        public void write(Object value, OutputStream output, Operation operation)
+                throws IOException, ServiceException {
+            CachedDocument document = get(key);
+            if (document == null) {
+                long generation = getGeneration();
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                delegate.write(value, bos, operation);
+                document = new CachedDocument(bos.toByteArray(), gzip);
+                put(key, document, generation);
+            }
+            output.write(gzipped ? document.getGzipped() : document.bytes);
+        }
+
+        public String getPreferredDisposition(Object value, Operation operation) {
+            return delegate.getPreferredDisposition(value, operation);
+        }
+
+        public String getAttachmentFileName(Object value, Operation operation) {
+            return delegate.getAttachmentFileName(value, operation);
+        }
+
+        public String getCharset(Operation operation) {
+            return delegate.getCharset(operation);
+        }
+    }
+}
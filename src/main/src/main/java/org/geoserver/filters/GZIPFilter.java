@@ -29,6 +29,7 @@ import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import org.geoserver.ows.Dispatcher;
 
 public class GZIPFilter implements Filter {
 
@@ -44,8 +45,12 @@ public class GZIPFilter implements Filter {
                 GZIPResponseWrapper wrappedResponse =
                         new GZIPResponseWrapper(
                                 response, myCompressedTypes, request.getRequestURL().toString());
+                // asynchronous OWS requests are still writing when the chain returns
+                Dispatcher.addAsyncCompletionTask(req, wrappedResponse::finishResponse);
                 chain.doFilter(req, wrappedResponse);
-                wrappedResponse.finishResponse();
+                if (!Dispatcher.isAsync(req)) {
+                    wrappedResponse.finishResponse();
+                }
                 return;
             }
         }
@@ -0,0 +1,52 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security.filter;
+
+import java.io.IOException;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.geoserver.ows.AsyncSecurityExceptionHandler;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+import org.springframework.security.authentication.InsufficientAuthenticationException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.AuthenticationEntryPoint;
+
+/**
+ * Translates the security exceptions of the asynchronous OWS requests the same way {@link
+ * GeoServerExceptionTranslationFilter} does for the synchronous ones: authentication failures and
+ * anonymous access denials start the authentication entry point recorded by the authentication
+ * filters of the request, other access denials are answered with a 403.
+ */
+public class AsyncSecurityExceptionTranslator implements AsyncSecurityExceptionHandler {
+
+    AuthenticationEntryPoint entryPoint =
+            new GeoServerExceptionTranslationFilter.DynamicAuthenticationEntryPoint();
+
+    AuthenticationTrustResolver trustResolver = new AuthenticationTrustResolverImpl();
+
+    @Override
+    public void handle(
+            RuntimeException exception, HttpServletRequest request, HttpServletResponse response)
+            throws IOException, ServletException {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (exception instanceof AuthenticationException) {
+            entryPoint.commence(request, response, (AuthenticationException) exception);
+        } else if (exception instanceof AccessDeniedException
+                && (auth == null || trustResolver.isAnonymous(auth))) {
+            entryPoint.commence(
+                    request,
+                    response,
+                    new InsufficientAuthenticationException(
+                            "Full authentication is required to access this resource"));
+        } else {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN, exception.getMessage());
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.threadlocals;
+
+import org.geoserver.ows.DispatcherTaskDecorator;
+import org.geotools.referencing.CRS;
+
+/**
+ * Transfers the registered {@link ThreadLocalTransfer} thread locals (authentication, local
+ * workspace, ...) into the threads running the asynchronous OWS requests, and cleans them up once
+ * the request is done
+ */
+public class ThreadLocalsTransferDecorator implements DispatcherTaskDecorator {
+
+    @Override
+    public Runnable decorate(Runnable task) {
+        ThreadLocalsTransfer transfer = new ThreadLocalsTransfer();
+        return () -> {
+            transfer.apply();
+            try {
+                task.run();
+            } finally {
+                transfer.cleanup();
+                // same as the ThreadLocalsCleanupFilter does for the container threads
+                CRS.cleanupThreadLocals();
+            }
+        };
+    }
+}
@@ -0,0 +1,76 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class BoundedResourceCacheTest {
+
+    @Test
+    public void testHitsAndMisses() {
+        BoundedResourceCache<String, String> cache =
+                new BoundedResourceCache<>("test", 1000, 0, String::length, null);
+        assertNull(cache.get("a"));
+        cache.put("a", "abc");
+        assertEquals("abc", cache.get("a"));
+        assertEquals("abc", cache.get("a"));
+
+        ResourceCacheStatistics stats = cache.getStatistics();
+        assertEquals("test", stats.getName());
+        assertEquals(1, stats.getSize());
+        assertEquals(3, stats.getWeight());
+        assertEquals(2, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+        assertEquals(0, stats.getEvictionCount());
+    }
+
+    @Test
+    public void testEvictionByWeight() {
+        List<String> disposed = new ArrayList<>();
+        BoundedResourceCache<String, String> cache =
+                new BoundedResourceCache<>(
+                        "test", 100, 0, String::length, (k, v) -> disposed.add(k));
+        for (int i = 0; i < 10; i++) {
+            cache.put("key" + i, "0123456789012345678901234567890123456789");
+        }
+        cache.cleanUp();
+
+        // only two entries fit in the budget
+        assertTrue(cache.size() <= 2);
+        ResourceCacheStatistics stats = cache.getStatistics();
+        assertTrue(stats.getEvictionCount() >= 8);
+        assertTrue(stats.getWeight() <= 100);
+        assertEquals(10 - cache.size(), disposed.size());
+    }
+
+    @Test
+    public void testRemoveAndClearDispose() {
+        List<String> disposed = new ArrayList<>();
+        BoundedResourceCache<String, String> cache =
+                new BoundedResourceCache<>(
+                        "test", 1000, 0, String::length, (k, v) -> disposed.add(k));
+        cache.put("a", "abc");
+        cache.put("b", "def");
+        // replacing does not dispose
+        cache.put("b", "ghi");
+        assertTrue(disposed.isEmpty());
+
+        assertEquals("abc", cache.remove("a"));
+        assertEquals(1, disposed.size());
+        assertFalse(cache.containsKey("a"));
+
+        cache.clear();
+        assertEquals(2, disposed.size());
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getStatistics().getWeight());
+    }
+}
@@ -177,6 +177,44 @@ public class ResourcePoolTest extends GeoServerSystemTestSupport {
         assertSame(ft1, ft3);
     }
 
+    @Test
+    public void testBoundedCachePolicy() throws Exception {
+        ResourcePool pool = ResourcePool.create(getCatalog());
+        pool.setCachePolicy(ResourcePool.CachePolicy.BOUNDED, 1024 * 1024, 0);
+        assertEquals(ResourcePool.CachePolicy.BOUNDED, pool.getCachePolicy());
+        assertTrue(pool.getFeatureTypeCache() instanceof BoundedResourceCache);
+        // readers in use cannot be disposed on eviction, they stay soft cached
+        assertFalse(pool.getHintCoverageReaderCache() instanceof BoundedResourceCache);
+
+        FeatureTypeInfo info =
+                getCatalog()
+                        .getFeatureTypeByName(
+                                MockData.LAKES.getNamespaceURI(), MockData.LAKES.getLocalPart());
+        FeatureType ft1 = pool.getFeatureType(info);
+        FeatureType ft2 = pool.getFeatureType(info);
+        assertSame(ft1, ft2);
+
+        ResourceCacheStatistics stats =
+                pool.getCacheStatistics()
+                        .stream()
+                        .filter(s -> "featureTypeCache".equals(s.getName()))
+                        .findFirst()
+                        .get();
+        assertEquals(ResourcePool.CachePolicy.BOUNDED, stats.getPolicy());
+        assertEquals(1, stats.getSize());
+        assertTrue(stats.getHitCount() > 0);
+        assertTrue(stats.getMissCount() > 0);
+        assertTrue(stats.getWeight() > 0);
+
+        // going back to the default
+        pool.setCachePolicy(
+                ResourcePool.CachePolicy.SOFT,
+                ResourcePool.CACHE_MAX_WEIGHT_DEFAULT,
+                ResourcePool.CACHE_EXPIRE_AFTER_ACCESS_DEFAULT);
+        assertFalse(pool.getFeatureTypeCache() instanceof BoundedResourceCache);
+        assertEquals(ft1.getName(), pool.getFeatureType(info).getName());
+    }
+
     @Test
     public void testAttributeCache() throws Exception {
         final Catalog catalog = getCatalog();
@@ -1614,6 +1614,72 @@ public class CatalogImplTest extends GeoServerSystemTestSupport {
         assertEquals(l3, l4);
     }
 
+    @Test
+    public void testGetLayersByStyleAfterStyleChange() {
+        CatalogFactory factory = catalog.getFactory();
+        StyleInfo s2 = factory.createStyle();
+        s2.setName("styleName2");
+        s2.setFilename("styleFilename2");
+        catalog.add(s2);
+        addLayer();
+        assertEquals(1, catalog.getLayers(s).size());
+        assertTrue(catalog.getLayers(s2).isEmpty());
+
+        // switch default style, then add the old one as an alternate
+        LayerInfo l2 = catalog.getLayerByName(l.getName());
+        l2.setDefaultStyle(catalog.getStyleByName("styleName2"));
+        catalog.save(l2);
+        assertTrue(catalog.getLayers(s).isEmpty());
+        assertEquals(1, catalog.getLayers(s2).size());
+
+        l2 = catalog.getLayerByName(l.getName());
+        l2.getStyles().add(catalog.getStyleByName(s.getName()));
+        catalog.save(l2);
+        assertEquals(1, catalog.getLayers(s).size());
+        assertEquals(1, catalog.getLayers(s2).size());
+
+        // removal clears the lookups
+        catalog.remove(catalog.getLayerByName(l.getName()));
+        assertTrue(catalog.getLayers(s).isEmpty());
+        assertTrue(catalog.getLayers(s2).isEmpty());
+    }
+
+    @Test
+    public void testGetResourcesByStoreAfterStoreChange() {
+        addFeatureType();
+        DataStoreInfo ds2 = catalog.getFactory().createDataStore();
+        ds2.setName("ds2");
+        ds2.setWorkspace(ws);
+        catalog.add(ds2);
+        assertEquals(1, catalog.getResourcesByStore(ds, ResourceInfo.class).size());
+        assertTrue(catalog.getResourcesByStore(ds2, ResourceInfo.class).isEmpty());
+
+        FeatureTypeInfo ft2 = catalog.getFeatureTypeByName(ft.getName());
+        ft2.setStore(catalog.getDataStoreByName(ws, "ds2"));
+        catalog.save(ft2);
+        assertTrue(catalog.getResourcesByStore(ds, ResourceInfo.class).isEmpty());
+        List<ResourceInfo> resources = catalog.getResourcesByStore(ds2, ResourceInfo.class);
+        assertEquals(1, resources.size());
+        assertEquals(ft.getName(), resources.get(0).getName());
+    }
+
+    @Test
+    public void testGetStoresByWorkspaceAfterWorkspaceChange() {
+        addDataStore();
+        catalog.add(wsA);
+        assertEquals(1, catalog.getStoresByWorkspace(ws, StoreInfo.class).size());
+        assertTrue(catalog.getStoresByWorkspace(wsA, StoreInfo.class).isEmpty());
+
+        DataStoreInfo ds2 = catalog.getDataStoreByName(ds.getName());
+        ds2.setWorkspace(catalog.getWorkspaceByName(wsA.getName()));
+        catalog.save(ds2);
+        assertTrue(catalog.getStoresByWorkspace(ws, StoreInfo.class).isEmpty());
+        assertEquals(1, catalog.getStoresByWorkspace(wsA, StoreInfo.class).size());
+
+        catalog.remove(catalog.getDataStoreByName(wsA.getName(), ds.getName()));
+        assertTrue(catalog.getStoresByWorkspace(wsA, StoreInfo.class).isEmpty());
+    }
+
     @Test
     public void testEnableLayer() {
         addLayer();
@@ -3095,6 +3161,45 @@ public class CatalogImplTest extends GeoServerSystemTestSupport {
         testOrderBy(LayerInfo.class, filter, 0, 10, sortOrder, expected);
     }
 
+    @Test
+    public void testOrderByPaging() {
+        CatalogFactory factory = catalog.getFactory();
+        for (String name : new String[] {"ws3", "ws1", "ws2"}) {
+            WorkspaceInfo workspace = factory.createWorkspace();
+            workspace.setName(name);
+            catalog.add(workspace);
+        }
+        Filter filter = acceptAll();
+        List<WorkspaceInfo> expected =
+                Lists.newArrayList(
+                        catalog.getWorkspaceByName("ws3"),
+                        catalog.getWorkspaceByName("ws2"),
+                        catalog.getWorkspaceByName("ws1"));
+        testOrderBy(WorkspaceInfo.class, filter, null, null, desc("name"), expected);
+        testOrderBy(WorkspaceInfo.class, filter, 1, 10, desc("name"), expected.subList(1, 3));
+        testOrderBy(WorkspaceInfo.class, filter, 1, 1, asc("name"), expected.subList(1, 2));
+        filter = equal("name", "ws1");
+        testOrderBy(WorkspaceInfo.class, filter, 0, 1, asc("name"), expected.subList(2, 3));
+
+        // all styles share the same filename, paging must still return each style once
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < 6; i++) {
+            catalog.add(newStyle("s" + i, "sameFilename"));
+        }
+        for (int offset = 0; offset < 6; offset += 2) {
+            try (CloseableIterator<StyleInfo> it =
+                    catalog.list(StyleInfo.class, acceptAll(), offset, 2, asc("filename"))) {
+                while (it.hasNext()) {
+                    assertTrue(names.add(it.next().getName()));
+                }
+            }
+        }
+        assertEquals(6, names.size());
+        assertEquals(6, catalog.count(StyleInfo.class, acceptAll()));
+        assertEquals(6, catalog.getFacade().estimateCount(StyleInfo.class, acceptAll()));
+        assertEquals(1, catalog.count(StyleInfo.class, equal("name", "s3")));
+    }
+
     private <T extends CatalogInfo> void testOrderBy(
             Class<T> clazz,
             Filter filter,
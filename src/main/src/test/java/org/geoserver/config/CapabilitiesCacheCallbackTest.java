@@ -0,0 +1,55 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import java.util.zip.GZIPInputStream;
+import javax.servlet.http.HttpServletResponseWrapper;
+import org.apache.commons.io.IOUtils;
+import org.geoserver.filters.GZIPResponseWrapper;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class CapabilitiesCacheCallbackTest {
+
+    @Test
+    public void testCompressedResponse() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertFalse(CapabilitiesCacheCallback.isCompressed(response));
+        HttpServletResponseWrapper wrapper = new HttpServletResponseWrapper(response);
+        assertFalse(CapabilitiesCacheCallback.isCompressed(wrapper));
+
+        GZIPResponseWrapper gzip =
+                new GZIPResponseWrapper(response, Collections.singleton("text/xml"), "test");
+        assertTrue(CapabilitiesCacheCallback.isCompressed(gzip));
+        // other filters might wrap it further
+        assertTrue(CapabilitiesCacheCallback.isCompressed(new HttpServletResponseWrapper(gzip)));
+    }
+
+    @Test
+    public void testDocumentWeight() throws Exception {
+        byte[] bytes = new byte[1000];
+        CapabilitiesCacheCallback.CachedDocument plain =
+                new CapabilitiesCacheCallback.CachedDocument(bytes, false);
+        assertNull(plain.gzipped);
+        assertEquals(1000, plain.weight());
+        // compressed on the fly, the weight of the cached document does not change
+        try (GZIPInputStream is =
+                new GZIPInputStream(new ByteArrayInputStream(plain.getGzipped()))) {
+            assertEquals(1000, IOUtils.toByteArray(is).length);
+        }
+        assertEquals(1000, plain.weight());
+
+        CapabilitiesCacheCallback.CachedDocument gzipped =
+                new CapabilitiesCacheCallback.CachedDocument(bytes, true);
+        assertEquals(1000 + gzipped.gzipped.length, gzipped.weight());
+    }
+}
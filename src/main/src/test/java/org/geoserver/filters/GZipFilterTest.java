@@ -9,11 +9,15 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.zip.GZIPInputStream;
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
+import org.apache.commons.io.IOUtils;
+import org.geoserver.ows.Dispatcher;
 import org.hamcrest.CoreMatchers;
 import org.junit.Test;
 import org.springframework.mock.web.DelegatingServletOutputStream;
@@ -123,6 +127,42 @@ public class GZipFilterTest {
         assertEquals("1000", response.getHeader("Content-Length"));
     }
 
+    @Test
+    public void testAsyncRequestFinishedOnCompletion() throws Exception {
+        MockHttpServletRequest request =
+                new MockHttpServletRequest("GET", "http://www.geoserver.org");
+        request.addHeader("accept-encoding", "gzip");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setContentType("text/plain");
+
+        GZIPFilter filter = new GZIPFilter();
+        MockServletContext context = new MockServletContext();
+        MockFilterConfig config = new MockFilterConfig(context);
+        config.addInitParameter("compressed-types", "text/plain");
+        filter.init(config);
+
+        // the chain returns while the dispatcher is still writing the response
+        MockFilterChain chain =
+                new MockFilterChain() {
+                    @Override
+                    public void doFilter(ServletRequest request, ServletResponse response)
+                            throws IOException, ServletException {
+                        request.setAttribute(Dispatcher.ASYNC_KEY, true);
+                        response.getOutputStream().write("Hello world!".getBytes("UTF-8"));
+                    }
+                };
+        filter.doFilter(request, response, chain);
+        int written = response.getContentAsByteArray().length;
+
+        // the gzip trailer is written once the dispatcher is done
+        Dispatcher.runAsyncCompletionTasks(request);
+        byte[] compressed = response.getContentAsByteArray();
+        assertTrue(compressed.length > written);
+        try (GZIPInputStream is = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            assertEquals("Hello world!", IOUtils.toString(is, "UTF-8"));
+        }
+    }
+
     @Test
     public void testFlushAfterClose() throws ServletException, IOException {
         // prepare request, response, and chain
@@ -0,0 +1,27 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+import java.io.IOException;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Reports the Spring Security exceptions thrown by the requests the {@link Dispatcher} runs off
+ * the servlet container threads. In synchronous mode these exceptions flow back to the security
+ * filters, which answer with an authentication challenge or an access denied error, in
+ * asynchronous mode the filters are gone by the time the request fails.
+ *
+ * <p>The first handler found in the application context is used. The handler is called in the
+ * executor thread, with the security context of the request in place.
+ */
+public interface AsyncSecurityExceptionHandler {
+
+    /** Writes the response for the given security exception */
+    void handle(
+            RuntimeException exception, HttpServletRequest request, HttpServletResponse response)
+            throws IOException, ServletException;
+}
@@ -27,8 +27,16 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletRequest;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.xml.namespace.QName;
@@ -54,9 +62,15 @@ import org.geoserver.platform.ServiceException;
 import org.geotools.util.Version;
 import org.geotools.xml.transform.TransformerBase;
 import org.geotools.xsd.EMFUtils;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.NoSuchBeanDefinitionException;
 import org.springframework.context.ApplicationContext;
 import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.AbstractController;
 import org.w3c.dom.Document;
@@ -110,7 +124,7 @@ import org.xmlpull.v1.XmlPullParserFactory;
  *
  * @author Justin Deoliveira, The Open Planning Project, jdeolive@openplans.org
  */
-public class Dispatcher extends AbstractController {
+public class Dispatcher extends AbstractController implements DisposableBean {
     /** Logging instance */
     static Logger logger = org.geotools.util.logging.Logging.getLogger("org.geoserver.ows");
 
@@ -141,6 +155,25 @@ public class Dispatcher extends AbstractController {
 
     private Method getEntityResolver = null;
 
+    /**
+     * Executor running the requests off the container threads, when the asynchronous mode is
+     * enabled, or null
+     */
+    ExecutorService asyncExecutor;
+
+    /** Request attribute flagging the requests handled asynchronously */
+    public static final String ASYNC_KEY = Dispatcher.class.getName() + ".async";
+
+    /** Request attribute holding the tasks to run once an asynchronous request is done */
+    public static final String ASYNC_COMPLETION_KEY =
+            Dispatcher.class.getName() + ".asyncCompletion";
+
+    /** Decorators of the asynchronous tasks */
+    List<DispatcherTaskDecorator> taskDecorators = Collections.emptyList();
+
+    /** Handlers of the security exceptions thrown by the asynchronous requests */
+    List<AsyncSecurityExceptionHandler> securityHandlers = Collections.emptyList();
+
     {
         try {
             // Use reflection to access class/method in the gs-main module.
@@ -199,6 +232,65 @@ public class Dispatcher extends AbstractController {
                         "Invalid XML_LOOKAHEAD value, " + "will use " + XML_LOOKAHEAD + " instead");
             }
         }
+
+        // setup the optional asynchronous mode
+        taskDecorators = GeoServerExtensions.extensions(DispatcherTaskDecorator.class, context);
+        securityHandlers =
+                GeoServerExtensions.extensions(AsyncSecurityExceptionHandler.class, context);
+        String asyncThreads = GeoServerExtensions.getProperty("OWS_ASYNC_THREADS", context);
+        if (asyncThreads != null && asyncExecutor == null) {
+            try {
+                int threads = Integer.parseInt(asyncThreads.trim());
+                if (threads > 0) {
+                    asyncExecutor = createAsyncExecutor(threads);
+                    logger.info("Asynchronous OWS request execution enabled, threads: " + threads);
+                }
+            } catch (NumberFormatException e) {
+                logger.log(Level.SEVERE, "Invalid OWS_ASYNC_THREADS value " + asyncThreads);
+            }
+        }
+    }
+
+    /**
+     * Creates the bounded executor used in asynchronous mode. Requests exceeding the number of
+     * threads are queued without holding any thread.
+     */
+    static ExecutorService createAsyncExecutor(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor executor =
+                new ThreadPoolExecutor(
+                        threads,
+                        threads,
+                        60,
+                        TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<>(),
+                        r -> {
+                            Thread t = new Thread(r, "ows-async-" + counter.incrementAndGet());
+                            t.setDaemon(true);
+                            return t;
+                        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Sets the executor used to run the requests off the servlet container threads. When null
+     * (the default, unless the OWS_ASYNC_THREADS property is set) requests are executed
+     * synchronously in the container thread.
+     */
+    public void setAsyncExecutor(ExecutorService asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    public ExecutorService getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (asyncExecutor != null) {
+            asyncExecutor.shutdown();
+        }
     }
 
     protected void preprocessRequest(HttpServletRequest request) throws Exception {
@@ -221,6 +313,134 @@ public class Dispatcher extends AbstractController {
             HttpServletRequest httpRequest, HttpServletResponse httpResponse) throws Exception {
         preprocessRequest(httpRequest);
 
+        if (asyncExecutor != null
+                && httpRequest.isAsyncSupported()
+                && !httpRequest.isAsyncStarted()) {
+            handleAsync(httpRequest, httpResponse);
+        } else {
+            handle(httpRequest, httpResponse);
+        }
+
+        return null;
+    }
+
+    /**
+     * Releases the container thread, and executes the request in the async executor thread pool,
+     * including the response writing. Control flow callbacks are run in the executor threads too,
+     * so queued requests do not hold container threads.
+     */
+    void handleAsync(HttpServletRequest httpRequest, HttpServletResponse httpResponse) {
+        // the filters have to leave the response post-processing to the executor thread
+        httpRequest.setAttribute(ASYNC_KEY, Boolean.TRUE);
+        AsyncContext async = httpRequest.startAsync(httpRequest, httpResponse);
+        // the request lasts until the executor is done with it, however long it takes
+        async.setTimeout(0);
+        Runnable task =
+                () -> {
+                    // the request attributes of the container thread are completed as soon as
+                    // it leaves the spring dispatcher servlet
+                    ServletRequestAttributes attributes =
+                            new ServletRequestAttributes(httpRequest, httpResponse);
+                    RequestContextHolder.setRequestAttributes(attributes);
+                    try {
+                        handle(httpRequest, httpResponse);
+                    } catch (Exception e) {
+                        handleAsyncError(e, httpRequest, httpResponse);
+                    } finally {
+                        try {
+                            runAsyncCompletionTasks(httpRequest);
+                        } finally {
+                            attributes.requestCompleted();
+                            RequestContextHolder.resetRequestAttributes();
+                            async.complete();
+                        }
+                    }
+                };
+        for (DispatcherTaskDecorator decorator : taskDecorators) {
+            task = decorator.decorate(task);
+        }
+        try {
+            asyncExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // executor shut down, run in the container thread
+            task.run();
+        }
+    }
+
+    /**
+     * Reports the errors that {@link #handle(HttpServletRequest, HttpServletResponse)} lets
+     * through. The security exceptions cannot flow back to the security filters from the executor
+     * thread, they are passed to the {@link AsyncSecurityExceptionHandler} instead
+     */
+    void handleAsyncError(
+            Exception e, HttpServletRequest httpRequest, HttpServletResponse httpResponse) {
+        if (httpResponse.isCommitted()) {
+            logger.log(Level.WARNING, "Error occurred after the response was committed", e);
+            return;
+        }
+        try {
+            if (isSecurityException(e)
+                    && e instanceof RuntimeException
+                    && !securityHandlers.isEmpty()) {
+                logger.log(Level.FINE, "Security exception during asynchronous request", e);
+                securityHandlers.get(0).handle((RuntimeException) e, httpRequest, httpResponse);
+            } else if (isSecurityException(e)) {
+                logger.log(Level.FINE, "Security exception during asynchronous request", e);
+                Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+                boolean anonymous = auth == null || auth instanceof AnonymousAuthenticationToken;
+                httpResponse.sendError(anonymous ? 401 : 403, e.getMessage());
+            } else {
+                logger.log(Level.SEVERE, "Error during asynchronous request", e);
+                httpResponse.sendError(500, e.getMessage());
+            }
+        } catch (Exception ex) {
+            logger.log(Level.FINE, "Failed to report the asynchronous request error", ex);
+        }
+    }
+
+    /**
+     * Registers a task post-processing the response once the request has been handled. Servlet
+     * filters working on the response after the filter chain returns (e.g., to finish a compressed
+     * stream) should register their post-processing before invoking the chain, and run it
+     * themselves only if {@link #isAsync(ServletRequest)} returns false once the chain returns.
+     * When the request is handled asynchronously the tasks are run, in reverse registration order,
+     * by the thread handling it right before completing the request.
+     */
+    @SuppressWarnings("unchecked")
+    public static void addAsyncCompletionTask(ServletRequest request, Runnable task) {
+        List<Runnable> tasks = (List<Runnable>) request.getAttribute(ASYNC_COMPLETION_KEY);
+        if (tasks == null) {
+            tasks = new ArrayList<>();
+            request.setAttribute(ASYNC_COMPLETION_KEY, tasks);
+        }
+        tasks.add(task);
+    }
+
+    /**
+     * Returns true if the request is being handled asynchronously, that is, the response is still
+     * being written when the filter chain returns
+     */
+    public static boolean isAsync(ServletRequest request) {
+        return Boolean.TRUE.equals(request.getAttribute(ASYNC_KEY));
+    }
+
+    /** Runs the tasks registered with {@link #addAsyncCompletionTask(ServletRequest, Runnable)} */
+    @SuppressWarnings("unchecked")
+    public static void runAsyncCompletionTasks(ServletRequest request) {
+        List<Runnable> tasks = (List<Runnable>) request.getAttribute(ASYNC_COMPLETION_KEY);
+        if (tasks != null) {
+            for (int i = tasks.size() - 1; i >= 0; i--) {
+                try {
+                    tasks.get(i).run();
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Failed to complete the asynchronous request", e);
+                }
+            }
+        }
+    }
+
+    void handle(HttpServletRequest httpRequest, HttpServletResponse httpResponse)
+            throws Exception {
         // create a new request instance
         Request request = new Request();
 
@@ -243,7 +463,7 @@ public class Dispatcher extends AbstractController {
             } catch (Throwable t) {
                 exception(t, null, request);
 
-                return null;
+                return;
             }
 
             // throw any outstanding errors
@@ -277,8 +497,6 @@ public class Dispatcher extends AbstractController {
             fireFinishedCallback(request);
             REQUEST.remove();
         }
-
-        return null;
     }
 
     void flagAsSOAP(Operation op) {
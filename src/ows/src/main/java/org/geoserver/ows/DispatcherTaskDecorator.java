@@ -0,0 +1,24 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+/**
+ * Decorates the tasks the {@link Dispatcher} runs off the servlet container threads when the
+ * asynchronous mode is enabled, e.g., to transfer thread local variables set up by the servlet
+ * filters into the thread executing the request.
+ *
+ * <p>The {@link #decorate(Runnable)} method is called in the container thread, the returned task
+ * is run in the executor thread. Instances of this interface should be registered in a spring
+ * application context like:
+ *
+ * <pre>
+ *  &lt;bean id="myDecorator" class="org.acme.MyDecorator"/&gt;
+ * </pre>
+ */
+public interface DispatcherTaskDecorator {
+
+    /** Returns a task wrapping the given one */
+    Runnable decorate(Runnable task);
+}
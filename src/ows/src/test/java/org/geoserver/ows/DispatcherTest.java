@@ -19,8 +19,14 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.lang.reflect.Method;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import javax.mail.internet.InternetHeaders;
 import javax.mail.internet.MimeBodyPart;
@@ -38,6 +44,8 @@ import org.springframework.context.support.FileSystemXmlApplicationContext;
 import org.springframework.mock.web.DelegatingServletInputStream;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.servlet.ModelAndView;
 import org.w3c.dom.Document;
 
@@ -240,6 +248,116 @@ public class DispatcherTest extends TestCase {
         assertEquals("Hello world!", response.getContentAsString());
     }
 
+    public void testHelloOperationAsync() throws Exception {
+        URL url = getClass().getResource("applicationContext.xml");
+
+        FileSystemXmlApplicationContext context =
+                new FileSystemXmlApplicationContext(url.toString());
+
+        Dispatcher dispatcher = (Dispatcher) context.getBean("dispatcher");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        dispatcher.setAsyncExecutor(executor);
+
+        MockHttpServletRequest request = asyncHelloRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        Thread caller = Thread.currentThread();
+        List<Thread> executors = new ArrayList<>();
+        List<Object> attributes = new ArrayList<>();
+        dispatcher.callbacks.add(
+                new AbstractDispatcherCallback() {
+                    @Override
+                    public Object operationExecuted(
+                            Request request, Operation operation, Object result) {
+                        executors.add(Thread.currentThread());
+                        attributes.add(RequestContextHolder.getRequestAttributes());
+                        return result;
+                    }
+                });
+        // as a filter would do, the task must run once the response is written
+        List<String> completions = new ArrayList<>();
+        Dispatcher.addAsyncCompletionTask(
+                request, () -> completions.add(response.getContentAsString()));
+
+        // keep the executor busy to check the container thread is released right away
+        CountDownLatch latch = new CountDownLatch(1);
+        executor.execute(
+                () -> {
+                    try {
+                        latch.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+        dispatcher.handleRequest(request, response);
+        assertTrue(request.isAsyncStarted());
+        assertTrue(Dispatcher.isAsync(request));
+        assertTrue(executors.isEmpty());
+        latch.countDown();
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals("Hello world!", response.getContentAsString());
+        assertEquals(1, executors.size());
+        assertNotSame(caller, executors.get(0));
+        assertNotNull(attributes.get(0));
+        assertEquals(Collections.singletonList("Hello world!"), completions);
+        assertFalse(request.isAsyncStarted());
+    }
+
+    public void testAsyncSecurityException() throws Exception {
+        URL url = getClass().getResource("applicationContext.xml");
+
+        FileSystemXmlApplicationContext context =
+                new FileSystemXmlApplicationContext(url.toString());
+
+        Dispatcher dispatcher = (Dispatcher) context.getBean("dispatcher");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        dispatcher.setAsyncExecutor(executor);
+        dispatcher.callbacks.add(
+                new AbstractDispatcherCallback() {
+                    @Override
+                    public Operation operationDispatched(Request request, Operation operation) {
+                        throw new AccessDeniedException("Denied");
+                    }
+                });
+        List<RuntimeException> handled = new ArrayList<>();
+        dispatcher.securityHandlers =
+                Collections.singletonList(
+                        (e, req, resp) -> {
+                            handled.add(e);
+                            resp.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+                        });
+
+        MockHttpServletRequest request = asyncHelloRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        dispatcher.handleRequest(request, response);
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(1, handled.size());
+        assertTrue(handled.get(0) instanceof AccessDeniedException);
+        assertEquals(HttpServletResponse.SC_UNAUTHORIZED, response.getStatus());
+        assertFalse(request.isAsyncStarted());
+    }
+
+    private MockHttpServletRequest asyncHelloRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAsyncSupported(true);
+        request.setScheme("http");
+        request.setServerName("localhost");
+        request.setContextPath("/geoserver");
+        request.setMethod("GET");
+        request.addParameter("service", "hello");
+        request.addParameter("request", "Hello");
+        request.addParameter("version", "1.0.0");
+        request.addParameter("message", "Hello world!");
+        request.setRequestURI(
+                "http://localhost/geoserver/ows?service=hello&request=hello&message=HelloWorld");
+        request.setQueryString("service=hello&request=hello&message=HelloWorld");
+        return request;
+    }
+
     public void testHelloOperationPost() throws Exception {
         URL url = getClass().getResource("applicationContext.xml");
 
@@ -5,11 +5,22 @@
  */
 package org.geoserver.platform.resource;
 
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
 import static java.util.concurrent.TimeUnit.MICROSECONDS;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -21,11 +32,14 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -38,9 +52,13 @@ import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 /**
  * Active object (using a ScheduledExecutorService) used to watch file system for changes.
  *
- * <p>This implementation currently polls the file system and should be updated with Java 7
- * WatchService when available. The internal design is similar to WatchService, WatchKey and
- * WatchEvent in order to facilitate this transition.
+ * <p>When available, a native {@link WatchService} is used to find out which watches are affected
+ * by changes, and only those are checked, after a short delay coalescing bursts of events. The
+ * implementation falls back on polling all the watches when the file system has no native support
+ * (or the JDK provides just a polling based one), when a directory cannot be registered (e.g.,
+ * watch limits reached), or when the {@code NATIVE_FILE_WATCHER} system variable is set to {@code
+ * false}. Network file systems might not report changes made by other machines, disabling the
+ * native events is recommended in that case.
  *
  * <p>This implementation makes a few concessions to being associated with ResourceStore, reporting
  * changes with resource paths rather than files.
@@ -51,6 +69,13 @@ public class FileSystemWatcher implements ResourceNotificationDispatcher, Dispos
 
     private static final Logger LOGGER = Logging.getLogger(FileSystemWatcher.class);
 
+    /** Allows to disable native file system events, and use polling instead */
+    static final boolean NATIVE_WATCH =
+            Boolean.valueOf(System.getProperty("NATIVE_FILE_WATCHER", "true"));
+
+    /** Maximum delay used to coalesce native events before checking the affected watches */
+    static final long MAX_DEBOUNCE_MILLIS = 500;
+
     /** Change to file system */
     static class Delta {
         /** Watched directory where changes occurred */
@@ -112,6 +137,9 @@ public class FileSystemWatcher implements ResourceNotificationDispatcher, Dispos
         /** Path to use during notification */
         final String path;
 
+        /** Absolute path of the file, to match native events */
+        final Path absolutePath;
+
         final List<ResourceListener> listeners = new CopyOnWriteArrayList<ResourceListener>();
 
         /** When last notification was sent */
@@ -128,6 +156,7 @@ public class FileSystemWatcher implements ResourceNotificationDispatcher, Dispos
             Objects.requireNonNull(path);
             this.file = file;
             this.path = path;
+            this.absolutePath = file.toPath().toAbsolutePath().normalize();
             this.exsists = file.exists();
             this.last = exsists ? file.lastModified() : 0;
             if (file.isDirectory()) {
@@ -318,93 +347,13 @@ public class FileSystemWatcher implements ResourceNotificationDispatcher, Dispos
     CopyOnWriteArrayList<Watch> watchers = new CopyOnWriteArrayList<Watch>();
 
     /**
-     * Note we have a single runnable here to review all outstanding Watch instances. The focus is
-     * on using minimal system resources while we wait for Java 7 WatchService (to be more
-     * efficient).
+     * Note we have a single runnable here to review all outstanding Watch instances, used when
+     * polling. The focus is on using minimal system resources.
      */
-    private Runnable sync =
-            new Runnable() {
-                @Override
-                public void run() {
-                    long now = System.currentTimeMillis();
-                    for (Watch watch : watchers) {
-                        if (watch.getListeners().isEmpty()) {
-                            watchers.remove(watch);
-                            continue;
-                        }
-                        final boolean directory = watch.file.isDirectory();
-                        Level level = Level.FINER;
-                        long start = System.nanoTime();
-                        if (directory) LOGGER.log(level, "polling contents of " + watch.file);
-                        Delta delta;
-                        try {
-                            delta = watch.changed(now);
-                        } catch (RuntimeException e) {
-                            LOGGER.log(Level.WARNING, "Error polling contents of " + watch.file, e);
-                            return;
-                        }
-                        if (directory && LOGGER.isLoggable(level)) {
-                            long ellapsedMicros =
-                                    MICROSECONDS.convert(System.nanoTime() - start, NANOSECONDS);
-                            long ellapsedMillis =
-                                    MILLISECONDS.convert(ellapsedMicros, MICROSECONDS);
-                            String unit = ellapsedMillis == 0L ? "us" : "ms";
-                            long time = ellapsedMillis == 0L ? ellapsedMicros : ellapsedMillis;
-                            LOGGER.log(
-                                    level,
-                                    String.format(
-                                            "delta computed in %,d%s for %s",
-                                            time, unit, watch.file));
-                        }
-                        if (delta != null) {
-                            notify(watch, delta);
-                        }
-                    }
-                }
+    private Runnable sync = this::sync;
 
-                private void notify(Watch watch, Delta delta) {
-                    if (LOGGER.isLoggable(Level.INFO)) {
-                        LOGGER.info(
-                                String.format(
-                                        "Notifying %s change on %s. Created: %,d, removed: %,d, modified: %,d",
-                                        delta.kind,
-                                        delta.context,
-                                        delta.created.size(),
-                                        delta.removed.size(),
-                                        delta.modified.size()));
-                    }
-                    // do not call listeners on the watch thread, they may take a
-                    // considerable amount of time to process the events
-                    CompletableFuture.runAsync(
-                            () -> {
-                                /** Created based on created/removed/modified files */
-                                List<ResourceNotification.Event> events =
-                                        ResourceNotification.delta(
-                                                watch.file,
-                                                delta.created,
-                                                delta.removed,
-                                                delta.modified);
-
-                                ResourceNotification notify =
-                                        new ResourceNotification(
-                                                watch.getPath(), delta.kind, watch.last, events);
-
-                                for (ResourceListener listener : watch.getListeners()) {
-                                    try {
-                                        listener.changed(notify);
-                                    } catch (Throwable t) {
-                                        Logger logger =
-                                                Logger.getLogger(
-                                                        listener.getClass().getPackage().getName());
-                                        logger.log(
-                                                Level.FINE,
-                                                "Unable to notify " + watch + ":" + t.getMessage(),
-                                                t);
-                                    }
-                                }
-                            });
-                }
-            };
+    /** Checks the watches marked as dirty by the native {@link WatchService} events */
+    private Runnable flush = this::flush;
 
     private ScheduledFuture<?> monitor;
 
@@ -412,6 +361,20 @@ public class FileSystemWatcher implements ResourceNotificationDispatcher, Dispos
 
     private long delay = 5;
 
+    /** Whether to try using a native {@link WatchService}, or just poll */
+    private volatile boolean nativeWatch;
+
+    /** The native watch service, lazily created when the first listener is added */
+    private WatchService watchService;
+
+    /** Directories registered with the native watch service */
+    private final Map<Path, WatchKey> registered = new ConcurrentHashMap<>();
+
+    /** Watches affected by native events, waiting for the debounce delay to expire */
+    private final Set<Watch> dirty = ConcurrentHashMap.newKeySet();
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
     private static CustomizableThreadFactory tFactory;
 
     static {
@@ -425,15 +388,25 @@ public class FileSystemWatcher implements ResourceNotificationDispatcher, Dispos
      * <p>Internally a single threaded schedule executor is used to monitor files.
      */
     FileSystemWatcher(Function<String, File> fileExtractor) {
+        this(fileExtractor, NATIVE_WATCH);
+    }
+
+    FileSystemWatcher(Function<String, File> fileExtractor, boolean nativeWatch) {
         Objects.requireNonNull(fileExtractor);
         this.pool = Executors.newSingleThreadScheduledExecutor(tFactory);
         this.fileExtractor = fileExtractor;
+        this.nativeWatch = nativeWatch;
     }
 
     FileSystemWatcher() {
         this(path -> new File(path.replace('/', File.separatorChar)));
     }
 
+    /** Returns true if native file system events are in use, false if polling */
+    boolean isNative() {
+        return nativeWatch;
+    }
+
     private Watch watch(File file, String path) {
         Objects.requireNonNull(file);
         Objects.requireNonNull(path);
@@ -454,7 +427,12 @@ public class FileSystemWatcher implements ResourceNotificationDispatcher, Dispos
         if (watch == null) {
             watch = new Watch(file, path);
             watchers.add(watch);
-            if (monitor == null) {
+            if (nativeWatch && startNative()) {
+                register(watch);
+                // catch changes happened between the watch creation and the registration
+                markDirty(watch);
+            }
+            if (!nativeWatch && monitor == null) {
                 monitor = pool.scheduleWithFixedDelay(sync, delay, delay, unit);
             }
         }
@@ -479,17 +457,23 @@ public class FileSystemWatcher implements ResourceNotificationDispatcher, Dispos
                 monitor.cancel(false); // stop watching nobody is looking
                 monitor = null;
             }
+            // stop receiving native events too
+            for (WatchKey key : registered.values()) {
+                key.cancel();
+            }
+            registered.clear();
         }
         return removed;
     }
 
     /**
-     * To allow test cases to set a shorter delay for testing.
+     * To allow test cases to set a shorter delay for testing. When using native events the delay
+     * is also used, up to {@link #MAX_DEBOUNCE_MILLIS}, to coalesce bursts of events.
      *
      * @param delay
      * @param unit
      */
-    public void schedule(long delay, TimeUnit unit) {
+    public synchronized void schedule(long delay, TimeUnit unit) {
         this.delay = delay;
         this.unit = unit;
         if (monitor != null) {
@@ -502,10 +486,263 @@ public class FileSystemWatcher implements ResourceNotificationDispatcher, Dispos
     public void destroy() throws Exception {
         pool.shutdown();
         monitor = null;
+        synchronized (this) {
+            if (watchService != null) {
+                watchService.close();
+                watchService = null;
+            }
+        }
     }
 
     @Override
     public void changed(ResourceNotification notification) {
         throw new UnsupportedOperationException();
     }
+
+    /** Polls all the watches */
+    private void sync() {
+        long now = System.currentTimeMillis();
+        for (Watch watch : watchers) {
+            if (watch.getListeners().isEmpty()) {
+                watchers.remove(watch);
+                continue;
+            }
+            if (!check(watch, now)) {
+                return;
+            }
+        }
+    }
+
+    /** Checks only the watches affected by native events since the last flush */
+    private void flush() {
+        flushScheduled.set(false);
+        long now = System.currentTimeMillis();
+        for (Watch watch : watchers) {
+            if (dirty.remove(watch) && !watch.getListeners().isEmpty()) {
+                check(watch, now);
+            }
+        }
+        // drop entries for watches removed in the meantime
+        dirty.retainAll(watchers);
+    }
+
+    /**
+     * Computes the changes to the watch, and notifies them if any
+     *
+     * @return false if an error occurred while computing the changes
+     */
+    private boolean check(Watch watch, long now) {
+        final boolean directory = watch.file.isDirectory();
+        Level level = Level.FINER;
+        long start = System.nanoTime();
+        if (directory) LOGGER.log(level, "polling contents of " + watch.file);
+        Delta delta;
+        try {
+            delta = watch.changed(now);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Error polling contents of " + watch.file, e);
+            return false;
+        }
+        if (directory && LOGGER.isLoggable(level)) {
+            long ellapsedMicros = MICROSECONDS.convert(System.nanoTime() - start, NANOSECONDS);
+            long ellapsedMillis = MILLISECONDS.convert(ellapsedMicros, MICROSECONDS);
+            String unit = ellapsedMillis == 0L ? "us" : "ms";
+            long time = ellapsedMillis == 0L ? ellapsedMicros : ellapsedMillis;
+            LOGGER.log(
+                    level, String.format("delta computed in %,d%s for %s", time, unit, watch.file));
+        }
+        if (delta != null) {
+            notifyListeners(watch, delta);
+        }
+        return true;
+    }
+
+    private void notifyListeners(Watch watch, Delta delta) {
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info(
+                    String.format(
+                            "Notifying %s change on %s. Created: %,d, removed: %,d, modified: %,d",
+                            delta.kind,
+                            delta.context,
+                            delta.created.size(),
+                            delta.removed.size(),
+                            delta.modified.size()));
+        }
+        // do not call listeners on the watch thread, they may take a
+        // considerable amount of time to process the events
+        CompletableFuture.runAsync(
+                () -> {
+                    /** Created based on created/removed/modified files */
+                    List<ResourceNotification.Event> events =
+                            ResourceNotification.delta(
+                                    watch.file, delta.created, delta.removed, delta.modified);
+
+                    ResourceNotification notify =
+                            new ResourceNotification(
+                                    watch.getPath(), delta.kind, watch.last, events);
+
+                    for (ResourceListener listener : watch.getListeners()) {
+                        try {
+                            listener.changed(notify);
+                        } catch (Throwable t) {
+                            Logger logger =
+                                    Logger.getLogger(listener.getClass().getPackage().getName());
+                            logger.log(
+                                    Level.FINE,
+                                    "Unable to notify " + watch + ":" + t.getMessage(),
+                                    t);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Lazily sets up the native watch service and the thread consuming its events, falling back on
+     * polling if the file system does not support it
+     *
+     * @return true if native events are in use
+     */
+    private synchronized boolean startNative() {
+        if (watchService != null) {
+            return true;
+        }
+        try {
+            WatchService service = FileSystems.getDefault().newWatchService();
+            // the JDK falls back on a polling implementation on platforms without native
+            // support (e.g., OSX), which is slower than our own polling
+            if (service.getClass().getSimpleName().contains("Polling")) {
+                service.close();
+                fallbackToPolling("the platform watch service is polling based", null);
+                return false;
+            }
+            watchService = service;
+        } catch (IOException | UnsupportedOperationException e) {
+            fallbackToPolling("the watch service could not be created", e);
+            return false;
+        }
+        Thread consumer = tFactory.newThread(() -> processEvents(watchService));
+        consumer.start();
+        return true;
+    }
+
+    /**
+     * Registers with the watch service the watched directory, if any, and the closest existing
+     * ancestor of the watched file, to catch its creation and removal. Missing intermediate
+     * directories get registered as they are created.
+     */
+    private synchronized void register(Watch watch) {
+        if (!nativeWatch || watchService == null) {
+            return;
+        }
+        Path path = watch.absolutePath;
+        try {
+            // repeat until stable, directories created before being registered
+            // would not report their own contents changes
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                if (java.nio.file.Files.isDirectory(path)) {
+                    changed |= register(path);
+                }
+                Path ancestor = path.getParent();
+                while (ancestor != null && !java.nio.file.Files.isDirectory(ancestor)) {
+                    ancestor = ancestor.getParent();
+                }
+                if (ancestor != null) {
+                    changed |= register(ancestor);
+                }
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            // e.g., the inotify watch limit has been reached, or a remote file system
+            fallbackToPolling("could not register " + path + " with the watch service", e);
+        }
+    }
+
+    /** Registers the directory, returns true if it was not already registered */
+    private boolean register(Path directory) throws IOException {
+        if (registered.containsKey(directory)) {
+            return false;
+        }
+        WatchKey key = directory.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        registered.put(directory, key);
+        return true;
+    }
+
+    /** Switches to polling, for all the current and future watches */
+    private synchronized void fallbackToPolling(String reason, Exception cause) {
+        LOGGER.log(
+                Level.WARNING,
+                "Falling back on polling to watch for file system changes, " + reason,
+                cause);
+        nativeWatch = false;
+        registered.clear();
+        dirty.clear();
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to close the watch service", e);
+            }
+            watchService = null;
+        }
+        if (!watchers.isEmpty() && monitor == null) {
+            monitor = pool.scheduleWithFixedDelay(sync, delay, delay, unit);
+        }
+    }
+
+    /** Consumes the native events, marking the affected watches as dirty, until closed */
+    private void processEvents(WatchService service) {
+        while (true) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path directory = (Path) key.watchable();
+            boolean directoryCreated = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    // events have been lost, check everything
+                    watchers.forEach(this::markDirty);
+                    continue;
+                }
+                Path child = directory.resolve((Path) event.context());
+                if (event.kind() == ENTRY_CREATE && java.nio.file.Files.isDirectory(child)) {
+                    directoryCreated = true;
+                }
+                for (Watch watch : watchers) {
+                    if (watch.absolutePath.equals(directory)
+                            || watch.absolutePath.equals(child)) {
+                        markDirty(watch);
+                    }
+                }
+            }
+            if (!key.reset()) {
+                // directory removed, the registration on its parent reports it
+                registered.remove(directory, key);
+            }
+            if (directoryCreated) {
+                // a watched directory, or one of its missing ancestors, might have been created
+                for (Watch watch : watchers) {
+                    register(watch);
+                    markDirty(watch);
+                }
+            }
+        }
+    }
+
+    /** Marks the watch for checking, once the debounce delay is elapsed */
+    private void markDirty(Watch watch) {
+        dirty.add(watch);
+        if (flushScheduled.compareAndSet(false, true)) {
+            long debounce = Math.min(unit.toMillis(delay), MAX_DEBOUNCE_MILLIS);
+            try {
+                pool.schedule(flush, debounce, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // shutting down
+                flushScheduled.set(false);
+            }
+        }
+    }
 }
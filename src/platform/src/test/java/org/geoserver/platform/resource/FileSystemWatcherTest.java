@@ -0,0 +1,98 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.platform.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.geoserver.platform.resource.FileSystemResourceTheoryTest.AwaitResourceListener;
+import org.geoserver.platform.resource.ResourceNotification.Event;
+import org.geoserver.platform.resource.ResourceNotification.Kind;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileSystemWatcherTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testNativeEvents() throws Exception {
+        FileSystemWatcher watcher = newWatcher(true);
+        try {
+            checkDirectoryEvents(watcher);
+        } finally {
+            watcher.destroy();
+        }
+    }
+
+    @Test
+    public void testPollingEvents() throws Exception {
+        FileSystemWatcher watcher = newWatcher(false);
+        try {
+            assertFalse(watcher.isNative());
+            checkDirectoryEvents(watcher);
+        } finally {
+            watcher.destroy();
+        }
+    }
+
+    @Test
+    public void testNativeMissingParents() throws Exception {
+        FileSystemWatcher watcher = newWatcher(true);
+        try {
+            AwaitResourceListener listener = new AwaitResourceListener();
+            watcher.addListener("a/b/c", listener);
+
+            // create the missing parents, and then the contents
+            File directory = new File(folder.getRoot(), "a/b/c");
+            directory.mkdirs();
+            new File(directory, "FileA").createNewFile();
+
+            ResourceNotification n = listener.await(5, TimeUnit.SECONDS);
+            assertEquals("a/b/c", n.getPath());
+            assertEquals(Kind.ENTRY_CREATE, n.getKind());
+            assertEquals(1, n.events().size());
+            assertEquals("FileA", n.events().get(0).getPath());
+        } finally {
+            watcher.destroy();
+        }
+    }
+
+    private FileSystemWatcher newWatcher(boolean nativeWatch) {
+        File root = folder.getRoot();
+        FileSystemWatcher watcher =
+                new FileSystemWatcher(
+                        path -> new File(root, path.replace('/', File.separatorChar)),
+                        nativeWatch);
+        watcher.schedule(50, TimeUnit.MILLISECONDS);
+        return watcher;
+    }
+
+    private void checkDirectoryEvents(FileSystemWatcher watcher) throws Exception {
+        File directory = folder.newFolder("DirA");
+        AwaitResourceListener listener = new AwaitResourceListener();
+        watcher.addListener("DirA", listener);
+
+        File file = new File(directory, "FileB");
+        file.createNewFile();
+        ResourceNotification n = listener.await(5, TimeUnit.SECONDS);
+        assertEquals("DirA", n.getPath());
+        assertEquals(Kind.ENTRY_MODIFY, n.getKind());
+        assertEquals(1, n.events().size());
+        Event e = n.events().get(0);
+        assertEquals(Kind.ENTRY_CREATE, e.getKind());
+        assertEquals("FileB", e.getPath());
+
+        listener.reset();
+        file.delete();
+        n = listener.await(5, TimeUnit.SECONDS);
+        e = n.events().get(0);
+        assertEquals(Kind.ENTRY_DELETE, e.getKind());
+        assertEquals("FileB", e.getPath());
+    }
+}
@@ -0,0 +1,54 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.rest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.geoserver.catalog.ResourceCacheStatistics;
+import org.geoserver.catalog.ResourcePool;
+import org.geoserver.config.GeoServer;
+import org.geoserver.rest.catalog.NamedMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/** Reports the {@link ResourcePool} cache configuration and usage statistics */
+@RestController
+@RequestMapping(
+    path = RestBaseController.ROOT_PATH + "/resourcepool",
+    produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE}
+)
+public class ResourcePoolController extends AbstractGeoServerController {
+
+    @Autowired
+    public ResourcePoolController(@Qualifier("geoServer") GeoServer geoServer) {
+        super(geoServer);
+    }
+
+    @GetMapping
+    public Map<String, Object> resourcePoolGet() {
+        ResourcePool pool = geoServer.getCatalog().getResourcePool();
+
+        Map<String, Object> caches = new LinkedHashMap<>();
+        for (ResourceCacheStatistics stats : pool.getCacheStatistics()) {
+            Map<String, Object> cache = new LinkedHashMap<>();
+            cache.put("policy", stats.getPolicy().name());
+            cache.put("size", stats.getSize());
+            cache.put("weight", stats.getWeight());
+            cache.put("hitCount", stats.getHitCount());
+            cache.put("missCount", stats.getMissCount());
+            cache.put("evictionCount", stats.getEvictionCount());
+            caches.put(stats.getName(), cache);
+        }
+
+        NamedMap<String, Object> result = new NamedMap<>("resourcePool");
+        result.put("cachePolicy", pool.getCachePolicy().name());
+        result.put("caches", caches);
+        return result;
+    }
+}
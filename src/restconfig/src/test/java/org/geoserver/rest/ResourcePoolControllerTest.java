@@ -0,0 +1,50 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import net.sf.json.JSON;
+import net.sf.json.JSONObject;
+import org.geoserver.catalog.ResourcePool;
+import org.geoserver.test.GeoServerSystemTestSupport;
+import org.junit.After;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+public class ResourcePoolControllerTest extends GeoServerSystemTestSupport {
+
+    @After
+    public void resetPolicy() {
+        getCatalog()
+                .getResourcePool()
+                .setCachePolicy(
+                        ResourcePool.CachePolicy.SOFT,
+                        ResourcePool.CACHE_MAX_WEIGHT_DEFAULT,
+                        ResourcePool.CACHE_EXPIRE_AFTER_ACCESS_DEFAULT);
+    }
+
+    @Test
+    public void testGetAsJSON() throws Exception {
+        JSON json = getAsJSON(RestBaseController.ROOT_PATH + "/resourcepool.json");
+        assertTrue(json instanceof JSONObject);
+        JSONObject pool = (JSONObject) json;
+        assertEquals("SOFT", pool.getString("cachePolicy"));
+        JSONObject caches = pool.getJSONObject("caches");
+        assertTrue(caches.has("featureTypeCache"));
+        assertTrue(caches.has("styleCache"));
+    }
+
+    @Test
+    public void testBoundedStatistics() throws Exception {
+        getCatalog().getResourcePool().setCachePolicy(ResourcePool.CachePolicy.BOUNDED, 1 << 20, 0);
+
+        Document dom = getAsDOM(RestBaseController.ROOT_PATH + "/resourcepool.xml");
+        assertXpathEvaluatesTo("BOUNDED", "/resourcePool/cachePolicy", dom);
+        assertXpathEvaluatesTo("BOUNDED", "/resourcePool/caches/featureTypeCache/policy", dom);
+        assertXpathEvaluatesTo("0", "/resourcePool/caches/featureTypeCache/evictionCount", dom);
+    }
+}
@@ -6,22 +6,40 @@
 package org.geoserver.web;
 
 import java.io.File;
-import java.io.FileInputStream;
+import javax.xml.parsers.DocumentBuilderFactory;
 import junit.framework.TestCase;
-import org.custommonkey.xmlunit.Validator;
-import org.geotools.util.URLs;
-import org.xml.sax.InputSource;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
 
 public class WebXmlTest extends TestCase {
 
-    public void testWebXmlDTDCompliance() throws Exception {
-        // makes sure web.xml is DTD compliant (without requiring internet access in the process)
-        InputSource is = new InputSource(new FileInputStream("src/main/webapp/WEB-INF/web.xml"));
-        Validator v =
-                new Validator(
-                        is,
-                        URLs.fileToUrl(new File("src/test/java/org/geoserver/web/web-app_2_3.dtd"))
-                                .toString());
-        assertTrue(v.isValid());
+    static final String JAVAEE_NS = "http://java.sun.com/xml/ns/javaee";
+
+    public void testWebXmlAsyncSupported() throws Exception {
+        // the asynchronous OWS requests need a servlet 3 web.xml, with the dispatcher servlet and
+        // every filter in front of it marked as async supported
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document doc =
+                factory.newDocumentBuilder().parse(new File("src/main/webapp/WEB-INF/web.xml"));
+        Element root = doc.getDocumentElement();
+        assertEquals(JAVAEE_NS, root.getNamespaceURI());
+        assertEquals("3.0", root.getAttribute("version"));
+
+        for (String type : new String[] {"filter", "servlet"}) {
+            NodeList elements = doc.getElementsByTagNameNS(JAVAEE_NS, type);
+            assertTrue(elements.getLength() > 0);
+            for (int i = 0; i < elements.getLength(); i++) {
+                Element element = (Element) elements.item(i);
+                String name = getText(element, type + "-name");
+                assertEquals(name, "true", getText(element, "async-supported"));
+            }
+        }
+    }
+
+    private String getText(Element element, String name) {
+        NodeList children = element.getElementsByTagNameNS(JAVAEE_NS, name);
+        return children.getLength() > 0 ? children.item(0).getTextContent().trim() : null;
     }
 }
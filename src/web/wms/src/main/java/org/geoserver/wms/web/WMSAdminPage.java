@@ -225,6 +225,16 @@ public class WMSAdminPage extends BaseServiceAdminPage<WMSInfo> {
                 new TextField<Integer>("png.compression", pngCompression, Integer.class);
         pngCompressionField.add(new RangeValidator<Integer>(0, 100));
         form.add(pngCompressionField);
+        MapModel pngEncoderThreads =
+                defaultedModel(
+                        metadataModel, WMS.PNG_ENCODER_THREADS, WMS.PNG_ENCODER_THREADS_DEFAULT);
+        TextField<Integer> pngEncoderThreadsField =
+                new TextField<Integer>("png.encoderThreads", pngEncoderThreads, Integer.class);
+        pngEncoderThreadsField.add(RangeValidator.minimum(1));
+        form.add(pngEncoderThreadsField);
+        MapModel pngFastSeeding =
+                defaultedModel(metadataModel, WMS.PNG_FAST_SEEDING, WMS.PNG_FAST_SEEDING_DEFAULT);
+        form.add(new CheckBox("png.fastSeeding", pngFastSeeding));
         // jpeg compression levels
         MapModel jpegCompression =
                 defaultedModel(metadataModel, WMS.JPEG_COMPRESSION, WMS.JPEG_COMPRESSION_DEFAULT);
@@ -377,8 +377,32 @@ public class GetFeature {
                 !(("1.0".equals(request.getVersion()) || "1.0.0".equals(request.getVersion()))
                         && (queries.size() == 1 || maxFeatures == Integer.MAX_VALUE));
 
+        // keyset paging, replaces deep offsets with a range filter on the paging key
+        KeysetCursor cursor = null;
+        if (request.getCursor() != null && KeysetCursor.isEnabled()) {
+            try {
+                cursor = KeysetCursor.decode(request.getCursor());
+            } catch (IllegalArgumentException e) {
+                throw new WFSException(request, e.getMessage(), e, "InvalidParameterValue")
+                        .locator("cursor");
+            }
+        }
+        SortBy pagingKey = null;
+        String pagingScope = null;
+        Filter pagingFilter = null;
+        FeatureSource<? extends FeatureType, ? extends Feature> pagingSource = null;
+        org.geotools.data.Query pagingQuery = null;
+
         List results = new ArrayList();
         final List<CountExecutor> totalCountExecutors = new ArrayList<CountExecutor>();
+        // with multiple collections, read them concurrently while the encoder drains them in order
+        PrefetchingFeatureCollection.Group prefetchGroup = null;
+        if (queries.size() > 1
+                && !request.isResultTypeHits()
+                && PrefetchingFeatureCollection.isEnabled()) {
+            prefetchGroup = new PrefetchingFeatureCollection.Group();
+            PrefetchCancellerCallback.addGroup(prefetchGroup);
+        }
         try {
             for (int i = 0; (i < queries.size()) && (count < maxFeatures); i++) {
 
@@ -636,6 +660,36 @@ public class GetFeature {
                                     primaryTypeName,
                                     primaryAlias);
 
+                    if (queries.size() == 1
+                            && joins == null
+                            && offset > -1
+                            && !request.isResultTypeHits()
+                            && KeysetCursor.isEnabled()) {
+                        pagingKey =
+                                KeysetCursor.getPagingKey(
+                                        gtQuery, source.getSchema(), filterFactory);
+                    }
+                    if (pagingKey != null) {
+                        // the key must define the order, for the cursor to be meaningful
+                        if (gtQuery.getSortBy() == null || gtQuery.getSortBy().length == 0) {
+                            gtQuery.setSortBy(new SortBy[] {pagingKey});
+                        }
+                        pagingFilter = gtQuery.getFilter();
+                        pagingScope = KeysetCursor.scope(meta.prefixedName(), pagingFilter);
+                        if (cursor != null && cursor.matches(pagingKey, pagingScope, offset)) {
+                            Filter range;
+                            try {
+                                range = cursor.toFilter(filterFactory, source.getSchema());
+                            } catch (IllegalArgumentException e) {
+                                throw new WFSException(
+                                                request, e.getMessage(), e, "InvalidParameterValue")
+                                        .locator("cursor");
+                            }
+                            gtQuery.setFilter(filterFactory.and(gtQuery.getFilter(), range));
+                            gtQuery.setStartIndex(cursor.ties);
+                        }
+                    }
+
                     if (LOGGER.isLoggable(Level.FINE)) {
                         LOGGER.fine("Query is " + query + "\n To gt2: " + gtQuery);
                     }
@@ -657,6 +711,10 @@ public class GetFeature {
 
                     FeatureCollection<? extends FeatureType, ? extends Feature> features =
                             getFeatures(request, source, gtQuery);
+                    if (pagingKey != null) {
+                        pagingSource = source;
+                        pagingQuery = gtQuery;
+                    }
 
                     // For complex features, we need the targetCrs and version in scenario where we
                     // have
@@ -721,7 +779,7 @@ public class GetFeature {
                     // if offset is present we need to check the size of this returned feature
                     // collection
                     // and adjust the offset for the next feature collection accordingly
-                    if (offset > 0) {
+                    if (offset > 0 && pagingKey == null) {
                         if (size > 0) {
                             // features returned, offset can be set to zero
                             offset = 0;
@@ -774,6 +832,10 @@ public class GetFeature {
                                         (SimpleFeatureCollection) features, targetType);
                     }
 
+                    if (prefetchGroup != null) {
+                        features = prefetchGroup.wrap(features);
+                    }
+
                     // allow encoders to grab information about this layer if needs be
                     if (primaryMeta != null) {
                         features = TypeInfoCollectionWrapper.wrap(features, primaryMeta);
@@ -833,6 +895,27 @@ public class GetFeature {
                     request, "Error occurred getting features", e, request.getHandle());
         }
 
+        // cursor to the next page, if there is one
+        String nextCursor = null;
+        if (pagingKey != null && count > 0 && maxFeatures <= count) {
+            try {
+                int nextIndex = totalOffset > 0 ? totalOffset + count : count;
+                KeysetCursor next =
+                        KeysetCursor.next(
+                                pagingSource,
+                                pagingQuery,
+                                pagingFilter,
+                                pagingKey,
+                                pagingScope,
+                                nextIndex,
+                                count,
+                                filterFactory);
+                nextCursor = next != null ? next.encode() : null;
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Could not compute the next page cursor", e);
+            }
+        }
+
         return buildResults(
                 request,
                 totalOffset,
@@ -841,7 +924,8 @@ public class GetFeature {
                 totalCount,
                 results,
                 lockId,
-                getFeatureById);
+                getFeatureById,
+                nextCursor);
     }
 
     /** Returns true if all count executors are given a static count value */
@@ -980,7 +1064,8 @@ public class GetFeature {
             BigInteger total,
             List results,
             String lockId,
-            boolean getFeatureById) {
+            boolean getFeatureById,
+            String nextCursor) {
 
         FeatureCollectionResponse result = request.createResponse();
         result.setNumberOfFeatures(BigInteger.valueOf(count));
@@ -1010,7 +1095,7 @@ public class GetFeature {
                 // generate kvp map from request object
                 kvp = buildKvpFromRequest(request);
             }
-            buildPrevNextLinks(request, offset, maxFeatures, count, result, kvp);
+            buildPrevNextLinks(request, offset, maxFeatures, count, result, kvp, nextCursor);
         }
 
         return result;
@@ -1022,7 +1107,11 @@ public class GetFeature {
             int maxFeatures,
             int count,
             FeatureCollectionResponse result,
-            Map<String, String> kvp) {
+            Map<String, String> kvp,
+            String nextCursor) {
+        // cursors only work forward, and are valid for the page they were issued for
+        kvp.remove(GetFeatureRequest.CURSOR);
+
         // WFS 2.0 specific, must have a next and should point to the first result
         if (request.isResultTypeHits()
                 && (request.getVersion() == null || request.getVersion().startsWith("2"))) {
@@ -1054,6 +1143,9 @@ public class GetFeature {
         } else if (count > 0 && offset > -1 && maxFeatures <= count) {
             kvp.put("startIndex", String.valueOf(offset > 0 ? offset + count : count));
             kvp.put("count", String.valueOf(maxFeatures));
+            if (nextCursor != null) {
+                kvp.put("cursor", nextCursor);
+            }
             result.setNext(buildURL(request.getBaseUrl(), "wfs", kvp, URLType.SERVICE));
         }
     }
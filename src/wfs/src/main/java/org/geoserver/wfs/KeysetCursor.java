@@ -0,0 +1,347 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import org.geotools.data.FeatureSource;
+import org.geotools.data.Query;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.util.Converters;
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.feature.Feature;
+import org.opengis.feature.Property;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.FeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.expression.PropertyName;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
+
+/**
+ * An opaque paging cursor, remembering the value of the paging key at the start of the next page.
+ * Deep pages are then read with a range filter on the key, instead of an offset the store would
+ * have to skip over.
+ *
+ * <p>The key is the sort property of the query, or the primary key of the feature type when the
+ * query is not sorted. Since the key is not necessarily unique, the cursor also records how many
+ * features with the same key value have already been returned, and skips them with a (small)
+ * offset.
+ *
+ * <p>A cursor is only valid for the feature type and filter it was issued for, and for the start
+ * index of the page following the one it was issued with. Keys that can be null are only used when
+ * the query results contain no null values for them, as stores disagree on where nulls are sorted,
+ * and the range filter would skip them. Keyset paging is disabled by default, and can be enabled
+ * with the {@code org.geoserver.wfs.getfeature.keysetPaging} system property.
+ */
+public final class KeysetCursor {
+
+    /** User data key marking the primary key attributes, as set by the JDBC stores */
+    static final String PK_COLUMN = "org.geotools.jdbc.pk.column";
+
+    private static final String VERSION = "2";
+
+    private static boolean ENABLED =
+            Boolean.valueOf(
+                    System.getProperty("org.geoserver.wfs.getfeature.keysetPaging", "false"));
+
+    final String property;
+
+    final boolean ascending;
+
+    final int startIndex;
+
+    final Object value;
+
+    final int ties;
+
+    final String scope;
+
+    KeysetCursor(
+            String property,
+            boolean ascending,
+            int startIndex,
+            Object value,
+            int ties,
+            String scope) {
+        this.property = property;
+        this.ascending = ascending;
+        this.startIndex = startIndex;
+        this.value = value;
+        this.ties = ties;
+        this.scope = scope;
+    }
+
+    /** Allows to programmatically enable/disable keyset paging */
+    public static void setEnabled(boolean enabled) {
+        ENABLED = enabled;
+    }
+
+    /** Returns true if cursors should be issued and used */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Returns the key the query can be paged on, or null if the query cannot use a cursor. Only
+     * simple features sorted on a single non spatial attribute, or not sorted at all but with a
+     * single primary key attribute, are supported.
+     */
+    static SortBy getPagingKey(Query query, FeatureType schema, FilterFactory2 ff) {
+        if (!(schema instanceof SimpleFeatureType)) {
+            return null;
+        }
+        SimpleFeatureType simpleSchema = (SimpleFeatureType) schema;
+        SortBy[] sortBy = query.getSortBy();
+        if (sortBy == null || sortBy.length == 0) {
+            String pk = null;
+            for (AttributeDescriptor ad : simpleSchema.getAttributeDescriptors()) {
+                if (Boolean.TRUE.equals(ad.getUserData().get(PK_COLUMN))) {
+                    if (pk != null) {
+                        // multi column keys are not supported
+                        return null;
+                    }
+                    pk = ad.getLocalName();
+                }
+            }
+            return pk != null && isComparable(simpleSchema.getDescriptor(pk))
+                    ? ff.sort(pk, SortOrder.ASCENDING)
+                    : null;
+        } else if (sortBy.length == 1) {
+            // natural and reverse order have no property name
+            PropertyName name = sortBy[0].getPropertyName();
+            if (name != null
+                    && name.getPropertyName() != null
+                    && isComparable(simpleSchema.getDescriptor(name.getPropertyName()))) {
+                return sortBy[0];
+            }
+        }
+        return null;
+    }
+
+    private static boolean isComparable(AttributeDescriptor ad) {
+        if (ad == null) {
+            return false;
+        }
+        Class<?> binding = ad.getType().getBinding();
+        return Comparable.class.isAssignableFrom(binding)
+                && !Geometry.class.isAssignableFrom(binding);
+    }
+
+    /**
+     * Returns a digest of the feature type and filter of a query, a cursor is valid only for
+     * queries with the same scope
+     */
+    static String scope(String typeName, Filter filter) {
+        String text = typeName + "\n" + (filter != null ? filter : Filter.INCLUDE);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(text.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder()
+                    .withoutPadding()
+                    .encodeToString(Arrays.copyOf(hash, 12));
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is available in every JVM
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Computes the cursor pointing to the page following the one read by the given query, or
+     * returns null if the last key value of the page is not known, or the key has null values
+     *
+     * @param source The source the page was read from
+     * @param pageQuery The query used to read the page
+     * @param filter The filter of the query, before a cursor range was applied to it
+     * @param key The paging key, as returned by {@link #getPagingKey(Query, FeatureType,
+     *     FilterFactory2)}
+     * @param scope The scope of the query, as returned by {@link #scope(String, Filter)}
+     * @param nextIndex The start index of the next page, in the overall result
+     * @param count The number of features in the page
+     */
+    static KeysetCursor next(
+            FeatureSource<? extends FeatureType, ? extends Feature> source,
+            Query pageQuery,
+            Filter filter,
+            SortBy key,
+            String scope,
+            int nextIndex,
+            int count,
+            FilterFactory2 ff)
+            throws IOException {
+        String property = key.getPropertyName().getPropertyName();
+        boolean ascending = key.getSortOrder() != SortOrder.DESCENDING;
+        int pageStart = pageQuery.getStartIndex() != null ? pageQuery.getStartIndex() : 0;
+
+        // null values cannot be reached with a range filter, and stores sort them differently
+        AttributeDescriptor ad = ((SimpleFeatureType) source.getSchema()).getDescriptor(property);
+        if (ad == null || (ad.isNillable() && hasNulls(source, pageQuery, filter, property, ff))) {
+            return null;
+        }
+
+        // grab the key of the last feature in the page
+        Query lastQuery = new Query(pageQuery);
+        lastQuery.setStartIndex(pageStart + count - 1);
+        lastQuery.setMaxFeatures(1);
+        lastQuery.setPropertyNames(new String[] {property});
+        lastQuery.setCoordinateSystemReproject(null);
+        Object value = null;
+        try (FeatureIterator<? extends Feature> it = source.getFeatures(lastQuery).features()) {
+            if (it.hasNext()) {
+                Property p = it.next().getProperty(property);
+                value = p != null ? p.getValue() : null;
+            }
+        }
+        if (value == null) {
+            return null;
+        }
+
+        // the features with the same key value in this page (and the ones before it) are skipped
+        // by offset in the next one
+        Filter preceding =
+                ascending
+                        ? ff.less(ff.property(property), ff.literal(value))
+                        : ff.greater(ff.property(property), ff.literal(value));
+        Query beforeQuery = new Query(pageQuery);
+        beforeQuery.setFilter(ff.and(pageQuery.getFilter(), preceding));
+        beforeQuery.setStartIndex(null);
+        beforeQuery.setMaxFeatures(Query.DEFAULT_MAX);
+        beforeQuery.setSortBy(null);
+        beforeQuery.setPropertyNames(new String[] {property});
+        beforeQuery.setCoordinateSystemReproject(null);
+        int before = source.getCount(beforeQuery);
+        if (before < 0) {
+            FeatureCollection<? extends FeatureType, ? extends Feature> features =
+                    source.getFeatures(beforeQuery);
+            before = features.size();
+        }
+
+        return new KeysetCursor(
+                property, ascending, nextIndex, value, pageStart + count - before, scope);
+    }
+
+    private static boolean hasNulls(
+            FeatureSource<? extends FeatureType, ? extends Feature> source,
+            Query pageQuery,
+            Filter filter,
+            String property,
+            FilterFactory2 ff)
+            throws IOException {
+        Query nullQuery = new Query(pageQuery);
+        nullQuery.setFilter(ff.and(filter, ff.isNull(ff.property(property))));
+        nullQuery.setStartIndex(null);
+        nullQuery.setMaxFeatures(1);
+        nullQuery.setSortBy(null);
+        nullQuery.setPropertyNames(new String[] {property});
+        nullQuery.setCoordinateSystemReproject(null);
+        try (FeatureIterator<? extends Feature> it = source.getFeatures(nullQuery).features()) {
+            return it.hasNext();
+        }
+    }
+
+    /**
+     * Returns true if the cursor can be used to read the page at the given start index, for a
+     * query with the given scope
+     */
+    boolean matches(SortBy key, String scope, int offset) {
+        return key.getPropertyName().getPropertyName().equals(property)
+                && (key.getSortOrder() != SortOrder.DESCENDING) == ascending
+                && this.scope.equals(scope)
+                && offset == startIndex
+                && ties <= startIndex;
+    }
+
+    /**
+     * Returns the filter selecting the features from the cursor key value onwards, to be used with
+     * {@link #ties} as the start index
+     */
+    Filter toFilter(FilterFactory2 ff, FeatureType schema) {
+        AttributeDescriptor ad = ((SimpleFeatureType) schema).getDescriptor(property);
+        Object converted = Converters.convert(value, ad.getType().getBinding());
+        if (converted == null) {
+            throw new IllegalArgumentException(
+                    "Cursor value " + value + " is not compatible with " + property);
+        }
+        return ascending
+                ? ff.greaterOrEqual(ff.property(property), ff.literal(converted))
+                : ff.lessOrEqual(ff.property(property), ff.literal(converted));
+    }
+
+    /** Encodes the cursor as an URL safe string */
+    String encode() {
+        String encodedValue;
+        if (value instanceof Date) {
+            encodedValue = "D" + ((Date) value).getTime();
+        } else if (value instanceof Number) {
+            encodedValue = "N" + value;
+        } else {
+            encodedValue = "S" + Converters.convert(value, String.class);
+        }
+        String cursor =
+                String.join(
+                        "\n",
+                        VERSION,
+                        property,
+                        ascending ? "A" : "D",
+                        String.valueOf(startIndex),
+                        String.valueOf(ties),
+                        scope,
+                        encodedValue);
+        return Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses a cursor encoded by {@link #encode()}
+     *
+     * @throws IllegalArgumentException if the cursor is not valid
+     */
+    static KeysetCursor decode(String cursor) {
+        String[] parts;
+        try {
+            parts =
+                    new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8)
+                            .split("\n", 7);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+        if (parts.length != 7 || !VERSION.equals(parts[0]) || parts[6].isEmpty()) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        try {
+            String encodedValue = parts[6].substring(1);
+            Object value;
+            switch (parts[6].charAt(0)) {
+                case 'D':
+                    value = new Date(Long.parseLong(encodedValue));
+                    break;
+                case 'N':
+                case 'S':
+                    value = encodedValue;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            return new KeysetCursor(
+                    parts[1],
+                    "A".equals(parts[2]),
+                    Integer.parseInt(parts[3]),
+                    value,
+                    Integer.parseInt(parts[4]),
+                    parts[5]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.geoserver.ows.AbstractDispatcherCallback;
+import org.geoserver.ows.Request;
+
+/**
+ * Cancels the feature prefetches of a request when it ends, so that the collections the output
+ * format did not consume, because it failed or stopped early, do not keep reading from the stores
+ */
+public class PrefetchCancellerCallback extends AbstractDispatcherCallback {
+
+    static final ThreadLocal<List<PrefetchingFeatureCollection.Group>> groups =
+            new ThreadLocal<List<PrefetchingFeatureCollection.Group>>();
+
+    /** Schedules a prefetch group for cancellation at the end of the request */
+    public static void addGroup(PrefetchingFeatureCollection.Group group) {
+        if (group == null) {
+            return;
+        }
+
+        List<PrefetchingFeatureCollection.Group> list = groups.get();
+        if (list == null) {
+            list = new ArrayList<PrefetchingFeatureCollection.Group>();
+            groups.set(list);
+        }
+        list.add(group);
+    }
+
+    @Override
+    public void finished(Request request) {
+        List<PrefetchingFeatureCollection.Group> list = groups.get();
+        if (list != null) {
+            groups.remove();
+            for (PrefetchingFeatureCollection.Group group : list) {
+                group.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,347 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.threadlocals.ThreadLocalsTransfer;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.collection.DecoratingSimpleFeatureCollection;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.Feature;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.FeatureType;
+
+/**
+ * A feature collection that reads its features in a background thread, into a bounded buffer, used
+ * by {@link GetFeature} when a request returns multiple collections. The collections of a request
+ * form a {@link Group}: as soon as the output format starts reading the first one, all of them
+ * start being read concurrently from their data stores, while the output format drains them in
+ * order, overlapping the data access latency across layers.
+ *
+ * <p>The prefetching is disabled by default, and can be enabled setting the {@code
+ * org.geoserver.wfs.getfeature.prefetch} system variable to the number of features buffered for
+ * each collection. The {@code org.geoserver.wfs.getfeature.prefetchThreads} variable controls the
+ * number of threads reading from the stores (defaults to the number of processors).
+ *
+ * <p>Only the first iterator opened on each collection is prefetched, other ones read straight from
+ * the delegate. The prefetches still running when the request ends (e.g., because the encoding
+ * failed) are cancelled by {@link PrefetchCancellerCallback}, and their store iterators closed.
+ * Until then a prefetch waits for its consumer as long as needed, the encoding of the collections
+ * before it can take an arbitrary amount of time.
+ */
+public class PrefetchingFeatureCollection extends DecoratingSimpleFeatureCollection {
+
+    static final Logger LOGGER = Logging.getLogger(PrefetchingFeatureCollection.class);
+
+    /** The default prefetch size - disabled by default */
+    public static final int DEFAULT_PREFETCH_SIZE = 0;
+
+    private static int PREFETCH_SIZE =
+            Integer.valueOf(
+                    System.getProperty(
+                            "org.geoserver.wfs.getfeature.prefetch",
+                            String.valueOf(DEFAULT_PREFETCH_SIZE)));
+
+    private static final int PREFETCH_THREADS =
+            Integer.valueOf(
+                    System.getProperty(
+                            "org.geoserver.wfs.getfeature.prefetchThreads",
+                            String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+    private static ExecutorService EXECUTOR;
+
+    /** Marks the end of the features in the buffer */
+    private static final Object END = new Object();
+
+    /** Allows to programmatically set the number of features prefetched, zero disables it */
+    public static void setPrefetchSize(int prefetchSize) {
+        PREFETCH_SIZE = prefetchSize;
+    }
+
+    /** Returns true if the collections should be prefetched */
+    public static boolean isEnabled() {
+        return PREFETCH_SIZE > 0;
+    }
+
+    static synchronized ExecutorService getExecutor() {
+        if (EXECUTOR == null) {
+            int threads = Math.max(1, PREFETCH_THREADS);
+            ThreadPoolExecutor executor =
+                    new ThreadPoolExecutor(
+                            threads,
+                            threads,
+                            60,
+                            TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<>(),
+                            new PrefetchThreadFactory());
+            executor.allowCoreThreadTimeOut(true);
+            EXECUTOR = executor;
+        }
+        return EXECUTOR;
+    }
+
+    /** The collections of a request, prefetched together */
+    public static class Group {
+        final List<PrefetchingFeatureCollection> members = new ArrayList<>();
+
+        final List<Prefetch> prefetches = new ArrayList<>();
+
+        boolean started;
+
+        /**
+         * Wraps the collection into a prefetching one, part of this group, if it contains simple
+         * features, otherwise returns it as is
+         */
+        public FeatureCollection<? extends FeatureType, ? extends Feature> wrap(
+                FeatureCollection<? extends FeatureType, ? extends Feature> features) {
+            if (!(features.getSchema() instanceof SimpleFeatureType)) {
+                return features;
+            }
+            PrefetchingFeatureCollection prefetching =
+                    new PrefetchingFeatureCollection((SimpleFeatureCollection) features, this);
+            synchronized (this) {
+                members.add(prefetching);
+            }
+            return prefetching;
+        }
+
+        /** Starts prefetching all the collections, in order, if not already started */
+        synchronized void start() {
+            if (started) {
+                return;
+            }
+            started = true;
+            int size = PREFETCH_SIZE;
+            for (PrefetchingFeatureCollection member : members) {
+                Prefetch prefetch = member.startPrefetch(new ThreadLocalsTransfer(), size);
+                if (prefetch != null) {
+                    prefetches.add(prefetch);
+                }
+            }
+        }
+
+        /**
+         * Cancels the prefetches that are still running or waiting for a thread, closing their
+         * store iterators, and prevents the group from starting if it did not yet
+         */
+        public synchronized void cancel() {
+            started = true;
+            for (PrefetchingFeatureCollection member : members) {
+                synchronized (member) {
+                    member.prefetch = null;
+                }
+            }
+            for (Prefetch prefetch : prefetches) {
+                prefetch.abort();
+            }
+            prefetches.clear();
+        }
+    }
+
+    private final Group group;
+
+    private Prefetch prefetch;
+
+    PrefetchingFeatureCollection(SimpleFeatureCollection delegate, Group group) {
+        super(delegate);
+        this.group = group;
+    }
+
+    synchronized Prefetch startPrefetch(ThreadLocalsTransfer transfer, int size) {
+        Prefetch prefetch = new Prefetch(transfer, Math.max(1, size));
+        try {
+            getExecutor().execute(prefetch);
+            this.prefetch = prefetch;
+            return prefetch;
+        } catch (RejectedExecutionException e) {
+            LOGGER.log(Level.FINE, "Prefetch rejected, features will be read on demand", e);
+            return null;
+        }
+    }
+
+    @Override
+    public SimpleFeatureIterator features() {
+        group.start();
+        Prefetch prefetch;
+        synchronized (this) {
+            prefetch = this.prefetch;
+            this.prefetch = null;
+        }
+        // if the prefetch did not start yet, better read directly than wait for a thread
+        if (prefetch != null && prefetch.claim()) {
+            return prefetch;
+        }
+        return delegate.features();
+    }
+
+    /** Reads the delegate features into a queue, and returns them as an iterator */
+    class Prefetch implements Runnable, SimpleFeatureIterator {
+
+        final ThreadLocalsTransfer transfer;
+
+        final BlockingQueue<Object> queue;
+
+        /** Set by the first between the producer and the consumer */
+        final AtomicBoolean running = new AtomicBoolean();
+
+        volatile boolean cancelled;
+
+        volatile Throwable error;
+
+        SimpleFeature next;
+
+        boolean done;
+
+        Prefetch(ThreadLocalsTransfer transfer, int size) {
+            this.transfer = transfer;
+            this.queue = new ArrayBlockingQueue<>(size);
+        }
+
+        /**
+         * Returns true if the prefetch is running, and can be used as an iterator. Returns false,
+         * and prevents the prefetch from starting, if it is still waiting for a thread.
+         */
+        boolean claim() {
+            return !running.compareAndSet(false, true);
+        }
+
+        @Override
+        public void run() {
+            if (!running.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                transfer.apply();
+                try (SimpleFeatureIterator it = delegate.features()) {
+                    while (!cancelled && it.hasNext()) {
+                        if (!put(it.next())) {
+                            return;
+                        }
+                    }
+                }
+            } catch (Throwable t) {
+                error = t;
+            } finally {
+                try {
+                    transfer.cleanup();
+                } finally {
+                    // always let the consumer know, a no-op if cancelled
+                    put(END);
+                }
+            }
+        }
+
+        /**
+         * Cancels the prefetch from outside of the consumer thread: prevents it from starting if
+         * still waiting for a thread, and fails a consumer still waiting for features
+         */
+        void abort() {
+            running.set(true);
+            if (!cancelled) {
+                cancel(new IllegalStateException("Feature prefetch cancelled"));
+            }
+        }
+
+        /**
+         * Adds an item to the queue, waiting for the consumer as long as needed, returns false if
+         * the prefetch got cancelled
+         */
+        private boolean put(Object item) {
+            try {
+                while (!cancelled) {
+                    if (queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel(e);
+            }
+            return false;
+        }
+
+        /** Stops the producer, leaving the error, if any, for a consumer that might still come */
+        private void cancel(Throwable t) {
+            cancelled = true;
+            queue.clear();
+            if (t != null) {
+                error = t;
+                queue.offer(END);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !done) {
+                Object item;
+                try {
+                    item = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting for features", e);
+                }
+                if (item == END) {
+                    done = true;
+                    Throwable t = error;
+                    if (t instanceof RuntimeException) {
+                        throw (RuntimeException) t;
+                    } else if (t instanceof Error) {
+                        throw (Error) t;
+                    } else if (t != null) {
+                        throw new RuntimeException(t);
+                    }
+                } else {
+                    next = (SimpleFeature) item;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public SimpleFeature next() throws NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            SimpleFeature result = next;
+            next = null;
+            return result;
+        }
+
+        @Override
+        public void close() {
+            done = true;
+            next = null;
+            cancel(null);
+        }
+    }
+
+    static class PrefetchThreadFactory implements ThreadFactory {
+        final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "wfs-prefetch-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -77,6 +77,10 @@ class ComplexGeoJsonWriter {
     private CoordinateReferenceSystem crs;
     private long featuresCount = 0;
 
+    // the axis order lookup is not cheap, cache it for the last seen CRS
+    private CoordinateReferenceSystem lastCrs;
+    private CRS.AxisOrder lastAxisOrder = CRS.AxisOrder.EAST_NORTH;
+
     public ComplexGeoJsonWriter(GeoJSONBuilder jsonWriter) {
         this.jsonWriter = jsonWriter;
     }
@@ -166,7 +170,11 @@ class ComplexGeoJsonWriter {
             // extract CRS information from the geometry attribute description
             CoordinateReferenceSystem crs = geometryType.getCoordinateReferenceSystem();
             // we let the setAxisOrder method handle the NULL case
-            jsonWriter.setAxisOrder(CRS.getAxisOrder(crs));
+            if (crs != lastCrs) {
+                lastAxisOrder = CRS.getAxisOrder(crs);
+                lastCrs = crs;
+            }
+            jsonWriter.setAxisOrder(lastAxisOrder);
             if (crs != null) {
                 // store the found CRS, this may be useful for the invoker
                 this.crs = crs;
@@ -5,11 +5,13 @@
  */
 package org.geoserver.wfs.json;
 
+import java.io.IOException;
 import java.io.Writer;
 import java.util.Calendar;
 import java.util.List;
 import java.util.Map;
 import net.sf.json.JSONException;
+import net.sf.json.JSONString;
 import net.sf.json.util.JSONBuilder;
 import org.geotools.referencing.CRS;
 import org.geotools.util.Converters;
@@ -39,6 +41,11 @@ public class GeoJSONBuilder extends JSONBuilder {
 
     private boolean encodeMeasures = false;
 
+    private final JSONNumberEncoder numberEncoder = new JSONNumberEncoder();
+
+    /** A value that json-lib encodes as an empty string, see {@link #rawValue()} */
+    private static final JSONString RAW_VALUE = () -> "";
+
     public GeoJSONBuilder(Writer w) {
         super(w);
     }
@@ -47,6 +54,9 @@ public class GeoJSONBuilder extends JSONBuilder {
      * Writes any geometry object. This class figures out which geometry representation to write and
      * calls subclasses to actually write the object.
      *
+     * <p>The coordinates are written straight into the output, bypassing the per value conversions
+     * of {@link JSONBuilder}, as they make up the bulk of the output of most documents.
+     *
      * @param geometry The geometry to be encoded
      * @return The JSONBuilder with the new geometry
      * @throws JSONException If anything goes wrong
@@ -60,49 +70,53 @@ public class GeoJSONBuilder extends JSONBuilder {
 
         if (geometryType != MULTIGEOMETRY) {
             this.key("coordinates");
-
-            switch (geometryType) {
-                case POINT:
-                    Point point = (Point) geometry;
-                    writeCoordinate(point);
-                    break;
-                case LINESTRING:
-                    writeCoordinates(((LineString) geometry).getCoordinateSequence());
-                    break;
-                case MULTIPOINT:
-                    this.array();
-                    for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
-                        writeCoordinate((Point) geometry.getGeometryN(i));
-                    }
-                    this.endArray();
-                    break;
-                case POLYGON:
-                    writePolygon((Polygon) geometry);
-
-                    break;
-
-                case MULTILINESTRING:
-                    this.array();
-
-                    for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
-                        writeCoordinates(
-                                ((LineString) geometry.getGeometryN(i)).getCoordinateSequence());
-                    }
-
-                    this.endArray();
-
-                    break;
-
-                case MULTIPOLYGON:
-                    this.array();
-
-                    for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
-                        writePolygon((Polygon) geometry.getGeometryN(i));
-                    }
-
-                    this.endArray();
-
-                    break;
+            rawValue();
+            try {
+                switch (geometryType) {
+                    case POINT:
+                        writeCoordinate(((Point) geometry).getCoordinateSequence(), 0);
+                        break;
+                    case LINESTRING:
+                        writeCoordinates(((LineString) geometry).getCoordinateSequence());
+                        break;
+                    case MULTIPOINT:
+                        writer.write('[');
+                        for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
+                            if (i > 0) {
+                                writer.write(',');
+                            }
+                            Point point = (Point) geometry.getGeometryN(i);
+                            writeCoordinate(point.getCoordinateSequence(), 0);
+                        }
+                        writer.write(']');
+                        break;
+                    case POLYGON:
+                        writePolygon((Polygon) geometry);
+                        break;
+                    case MULTILINESTRING:
+                        writer.write('[');
+                        for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
+                            if (i > 0) {
+                                writer.write(',');
+                            }
+                            LineString line = (LineString) geometry.getGeometryN(i);
+                            writeCoordinates(line.getCoordinateSequence());
+                        }
+                        writer.write(']');
+                        break;
+                    case MULTIPOLYGON:
+                        writer.write('[');
+                        for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
+                            if (i > 0) {
+                                writer.write(',');
+                            }
+                            writePolygon((Polygon) geometry.getGeometryN(i));
+                        }
+                        writer.write(']');
+                        break;
+                }
+            } catch (IOException e) {
+                throw new JSONException(e);
             }
         } else {
             writeGeomCollection((GeometryCollection) geometry);
@@ -123,18 +137,11 @@ public class GeoJSONBuilder extends JSONBuilder {
     }
 
     /**
-     * Helper method that encodes a {@see Point} coordinate to the JSON output. This method will
-     * respect the configured axis order. If activated, coordinates measures (M) will be encoded,
-     * otherwise measures will be ignored.
-     *
-     * @param point the point whose coordinate will be encoded
-     * @return the JSON builder instance, this allow chained calls
+     * Lets the builder account for a value (comma handling and state transitions) without writing
+     * anything, the value is then written straight into {@link #writer} by the caller
      */
-    private JSONBuilder writeCoordinate(Point point) throws JSONException {
-        CoordinateSequence coordinates = point.getCoordinateSequence();
-        // let's see if we need to encode measures, NaN values will not be encoded
-        double m = encodeMeasures ? coordinates.getM(0) : Double.NaN;
-        return writeCoordinate(coordinates.getX(0), coordinates.getY(0), coordinates.getZ(0), m);
+    private void rawValue() {
+        super.value(RAW_VALUE);
     }
 
     /**
@@ -143,50 +150,49 @@ public class GeoJSONBuilder extends JSONBuilder {
      * encoded, otherwise measures will be ignored.
      *
      * @param coordinates the coordinates sequence that will be encoded
-     * @return the JSON builder instance, this allow chained calls
      */
-    private JSONBuilder writeCoordinates(CoordinateSequence coordinates) throws JSONException {
-        // start encoding the JSON array of coordinates
-        this.array();
-        // each coordinate will be encoded has an array of ordinates
-        for (int i = 0; i < coordinates.size(); i++) {
-            // let's see if we need to encode measures, NaN values will not be encoded
-            double m = encodeMeasures ? coordinates.getM(i) : Double.NaN;
-            // encode the coordinate ordinates to the JSON output
-            writeCoordinate(coordinates.getX(i), coordinates.getY(i), coordinates.getZ(i), m);
+    private void writeCoordinates(CoordinateSequence coordinates) throws IOException {
+        writer.write('[');
+        for (int i = 0, n = coordinates.size(); i < n; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writeCoordinate(coordinates, i);
         }
-        // we are done with the array
-        return this.endArray();
+        writer.write(']');
     }
 
     /**
-     * Helper method that will encode the provided coordinate values. The order the {@code X} and
+     * Helper method that will encode a coordinate of the sequence. The order the {@code X} and
      * {@code Y} coordinates will be encoded will depend on the configured axis order.
      *
-     * <p>If both provided {@code Z} or {@code M} values are {@code NaN} they will not be encoded.
-     * If a valid {@code M} value was provided but {@code Z} is {@code NaN}, zero (0) will be used
-     * for {@code Z}.
+     * <p>If both {@code Z} or {@code M} values are {@code NaN} they will not be encoded. If a valid
+     * {@code M} value is available (and measures are to be encoded) but {@code Z} is {@code NaN},
+     * zero (0) will be used for {@code Z}.
      *
-     * @param x X ordinate
-     * @param y X ordinate
-     * @param z Z ordinate, can be {@code NaN}
-     * @param m M ordinate, can be {@code NaN}
-     * @return the JSON builder instance, this allow chained calls
+     * @param coordinates the coordinate sequence
+     * @param i the index of the coordinate to encode
      */
-    private JSONBuilder writeCoordinate(double x, double y, double z, double m) {
-        // start encoding JSON array
-        this.array();
+    private void writeCoordinate(CoordinateSequence coordinates, int i) throws IOException {
+        double x = coordinates.getX(i);
+        double y = coordinates.getY(i);
+        double z = coordinates.getZ(i);
+        // let's see if we need to encode measures, NaN values will not be encoded
+        double m = encodeMeasures ? coordinates.getM(i) : Double.NaN;
+        writer.write('[');
         // adjust the order of X and Y ordinates if needed
         if (axisOrder == CRS.AxisOrder.NORTH_EAST) {
             // encode latitude first and then longitude
             if (!Double.isNaN(y)) { // for 1d linear referencing cases
                 roundedValue(y);
+                writer.write(',');
             }
             roundedValue(x);
         } else {
             // encode longitude first and then latitude
             roundedValue(x);
             if (!Double.isNaN(y)) { // for 1d linear referencing cases
+                writer.write(',');
                 roundedValue(y);
             }
         }
@@ -194,18 +200,19 @@ public class GeoJSONBuilder extends JSONBuilder {
         z = Double.isNaN(z) && !Double.isNaN(m) ? 0 : z;
         // encode Z value if available
         if (!Double.isNaN(z)) {
+            writer.write(',');
             roundedValue(z);
         }
         // encode M value if available
         if (!Double.isNaN(m)) {
+            writer.write(',');
             roundedValue(m);
         }
-        // we are done with the array
-        return this.endArray();
+        writer.write(']');
     }
 
-    private void roundedValue(double value) {
-        super.value(RoundingUtil.round(value, numDecimals));
+    private void roundedValue(double value) throws IOException {
+        numberEncoder.write(writer, value, numDecimals);
     }
 
     /**
@@ -216,37 +223,48 @@ public class GeoJSONBuilder extends JSONBuilder {
      */
     protected JSONBuilder writeBoundingBox(Envelope env) {
         this.key("bbox");
-        this.array();
-        if (axisOrder == CRS.AxisOrder.NORTH_EAST) {
-            roundedValue(env.getMinY());
-            roundedValue(env.getMinX());
-            roundedValue(env.getMaxY());
-            roundedValue(env.getMaxX());
-        } else {
-            roundedValue(env.getMinX());
-            roundedValue(env.getMinY());
-            roundedValue(env.getMaxX());
-            roundedValue(env.getMaxY());
+        rawValue();
+        try {
+            writer.write('[');
+            if (axisOrder == CRS.AxisOrder.NORTH_EAST) {
+                roundedValue(env.getMinY());
+                writer.write(',');
+                roundedValue(env.getMinX());
+                writer.write(',');
+                roundedValue(env.getMaxY());
+                writer.write(',');
+                roundedValue(env.getMaxX());
+            } else {
+                roundedValue(env.getMinX());
+                writer.write(',');
+                roundedValue(env.getMinY());
+                writer.write(',');
+                roundedValue(env.getMaxX());
+                writer.write(',');
+                roundedValue(env.getMaxY());
+            }
+            writer.write(']');
+        } catch (IOException e) {
+            throw new JSONException(e);
         }
-        return this.endArray();
+        return this;
     }
 
     /**
      * Writes a polygon
      *
      * @param geometry The polygon to write
-     * @throws JSONException
      */
-    private void writePolygon(Polygon geometry) throws JSONException {
-        this.array();
+    private void writePolygon(Polygon geometry) throws IOException {
+        writer.write('[');
         writeCoordinates(geometry.getExteriorRing().getCoordinateSequence());
 
         for (int i = 0, ii = geometry.getNumInteriorRing(); i < ii; i++) {
+            writer.write(',');
             writeCoordinates(geometry.getInteriorRingN(i).getCoordinateSequence());
         }
 
-        this.endArray(); // end the linear ring
-        // this.endObject(); //end the
+        writer.write(']'); // end the linear ring
     }
 
     /** Internal representation of OGC SF Point */
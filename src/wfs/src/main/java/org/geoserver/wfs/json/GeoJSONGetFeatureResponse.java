@@ -393,6 +393,9 @@ public class GeoJSONGetFeatureResponse extends WFSGetFeatureOutputFormat {
             try (FeatureIterator iterator = collection.features()) {
                 SimpleFeatureType fType;
                 List<AttributeDescriptor> types;
+                // the axis order lookup is not cheap, do it once per feature type
+                SimpleFeatureType lastType = null;
+                CRS.AxisOrder axisOrder = CRS.AxisOrder.EAST_NORTH;
                 // encode each simple feature
                 while (iterator.hasNext()) {
                     // get next simple feature
@@ -414,17 +417,21 @@ public class GeoJSONGetFeatureResponse extends WFSGetFeatureOutputFormat {
                     }
                     // set that axis order that should be used to write geometries
                     GeometryDescriptor defaultGeomType = fType.getGeometryDescriptor();
-                    if (defaultGeomType != null) {
-                        CoordinateReferenceSystem featureCrs =
-                                defaultGeomType.getCoordinateReferenceSystem();
-                        jsonWriter.setAxisOrder(CRS.getAxisOrder(featureCrs));
-                        if (crs == null) {
-                            crs = featureCrs;
+                    if (fType != lastType) {
+                        if (defaultGeomType != null) {
+                            CoordinateReferenceSystem featureCrs =
+                                    defaultGeomType.getCoordinateReferenceSystem();
+                            axisOrder = CRS.getAxisOrder(featureCrs);
+                            if (crs == null) {
+                                crs = featureCrs;
+                            }
+                        } else {
+                            // If we don't know, assume EAST_NORTH so that no swapping occurs
+                            axisOrder = CRS.AxisOrder.EAST_NORTH;
                         }
-                    } else {
-                        // If we don't know, assume EAST_NORTH so that no swapping occurs
-                        jsonWriter.setAxisOrder(CRS.AxisOrder.EAST_NORTH);
+                        lastType = fType;
                     }
+                    jsonWriter.setAxisOrder(axisOrder);
                     // start writing the simple feature geometry JSON object
                     jsonWriter.key("geometry");
                     Geometry aGeom = (Geometry) simpleFeature.getDefaultGeometry();
@@ -479,10 +486,12 @@ public class GeoJSONGetFeatureResponse extends WFSGetFeatureOutputFormat {
                     jsonWriter.endObject(); // end the properties
 
                     // Bounding box for feature in properties
-                    ReferencedEnvelope refenv =
-                            ReferencedEnvelope.reference(simpleFeature.getBounds());
-                    if (featureBounding && !refenv.isEmpty()) {
-                        jsonWriter.writeBoundingBox(refenv);
+                    if (featureBounding) {
+                        ReferencedEnvelope refenv =
+                                ReferencedEnvelope.reference(simpleFeature.getBounds());
+                        if (!refenv.isEmpty()) {
+                            jsonWriter.writeBoundingBox(refenv);
+                        }
                     }
 
                     writeExtraFeatureProperties(simpleFeature, operation, jsonWriter);
@@ -0,0 +1,102 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.json;
+
+import java.io.IOException;
+import java.io.Writer;
+import net.sf.json.JSONException;
+
+/**
+ * Writes rounded doubles as JSON numbers directly into a {@link Writer}, producing the same text as
+ * json-lib (the shortest representation, without trailing zeroes), but without going through
+ * {@link Double#toString(double)} and string post-processing for the common case of values in
+ * plain notation with a limited number of decimals.
+ *
+ * <p>Instances reuse an internal buffer, and are not thread safe.
+ */
+final class JSONNumberEncoder {
+
+    private static final long[] POW10 = {
+        1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L
+    };
+
+    /** Double.toString switches to computerized scientific notation outside of this range */
+    private static final double MIN_PLAIN = 1e-3;
+
+    private static final double MAX_PLAIN = 1e7;
+
+    private final char[] buffer = new char[24];
+
+    /**
+     * Writes the value rounded to the given number of decimals, see {@link RoundingUtil#round}
+     *
+     * @throws JSONException if the value is not finite
+     */
+    void write(Writer writer, double value, int numDecimals) throws IOException {
+        double rounded = RoundingUtil.round(value, numDecimals);
+        double abs = Math.abs(rounded);
+        if (numDecimals >= 0
+                && numDecimals < POW10.length
+                && abs >= MIN_PLAIN
+                && abs < MAX_PLAIN) {
+            long scale = POW10[numDecimals];
+            long scaled = Math.round(abs * scale);
+            // only use the fast path if the digits represent exactly the rounded value
+            if (scaled / (double) scale == abs) {
+                writeScaled(writer, rounded < 0, scaled, scale, numDecimals);
+                return;
+            }
+        }
+        writer.write(toString(rounded));
+    }
+
+    /** Writes the digits of the scaled value, placing the decimal point and skipping zeroes */
+    private void writeScaled(
+            Writer writer, boolean negative, long scaled, long scale, int numDecimals)
+            throws IOException {
+        int pos = buffer.length;
+        long integer = scaled / scale;
+        long fraction = scaled % scale;
+        int digits = numDecimals;
+        while (digits > 0 && fraction % 10 == 0) {
+            fraction /= 10;
+            digits--;
+        }
+        if (digits > 0) {
+            for (int i = 0; i < digits; i++) {
+                buffer[--pos] = (char) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            buffer[--pos] = '.';
+        }
+        do {
+            buffer[--pos] = (char) ('0' + integer % 10);
+            integer /= 10;
+        } while (integer > 0);
+        if (negative) {
+            buffer[--pos] = '-';
+        }
+        writer.write(buffer, pos, buffer.length - pos);
+    }
+
+    /** Same output as json-lib number encoding for doubles */
+    static String toString(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new JSONException("JSON does not allow non-finite numbers");
+        }
+        String s = Double.toString(value);
+        if (s.indexOf('.') > 0 && s.indexOf('E') < 0) {
+            int end = s.length();
+            while (s.charAt(end - 1) == '0') {
+                end--;
+            }
+            if (s.charAt(end - 1) == '.') {
+                end--;
+            }
+            s = s.substring(0, end);
+        }
+        return s;
+    }
+}
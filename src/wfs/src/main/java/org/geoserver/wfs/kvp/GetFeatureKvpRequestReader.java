@@ -120,6 +120,11 @@ public class GetFeatureKvpRequestReader extends BaseFeatureKvpRequestReader {
             req.getFormatOptions().putAll((Map) kvp.get("format_options"));
         }
 
+        // opaque keyset paging cursor, as found in the next links
+        if (rawKvp.containsKey("cursor")) {
+            req.setCursor((String) rawKvp.get("cursor"));
+        }
+
         // sql view params
         if (kvp.containsKey("viewParams")) {
 
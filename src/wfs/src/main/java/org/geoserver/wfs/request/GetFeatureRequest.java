@@ -7,6 +7,7 @@ package org.geoserver.wfs.request;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import net.opengis.wfs.GetFeatureType;
@@ -25,6 +26,9 @@ import org.geotools.xsd.EMFUtils;
  */
 public abstract class GetFeatureRequest extends RequestObject {
 
+    /** The paging cursor parameter */
+    public static final String CURSOR = "CURSOR";
+
     public static GetFeatureRequest adapt(Object request) {
         if (request instanceof GetFeatureType) {
             return new WFS11((EObject) request);
@@ -56,6 +60,32 @@ public abstract class GetFeatureRequest extends RequestObject {
         l.addAll(viewParams);
     }
 
+    /**
+     * Returns the opaque paging cursor issued in a previous response next link, if any. The cursor
+     * is kept among the extended properties of the request, out of the way of the format options
+     * handed to the output formats
+     */
+    public String getCursor() {
+        Map properties = getExtendedProperties();
+        return properties != null ? (String) properties.get(CURSOR) : null;
+    }
+
+    public void setCursor(String cursor) {
+        Map properties = getExtendedProperties();
+        if (properties == null) {
+            if (cursor == null || !EMFUtils.has(adaptee, "extendedProperties")) {
+                return;
+            }
+            properties = new HashMap();
+            eSet(adaptee, "extendedProperties", properties);
+        }
+        if (cursor != null) {
+            properties.put(CURSOR, cursor);
+        } else {
+            properties.remove(CURSOR);
+        }
+    }
+
     public abstract List<Query> getQueries();
 
     public abstract List<Object> getAdaptedQueries();
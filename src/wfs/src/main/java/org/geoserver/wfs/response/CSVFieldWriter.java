@@ -0,0 +1,211 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.response;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.NumberFormat;
+import java.util.Locale;
+import org.apache.commons.io.output.StringBuilderWriter;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.WKTWriter;
+
+/**
+ * Writes CSV fields directly into a {@link Writer}, escaping them according to RFC 4180 while
+ * copying, and formatting the common number types and geometries into reusable buffers, without
+ * creating intermediate strings. The output is the same as formatting numbers with a {@link
+ * NumberFormat} (US locale, no grouping, the configured maximum number of decimals) and geometries
+ * with their WKT representation.
+ *
+ * <p>Instances are not thread safe.
+ */
+class CSVFieldWriter {
+
+    private static final long[] POW10 = {
+        1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L
+    };
+
+    /** Scaled doubles up to this value have a fraction precise enough to round them directly */
+    private static final double MAX_SCALED = 1L << 40;
+
+    /** Distance from a rounding tie below which the exact decimal expansion is needed */
+    private static final double TIE_EPSILON = 1e-3;
+
+    private final Writer writer;
+
+    private final int numDecimals;
+
+    private final NumberFormat numberFormat;
+
+    private final WKTWriter wktWriter = new WKTWriter();
+
+    private final StringBuilderWriter wkt = new StringBuilderWriter();
+
+    private char[] buffer = new char[64];
+
+    public CSVFieldWriter(Writer writer, int numDecimals) {
+        this.writer = writer;
+        this.numDecimals = numDecimals;
+        this.numberFormat = NumberFormat.getInstance(Locale.US);
+        this.numberFormat.setMaximumFractionDigits(numDecimals);
+        this.numberFormat.setGroupingUsed(false);
+    }
+
+    /** Returns the number format used for the numbers that are not handled directly */
+    public NumberFormat getNumberFormat() {
+        return numberFormat;
+    }
+
+    public void write(char c) throws IOException {
+        writer.write(c);
+    }
+
+    /**
+     * Writes a field, enclosing it in double quotes if it contains double quotes, commas or new
+     * lines, and doubling the double quotes it contains
+     */
+    public void writeField(String field) throws IOException {
+        int length = field.length();
+        int i = 0;
+        while (i < length && !needsQuotes(field.charAt(i))) {
+            i++;
+        }
+        if (i == length) {
+            writer.write(field);
+            return;
+        }
+        writer.write('"');
+        int start = 0;
+        for (; i < length; i++) {
+            if (field.charAt(i) == '"') {
+                writer.write(field, start, i + 1 - start);
+                writer.write('"');
+                start = i + 1;
+            }
+        }
+        writer.write(field, start, length - start);
+        writer.write('"');
+    }
+
+    /** Same as {@link #writeField(String)}, for the first {@code length} chars of the buffer */
+    private void writeField(char[] chars, int length) throws IOException {
+        int i = 0;
+        while (i < length && !needsQuotes(chars[i])) {
+            i++;
+        }
+        if (i == length) {
+            writer.write(chars, 0, length);
+            return;
+        }
+        writer.write('"');
+        int start = 0;
+        for (; i < length; i++) {
+            if (chars[i] == '"') {
+                writer.write(chars, start, i + 1 - start);
+                writer.write('"');
+                start = i + 1;
+            }
+        }
+        writer.write(chars, start, length - start);
+        writer.write('"');
+    }
+
+    private static boolean needsQuotes(char c) {
+        return c == '"' || c == ',' || c == '\n' || c == '\r';
+    }
+
+    /** Writes the geometry as WKT, quoted as needed */
+    public void writeGeometry(Geometry geometry) throws IOException {
+        StringBuilder sb = wkt.getBuilder();
+        sb.setLength(0);
+        wktWriter.write(geometry, wkt);
+        int length = sb.length();
+        if (buffer.length < length) {
+            buffer = new char[Math.max(length, buffer.length * 2)];
+        }
+        sb.getChars(0, length, buffer, 0);
+        writeField(buffer, length);
+    }
+
+    /** Writes a number, numbers never need quoting */
+    public void writeNumber(Number number) throws IOException {
+        if (number instanceof Integer
+                || number instanceof Long
+                || number instanceof Short
+                || number instanceof Byte) {
+            writeLong(number.longValue());
+        } else if (!(number instanceof Double || number instanceof Float)
+                || !writeDouble(number.doubleValue())) {
+            writer.write(numberFormat.format(number));
+        }
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writer.write(Long.toString(value));
+            return;
+        }
+        int pos = buffer.length;
+        boolean negative = value < 0;
+        long abs = Math.abs(value);
+        do {
+            buffer[--pos] = (char) ('0' + abs % 10);
+            abs /= 10;
+        } while (abs > 0);
+        if (negative) {
+            buffer[--pos] = '-';
+        }
+        writer.write(buffer, pos, buffer.length - pos);
+    }
+
+    /**
+     * Writes the double rounded half even to the configured number of decimals, like {@link
+     * NumberFormat} does. Returns false, without writing anything, if the value cannot be handled
+     * without the exact decimal expansion of the double.
+     */
+    boolean writeDouble(double value) throws IOException {
+        if (numDecimals < 0 || numDecimals >= POW10.length || Double.isNaN(value)) {
+            return false;
+        }
+        long scale = POW10[numDecimals];
+        double abs = Math.abs(value);
+        double scaled = abs * scale;
+        if (!(scaled < MAX_SCALED)) {
+            return false;
+        }
+        double floor = Math.floor(scaled);
+        if (Math.abs(scaled - floor - 0.5) < TIE_EPSILON) {
+            return false;
+        }
+        long digits = (long) Math.rint(scaled);
+
+        // NumberFormat keeps the sign of negative values rounding to zero, and of negative zero
+        boolean negative = Double.doubleToRawLongBits(value) < 0;
+        int pos = buffer.length;
+        long integer = digits / scale;
+        long fraction = digits % scale;
+        int fractionDigits = numDecimals;
+        while (fractionDigits > 0 && fraction % 10 == 0) {
+            fraction /= 10;
+            fractionDigits--;
+        }
+        if (fractionDigits > 0) {
+            for (int i = 0; i < fractionDigits; i++) {
+                buffer[--pos] = (char) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            buffer[--pos] = '.';
+        }
+        do {
+            buffer[--pos] = (char) ('0' + integer % 10);
+            integer /= 10;
+        } while (integer > 0);
+        if (negative) {
+            buffer[--pos] = '-';
+        }
+        writer.write(buffer, pos, buffer.length - pos);
+        return true;
+    }
+}
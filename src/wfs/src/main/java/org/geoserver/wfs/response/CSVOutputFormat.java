@@ -5,18 +5,13 @@
  */
 package org.geoserver.wfs.response;
 
-import com.google.common.escape.Escaper;
-import com.google.common.escape.Escapers;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.text.NumberFormat;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
-import java.util.Locale;
-import java.util.regex.Pattern;
 import org.eclipse.xsd.XSDElementDeclaration;
 import org.eclipse.xsd.impl.XSDElementDeclarationImpl;
 import org.geoserver.config.GeoServer;
@@ -30,6 +25,7 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.FeatureIterator;
 import org.geotools.feature.type.DateUtil;
+import org.locationtech.jts.geom.Geometry;
 import org.opengis.feature.Feature;
 import org.opengis.feature.Property;
 import org.opengis.feature.simple.SimpleFeature;
@@ -48,7 +44,8 @@ import org.opengis.feature.type.PropertyDescriptor;
  */
 public class CSVOutputFormat extends WFSGetFeatureOutputFormat {
 
-    static final Pattern CSV_ESCAPES = Pattern.compile("[\"\n,\r]");
+    /** Size of the output buffer, large to reduce the number of encoder round trips */
+    static final int BUFFER_SIZE = 64 * 1024;
 
     public CSVOutputFormat(GeoServer gs) {
         // this is the name of your output format, it is the string
@@ -88,7 +85,11 @@ public class CSVOutputFormat extends WFSGetFeatureOutputFormat {
         // create a writer
         BufferedWriter w =
                 new BufferedWriter(
-                        new OutputStreamWriter(output, gs.getGlobal().getSettings().getCharset()));
+                        new OutputStreamWriter(output, gs.getGlobal().getSettings().getCharset()),
+                        BUFFER_SIZE);
+        // escapes the fields while writing them, and formats numbers and geometries
+        CSVFieldWriter fw =
+                new CSVFieldWriter(w, getInfo().getGeoServer().getSettings().getNumDecimals());
 
         // get the feature collection
         FeatureCollection<?, ?> fc = featureCollection.getFeature().get(0);
@@ -103,7 +104,7 @@ public class CSVOutputFormat extends WFSGetFeatureOutputFormat {
             w.write("FID,");
             for (int i = 0; i < ft.getAttributeCount(); i++) {
                 AttributeDescriptor ad = ft.getDescriptor(i);
-                w.write(prepCSVField(ad.getLocalName()));
+                fw.writeField(ad.getLocalName());
 
                 if (i < ft.getAttributeCount() - 1) {
                     w.write(",");
@@ -128,7 +129,7 @@ public class CSVOutputFormat extends WFSGetFeatureOutputFormat {
                         XSDElementDeclarationImpl xsdEl = (XSDElementDeclarationImpl) xsd;
                         elName = xsdEl.getQName();
                     }
-                    w.write(prepCSVField(elName));
+                    fw.writeField(elName);
                     i++;
                 }
             }
@@ -136,12 +137,6 @@ public class CSVOutputFormat extends WFSGetFeatureOutputFormat {
         // by RFC each line is terminated by CRLF
         w.write("\r\n");
 
-        // prepare the formatter for numbers
-        NumberFormat coordFormatter = NumberFormat.getInstance(Locale.US);
-        coordFormatter.setMaximumFractionDigits(
-                getInfo().getGeoServer().getSettings().getNumDecimals());
-        coordFormatter.setGroupingUsed(false);
-
         // prepare the list of formatters
         AttrFormatter[] formatters = getFormatters(fc.getSchema());
 
@@ -151,18 +146,19 @@ public class CSVOutputFormat extends WFSGetFeatureOutputFormat {
             while (i.hasNext()) {
                 Feature f = i.next();
                 // dump fid
-                w.write(prepCSVField(f.getIdentifier().getID()));
-                w.write(",");
+                fw.writeField(f.getIdentifier().getID());
+                w.write(',');
                 if (f instanceof SimpleFeature) {
                     // dump attributes
-                    for (int j = 0; j < ((SimpleFeature) f).getAttributeCount(); j++) {
-                        Object att = ((SimpleFeature) f).getAttribute(j);
+                    SimpleFeature sf = (SimpleFeature) f;
+                    int count = sf.getAttributeCount();
+                    for (int j = 0; j < count; j++) {
+                        Object att = sf.getAttribute(j);
                         if (att != null) {
-                            String value = formatters[j].format(att);
-                            w.write(value);
+                            formatters[j].write(att, fw);
                         }
-                        if (j < ((SimpleFeature) f).getAttributeCount() - 1) {
-                            w.write(",");
+                        if (j < count - 1) {
+                            w.write(',');
                         }
                     }
                 } else {
@@ -180,7 +176,7 @@ public class CSVOutputFormat extends WFSGetFeatureOutputFormat {
                             continue;
                         }
                         if (j > 0) {
-                            w.write(",");
+                            w.write(',');
                         }
                         j++;
                         // Multi valued properties aren't supported, only for SF0 for now
@@ -196,8 +192,7 @@ public class CSVOutputFormat extends WFSGetFeatureOutputFormat {
                         }
 
                         if (att != null) {
-                            String value = formatToString(att, coordFormatter);
-                            w.write(prepCSVField(value));
+                            writeValue(att, fw);
                         }
                     }
                 }
@@ -213,19 +208,15 @@ public class CSVOutputFormat extends WFSGetFeatureOutputFormat {
 
     private AttrFormatter[] getFormatters(FeatureType schema) {
         if (schema instanceof SimpleFeatureType) {
-            // prepare the formatter for numbers
-            NumberFormat coordFormatter = NumberFormat.getInstance(Locale.US);
-            coordFormatter.setMaximumFractionDigits(
-                    getInfo().getGeoServer().getSettings().getNumDecimals());
-            coordFormatter.setGroupingUsed(false);
-
             SimpleFeatureType sft = (SimpleFeatureType) schema;
             AttrFormatter[] formatters = new AttrFormatter[sft.getAttributeCount()];
             int i = 0;
             for (AttributeDescriptor attributeDescriptor : sft.getAttributeDescriptors()) {
                 Class<?> binding = attributeDescriptor.getType().getBinding();
                 if (Number.class.isAssignableFrom(binding)) {
-                    formatters[i] = new NumberFormatter(coordFormatter);
+                    formatters[i] = numberFormatter;
+                } else if (Geometry.class.isAssignableFrom(binding)) {
+                    formatters[i] = geometryFormatter;
                 } else if (java.sql.Date.class.isAssignableFrom(binding)) {
                     formatters[i] = sqlDateFormatter;
                 } else if (java.sql.Time.class.isAssignableFrom(binding)) {
@@ -243,100 +234,45 @@ public class CSVOutputFormat extends WFSGetFeatureOutputFormat {
         }
     }
 
+    /** Writes an attribute value into the CSV field writer */
     private interface AttrFormatter {
-        String format(Object att);
-    }
-
-    private static class NumberFormatter implements AttrFormatter {
-        private final NumberFormat coordFormatter;
-
-        public NumberFormatter(NumberFormat coordFormatter) {
-            this.coordFormatter = coordFormatter;
-        }
-
-        @Override
-        public String format(Object att) {
-            return coordFormatter.format(att);
-        }
-    }
-
-    private static class JUDateFormatter implements AttrFormatter {
-        @Override
-        public String format(Object att) {
-            return prepCSVField(DateUtil.serializeDateTime((Date) att));
-        }
+        void write(Object att, CSVFieldWriter fw) throws IOException;
     }
 
-    private static AttrFormatter juDateFormatter = new JUDateFormatter();
+    private static AttrFormatter numberFormatter = (att, fw) -> fw.writeNumber((Number) att);
 
-    private static class SQLDateFormatter implements AttrFormatter {
-        @Override
-        public String format(Object att) {
-            return prepCSVField(DateUtil.serializeSqlDate((java.sql.Date) att));
-        }
-    }
+    private static AttrFormatter geometryFormatter =
+            (att, fw) -> fw.writeGeometry((Geometry) att);
 
-    private static AttrFormatter sqlDateFormatter = new SQLDateFormatter();
+    private static AttrFormatter juDateFormatter =
+            (att, fw) -> fw.writeField(DateUtil.serializeDateTime((Date) att));
 
-    private static class SQLTimeFormatter implements AttrFormatter {
-        @Override
-        public String format(Object att) {
-            return prepCSVField(DateUtil.serializeSqlTime((java.sql.Time) att));
-        }
-    }
+    private static AttrFormatter sqlDateFormatter =
+            (att, fw) -> fw.writeField(DateUtil.serializeSqlDate((java.sql.Date) att));
 
-    private static AttrFormatter sqlTimeFormatter = new SQLTimeFormatter();
+    private static AttrFormatter sqlTimeFormatter =
+            (att, fw) -> fw.writeField(DateUtil.serializeSqlTime((java.sql.Time) att));
 
-    private static class DefaultFormatter implements AttrFormatter {
-        @Override
-        public String format(Object att) {
-            return prepCSVField(att.toString());
-        }
-    }
+    private static AttrFormatter defaultFormatter = CSVOutputFormat::writeValue;
 
-    private static AttrFormatter defaultFormatter = new DefaultFormatter();
-
-    private String formatToString(Object att, NumberFormat coordFormatter) {
-        String value;
+    private static void writeValue(Object att, CSVFieldWriter fw) throws IOException {
         if (att instanceof Number) {
             // don't allow scientific notation in the output, as OpenOffice won't
             // recognize that as a number
-            value = coordFormatter.format(att);
+            fw.writeNumber((Number) att);
         } else if (att instanceof Date) {
             // serialize dates in ISO format
             if (att instanceof java.sql.Date)
-                value = DateUtil.serializeSqlDate((java.sql.Date) att);
+                fw.writeField(DateUtil.serializeSqlDate((java.sql.Date) att));
             else if (att instanceof java.sql.Time)
-                value = DateUtil.serializeSqlTime((java.sql.Time) att);
-            else value = DateUtil.serializeDateTime((Date) att);
+                fw.writeField(DateUtil.serializeSqlTime((java.sql.Time) att));
+            else fw.writeField(DateUtil.serializeDateTime((Date) att));
+        } else if (att instanceof Geometry) {
+            fw.writeGeometry((Geometry) att);
         } else {
             // everything else we just "toString"
-            value = att.toString();
+            fw.writeField(att.toString());
         }
-        return value;
-    }
-
-    private static Escaper escaper = Escapers.builder().addEscape('"', "\"\"").build();
-
-    /*
-     * The CSV "spec" explains that fields with certain properties must be
-     * delimited by double quotes, and also that double quotes within fields
-     * must be escaped.  This method takes a field and returns one that
-     * obeys the CSV spec.
-     */
-    private static String prepCSVField(String field) {
-        // "embedded double-quote characters must be represented by a pair of double-quote
-        // characters."
-        String mod = escaper.escape(field);
-
-        /*
-         * Enclose string in double quotes if it contains double quotes, commas, or newlines
-         */
-        if (CSV_ESCAPES.matcher(mod).find()) {
-            mod = "\"" + mod + "\"";
-        }
-
-        return mod;
     }
 
     @Override
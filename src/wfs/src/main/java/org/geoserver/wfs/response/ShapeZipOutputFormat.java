@@ -9,27 +9,32 @@ import freemarker.template.Configuration;
 import freemarker.template.Template;
 import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.SimpleTimeZone;
 import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.xml.namespace.QName;
@@ -90,11 +95,29 @@ public class ShapeZipOutputFormat extends WFSGetFeatureOutputFormat
 
     private static final Configuration templateConfig = TemplateUtils.getSafeConfiguration();
 
+    private static final String EMPTY_ZIP_WARNING =
+            "The query result is empty, and the geometric type of the features is unknwon:"
+                    + "an empty point shapefile has been created to fill the zip file";
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    /** The files making up a shapefile, as produced by the {@link ShapefileDumper} */
+    private static final FilenameFilter SHAPEFILE_PARTS =
+            (dir, name) -> {
+                name = name.toLowerCase();
+                return name.endsWith(".shp")
+                        || name.endsWith(".shx")
+                        || name.endsWith(".dbf")
+                        || name.endsWith(".prj")
+                        || name.endsWith(".cst");
+            };
+
     private ApplicationContext applicationContext;
     private Catalog catalog;
     private GeoServerResourceLoader resourceLoader;
     private long maxShpSize = Long.getLong("GS_SHP_MAX_SIZE", Integer.MAX_VALUE);
     private long maxDbfSize = Long.getLong("GS_DBF_MAX_SIZE", Integer.MAX_VALUE);
+    private long stagingSize = Long.getLong("GS_SHP_ZIP_STAGING_SIZE", 1024 * 1024);
 
     public ShapeZipOutputFormat(
             GeoServer gs, Catalog catalog, GeoServerResourceLoader resourceLoader) {
@@ -206,41 +229,35 @@ public class ShapeZipOutputFormat extends WFSGetFeatureOutputFormat
         dumper.setMaxShpSize(maxShpSize);
         dumper.setCharset(charset);
 
-        // target charset
-
         try {
+            // small outputs are kept in memory until complete, so that a failure can still be
+            // reported as a service exception, larger ones are sent out as the collections are
+            // dumped, and a failure leaves the client with a truncated zip, missing its directory
+            StagingOutputStream staging = new StagingOutputStream(output, stagingSize);
+            ZipOutputStream zipOut = new ZipOutputStream(staging);
+            Set<String> zipped = new HashSet<>();
+
             // if an empty result out of feature type with unknown geometry is created, the
             // zip file will be empty and the zip output stream will break
             boolean shapefileCreated = false;
             for (SimpleFeatureCollection collection : collections) {
                 shapefileCreated |= dumper.dump(collection);
+                // send out the files of this collection right away and free the disk space they
+                // use, instead of waiting for all the collections to be dumped
+                moveToZip(tempDir, zipOut, zipped);
             }
 
             // take care of the case the output is completely empty
             if (!shapefileCreated) {
-                createEmptyZipWarning(tempDir);
+                byte[] warning = EMPTY_ZIP_WARNING.getBytes(StandardCharsets.UTF_8);
+                writeEntry(zipOut, "README.TXT", warning);
             }
 
             // dump the request
-            createRequestDump(tempDir, request, collections.get(0));
-
-            // zip all the files produced
-            final FilenameFilter filter =
-                    new FilenameFilter() {
-
-                        public boolean accept(File dir, String name) {
-                            name = name.toLowerCase();
-                            return name.endsWith(".shp")
-                                    || name.endsWith(".shx")
-                                    || name.endsWith(".dbf")
-                                    || name.endsWith(".prj")
-                                    || name.endsWith(".cst")
-                                    || name.endsWith(".txt");
-                        }
-                    };
-            ZipOutputStream zipOut = new ZipOutputStream(output);
-            IOUtils.zipDirectory(tempDir, zipOut, filter);
+            writeRequestDump(zipOut, request, collections.get(0));
+
             zipOut.finish();
+            staging.commit();
 
             // This is an error, because this closes the output stream too... it's
             // not the right place to do so
@@ -260,23 +277,71 @@ public class ShapeZipOutputFormat extends WFSGetFeatureOutputFormat
     }
 
     /**
-     * Dumps the request
-     *
-     * @param simpleFeatureCollection
+     * Copies the shapefile parts found in the directory into the zip, and deletes them. Entry names
+     * already used by a previous collection (e.g., the same type requested twice) get a numeric
+     * suffix, consistent across the parts of the same shapefile.
      */
-    private void createRequestDump(
-            File tempDir, GetFeatureRequest gft, SimpleFeatureCollection fc) {
+    private void moveToZip(File directory, ZipOutputStream zipOut, Set<String> zipped)
+            throws IOException {
+        File[] files = directory.listFiles(SHAPEFILE_PARTS);
+        if (files == null) {
+            return;
+        }
+        // keep the parts of the same shapefile together in the zip
+        Arrays.sort(files);
+        Map<String, String> renames = new HashMap<>();
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        for (File file : files) {
+            String name = file.getName();
+            int idx = name.lastIndexOf('.');
+            String base = name.substring(0, idx);
+            String extension = name.substring(idx);
+            String target = renames.get(base);
+            if (target == null) {
+                target = base;
+                for (int i = 1; zipped.contains(target); i++) {
+                    target = base + "_" + i;
+                }
+                renames.put(base, target);
+            }
+            zipOut.putNextEntry(new ZipEntry(target + extension));
+            try (InputStream in = new FileInputStream(file)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    zipOut.write(buffer, 0, read);
+                }
+            }
+            zipOut.closeEntry();
+            if (!file.delete()) {
+                LOGGER.fine("Could not delete " + file.getAbsolutePath());
+            }
+        }
+        zipped.addAll(renames.values());
+        zipOut.flush();
+    }
+
+    private void writeEntry(ZipOutputStream zipOut, String name, byte[] contents)
+            throws IOException {
+        zipOut.putNextEntry(new ZipEntry(name));
+        zipOut.write(contents);
+        zipOut.closeEntry();
+    }
+
+    /** Dumps the request as a text entry in the zip file */
+    private void writeRequestDump(
+            ZipOutputStream zipOut, GetFeatureRequest gft, SimpleFeatureCollection fc)
+            throws IOException {
         final Request request = Dispatcher.REQUEST.get();
         if (request == null || gft == null) {
             // we're probably running in a unit test
             return;
         }
 
-        // build the target file
+        // build the entry name
         FeatureTypeInfo ftInfo = getFeatureTypeInfo(fc.getSchema());
         String fileName = new FileNameSource(getClass()).getRequestDumpName(ftInfo) + ".txt";
-        File target = new File(tempDir, fileName);
 
+        byte[] contents;
         try {
             if (request.isGet()) {
                 final HttpServletRequest httpRequest = request.getHttpRequest();
@@ -287,7 +352,7 @@ public class ShapeZipOutputFormat extends WFSGetFeatureOutputFormat
                 StringBuilder url = new StringBuilder();
                 String parameters = httpRequest.getQueryString();
                 url.append(mangledUrl).append("?").append(parameters);
-                FileUtils.writeStringToFile(target, url.toString(), "UTF-8");
+                contents = url.toString().getBytes(StandardCharsets.UTF_8);
             } else {
                 org.geotools.xsd.Configuration cfg = null;
                 QName elementName = null;
@@ -298,32 +363,17 @@ public class ShapeZipOutputFormat extends WFSGetFeatureOutputFormat
                     cfg = new WFSConfiguration_1_0();
                     elementName = org.geotools.wfs.v1_0.WFS.GetFeature;
                 }
-                FileOutputStream fos = null;
-                try {
-                    fos = new FileOutputStream(target);
-                    Encoder encoder = new Encoder(cfg);
-                    encoder.setIndenting(true);
-                    encoder.setIndentSize(2);
-                    encoder.encode(gft, elementName, fos);
-                } finally {
-                    if (fos != null) fos.close();
-                }
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                Encoder encoder = new Encoder(cfg);
+                encoder.setIndenting(true);
+                encoder.setIndentSize(2);
+                encoder.encode(gft, elementName, bos);
+                contents = bos.toByteArray();
             }
         } catch (IOException e) {
             throw new WFSException(gft, "Failed to dump the WFS request");
         }
-    }
-
-    private void createEmptyZipWarning(File tempDir) throws IOException {
-        PrintWriter pw = null;
-        try {
-            pw = new PrintWriter(new File(tempDir, "README.TXT"));
-            pw.print(
-                    "The query result is empty, and the geometric type of the features is unknwon:"
-                            + "an empty point shapefile has been created to fill the zip file");
-        } finally {
-            if (pw != null) pw.close();
-        }
+        writeEntry(zipOut, fileName, contents);
     }
 
     /**
@@ -471,6 +521,77 @@ public class ShapeZipOutputFormat extends WFSGetFeatureOutputFormat
         this.maxDbfSize = maxDbfSize;
     }
 
+    public long getStagingSize() {
+        return stagingSize;
+    }
+
+    /**
+     * Sets the size of the output kept in memory before starting to send it to the client (1MB by
+     * default). A failure happening before that is reported as a service exception
+     */
+    public void setStagingSize(long stagingSize) {
+        this.stagingSize = stagingSize;
+    }
+
+    /**
+     * Keeps the output in memory until it grows past a threshold, or it's committed, and writes it
+     * straight to the delegate afterwards. The staged output is dropped if never committed
+     */
+    static class StagingOutputStream extends OutputStream {
+
+        private final OutputStream delegate;
+
+        private final long threshold;
+
+        private ByteArrayOutputStream staged = new ByteArrayOutputStream();
+
+        StagingOutputStream(OutputStream delegate, long threshold) {
+            this.delegate = delegate;
+            this.threshold = threshold;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (staged != null) {
+                staged.write(b);
+                checkThreshold();
+            } else {
+                delegate.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (staged != null) {
+                staged.write(b, off, len);
+                checkThreshold();
+            } else {
+                delegate.write(b, off, len);
+            }
+        }
+
+        private void checkThreshold() throws IOException {
+            if (staged.size() > threshold) {
+                commit();
+            }
+        }
+
+        /** Sends out the staged output, the following writes go straight to the delegate */
+        void commit() throws IOException {
+            if (staged != null) {
+                staged.writeTo(delegate);
+                staged = null;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (staged == null) {
+                delegate.flush();
+            }
+        }
+    }
+
     class FileNameSource {
 
         private Class clazz;
@@ -12,21 +12,27 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.util.Iterator;
 import java.util.List;
 import java.util.TreeSet;
+import java.util.zip.GZIPInputStream;
 import org.custommonkey.xmlunit.XMLAssert;
 import org.custommonkey.xmlunit.XMLUnit;
 import org.custommonkey.xmlunit.XpathEngine;
 import org.geoserver.catalog.DataStoreInfo;
 import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.catalog.LayerInfo;
+import org.geoserver.config.CapabilitiesCacheCallback;
 import org.geoserver.config.CapabilitiesCacheHeadersCallback;
 import org.geoserver.config.GeoServerInfo;
 import org.geoserver.config.ResourceErrorHandling;
 import org.geoserver.data.test.CiteTestData;
 import org.geoserver.data.test.SystemTestData;
 import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.security.AccessMode;
+import org.geoserver.security.impl.DataAccessRule;
+import org.geoserver.security.impl.DataAccessRuleDAO;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.http.HttpHeaders;
@@ -334,6 +340,123 @@ public class GetCapabilitiesTest extends WFSTestSupport {
         }
     }
 
+    @Test
+    public void testCapabilitiesCache() throws Exception {
+        CapabilitiesCacheCallback cache = GeoServerExtensions.bean(CapabilitiesCacheCallback.class);
+        String layerId = getLayerId(SystemTestData.PRIMITIVEGEOFEATURE);
+        FeatureTypeInfo ft = getCatalog().getFeatureTypeByName(layerId);
+        String title = ft.getTitle();
+        try {
+            cache.configure(16 * 1024 * 1024, 0);
+
+            String path = "wfs?service=WFS&version=1.0.0&request=getCapabilities";
+            String titlePath = "//wfs:FeatureType[wfs:Name='" + layerId + "']/wfs:Title";
+            Document dom = getAsDOM(path);
+            assertXpathEvaluatesTo(title, titlePath, dom);
+            dom = getAsDOM(path);
+            assertXpathEvaluatesTo(title, titlePath, dom);
+            // a virtual service document
+            getAsDOM("cdf/wfs?service=WFS&version=1.0.0&request=getCapabilities");
+            assertEquals(2, cache.size());
+            assertEquals(1, cache.getStatistics().hitCount());
+
+            // only the documents that can contain the layer are dropped
+            ft.setTitle("New title");
+            getCatalog().save(ft);
+            assertEquals(1, cache.size());
+            dom = getAsDOM(path);
+            assertXpathEvaluatesTo("New title", titlePath, dom);
+        } finally {
+            cache.configure(0, 0);
+            ft.setTitle(title);
+            getCatalog().save(ft);
+        }
+    }
+
+    @Test
+    public void testCapabilitiesCacheUser() throws Exception {
+        CapabilitiesCacheCallback cache = GeoServerExtensions.bean(CapabilitiesCacheCallback.class);
+        try {
+            cache.configure(16 * 1024 * 1024, 0);
+            String path = "wfs?service=WFS&version=1.1.0&request=getCapabilities";
+            getAsDOM(path);
+            assertEquals(1, cache.size());
+
+            // same roles, but data access rules can be bound to the user name
+            login("alice", "pwd", "ROLE_USER");
+            getAsDOM(path);
+            assertEquals(2, cache.size());
+            getAsDOM(path);
+            assertEquals(2, cache.size());
+            login("bob", "pwd", "ROLE_USER");
+            getAsDOM(path);
+            assertEquals(3, cache.size());
+        } finally {
+            logout();
+            cache.configure(0, 0);
+        }
+    }
+
+    @Test
+    public void testCapabilitiesCacheGzip() throws Exception {
+        CapabilitiesCacheCallback cache = GeoServerExtensions.bean(CapabilitiesCacheCallback.class);
+        try {
+            cache.configure(16 * 1024 * 1024, 0);
+            cache.setGzip(true);
+
+            String path = "wfs?service=WFS&version=1.1.0&request=getCapabilities";
+            for (int i = 0; i < 2; i++) {
+                MockHttpServletResponse response =
+                        dispatch(
+                                createGetRequestWithHeaders(
+                                        path, HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"));
+                assertEquals(HttpStatus.OK.value(), response.getStatus());
+                assertEquals("gzip", response.getHeader(HttpHeaders.CONTENT_ENCODING));
+                assertEquals(HttpHeaders.ACCEPT_ENCODING, response.getHeader(HttpHeaders.VARY));
+                try (GZIPInputStream is =
+                        new GZIPInputStream(
+                                new ByteArrayInputStream(response.getContentAsByteArray()))) {
+                    Document dom = dom(is);
+                    assertEquals("wfs:WFS_Capabilities", dom.getDocumentElement().getNodeName());
+                }
+            }
+
+            // clients not accepting gzip still get the plain document
+            MockHttpServletResponse response = getAsServletResponse(path);
+            assertNull(response.getHeader(HttpHeaders.CONTENT_ENCODING));
+            assertEquals(HttpHeaders.ACCEPT_ENCODING, response.getHeader(HttpHeaders.VARY));
+            Document dom = dom(new ByteArrayInputStream(response.getContentAsByteArray()));
+            assertEquals("wfs:WFS_Capabilities", dom.getDocumentElement().getNodeName());
+            assertEquals(1, cache.size());
+        } finally {
+            cache.configure(0, 0);
+            cache.setGzip(false);
+        }
+    }
+
+    @Test
+    public void testCapabilitiesCacheDataAccessRules() throws Exception {
+        CapabilitiesCacheCallback cache = GeoServerExtensions.bean(CapabilitiesCacheCallback.class);
+        DataAccessRuleDAO dao = DataAccessRuleDAO.get();
+        DataAccessRule rule = new DataAccessRule("cdf", "*", AccessMode.READ, "ROLE_NOBODY");
+        try {
+            cache.configure(16 * 1024 * 1024, 0);
+            String path = "wfs?service=WFS&version=1.1.0&request=getCapabilities";
+            getAsDOM(path);
+            getAsDOM(path);
+            assertEquals(1, cache.getStatistics().hitCount());
+
+            // the catalog is not notified about rule changes, the cached document is not used
+            dao.addRule(rule);
+            getAsDOM(path);
+            assertEquals(1, cache.getStatistics().hitCount());
+            assertEquals(2, cache.getStatistics().missCount());
+        } finally {
+            dao.removeRule(rule);
+            cache.configure(0, 0);
+        }
+    }
+
     MockHttpServletRequest createGetRequestWithHeaders(String path, String... headers) {
         MockHttpServletRequest request = createRequest(path);
         request.setMethod("GET");
@@ -0,0 +1,29 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import org.geoserver.wfs.v2_0.GetFeatureTest;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+
+/**
+ * Test making sure GetFeature still works when the multi collection prefetching is enabled, with a
+ * small buffer to exercise the producer/consumer hand off
+ */
+public class GetFeaturePrefetchTest extends GetFeatureTest {
+
+    @BeforeClass
+    public static void enablePrefetch() {
+        Assert.assertEquals(0, PrefetchingFeatureCollection.DEFAULT_PREFETCH_SIZE);
+        PrefetchingFeatureCollection.setPrefetchSize(2);
+    }
+
+    @AfterClass
+    public static void disablePrefetch() {
+        PrefetchingFeatureCollection.setPrefetchSize(
+                PrefetchingFeatureCollection.DEFAULT_PREFETCH_SIZE);
+    }
+}
@@ -0,0 +1,205 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.Query;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.junit.Test;
+import org.locationtech.jts.geom.Point;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
+
+public class KeysetCursorTest {
+
+    static final FilterFactory2 FF = CommonFactoryFinder.getFilterFactory2();
+
+    @Test
+    public void testEncodeDecode() {
+        KeysetCursor cursor = new KeysetCursor("name", false, 1000, "a\nb", 3, "scope");
+        KeysetCursor decoded = KeysetCursor.decode(cursor.encode());
+        assertEquals("name", decoded.property);
+        assertFalse(decoded.ascending);
+        assertEquals(1000, decoded.startIndex);
+        assertEquals("a\nb", decoded.value);
+        assertEquals(3, decoded.ties);
+        assertEquals("scope", decoded.scope);
+
+        Date date = new Date(123456789L);
+        cursor = new KeysetCursor("date", true, 10, date, 0, "scope");
+        decoded = KeysetCursor.decode(cursor.encode());
+        assertTrue(decoded.ascending);
+        assertEquals(date, decoded.value);
+    }
+
+    @Test
+    public void testInvalidCursor() {
+        for (String cursor : new String[] {"abc", "!!!", ""}) {
+            try {
+                KeysetCursor.decode(cursor);
+                fail("Cursor should have been rejected: " + cursor);
+            } catch (IllegalArgumentException e) {
+                // fine
+            }
+        }
+    }
+
+    @Test
+    public void testPagingKey() throws Exception {
+        SimpleFeatureSource source = source(1);
+        SimpleFeatureType schema = source.getSchema();
+
+        Query query = new Query();
+        query.setSortBy(new SortBy[] {FF.sort("key", SortOrder.DESCENDING)});
+        SortBy key = KeysetCursor.getPagingKey(query, schema, FF);
+        assertEquals("key", key.getPropertyName().getPropertyName());
+        assertEquals(SortOrder.DESCENDING, key.getSortOrder());
+
+        // not sortable with a range
+        query.setSortBy(new SortBy[] {FF.sort("geom", SortOrder.ASCENDING)});
+        assertNull(KeysetCursor.getPagingKey(query, schema, FF));
+        query.setSortBy(new SortBy[] {SortBy.NATURAL_ORDER});
+        assertNull(KeysetCursor.getPagingKey(query, schema, FF));
+
+        // no sort, no primary key
+        query.setSortBy(null);
+        assertNull(KeysetCursor.getPagingKey(query, schema, FF));
+
+        // falls back on the primary key
+        schema.getDescriptor("id").getUserData().put(KeysetCursor.PK_COLUMN, true);
+        key = KeysetCursor.getPagingKey(query, schema, FF);
+        assertEquals("id", key.getPropertyName().getPropertyName());
+        assertEquals(SortOrder.ASCENDING, key.getSortOrder());
+    }
+
+    @Test
+    public void testPagingWithTies() throws Exception {
+        SimpleFeatureSource source = source(1, 1, 2, 2, 2, 3, 4, 4);
+        assertEquals(expected(source, SortOrder.ASCENDING), page(source, SortOrder.ASCENDING));
+        assertEquals(expected(source, SortOrder.DESCENDING), page(source, SortOrder.DESCENDING));
+    }
+
+    @Test
+    public void testScope() throws Exception {
+        KeysetCursor cursor = new KeysetCursor("key", true, 3, 2, 1, scope(Filter.INCLUDE));
+        SortBy key = FF.sort("key", SortOrder.ASCENDING);
+        assertTrue(cursor.matches(key, scope(Filter.INCLUDE), 3));
+        // another page, order, feature type or filter
+        assertFalse(cursor.matches(key, scope(Filter.INCLUDE), 6));
+        SortBy descending = FF.sort("key", SortOrder.DESCENDING);
+        assertFalse(cursor.matches(descending, scope(Filter.INCLUDE), 3));
+        assertFalse(cursor.matches(key, KeysetCursor.scope("other", Filter.INCLUDE), 3));
+        Filter filter = FF.greater(FF.property("id"), FF.literal(1));
+        assertFalse(cursor.matches(key, scope(filter), 3));
+    }
+
+    @Test
+    public void testNullKeys() throws Exception {
+        SimpleFeatureSource source = source(1, 1, 2, 2, 2, 3, 4, 4);
+        SortBy key = FF.sort("key", SortOrder.ASCENDING);
+        Query query = new Query(source.getSchema().getTypeName());
+        query.setSortBy(new SortBy[] {key});
+        query.setMaxFeatures(3);
+        assertNotNull(KeysetCursor.next(source, query, Filter.INCLUDE, key, "", 3, 3, FF));
+
+        // a null key would be skipped by the range filter, no cursor is issued
+        source = source(1, 1, 2, null, 2, 3, 4, 4);
+        assertNull(KeysetCursor.next(source, query, Filter.INCLUDE, key, "", 3, 3, FF));
+        // unless the filter leaves it out
+        Filter filter = FF.notEqual(FF.property("id"), FF.literal(3));
+        query.setFilter(filter);
+        assertNotNull(KeysetCursor.next(source, query, filter, key, "", 3, 3, FF));
+    }
+
+    private String scope(Filter filter) {
+        return KeysetCursor.scope("gs:keyset", filter);
+    }
+
+    /** Pages through the source with cursors, three features at a time */
+    private List<Integer> page(SimpleFeatureSource source, SortOrder order) throws Exception {
+        SortBy key = FF.sort("key", order);
+        String scope = scope(Filter.INCLUDE);
+        List<Integer> ids = new ArrayList<>();
+        KeysetCursor cursor = null;
+        int startIndex = 0;
+        while (true) {
+            Query query = new Query(source.getSchema().getTypeName());
+            query.setSortBy(new SortBy[] {key});
+            query.setMaxFeatures(3);
+            query.setStartIndex(startIndex);
+            if (cursor != null) {
+                assertTrue(cursor.matches(key, scope, startIndex));
+                Filter range = cursor.toFilter(FF, source.getSchema());
+                query.setFilter(range);
+                query.setStartIndex(cursor.ties);
+            }
+            int count = 0;
+            try (SimpleFeatureIterator it = source.getFeatures(query).features()) {
+                while (it.hasNext()) {
+                    ids.add((Integer) it.next().getAttribute("id"));
+                    count++;
+                }
+            }
+            if (count < 3) {
+                return ids;
+            }
+            startIndex += count;
+            cursor =
+                    KeysetCursor.next(
+                            source, query, Filter.INCLUDE, key, scope, startIndex, count, FF);
+            assertNotNull(cursor);
+            // goes through the string representation, as it would in a link
+            cursor = KeysetCursor.decode(cursor.encode());
+        }
+    }
+
+    private List<Integer> expected(SimpleFeatureSource source, SortOrder order) throws Exception {
+        Query query = new Query(source.getSchema().getTypeName());
+        query.setSortBy(new SortBy[] {FF.sort("key", order)});
+        List<Integer> ids = new ArrayList<>();
+        try (SimpleFeatureIterator it = source.getFeatures(query).features()) {
+            while (it.hasNext()) {
+                ids.add((Integer) it.next().getAttribute("id"));
+            }
+        }
+        return ids;
+    }
+
+    private SimpleFeatureSource source(Integer... keys) {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("keyset");
+        tb.add("id", Integer.class);
+        tb.add("key", Integer.class);
+        tb.add("geom", Point.class);
+        SimpleFeatureType schema = tb.buildFeatureType();
+
+        List<SimpleFeature> features = new ArrayList<>();
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(schema);
+        for (int i = 0; i < keys.length; i++) {
+            fb.add(i);
+            fb.add(keys[i]);
+            features.add(fb.buildFeature("keyset." + i));
+        }
+        return DataUtilities.source(DataUtilities.collection(features));
+    }
+}
@@ -0,0 +1,156 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+public class PrefetchingFeatureCollectionTest {
+
+    SimpleFeatureType type;
+
+    @Before
+    public void setup() throws Exception {
+        type = DataUtilities.createType("test", "id:Integer");
+        PrefetchingFeatureCollection.setPrefetchSize(3);
+    }
+
+    @After
+    public void cleanup() {
+        PrefetchingFeatureCollection.setPrefetchSize(
+                PrefetchingFeatureCollection.DEFAULT_PREFETCH_SIZE);
+    }
+
+    @Test
+    public void testReadInOrder() throws Exception {
+        PrefetchingFeatureCollection.Group group = new PrefetchingFeatureCollection.Group();
+        List<SimpleFeatureCollection> collections = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            collections.add((SimpleFeatureCollection) group.wrap(collection(i * 100, 50)));
+        }
+        for (int i = 0; i < collections.size(); i++) {
+            assertEquals(ids(i * 100, 50), ids(collections.get(i)));
+        }
+        // a second read goes straight to the delegate
+        assertEquals(ids(0, 50), ids(collections.get(0)));
+    }
+
+    @Test
+    public void testEarlyClose() throws Exception {
+        PrefetchingFeatureCollection.Group group = new PrefetchingFeatureCollection.Group();
+        SimpleFeatureCollection first = (SimpleFeatureCollection) group.wrap(collection(0, 50));
+        SimpleFeatureCollection second = (SimpleFeatureCollection) group.wrap(collection(100, 50));
+        try (SimpleFeatureIterator it = first.features()) {
+            assertTrue(it.hasNext());
+            assertEquals(Integer.valueOf(0), it.next().getAttribute("id"));
+        }
+        assertEquals(ids(100, 50), ids(second));
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        PrefetchingFeatureCollection.Group group = new PrefetchingFeatureCollection.Group();
+        SimpleFeatureCollection first = (SimpleFeatureCollection) group.wrap(collection(0, 50));
+        SimpleFeatureCollection second = (SimpleFeatureCollection) group.wrap(collection(100, 50));
+        SimpleFeatureIterator it = first.features();
+        assertTrue(it.hasNext());
+        List<PrefetchingFeatureCollection.Prefetch> prefetches = new ArrayList<>(group.prefetches);
+        assertEquals(2, prefetches.size());
+
+        // the request ends without consuming the collections
+        group.cancel();
+        for (PrefetchingFeatureCollection.Prefetch prefetch : prefetches) {
+            assertTrue(prefetch.cancelled);
+        }
+        try {
+            while (it.hasNext()) {
+                it.next();
+            }
+            fail("Expected the cancelled prefetch to fail");
+        } catch (IllegalStateException e) {
+            // fine
+        } finally {
+            it.close();
+        }
+        // collections read after the cancellation go straight to the delegate
+        assertEquals(ids(100, 50), ids(second));
+    }
+
+    @Test
+    public void testSlowConsumer() throws Exception {
+        PrefetchingFeatureCollection.Group group = new PrefetchingFeatureCollection.Group();
+        SimpleFeatureCollection first = (SimpleFeatureCollection) group.wrap(collection(0, 20));
+        SimpleFeatureCollection second = (SimpleFeatureCollection) group.wrap(collection(100, 50));
+        List<Integer> firstIds = new ArrayList<>();
+        try (SimpleFeatureIterator it = first.features()) {
+            List<PrefetchingFeatureCollection.Prefetch> prefetches =
+                    new ArrayList<>(group.prefetches);
+            // the first collection takes a while to encode, the others stay blocked on a full
+            // buffer in the meantime, but are not given up
+            while (it.hasNext()) {
+                firstIds.add((Integer) it.next().getAttribute("id"));
+                Thread.sleep(50);
+            }
+            for (PrefetchingFeatureCollection.Prefetch prefetch : prefetches) {
+                assertFalse(prefetch.cancelled);
+                assertNull(prefetch.error);
+            }
+        }
+        assertEquals(ids(0, 20), firstIds);
+        assertEquals(ids(100, 50), ids(second));
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        PrefetchingFeatureCollection.Group group = new PrefetchingFeatureCollection.Group();
+        SimpleFeatureCollection first = (SimpleFeatureCollection) group.wrap(collection(0, 0));
+        SimpleFeatureCollection second = (SimpleFeatureCollection) group.wrap(collection(0, 1));
+        try (SimpleFeatureIterator it = first.features()) {
+            assertFalse(it.hasNext());
+        }
+        assertEquals(ids(0, 1), ids(second));
+    }
+
+    private SimpleFeatureCollection collection(int start, int count) {
+        List<SimpleFeature> features = new ArrayList<>();
+        for (int i = start; i < start + count; i++) {
+            features.add(SimpleFeatureBuilder.build(type, new Object[] {i}, "test." + i));
+        }
+        return DataUtilities.collection(features);
+    }
+
+    private List<Integer> ids(int start, int count) {
+        List<Integer> result = new ArrayList<>();
+        for (int i = start; i < start + count; i++) {
+            result.add(i);
+        }
+        return result;
+    }
+
+    private List<Integer> ids(SimpleFeatureCollection collection) {
+        List<Integer> result = new ArrayList<>();
+        try (SimpleFeatureIterator it = collection.features()) {
+            while (it.hasNext()) {
+                result.add((Integer) it.next().getAttribute("id"));
+            }
+        }
+        return result;
+    }
+}
@@ -247,6 +247,21 @@ public class GeoJSONBuilderTest {
                 writer.toString());
     }
 
+    @Test
+    public void testGeometryAndBoundsWithinObject() throws Exception {
+        builder.setNumberOfDecimals(2);
+        Geometry g = new WKTReader().read("MULTIPOINT((-1.005 2.5), (1E-5 1E8))");
+        builder.object().key("id").value("f1");
+        builder.key("geometry").writeGeom(g);
+        builder.writeBoundingBox(g.getEnvelopeInternal());
+        builder.key("name").value("test").endObject();
+        assertEquals(
+                "{\"id\":\"f1\",\"geometry\":{\"type\":\"MultiPoint\","
+                        + "\"coordinates\":[[-1,2.5],[0,1.0E8]]},\"bbox\":[-1,2.5,0,1.0E8],"
+                        + "\"name\":\"test\"}",
+                writer.toString());
+    }
+
     @Test
     public void testWriteStrList() throws Exception {
         final List<String> list = Arrays.asList("a", "b", "c", "d");
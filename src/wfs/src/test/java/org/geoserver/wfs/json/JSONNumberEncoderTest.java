@@ -0,0 +1,58 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.json;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+import java.util.Random;
+import net.sf.json.JSONException;
+import net.sf.json.util.JSONUtils;
+import org.junit.Test;
+
+public class JSONNumberEncoderTest {
+
+    JSONNumberEncoder encoder = new JSONNumberEncoder();
+
+    @Test
+    public void testSpecificValues() throws Exception {
+        assertEquals("0", encode(0, 6));
+        assertEquals("0", encode(-0d, 6));
+        assertEquals("1", encode(1, 6));
+        assertEquals("-12.5", encode(-12.5, 6));
+        assertEquals("0.001", encode(0.001, 6));
+        assertEquals("1.0E-4", encode(0.0001, 6));
+        assertEquals("0", encode(0.0001, 3));
+        assertEquals("1.0E7", encode(10000000, 6));
+        assertEquals("1.23", encode(1.2345, 2));
+        assertEquals("-1.23", encode(-1.2345, 2));
+        assertEquals("3", encode(2.5, 0));
+        assertEquals("1.0123456789012E12", encode(1.01234567890123456E12, 1));
+    }
+
+    @Test
+    public void testSameAsJsonLib() throws Exception {
+        Random random = new Random(0);
+        for (int i = 0; i < 10000; i++) {
+            double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(16) - 4);
+            for (int numDecimals = 0; numDecimals <= 10; numDecimals++) {
+                double rounded = RoundingUtil.round(value, numDecimals);
+                String expected = JSONUtils.valueToString(Double.valueOf(rounded));
+                assertEquals(expected, encode(value, numDecimals));
+            }
+        }
+    }
+
+    @Test(expected = JSONException.class)
+    public void testNaN() throws Exception {
+        encode(Double.NaN, 6);
+    }
+
+    private String encode(double value, int numDecimals) throws Exception {
+        StringWriter writer = new StringWriter();
+        encoder.write(writer, value, numDecimals);
+        return writer.toString();
+    }
+}
@@ -0,0 +1,81 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.response;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.Random;
+import org.junit.Test;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.WKTReader;
+
+public class CSVFieldWriterTest {
+
+    private String field(String value) throws IOException {
+        StringWriter sw = new StringWriter();
+        new CSVFieldWriter(sw, 4).writeField(value);
+        return sw.toString();
+    }
+
+    private String number(Number value, int numDecimals) throws IOException {
+        StringWriter sw = new StringWriter();
+        new CSVFieldWriter(sw, numDecimals).writeNumber(value);
+        return sw.toString();
+    }
+
+    @Test
+    public void testEscapes() throws Exception {
+        assertEquals("abc", field("abc"));
+        assertEquals("", field(""));
+        assertEquals("\"a,b\"", field("a,b"));
+        assertEquals("\"say \"\"hi\"\"\"", field("say \"hi\""));
+        assertEquals("\"a\r\nb\"", field("a\r\nb"));
+        assertEquals("\"\"\"\"", field("\""));
+    }
+
+    @Test
+    public void testNumbers() throws Exception {
+        assertEquals("0", number(0, 4));
+        assertEquals("-123", number(-123L, 4));
+        assertEquals(String.valueOf(Long.MIN_VALUE), number(Long.MIN_VALUE, 4));
+        assertEquals("12", number((short) 12, 4));
+        assertEquals("1.5", number(1.5, 4));
+        assertEquals("1.2346", number(1.23456, 4));
+        assertEquals("-0.5", number(-0.5f, 4));
+        assertEquals("10000000000", number(1e10, 4));
+        assertEquals("-0", number(-0.00001, 4));
+        assertEquals("0.12", number(0.125, 2));
+        assertEquals("0.1234", number(new BigDecimal("0.12345"), 4));
+    }
+
+    @Test
+    public void testNumbersLikeNumberFormat() throws Exception {
+        Random random = new Random(0);
+        for (int numDecimals = 0; numDecimals < 12; numDecimals++) {
+            StringWriter sw = new StringWriter();
+            CSVFieldWriter writer = new CSVFieldWriter(sw, numDecimals);
+            for (int i = 0; i < 10000; i++) {
+                double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(16) - 6);
+                sw.getBuffer().setLength(0);
+                writer.writeNumber(value);
+                assertEquals(writer.getNumberFormat().format(value), sw.toString());
+            }
+        }
+    }
+
+    @Test
+    public void testGeometry() throws Exception {
+        Geometry geometry = new WKTReader().read("LINESTRING (0 0, 1.5 2)");
+        StringWriter sw = new StringWriter();
+        CSVFieldWriter writer = new CSVFieldWriter(sw, 4);
+        writer.writeGeometry(geometry);
+        writer.write(',');
+        writer.writeGeometry(new WKTReader().read("POINT (1 2)"));
+        assertEquals("\"" + geometry.toString() + "\",POINT (1 2)", sw.toString());
+    }
+}
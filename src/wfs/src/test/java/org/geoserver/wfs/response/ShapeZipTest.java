@@ -27,6 +27,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 import javax.xml.namespace.QName;
 import net.opengis.wfs.GetFeatureType;
@@ -53,6 +55,7 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.collection.DecoratingSimpleFeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.geotools.util.URLs;
@@ -210,6 +213,94 @@ public class ShapeZipTest extends WFSTestSupport {
         checkFieldsAreNotEmpty(new ByteArrayInputStream(zip));
     }
 
+    @Test
+    public void testSameTypeTwice() throws Exception {
+        ShapeZipOutputFormat zip =
+                new ShapeZipOutputFormat(
+                        GeoServerExtensions.bean(GeoServer.class),
+                        (Catalog) GeoServerExtensions.bean("catalog"),
+                        (GeoServerResourceLoader) GeoServerExtensions.bean("resourceLoader"));
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        FeatureCollectionResponse fct =
+                FeatureCollectionResponse.adapt(WfsFactory.eINSTANCE.createFeatureCollectionType());
+        fct.getFeature().add(getFeatureSource(SystemTestData.BASIC_POLYGONS).getFeatures());
+        fct.getFeature().add(getFeatureSource(SystemTestData.BASIC_POLYGONS).getFeatures());
+        zip.write(fct, bos, op);
+
+        // the shapefiles are streamed one collection at a time, the second gets a new name
+        String shapefileName = SystemTestData.BASIC_POLYGONS.getLocalPart();
+        final String[] expectedTypes = new String[] {shapefileName, shapefileName + "_1"};
+        checkShapefileIntegrity(expectedTypes, new ByteArrayInputStream(bos.toByteArray()));
+    }
+
+    @Test
+    public void testFailureBeforeFirstByte() throws Exception {
+        ShapeZipOutputFormat zip =
+                new ShapeZipOutputFormat(getGeoServer(), getCatalog(), getResourceLoader());
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try {
+            zip.write(failingResponse(), bos, op);
+            fail("Expected the second collection to fail");
+        } catch (Exception e) {
+            // fine
+        }
+        // the output is small enough to be staged in memory, nothing was sent
+        assertEquals(0, bos.size());
+    }
+
+    @Test
+    public void testFailureMidStream() throws Exception {
+        ShapeZipOutputFormat zip =
+                new ShapeZipOutputFormat(getGeoServer(), getCatalog(), getResourceLoader());
+        zip.setStagingSize(0);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try {
+            zip.write(failingResponse(), bos, op);
+            fail("Expected the second collection to fail");
+        } catch (Exception e) {
+            // fine
+        }
+        // the first shapefile got sent, but the zip is not complete
+        assertTrue(bos.size() > 0);
+        Set<String> names = new HashSet<>();
+        try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(bos.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                names.add(entry.getName());
+            }
+        }
+        assertTrue(names.contains(SystemTestData.BASIC_POLYGONS.getLocalPart() + ".shp"));
+        File file = File.createTempFile("truncated", ".zip");
+        try {
+            FileUtils.writeByteArrayToFile(file, bos.toByteArray());
+            try (ZipFile zipFile = new ZipFile(file)) {
+                fail("The truncated zip should not have a central directory");
+            } catch (ZipException e) {
+                // fine
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /** Two collections, the second one failing while read */
+    private FeatureCollectionResponse failingResponse() throws IOException {
+        SimpleFeatureCollection features =
+                getFeatureSource(SystemTestData.BASIC_POLYGONS).getFeatures();
+        FeatureCollectionResponse fct =
+                FeatureCollectionResponse.adapt(WfsFactory.eINSTANCE.createFeatureCollectionType());
+        fct.getFeature().add(features);
+        fct.getFeature()
+                .add(
+                        new DecoratingSimpleFeatureCollection(features) {
+                            @Override
+                            public SimpleFeatureIterator features() {
+                                throw new RuntimeException("Failed to read the features");
+                            }
+                        });
+        return fct;
+    }
+
     @Test
     public void testSplitSize() throws Exception {
         ShapeZipOutputFormat of =
@@ -21,6 +21,7 @@ import org.geoserver.catalog.DataStoreInfo;
 import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.data.test.SystemTestData;
 import org.geoserver.ows.util.KvpMap;
+import org.geoserver.wfs.KeysetCursor;
 import org.geotools.data.DataStore;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.FeatureStore;
@@ -656,6 +657,98 @@ public class GetFeaturePagingTest extends WFS20TestSupport {
         XMLAssert.assertXpathExists("//gs:Fifteen/gs:num[text() = '14']", dom);
     }
 
+    @Test
+    public void testCursorGET() throws Exception {
+        KeysetCursor.setEnabled(true);
+        try {
+            doTestCursorGET("ASC", 0, 1);
+            doTestCursorGET("DESC", 14, -1);
+        } finally {
+            KeysetCursor.setEnabled(false);
+        }
+    }
+
+    @Test
+    public void testCursorDisabled() throws Exception {
+        Document dom =
+                getAsDOM(
+                        "wfs?service=WFS&version=2.0.0&request=GetFeature&typeName=gs:Fifteen"
+                                + "&sortBy=num&startIndex=0&count=4");
+        String next = dom.getDocumentElement().getAttribute("next");
+        assertNull(toKvpMap(next).get("CURSOR"));
+    }
+
+    @Test
+    public void testCursorOtherFilter() throws Exception {
+        KeysetCursor.setEnabled(true);
+        try {
+            String path =
+                    "wfs?service=WFS&version=2.0.0&request=GetFeature&typeName=gs:Fifteen"
+                            + "&sortBy=num&startIndex=0&count=4";
+            Document dom = getAsDOM(path);
+            Object cursor = toKvpMap(dom.getDocumentElement().getAttribute("next")).get("CURSOR");
+            assertNotNull(cursor);
+            // the cursor is ignored by a query with a different filter, offset paging is used
+            dom =
+                    getAsDOM(
+                            path.replace("startIndex=0", "startIndex=4")
+                                    + "&cql_filter=num%3E5&cursor="
+                                    + cursor);
+            XMLAssert.assertXpathEvaluatesTo("4", "count(//gs:Fifteen)", dom);
+            XMLAssert.assertXpathEvaluatesTo("10", "//gs:Fifteen[1]/gs:num", dom);
+        } finally {
+            KeysetCursor.setEnabled(false);
+        }
+    }
+
+    void doTestCursorGET(String order, int first, int step) throws Exception {
+        String path =
+                "wfs?service=WFS&version=2.0.0&request=GetFeature&typeName=gs:Fifteen"
+                        + "&sortBy=num "
+                        + order
+                        + "&startIndex=0&count=4";
+        int expected = first;
+        for (int page = 0; page < 4; page++) {
+            Document dom = getAsDOM(path);
+            int size = page < 3 ? 4 : 3;
+            XMLAssert.assertXpathEvaluatesTo(String.valueOf(size), "count(//gs:Fifteen)", dom);
+            for (int i = 0; i < size; i++) {
+                XMLAssert.assertXpathEvaluatesTo(
+                        String.valueOf(expected), "//gs:Fifteen[" + (i + 1) + "]/gs:num", dom);
+                expected += step;
+            }
+            if (page == 3) {
+                assertFalse(dom.getDocumentElement().hasAttribute("next"));
+            } else {
+                String next = dom.getDocumentElement().getAttribute("next");
+                KvpMap kvp = toKvpMap(next);
+                assertEquals(String.valueOf((page + 1) * 4), kvp.get("STARTINDEX"));
+                assertNotNull(kvp.get("CURSOR"));
+                path = next.substring(next.indexOf("wfs"));
+            }
+            if (page > 0) {
+                // the previous link cannot use the cursor
+                String previous = dom.getDocumentElement().getAttribute("previous");
+                assertNull(toKvpMap(previous).get("CURSOR"));
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidCursor() throws Exception {
+        KeysetCursor.setEnabled(true);
+        try {
+            Document dom =
+                    getAsDOM(
+                            "wfs?service=WFS&version=2.0.0&request=GetFeature&typeName=gs:Fifteen"
+                                    + "&sortBy=num&startIndex=4&count=4&cursor=abc",
+                            400);
+            checkOws11Exception(dom, "2.0.0", "InvalidParameterValue", "cursor");
+        } finally {
+            KeysetCursor.setEnabled(false);
+        }
+    }
+
     @Test
     public void testNextPreviousHitsGET() throws Exception {
         doTestNextPreviousHitsGET("gs:Fifteen");
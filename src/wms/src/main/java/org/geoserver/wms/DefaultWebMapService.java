@@ -88,6 +88,9 @@ public class DefaultWebMapService
     /** default for 'transparent' parameter. */
     public static volatile ExecutorService RENDERING_POOL;
 
+    /** Bounded pool used to render groups of layers in parallel */
+    public static volatile ExecutorService LAYER_RENDERING_POOL;
+
     /** default for 'bbox' paramter */
     public static ReferencedEnvelope BBOX =
             new ReferencedEnvelope(new Envelope(-180, 180, -90, 90), DefaultGeographicCRS.WGS84);
@@ -108,6 +111,9 @@ public class DefaultWebMapService
     /** Use a global rendering pool, or use a new pool each time */
     private static Boolean USE_GLOBAL_RENDERING_POOL = null;
 
+    /** Number of threads used to render groups of layers in parallel, 0 or 1 disables it */
+    private static Integer PARALLEL_LAYER_RENDERING_THREADS = null;
+
     private GetCapabilities getCapabilities;
 
     private DescribeLayer describeLayer;
@@ -186,6 +192,14 @@ public class DefaultWebMapService
             if (usePool == null) USE_GLOBAL_RENDERING_POOL = true;
             else USE_GLOBAL_RENDERING_POOL = Boolean.valueOf(usePool);
         }
+
+        // parallel rendering of groups of layers, off by default
+        if (PARALLEL_LAYER_RENDERING_THREADS == null) {
+            String threads =
+                    GeoServerExtensions.getProperty("PARALLEL_LAYER_RENDERING_THREADS", context);
+            if (threads == null) PARALLEL_LAYER_RENDERING_THREADS = 0;
+            else PARALLEL_LAYER_RENDERING_THREADS = Integer.valueOf(threads);
+        }
     }
 
     /**
@@ -350,7 +364,38 @@ public class DefaultWebMapService
         return RENDERING_POOL;
     }
 
+    /**
+     * Returns the number of threads used to render groups of layers in parallel. Values lower than
+     * 2 mean the layers are rendered sequentially (the default, the feature is enabled setting the
+     * PARALLEL_LAYER_RENDERING_THREADS property)
+     */
+    public static int getParallelLayerRenderingThreads() {
+        return PARALLEL_LAYER_RENDERING_THREADS == null ? 0 : PARALLEL_LAYER_RENDERING_THREADS;
+    }
+
+    /**
+     * Returns a app wide bounded pool used to render groups of layers in parallel, sized after
+     * {@link #getParallelLayerRenderingThreads()}
+     */
+    public static ExecutorService getLayerRenderingPool() {
+        if (LAYER_RENDERING_POOL == null) {
+            synchronized (DefaultWebMapService.class) {
+                if (LAYER_RENDERING_POOL == null) {
+                    int threads = Math.max(1, getParallelLayerRenderingThreads());
+                    LAYER_RENDERING_POOL = new ThreadLocalTransferExecutor(threads);
+                }
+            }
+        }
+
+        return LAYER_RENDERING_POOL;
+    }
+
     public void destroy() throws Exception {
+        if (LAYER_RENDERING_POOL != null) {
+            LAYER_RENDERING_POOL.shutdown();
+            LAYER_RENDERING_POOL.awaitTermination(10, TimeUnit.SECONDS);
+            LAYER_RENDERING_POOL = null;
+        }
         if (RENDERING_POOL != null) {
             RENDERING_POOL.shutdown();
             RENDERING_POOL.awaitTermination(10, TimeUnit.SECONDS);
@@ -7,6 +7,7 @@ package org.geoserver.wms;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -23,6 +24,12 @@ class ThreadLocalTransferExecutor extends ThreadPoolExecutor {
         super(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<>());
     }
 
+    /** Builds a pool with at most the given number of threads, queueing the extra tasks */
+    public ThreadLocalTransferExecutor(int maxThreads) {
+        super(maxThreads, maxThreads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        allowCoreThreadTimeOut(true);
+    }
+
     @Override
     public Future<?> submit(Runnable task) {
         ThreadLocalsTransfer threadLocalTransfer = new ThreadLocalsTransfer();
@@ -120,6 +120,21 @@ public class WMS implements ApplicationContextAware {
 
     public static final int PNG_COMPRESSION_DEFAULT = 25;
 
+    /** Number of threads encoding a single PNG image with the PNGJ encoder, 1 disables it */
+    public static final String PNG_ENCODER_THREADS = "pngEncoderThreads";
+
+    public static final int PNG_ENCODER_THREADS_DEFAULT = 1;
+
+    /** When true, the PNG meta tiles rendered by GeoWebCache seed tasks use the fast profile */
+    public static final String PNG_FAST_SEEDING = "pngFastSeeding";
+
+    public static final boolean PNG_FAST_SEEDING_DEFAULT = false;
+
+    /** When true, the meta tiles rendered for GeoWebCache share their label placements */
+    public static final String SHARED_LABEL_INDEX = "sharedLabelIndex";
+
+    public static final boolean SHARED_LABEL_INDEX_DEFAULT = false;
+
     public static final String MAX_ALLOWED_FRAMES = "maxAllowedFrames";
 
     public static final int MAX_ALLOWED_FRAMES_DEFAULT = Integer.MAX_VALUE;
@@ -546,6 +561,24 @@ public class WMS implements ApplicationContextAware {
                 serviceInfo.getMetadata(), PNG_COMPRESSION, PNG_COMPRESSION_DEFAULT);
     }
 
+    /** Returns the number of threads used to encode a single PNG image */
+    public int getPngEncoderThreads() {
+        return getMetadataValue(PNG_ENCODER_THREADS, PNG_ENCODER_THREADS_DEFAULT, Integer.class);
+    }
+
+    /** Returns true if the PNG tiles seeded by GeoWebCache should use the fast profile */
+    public boolean isPngFastSeeding() {
+        return getMetadataValue(PNG_FAST_SEEDING, PNG_FAST_SEEDING_DEFAULT, Boolean.class);
+    }
+
+    /**
+     * Returns true if the meta tiles rendered for GeoWebCache should avoid placing labels over the
+     * ones already painted by their neighbours
+     */
+    public boolean isSharedLabelIndex() {
+        return getMetadataValue(SHARED_LABEL_INDEX, SHARED_LABEL_INDEX_DEFAULT, Boolean.class);
+    }
+
     public int getJpegCompression() {
         WMSInfo serviceInfo = getServiceInfo();
         return getMetadataPercentage(
@@ -16,6 +16,7 @@ import static org.geoserver.ows.util.ResponseUtils.params;
 import static org.geoserver.wms.capabilities.CapabilityUtil.validateLegendInfo;
 
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import java.awt.Dimension;
 import java.io.IOException;
@@ -32,9 +33,9 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 import org.apache.commons.lang3.StringUtils;
 import org.geoserver.catalog.AttributionInfo;
 import org.geoserver.catalog.AuthorityURLInfo;
@@ -211,6 +212,9 @@ public class Capabilities_1_3_0_Transformer extends TransformerBase {
 
         DimensionHelper dimensionHelper;
 
+        /** Computes the dimensions of the layers being encoded ahead of time, when enabled */
+        private DimensionPrefetcher dimensionPrefetcher;
+
         private boolean skipping;
 
         private WMSInfo serviceInfo;
@@ -689,7 +693,6 @@ public class Capabilities_1_3_0_Transformer extends TransformerBase {
          */
         private void handleLayers() {
             List<LayerGroupInfo> layerGroups;
-            List<LayerInfo> layers;
             SortBy lgOrder = asc("name");
             SortBy order = asc("name");
             final Catalog catalog = wmsConfig.getCatalog();
@@ -712,12 +715,13 @@ public class Capabilities_1_3_0_Transformer extends TransformerBase {
             lgFilter = addNameSpaceFilterIfNeed(lgFilter, "workspace.name");
 
             try (CloseableIterator<LayerGroupInfo> lgIter =
-                            catalog.list(LayerGroupInfo.class, lgFilter, null, null, lgOrder);
-                    CloseableIterator<LayerInfo> iter =
-                            catalog.list(LayerInfo.class, filter, null, null, order)) {
+                    catalog.list(LayerGroupInfo.class, lgFilter, null, null, lgOrder)) {
                 layerGroups = Lists.newArrayList(lgIter);
-                layers = Lists.newArrayList(iter);
             }
+            // layers are not kept in memory, each pass streams them out of the catalog again
+            final Filter layerFilter = filter;
+            Supplier<CloseableIterator<LayerInfo>> layers =
+                    () -> catalog.list(LayerInfo.class, layerFilter, null, null, order);
             Set<LayerInfo> layersAlreadyProcessed =
                     getLayersInGroups(new ArrayList<LayerGroupInfo>(layerGroups));
 
@@ -786,7 +790,7 @@ public class Capabilities_1_3_0_Transformer extends TransformerBase {
         }
 
         private boolean includeRootLayer(
-                List<LayerInfo> layers,
+                Supplier<CloseableIterator<LayerInfo>> layers,
                 List<LayerGroupInfo> layerGroups,
                 Set<LayerInfo> layersAlreadyProcessed) {
             final PublishedInfo singleRoot =
@@ -812,13 +816,19 @@ public class Capabilities_1_3_0_Transformer extends TransformerBase {
         }
 
         private PublishedInfo getSingleRoot(
-                List<LayerInfo> layers,
+                Supplier<CloseableIterator<LayerInfo>> layers,
                 List<LayerGroupInfo> layerGroups,
                 Set<LayerInfo> layersAlreadyProcessed) {
-            List<LayerInfo> rootLayers =
-                    layers.stream()
-                            .filter(layer -> includeLayer(layersAlreadyProcessed, layer))
-                            .collect(Collectors.toList());
+            // no need to go past the second root layer to tell if there is a single one
+            List<LayerInfo> rootLayers = new ArrayList<>();
+            try (CloseableIterator<LayerInfo> it = layers.get()) {
+                while (it.hasNext() && rootLayers.size() < 2) {
+                    LayerInfo layer = it.next();
+                    if (includeLayer(layersAlreadyProcessed, layer)) {
+                        rootLayers.add(layer);
+                    }
+                }
+            }
             List<LayerGroupInfo> rootGroups = filterNestedGroups(layerGroups);
             if (rootLayers.size() == 1 && rootGroups.size() == 0) {
                 return rootLayers.get(0);
@@ -901,10 +911,12 @@ public class Capabilities_1_3_0_Transformer extends TransformerBase {
          * groups to summarize their LatLonBBox'es and write the aggregated bounds for the root
          * layer.
          *
-         * @param layers available layers iterator
+         * @param layers available layers iterator supplier
          * @param layersGroups available layer groups iterator
          */
-        private void handleRootBbox(List<LayerInfo> layers, List<LayerGroupInfo> layersGroups) {
+        private void handleRootBbox(
+                Supplier<CloseableIterator<LayerInfo>> layers,
+                List<LayerGroupInfo> layersGroups) {
 
             final Envelope world = new Envelope(-180, 180, -90, 90);
             Envelope latlonBbox = new Envelope();
@@ -912,11 +924,14 @@ public class Capabilities_1_3_0_Transformer extends TransformerBase {
             LOGGER.finer("Collecting summarized latlonbbox and common SRS...");
 
             // handle layers
-            for (LayerInfo layer : layers) {
-                if (expandEnvelopeToContain(
-                        world, latlonBbox, layer.getResource().getLatLonBoundingBox())) {
-                    // our envelope already contains the world
-                    break;
+            try (CloseableIterator<LayerInfo> it = layers.get()) {
+                while (it.hasNext()) {
+                    LayerInfo layer = it.next();
+                    if (expandEnvelopeToContain(
+                            world, latlonBbox, layer.getResource().getLatLonBoundingBox())) {
+                        // our envelope already contains the world
+                        break;
+                    }
                 }
             }
 
@@ -974,31 +989,55 @@ public class Capabilities_1_3_0_Transformer extends TransformerBase {
         }
 
         private void handleLayerTree(
-                final List<LayerInfo> layers,
+                final Supplier<CloseableIterator<LayerInfo>> layers,
                 Set<LayerInfo> layersAlreadyProcessed,
                 boolean isRoot) {
             // Build a LayerTree only for the layers that have a wms path set. Process the ones that
-            // don't first
+            // don't first, streaming them out of the catalog
             LayerTree nestedLayers = new LayerTree();
 
             // handle non nested layers
-            for (LayerInfo layer : layers) {
-                if (!includeLayer(layersAlreadyProcessed, layer)) {
-                    continue;
-                }
-                final String path = layer.getPath();
-                if (path != null && path.length() > 0 && !"/".equals(path)) {
-                    nestedLayers.add(layer);
-                    continue;
-                }
-
-                doHandleLayer(layer, isRoot);
+            try (CloseableIterator<LayerInfo> it = layers.get()) {
+                Iterator<LayerInfo> rootLayers =
+                        Iterators.filter(
+                                it,
+                                layer -> {
+                                    if (!includeLayer(layersAlreadyProcessed, layer)) {
+                                        return false;
+                                    }
+                                    final String path = layer.getPath();
+                                    if (path != null && path.length() > 0 && !"/".equals(path)) {
+                                        nestedLayers.add(layer);
+                                        return false;
+                                    }
+                                    return true;
+                                });
+                encodeLayers(rootLayers, isRoot);
             }
 
             // handle nested layers
             handleLayerTree(nestedLayers, isRoot);
         }
 
+        /** Encodes the layers, prefetching their dimensions if enabled */
+        private void encodeLayers(Iterator<LayerInfo> layers, boolean isRoot) {
+            if (!DimensionPrefetcher.isEnabled()) {
+                while (layers.hasNext()) {
+                    doHandleLayer(layers.next(), isRoot);
+                }
+                return;
+            }
+            try (DimensionPrefetcher prefetcher =
+                    new DimensionPrefetcher(layers, Mode.WMS13, wmsConfig)) {
+                dimensionPrefetcher = prefetcher;
+                while (prefetcher.hasNext()) {
+                    doHandleLayer(prefetcher.next(), isRoot);
+                }
+            } finally {
+                dimensionPrefetcher = null;
+            }
+        }
+
         /** @param layerTree */
         private void handleLayerTree(final LayerTree layerTree, boolean isRoot) {
             final List<LayerInfo> data = new ArrayList<LayerInfo>(layerTree.getData());
@@ -1012,13 +1051,8 @@ public class Capabilities_1_3_0_Transformer extends TransformerBase {
                         }
                     });
 
-            for (LayerInfo layer : data) {
-                // no sense in exposing a geometryless layer through wms...
-                boolean wmsExposable = isExposable(layer);
-                if (wmsExposable) {
-                    doHandleLayer(layer, isRoot);
-                }
-            }
+            // no sense in exposing a geometryless layer through wms...
+            encodeLayers(Iterators.filter(data.iterator(), l -> isExposable(l)), isRoot);
 
             for (LayerTree childLayerTree : children) {
                 start("Layer");
@@ -1112,13 +1146,10 @@ public class Capabilities_1_3_0_Transformer extends TransformerBase {
                 handleAdditionalBBox(bbox, crs, layer);
             }
 
-            // handle dimensions
-            if (layer.getType() == PublishedType.VECTOR) {
-                dimensionHelper.handleVectorLayerDimensions(layer);
-            } else if (layer.getType() == PublishedType.RASTER) {
-                dimensionHelper.handleRasterLayerDimensions(layer);
-            } else if (layer.getType() == PublishedType.WMTS) {
-                dimensionHelper.handleWMTSLayerDimensions(layer);
+            // handle dimensions, possibly already computed in background
+            if (dimensionPrefetcher == null
+                    || !dimensionPrefetcher.replay(layer, dimensionHelper)) {
+                dimensionHelper.handleLayerDimensions(layer);
             }
 
             // handle data attribution
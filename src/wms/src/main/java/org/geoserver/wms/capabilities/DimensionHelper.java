@@ -67,6 +67,17 @@ abstract class DimensionHelper {
     /** Implement to write out an element */
     protected abstract void element(String element, String content, Attributes atts);
 
+    /** Writes down the dimensions of the layer, if any, according to its type */
+    void handleLayerDimensions(LayerInfo layer) throws IOException {
+        if (layer.getType() == PublishedType.VECTOR) {
+            handleVectorLayerDimensions(layer);
+        } else if (layer.getType() == PublishedType.RASTER) {
+            handleRasterLayerDimensions(layer);
+        } else if (layer.getType() == PublishedType.WMTS) {
+            handleWMTSLayerDimensions(layer);
+        }
+    }
+
     void handleVectorLayerDimensions(LayerInfo layer) {
         // do we have time and elevation?
         final FeatureTypeInfo typeInfo = (FeatureTypeInfo) layer.getResource();
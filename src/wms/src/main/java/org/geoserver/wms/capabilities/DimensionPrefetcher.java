@@ -0,0 +1,244 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.capabilities;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.threadlocals.ThreadLocalsTransfer;
+import org.geoserver.wms.WMS;
+import org.geoserver.wms.capabilities.DimensionHelper.Mode;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Iterates over the layers of a capabilities document, computing their dimension elements in
+ * background threads a bounded number of layers ahead of the encoder. Time, elevation and custom
+ * dimension domains are often computed querying the data, so this avoids paying for those queries
+ * one layer at a time, while keeping at most a few layers worth of dimension elements in memory.
+ *
+ * <p>The number of layers computed ahead is controlled by the {@code
+ * org.geoserver.wms.capabilities.dimensionPrefetch} system variable (defaults to the number of
+ * processors, zero disables the prefetch). The {@code
+ * org.geoserver.wms.capabilities.dimensionThreads} variable controls the number of threads shared
+ * by all requests (defaults to the number of processors).
+ */
+public class DimensionPrefetcher implements Iterator<LayerInfo>, AutoCloseable {
+
+    /** The default prefetch size */
+    public static final int DEFAULT_PREFETCH_SIZE = Runtime.getRuntime().availableProcessors();
+
+    private static int PREFETCH_SIZE =
+            Integer.valueOf(
+                    System.getProperty(
+                            "org.geoserver.wms.capabilities.dimensionPrefetch",
+                            String.valueOf(DEFAULT_PREFETCH_SIZE)));
+
+    private static final int PREFETCH_THREADS =
+            Integer.valueOf(
+                    System.getProperty(
+                            "org.geoserver.wms.capabilities.dimensionThreads",
+                            String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+    private static ExecutorService EXECUTOR;
+
+    /** Allows to programmatically set the number of layers prefetched, zero disables it */
+    public static void setPrefetchSize(int prefetchSize) {
+        PREFETCH_SIZE = prefetchSize;
+    }
+
+    /** Returns true if the layer dimensions should be prefetched */
+    public static boolean isEnabled() {
+        return PREFETCH_SIZE > 0;
+    }
+
+    static synchronized ExecutorService getExecutor() {
+        if (EXECUTOR == null) {
+            int threads = Math.max(1, PREFETCH_THREADS);
+            ThreadPoolExecutor executor =
+                    new ThreadPoolExecutor(
+                            threads,
+                            threads,
+                            60,
+                            TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<>(),
+                            new PrefetchThreadFactory());
+            executor.allowCoreThreadTimeOut(true);
+            EXECUTOR = executor;
+        }
+        return EXECUTOR;
+    }
+
+    private final Iterator<LayerInfo> delegate;
+
+    private final Mode mode;
+
+    private final WMS wms;
+
+    private final int size;
+
+    private final ThreadLocalsTransfer threadLocals = new ThreadLocalsTransfer();
+
+    private final ArrayDeque<Prefetch> pending = new ArrayDeque<>();
+
+    private Prefetch current;
+
+    /**
+     * Builds a new prefetcher
+     *
+     * @param delegate the layers to be encoded, in encoding order
+     * @param mode the capabilities document version
+     * @param wms the WMS configuration
+     */
+    DimensionPrefetcher(Iterator<LayerInfo> delegate, Mode mode, WMS wms) {
+        this.delegate = delegate;
+        this.mode = mode;
+        this.wms = wms;
+        this.size = Math.max(1, PREFETCH_SIZE);
+    }
+
+    @Override
+    public boolean hasNext() {
+        fill();
+        return !pending.isEmpty();
+    }
+
+    @Override
+    public LayerInfo next() {
+        fill();
+        current = pending.remove();
+        return current.layer;
+    }
+
+    private void fill() {
+        while (pending.size() < size && delegate.hasNext()) {
+            LayerInfo layer = delegate.next();
+            pending.add(new Prefetch(layer, getExecutor().submit(() -> record(layer))));
+        }
+    }
+
+    /**
+     * Writes out the dimensions of the given layer, if it is the last one returned by {@link
+     * #next()}. Returns false if the layer dimensions have not been prefetched
+     */
+    boolean replay(LayerInfo layer, DimensionHelper target) throws IOException {
+        if (current == null || current.layer != layer) {
+            return false;
+        }
+        Future<List<Element>> future = current.future;
+        current = null;
+        List<Element> elements;
+        try {
+            elements = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while computing the layer dimensions", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+        for (Element element : elements) {
+            if (element.withAttributes) {
+                target.element(element.name, element.content, element.atts);
+            } else {
+                target.element(element.name, element.content);
+            }
+        }
+        return true;
+    }
+
+    /** Cancels the dimension computations that have not been consumed yet */
+    @Override
+    public void close() {
+        for (Prefetch prefetch : pending) {
+            prefetch.future.cancel(false);
+        }
+        pending.clear();
+        current = null;
+    }
+
+    private List<Element> record(LayerInfo layer) throws IOException {
+        threadLocals.apply();
+        try {
+            List<Element> elements = new ArrayList<>();
+            DimensionHelper recorder =
+                    new DimensionHelper(mode, wms) {
+
+                        @Override
+                        protected void element(String element, String content, Attributes atts) {
+                            // the attributes might be reused by the caller, take a copy
+                            Attributes copy = atts != null ? new AttributesImpl(atts) : null;
+                            elements.add(new Element(element, content, copy, true));
+                        }
+
+                        @Override
+                        protected void element(String element, String content) {
+                            elements.add(new Element(element, content, null, false));
+                        }
+                    };
+            recorder.handleLayerDimensions(layer);
+            return elements;
+        } finally {
+            threadLocals.cleanup();
+        }
+    }
+
+    /** A layer and the future of its dimension elements */
+    static class Prefetch {
+        final LayerInfo layer;
+
+        final Future<List<Element>> future;
+
+        Prefetch(LayerInfo layer, Future<List<Element>> future) {
+            this.layer = layer;
+            this.future = future;
+        }
+    }
+
+    /** A recorded element */
+    static class Element {
+        final String name;
+
+        final String content;
+
+        final Attributes atts;
+
+        final boolean withAttributes;
+
+        Element(String name, String content, Attributes atts, boolean withAttributes) {
+            this.name = name;
+            this.content = content;
+            this.atts = atts;
+            this.withAttributes = withAttributes;
+        }
+    }
+
+    static class PrefetchThreadFactory implements ThreadFactory {
+        final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "wms-caps-dimensions-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
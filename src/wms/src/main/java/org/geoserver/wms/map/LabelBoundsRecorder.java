@@ -0,0 +1,551 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Paint;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ImageObserver;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderableImage;
+import java.text.AttributedCharacterIterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link Graphics2D} wrapper that paints on the delegate while keeping track of the areas being
+ * painted. Used to find out where the labels have been placed, as the label cache does not expose
+ * its placement decisions. The bounds are collected in the user space of the graphics at the time
+ * the recorder is created.
+ */
+class LabelBoundsRecorder extends Graphics2D {
+
+    private final Graphics2D delegate;
+
+    private final List<Rectangle2D> bounds;
+
+    /** Maps from device space back to the user space the recorder has been created with */
+    private final AffineTransform deviceToUser;
+
+    public LabelBoundsRecorder(Graphics2D delegate) {
+        this(delegate, new ArrayList<>(), inverse(delegate.getTransform()));
+    }
+
+    private LabelBoundsRecorder(
+            Graphics2D delegate, List<Rectangle2D> bounds, AffineTransform deviceToUser) {
+        this.delegate = delegate;
+        this.bounds = bounds;
+        this.deviceToUser = deviceToUser;
+    }
+
+    private static AffineTransform inverse(AffineTransform tx) {
+        try {
+            return tx.createInverse();
+        } catch (NoninvertibleTransformException e) {
+            return new AffineTransform();
+        }
+    }
+
+    /** Returns the bounds of everything painted so far */
+    public List<Rectangle2D> getBounds() {
+        return bounds;
+    }
+
+    private void record(Shape shape, boolean stroked) {
+        Rectangle2D r = shape.getBounds2D();
+        if (stroked && delegate.getStroke() instanceof BasicStroke) {
+            double hw = ((BasicStroke) delegate.getStroke()).getLineWidth() / 2;
+            r =
+                    new Rectangle2D.Double(
+                            r.getX() - hw,
+                            r.getY() - hw,
+                            r.getWidth() + hw * 2,
+                            r.getHeight() + hw * 2);
+        }
+        record(r);
+    }
+
+    private void record(Rectangle2D userBounds) {
+        if (userBounds.isEmpty()) {
+            return;
+        }
+        AffineTransform tx = new AffineTransform(deviceToUser);
+        tx.concatenate(delegate.getTransform());
+        Rectangle2D r = tx.createTransformedShape(userBounds).getBounds2D();
+        synchronized (bounds) {
+            bounds.add(r);
+        }
+    }
+
+    private void record(double x, double y, double w, double h) {
+        record(new Rectangle2D.Double(x, y, w, h));
+    }
+
+    private void record(Image img, double x, double y, ImageObserver observer) {
+        record(x, y, img.getWidth(observer), img.getHeight(observer));
+    }
+
+    private void record(String s, float x, float y) {
+        GlyphVector gv = getFont().createGlyphVector(getFontRenderContext(), s);
+        record(gv.getVisualBounds().getBounds2D(), x, y);
+    }
+
+    /** Extracts the text out of an attributed iterator, without consuming the original */
+    private static String text(AttributedCharacterIterator iterator) {
+        AttributedCharacterIterator it = (AttributedCharacterIterator) iterator.clone();
+        StringBuilder sb = new StringBuilder();
+        for (char c = it.first(); c != AttributedCharacterIterator.DONE; c = it.next()) {
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private void record(Rectangle2D r, float x, float y) {
+        record(r.getX() + x, r.getY() + y, r.getWidth(), r.getHeight());
+    }
+
+    private void record(Shape shape, AffineTransform xform) {
+        record(xform.createTransformedShape(shape), false);
+    }
+
+    //
+    // Painting methods, recorded
+    //
+
+    @Override
+    public void draw(Shape s) {
+        record(s, true);
+        delegate.draw(s);
+    }
+
+    @Override
+    public void fill(Shape s) {
+        record(s, false);
+        delegate.fill(s);
+    }
+
+    @Override
+    public boolean drawImage(Image img, AffineTransform xform, ImageObserver obs) {
+        record(new Rectangle(img.getWidth(obs), img.getHeight(obs)), xform);
+        return delegate.drawImage(img, xform, obs);
+    }
+
+    @Override
+    public void drawImage(BufferedImage img, BufferedImageOp op, int x, int y) {
+        record(op != null ? op.getBounds2D(img) : img.getRaster().getBounds(), x, y);
+        delegate.drawImage(img, op, x, y);
+    }
+
+    @Override
+    public void drawRenderedImage(RenderedImage img, AffineTransform xform) {
+        Rectangle r = new Rectangle(img.getMinX(), img.getMinY(), img.getWidth(), img.getHeight());
+        record(r, xform);
+        delegate.drawRenderedImage(img, xform);
+    }
+
+    @Override
+    public void drawRenderableImage(RenderableImage img, AffineTransform xform) {
+        Rectangle2D r =
+                new Rectangle2D.Float(
+                        img.getMinX(), img.getMinY(), img.getWidth(), img.getHeight());
+        record(r, xform);
+        delegate.drawRenderableImage(img, xform);
+    }
+
+    @Override
+    public void drawString(String str, int x, int y) {
+        record(str, x, y);
+        delegate.drawString(str, x, y);
+    }
+
+    @Override
+    public void drawString(String str, float x, float y) {
+        record(str, x, y);
+        delegate.drawString(str, x, y);
+    }
+
+    @Override
+    public void drawString(AttributedCharacterIterator iterator, int x, int y) {
+        drawString(iterator, (float) x, (float) y);
+    }
+
+    @Override
+    public void drawString(AttributedCharacterIterator iterator, float x, float y) {
+        record(text(iterator), x, y);
+        delegate.drawString(iterator, x, y);
+    }
+
+    @Override
+    public void drawGlyphVector(GlyphVector g, float x, float y) {
+        record(g.getVisualBounds(), x, y);
+        delegate.drawGlyphVector(g, x, y);
+    }
+
+    @Override
+    public void drawLine(int x1, int y1, int x2, int y2) {
+        record(Math.min(x1, x2), Math.min(y1, y2), Math.abs(x2 - x1) + 1, Math.abs(y2 - y1) + 1);
+        delegate.drawLine(x1, y1, x2, y2);
+    }
+
+    @Override
+    public void fillRect(int x, int y, int width, int height) {
+        record(x, y, width, height);
+        delegate.fillRect(x, y, width, height);
+    }
+
+    @Override
+    public void clearRect(int x, int y, int width, int height) {
+        record(x, y, width, height);
+        delegate.clearRect(x, y, width, height);
+    }
+
+    @Override
+    public void drawRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+        record(x, y, width + 1, height + 1);
+        delegate.drawRoundRect(x, y, width, height, arcWidth, arcHeight);
+    }
+
+    @Override
+    public void fillRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+        record(x, y, width, height);
+        delegate.fillRoundRect(x, y, width, height, arcWidth, arcHeight);
+    }
+
+    @Override
+    public void drawOval(int x, int y, int width, int height) {
+        record(x, y, width + 1, height + 1);
+        delegate.drawOval(x, y, width, height);
+    }
+
+    @Override
+    public void fillOval(int x, int y, int width, int height) {
+        record(x, y, width, height);
+        delegate.fillOval(x, y, width, height);
+    }
+
+    @Override
+    public void drawArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+        record(x, y, width + 1, height + 1);
+        delegate.drawArc(x, y, width, height, startAngle, arcAngle);
+    }
+
+    @Override
+    public void fillArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+        record(x, y, width, height);
+        delegate.fillArc(x, y, width, height, startAngle, arcAngle);
+    }
+
+    @Override
+    public void drawPolyline(int[] xPoints, int[] yPoints, int nPoints) {
+        record(new Polygon(xPoints, yPoints, nPoints), true);
+        delegate.drawPolyline(xPoints, yPoints, nPoints);
+    }
+
+    @Override
+    public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+        record(new Polygon(xPoints, yPoints, nPoints), true);
+        delegate.drawPolygon(xPoints, yPoints, nPoints);
+    }
+
+    @Override
+    public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+        record(new Polygon(xPoints, yPoints, nPoints), false);
+        delegate.fillPolygon(xPoints, yPoints, nPoints);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, ImageObserver observer) {
+        record(img, x, y, observer);
+        return delegate.drawImage(img, x, y, observer);
+    }
+
+    @Override
+    public boolean drawImage(
+            Image img, int x, int y, int width, int height, ImageObserver observer) {
+        record(x, y, width, height);
+        return delegate.drawImage(img, x, y, width, height, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, Color bgcolor, ImageObserver observer) {
+        record(img, x, y, observer);
+        return delegate.drawImage(img, x, y, bgcolor, observer);
+    }
+
+    @Override
+    public boolean drawImage(
+            Image img,
+            int x,
+            int y,
+            int width,
+            int height,
+            Color bgcolor,
+            ImageObserver observer) {
+        record(x, y, width, height);
+        return delegate.drawImage(img, x, y, width, height, bgcolor, observer);
+    }
+
+    @Override
+    public boolean drawImage(
+            Image img,
+            int dx1,
+            int dy1,
+            int dx2,
+            int dy2,
+            int sx1,
+            int sy1,
+            int sx2,
+            int sy2,
+            ImageObserver observer) {
+        record(Math.min(dx1, dx2), Math.min(dy1, dy2), Math.abs(dx2 - dx1), Math.abs(dy2 - dy1));
+        return delegate.drawImage(img, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, observer);
+    }
+
+    @Override
+    public boolean drawImage(
+            Image img,
+            int dx1,
+            int dy1,
+            int dx2,
+            int dy2,
+            int sx1,
+            int sy1,
+            int sx2,
+            int sy2,
+            Color bgcolor,
+            ImageObserver observer) {
+        record(Math.min(dx1, dx2), Math.min(dy1, dy2), Math.abs(dx2 - dx1), Math.abs(dy2 - dy1));
+        return delegate.drawImage(img, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, bgcolor, observer);
+    }
+
+    //
+    // State methods, delegated
+    //
+
+    @Override
+    public Graphics create() {
+        return new LabelBoundsRecorder((Graphics2D) delegate.create(), bounds, deviceToUser);
+    }
+
+    @Override
+    public void dispose() {
+        delegate.dispose();
+    }
+
+    @Override
+    public boolean hit(Rectangle rect, Shape s, boolean onStroke) {
+        return delegate.hit(rect, s, onStroke);
+    }
+
+    @Override
+    public GraphicsConfiguration getDeviceConfiguration() {
+        return delegate.getDeviceConfiguration();
+    }
+
+    @Override
+    public void setComposite(Composite comp) {
+        delegate.setComposite(comp);
+    }
+
+    @Override
+    public void setPaint(Paint paint) {
+        delegate.setPaint(paint);
+    }
+
+    @Override
+    public void setStroke(Stroke s) {
+        delegate.setStroke(s);
+    }
+
+    @Override
+    public void setRenderingHint(RenderingHints.Key hintKey, Object hintValue) {
+        delegate.setRenderingHint(hintKey, hintValue);
+    }
+
+    @Override
+    public Object getRenderingHint(RenderingHints.Key hintKey) {
+        return delegate.getRenderingHint(hintKey);
+    }
+
+    @Override
+    public void setRenderingHints(Map<?, ?> hints) {
+        delegate.setRenderingHints(hints);
+    }
+
+    @Override
+    public void addRenderingHints(Map<?, ?> hints) {
+        delegate.addRenderingHints(hints);
+    }
+
+    @Override
+    public RenderingHints getRenderingHints() {
+        return delegate.getRenderingHints();
+    }
+
+    @Override
+    public void translate(int x, int y) {
+        delegate.translate(x, y);
+    }
+
+    @Override
+    public void translate(double tx, double ty) {
+        delegate.translate(tx, ty);
+    }
+
+    @Override
+    public void rotate(double theta) {
+        delegate.rotate(theta);
+    }
+
+    @Override
+    public void rotate(double theta, double x, double y) {
+        delegate.rotate(theta, x, y);
+    }
+
+    @Override
+    public void scale(double sx, double sy) {
+        delegate.scale(sx, sy);
+    }
+
+    @Override
+    public void shear(double shx, double shy) {
+        delegate.shear(shx, shy);
+    }
+
+    @Override
+    public void transform(AffineTransform tx) {
+        delegate.transform(tx);
+    }
+
+    @Override
+    public void setTransform(AffineTransform tx) {
+        delegate.setTransform(tx);
+    }
+
+    @Override
+    public AffineTransform getTransform() {
+        return delegate.getTransform();
+    }
+
+    @Override
+    public Paint getPaint() {
+        return delegate.getPaint();
+    }
+
+    @Override
+    public Composite getComposite() {
+        return delegate.getComposite();
+    }
+
+    @Override
+    public void setBackground(Color color) {
+        delegate.setBackground(color);
+    }
+
+    @Override
+    public Color getBackground() {
+        return delegate.getBackground();
+    }
+
+    @Override
+    public Stroke getStroke() {
+        return delegate.getStroke();
+    }
+
+    @Override
+    public void clip(Shape s) {
+        delegate.clip(s);
+    }
+
+    @Override
+    public FontRenderContext getFontRenderContext() {
+        return delegate.getFontRenderContext();
+    }
+
+    @Override
+    public Color getColor() {
+        return delegate.getColor();
+    }
+
+    @Override
+    public void setColor(Color c) {
+        delegate.setColor(c);
+    }
+
+    @Override
+    public void setPaintMode() {
+        delegate.setPaintMode();
+    }
+
+    @Override
+    public void setXORMode(Color c1) {
+        delegate.setXORMode(c1);
+    }
+
+    @Override
+    public Font getFont() {
+        return delegate.getFont();
+    }
+
+    @Override
+    public void setFont(Font font) {
+        delegate.setFont(font);
+    }
+
+    @Override
+    public FontMetrics getFontMetrics(Font f) {
+        return delegate.getFontMetrics(f);
+    }
+
+    @Override
+    public Rectangle getClipBounds() {
+        return delegate.getClipBounds();
+    }
+
+    @Override
+    public void clipRect(int x, int y, int width, int height) {
+        delegate.clipRect(x, y, width, height);
+    }
+
+    @Override
+    public void setClip(int x, int y, int width, int height) {
+        delegate.setClip(x, y, width, height);
+    }
+
+    @Override
+    public Shape getClip() {
+        return delegate.getClip();
+    }
+
+    @Override
+    public void setClip(Shape clip) {
+        delegate.setClip(clip);
+    }
+
+    @Override
+    public void copyArea(int x, int y, int width, int height, int dx, int dy) {
+        delegate.copyArea(x, y, width, height, dx, dy);
+    }
+}
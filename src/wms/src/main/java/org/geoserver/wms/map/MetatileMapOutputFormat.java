@@ -16,6 +16,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.imageio.ImageIO;
@@ -118,68 +119,70 @@ public final class MetatileMapOutputFormat implements GetMapOutputFormat {
     /** @see org.geoserver.wms.GetMapOutputFormat#produceMap(org.geoserver.wms.WMSMapContent) */
     public WebMap produceMap(WMSMapContent mapContent) throws ServiceException, IOException {
         // get the key that identifies the meta tile. The cache will make sure
-        // two threads asking
-        // for the same tile will get the same key, and thus will synchronize
-        // with each other
-        // (the first eventually builds the meta-tile, the second finds it ready
-        // to be used)
+        // two threads asking for the same meta tile will not render it twice
+        // (the first builds the meta-tile, the second waits for it to be ready)
         QuickTileCache.MetaTileKey key = tileCache.getMetaTileKey(request);
 
-        synchronized (key) {
-            RenderedImage tile = tileCache.getTile(key, request);
-            List<GridCoverage2D> renderedCoverages = null;
-
-            if (LOGGER.isLoggable(Level.FINER)) {
-                LOGGER.finer(
-                        "Looked for meta tile "
-                                + key.metaTileCoords.x
-                                + ", "
-                                + key.metaTileCoords.y
-                                + "in cache: "
-                                + ((tile != null) ? "hit!" : "miss"));
-            }
+        RenderedImage tile = tileCache.getTile(key, request);
+        if (LOGGER.isLoggable(Level.FINER)) {
+            LOGGER.finer(
+                    "Looked for meta tile "
+                            + key.metaTileCoords.x
+                            + ", "
+                            + key.metaTileCoords.y
+                            + "in cache: "
+                            + ((tile != null) ? "hit!" : "miss"));
+        }
 
-            if (tile == null) {
-                // compute the meta-tile
-                if (LOGGER.isLoggable(Level.FINER)) {
-                    LOGGER.finer(
-                            "Building meta tile "
-                                    + key.metaTileCoords.x
-                                    + ", "
-                                    + key.metaTileCoords.y
-                                    + " of size w="
-                                    + key.getTileSize() * key.getMetaFactor()
-                                    + ", h="
-                                    + key.getTileSize() * key.getMetaFactor()
-                                    + " with metatilign factor "
-                                    + key.getMetaFactor());
-                }
+        // only set if this thread actually rendered the meta tile
+        AtomicReference<List<GridCoverage2D>> renderedCoverages = new AtomicReference<>();
+        if (tile == null) {
+            RenderedImage[] tiles =
+                    tileCache.getTiles(
+                            key,
+                            () -> {
+                                RenderedImageMap metaTileMap = renderMetaTile(key, mapContent);
+                                renderedCoverages.set(metaTileMap.getRenderedCoverages());
+                                return split(key, metaTileMap.getImage());
+                            });
+            tile = tileCache.getTile(key, request, tiles);
+        }
+        RenderedImageMap tileMap = new RenderedImageMap(mapContent, tile, getMimeType());
+        tileMap.setRenderedCoverages(renderedCoverages.get());
+        return tileMap;
+    }
 
-                // alter the map definition so that we build a meta-tile instead
-                // of just the tile
-                mapContent.getViewport().setBounds(key.getMetaTileEnvelope());
-                mapContent.setMapWidth(key.getTileSize() * key.getMetaFactor());
-                mapContent.setMapHeight(key.getTileSize() * key.getMetaFactor());
-                mapContent.setTileSize(key.getTileSize());
+    private RenderedImageMap renderMetaTile(MetaTileKey key, WMSMapContent mapContent)
+            throws IOException {
+        // compute the meta-tile
+        if (LOGGER.isLoggable(Level.FINER)) {
+            LOGGER.finer(
+                    "Building meta tile "
+                            + key.metaTileCoords.x
+                            + ", "
+                            + key.metaTileCoords.y
+                            + " of size w="
+                            + key.getTileSize() * key.getMetaFactor()
+                            + ", h="
+                            + key.getTileSize() * key.getMetaFactor()
+                            + " with metatilign factor "
+                            + key.getMetaFactor());
+        }
 
-                // adjust the bbox/width/height env vars that GetMap setup, since we
-                // are changing them under its feet
-                EnvFunction.setLocalValue("wms_bbox", mapContent.getViewport().getBounds());
-                EnvFunction.setLocalValue("wms_width", mapContent.getMapWidth());
-                EnvFunction.setLocalValue("wms_height", mapContent.getMapHeight());
+        // alter the map definition so that we build a meta-tile instead
+        // of just the tile
+        mapContent.getViewport().setBounds(key.getMetaTileEnvelope());
+        mapContent.setMapWidth(key.getTileSize() * key.getMetaFactor());
+        mapContent.setMapHeight(key.getTileSize() * key.getMetaFactor());
+        mapContent.setTileSize(key.getTileSize());
 
-                RenderedImageMap metaTileMap = delegate.produceMap(mapContent);
+        // adjust the bbox/width/height env vars that GetMap setup, since we
+        // are changing them under its feet
+        EnvFunction.setLocalValue("wms_bbox", mapContent.getViewport().getBounds());
+        EnvFunction.setLocalValue("wms_width", mapContent.getMapWidth());
+        EnvFunction.setLocalValue("wms_height", mapContent.getMapHeight());
 
-                RenderedImage metaTile = metaTileMap.getImage();
-                RenderedImage[] tiles = split(key, metaTile);
-                tileCache.storeTiles(key, tiles);
-                tile = tileCache.getTile(key, request, tiles);
-                renderedCoverages = metaTileMap.getRenderedCoverages();
-            }
-            RenderedImageMap tileMap = new RenderedImageMap(mapContent, tile, getMimeType());
-            tileMap.setRenderedCoverages(renderedCoverages);
-            return tileMap;
-        }
+        return delegate.produceMap(mapContent);
     }
 
     /** @see org.geoserver.wms.GetMapOutputFormat#getOutputFormatNames() */
@@ -97,7 +97,8 @@ public class PNGMapResponse extends RenderedImageMapResponse {
         float quality = (100 - wms.getPngCompression()) / 100.0f;
         JAIInfo.PngEncoderType encoder = wms.getPNGEncoderType();
         if (encoder == JAIInfo.PngEncoderType.PNGJ) {
-            image = new PNGJWriter().writePNG(image, outStream, quality, mapContent);
+            PNGJWriter writer = new PNGJWriter(wms.getPngEncoderThreads());
+            image = writer.writePNG(image, outStream, quality, mapContent);
             RasterCleaner.addImage(image);
         } else {
             Boolean PNGNativeAcc = (encoder == JAIInfo.PngEncoderType.NATIVE);
@@ -0,0 +1,551 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import it.geosolutions.jaiext.colorindexer.Quantizer;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.catalog.CatalogException;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.MetadataMap;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.config.ConfigurationListenerAdapter;
+import org.geoserver.config.GeoServer;
+import org.geoserver.config.ServiceInfo;
+import org.geoserver.ows.LocalWorkspace;
+import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.WMSInfo;
+import org.geoserver.wms.WMSMapContent;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Learns the palettes of paletted outputs (e.g., {@code image/png8}) for maps that are requested
+ * over and over with different extents, such as tiled base maps, and reuses them instead of
+ * quantizing each image on its own. Besides saving the quantization time, a shared palette makes
+ * the colors consistent across tiles.
+ *
+ * <p>The maps are identified by their request parameters, minus the ones defining the extent and
+ * the image size. The first {@link #SAMPLES_KEY} images of a map are quantized as usual, and a
+ * subsampled copy of each is kept; once enough samples are collected, a palette is computed out of
+ * all of them and used for the following requests of the same map, until it expires or a style,
+ * layer or group is modified. Images that are mostly transparent or painted with a single color
+ * tell little about the map colors, and are not used as samples.
+ *
+ * <p>Each image is checked against the learned palette: when the distance between any of its colors
+ * and the closest palette entry is above {@link #MAX_MAPPING_ERROR} the image is quantized on its
+ * own, and kept as a sample to refine the palette, up to {@link #MAX_REFINEMENTS} times.
+ *
+ * <p>The cache is bounded by the memory used by the palettes and the samples collected so far, it
+ * is disabled by default, and can be enabled and configured with the {@link #ENABLED_KEY}, {@link
+ * #SAMPLES_KEY}, {@link #TIME_TO_LIVE_KEY} and {@link #MAX_WEIGHT_KEY} keys in the WMS service
+ * metadata.
+ */
+public class PaletteCache implements CatalogListener {
+
+    static final Logger LOGGER = Logging.getLogger(PaletteCache.class);
+
+    /** Key in the WMS metadata enabling the cache */
+    public static final String ENABLED_KEY = "paletteCache";
+
+    /** Key in the WMS metadata holding the number of images sampled to learn a palette */
+    public static final String SAMPLES_KEY = "paletteCacheSamples";
+
+    /** Key in the WMS metadata holding the time to live of the palettes, in seconds */
+    public static final String TIME_TO_LIVE_KEY = "paletteCacheTimeToLive";
+
+    /** Key in the WMS metadata holding the maximum memory used by the palettes and samples */
+    public static final String MAX_WEIGHT_KEY = "paletteCacheMaxWeight";
+
+    public static final int SAMPLES_DEFAULT = 4;
+
+    public static final long TIME_TO_LIVE_DEFAULT = 600;
+
+    public static final long MAX_WEIGHT_DEFAULT = 16 * 1024 * 1024;
+
+    /** Size of the longest side of the image samples */
+    static final int SAMPLE_SIZE = 128;
+
+    /** Minimum fraction of non transparent pixels of an image used to learn a palette */
+    static final double MIN_COVERAGE = 0.05;
+
+    /**
+     * Maximum distance, in RGBA space, between any color of an image and the closest palette entry
+     * for the learned palette to be used on it
+     */
+    static final double MAX_MAPPING_ERROR = 16;
+
+    /** Maximum number of times the palette of a map is learned again out of misfit images */
+    static final int MAX_REFINEMENTS = 3;
+
+    /** Size of the block painted for each color of a palette being refined */
+    static final int SWATCH_BLOCK = 8;
+
+    /** Estimated memory used by an entry besides its samples and palette, in bytes */
+    static final int ENTRY_OVERHEAD = 256;
+
+    /** Parameters that do not affect the colors of the map */
+    private static final Set<String> IGNORED_PARAMETERS = new HashSet<>();
+
+    static {
+        IGNORED_PARAMETERS.add("REQUEST");
+        IGNORED_PARAMETERS.add("SERVICE");
+        IGNORED_PARAMETERS.add("VERSION");
+        IGNORED_PARAMETERS.add("EXCEPTIONS");
+        IGNORED_PARAMETERS.add("BBOX");
+        IGNORED_PARAMETERS.add("WIDTH");
+        IGNORED_PARAMETERS.add("HEIGHT");
+        IGNORED_PARAMETERS.add("TILED");
+        IGNORED_PARAMETERS.add("TILESORIGIN");
+        IGNORED_PARAMETERS.add("_");
+    }
+
+    private volatile Cache<String, Entry> palettes =
+            buildCache(MAX_WEIGHT_DEFAULT, TIME_TO_LIVE_DEFAULT);
+
+    private volatile boolean enabled;
+
+    private volatile int samples = SAMPLES_DEFAULT;
+
+    private long maxWeight = MAX_WEIGHT_DEFAULT;
+
+    private long timeToLive = TIME_TO_LIVE_DEFAULT;
+
+    public PaletteCache(GeoServer geoServer) {
+        geoServer.getCatalog().addListener(this);
+        configure(geoServer.getService(WMSInfo.class));
+        geoServer.addListener(
+                new ConfigurationListenerAdapter() {
+                    public void handlePostServiceChange(ServiceInfo service) {
+                        if (service instanceof WMSInfo) {
+                            invalidateAll();
+                            configure((WMSInfo) service);
+                        }
+                    }
+
+                    public void reloaded() {
+                        invalidateAll();
+                        configure(geoServer.getService(WMSInfo.class));
+                    }
+                });
+    }
+
+    /** For testing only */
+    PaletteCache(int samples, long maxWeight, long timeToLive) {
+        this.enabled = true;
+        this.samples = samples;
+        this.maxWeight = maxWeight;
+        this.timeToLive = timeToLive;
+        this.palettes = buildCache(maxWeight, timeToLive);
+    }
+
+    /** Sets up the cache from the WMS service metadata */
+    void configure(WMSInfo wms) {
+        MetadataMap metadata = wms != null ? wms.getMetadata() : null;
+        boolean enabled = false;
+        int samples = SAMPLES_DEFAULT;
+        long maxWeight = MAX_WEIGHT_DEFAULT;
+        long timeToLive = TIME_TO_LIVE_DEFAULT;
+        if (metadata != null) {
+            enabled = Boolean.TRUE.equals(metadata.get(ENABLED_KEY, Boolean.class));
+            Integer samplesValue = metadata.get(SAMPLES_KEY, Integer.class);
+            if (samplesValue != null && samplesValue > 0) {
+                samples = samplesValue;
+            }
+            Long weight = metadata.get(MAX_WEIGHT_KEY, Long.class);
+            if (weight != null && weight >= 0) {
+                maxWeight = weight;
+            }
+            Long ttl = metadata.get(TIME_TO_LIVE_KEY, Long.class);
+            if (ttl != null && ttl >= 0) {
+                timeToLive = ttl;
+            }
+        }
+        synchronized (this) {
+            this.enabled = enabled;
+            this.samples = samples;
+            if (maxWeight != this.maxWeight || timeToLive != this.timeToLive) {
+                this.maxWeight = maxWeight;
+                this.timeToLive = timeToLive;
+                this.palettes = buildCache(maxWeight, timeToLive);
+            }
+        }
+    }
+
+    private static Cache<String, Entry> buildCache(long maxWeight, long timeToLive) {
+        CacheBuilder<String, Entry> builder =
+                CacheBuilder.newBuilder()
+                        .recordStats()
+                        .maximumWeight(maxWeight)
+                        .weigher((String k, Entry e) -> k.length() * 2 + e.weight);
+        if (timeToLive > 0) {
+            builder.expireAfterWrite(timeToLive, TimeUnit.SECONDS);
+        }
+        return builder.build();
+    }
+
+    /** Returns true if the cache is enabled */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Returns the cache statistics */
+    public CacheStats getStatistics() {
+        return palettes.stats();
+    }
+
+    /** Drops all the learned palettes */
+    public void invalidateAll() {
+        palettes.invalidateAll();
+    }
+
+    /**
+     * Returns the palette learned for the map, or null if not enough images have been sampled yet,
+     * or the learned palette does not fit the image. In the latter cases the image is added to the
+     * samples.
+     *
+     * @param mapContent the map being encoded
+     * @param image the rendered map, not paletted yet
+     * @param bitmask true if the palette is going to be used for bitmask transparency
+     */
+    public IndexColorModel getPalette(
+            WMSMapContent mapContent, RenderedImage image, boolean bitmask) {
+        String key = getKey(mapContent, bitmask);
+        if (key == null) {
+            return null;
+        }
+        Cache<String, Entry> palettes = this.palettes;
+        Entry entry;
+        try {
+            entry = palettes.get(key, () -> new Entry());
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+        IndexColorModel palette = null;
+        List<BufferedImage> learning = null;
+        try {
+            IndexColorModel current = entry.palette;
+            if (current != null && getMappingError(current, image, bitmask) <= MAX_MAPPING_ERROR) {
+                return current;
+            }
+            // either no palette yet, or it misses colors of this image, quantize it on its own
+            BufferedImage sample = sample(image);
+            if (current == null && !isInformative(sample)) {
+                return null;
+            }
+            synchronized (entry) {
+                if (entry.palette != current
+                        || (current != null && entry.refinements >= MAX_REFINEMENTS)) {
+                    return null;
+                }
+                entry.samples.add(sample);
+                if (entry.samples.size() >= samples) {
+                    learning = new ArrayList<>(entry.samples);
+                    entry.samples.clear();
+                    if (current != null) {
+                        // keep the colors learned so far
+                        learning.add(swatch(current));
+                        entry.refinements++;
+                    }
+                }
+                entry.updateWeight();
+            }
+            if (learning != null) {
+                palette = learn(learning, bitmask);
+                synchronized (entry) {
+                    entry.palette = palette;
+                    entry.updateWeight();
+                }
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine("Learned a " + palette.getMapSize() + " colors palette for " + key);
+                }
+            }
+            // have the cache weigh the entry again, unless it got evicted or invalidated already
+            palettes.asMap().replace(key, entry, entry);
+        } catch (Exception e) {
+            // not a reason to fail the request, the image is just quantized on its own
+            LOGGER.log(Level.FINE, "Failed to sample the image for palette learning", e);
+        }
+        return palette;
+    }
+
+    /**
+     * Returns true if the sample has enough non transparent pixels and more than one color to be
+     * used for learning a palette
+     */
+    static boolean isInformative(BufferedImage sample) {
+        int pixels = sample.getWidth() * sample.getHeight();
+        int painted = 0;
+        Integer color = null;
+        boolean diverse = false;
+        for (int y = 0; y < sample.getHeight(); y++) {
+            for (int x = 0; x < sample.getWidth(); x++) {
+                int argb = sample.getRGB(x, y);
+                if ((argb >>> 24) != 0) {
+                    painted++;
+                    if (color == null) {
+                        color = argb;
+                    } else if (color != argb) {
+                        diverse = true;
+                    }
+                }
+            }
+        }
+        return diverse && painted >= pixels * MIN_COVERAGE;
+    }
+
+    /**
+     * Returns the maximum distance between the distinct colors of the non transparent pixels of the
+     * image and the closest palette entries, or a value above {@link #MAX_MAPPING_ERROR} as soon as
+     * one is found. All the pixels are checked, a small feature painted with a color missing from
+     * the palette could get lost in a subsample. Bitmask palettes are compared on the color
+     * components only.
+     */
+    static double getMappingError(IndexColorModel palette, RenderedImage image, boolean bitmask) {
+        int[] entries = new int[palette.getMapSize()];
+        palette.getRGBs(entries);
+        BufferedImage bi = toBufferedImage(image);
+        int width = bi.getWidth();
+        int[] row = new int[width];
+        Set<Integer> checked = new HashSet<>();
+        double max = 0;
+        int last = 0;
+        for (int y = 0; y < bi.getHeight(); y++) {
+            bi.getRGB(0, y, width, 1, row, 0, width);
+            for (int argb : row) {
+                // neighbouring pixels often share the color, skip the lookup for them
+                if ((argb >>> 24) == 0 || argb == last) {
+                    continue;
+                }
+                last = argb;
+                if (checked.add(argb)) {
+                    max = Math.max(max, getDistance(entries, argb, bitmask));
+                    if (max > MAX_MAPPING_ERROR) {
+                        return max;
+                    }
+                }
+            }
+        }
+        return max;
+    }
+
+    private static double getDistance(int[] entries, int argb, boolean bitmask) {
+        long min = Long.MAX_VALUE;
+        for (int entry : entries) {
+            if (bitmask && (entry >>> 24) == 0) {
+                continue;
+            }
+            long distance = 0;
+            for (int shift = bitmask ? 16 : 24; shift >= 0; shift -= 8) {
+                int d = ((argb >>> shift) & 0xFF) - ((entry >>> shift) & 0xFF);
+                distance += d * d;
+            }
+            min = Math.min(min, distance);
+        }
+        return min == Long.MAX_VALUE ? 255 : Math.sqrt(min);
+    }
+
+    /** Returns an image painting a block for each color of the palette */
+    static BufferedImage swatch(IndexColorModel palette) {
+        int size = palette.getMapSize();
+        int columns = 16;
+        int rows = (size + columns - 1) / columns;
+        BufferedImage swatch =
+                new BufferedImage(
+                        columns * SWATCH_BLOCK, rows * SWATCH_BLOCK, BufferedImage.TYPE_4BYTE_ABGR);
+        for (int i = 0; i < size; i++) {
+            int x0 = (i % columns) * SWATCH_BLOCK;
+            int y0 = (i / columns) * SWATCH_BLOCK;
+            for (int y = y0; y < y0 + SWATCH_BLOCK; y++) {
+                for (int x = x0; x < x0 + SWATCH_BLOCK; x++) {
+                    swatch.setRGB(x, y, palette.getRGB(i));
+                }
+            }
+        }
+        return swatch;
+    }
+
+    /** Builds the key identifying the map, or returns null if it cannot be identified */
+    String getKey(WMSMapContent mapContent, boolean bitmask) {
+        GetMapRequest request = mapContent.getRequest();
+        Map<String, String> rawKvp = request != null ? request.getRawKvp() : null;
+        if (rawKvp == null || rawKvp.isEmpty()) {
+            return null;
+        }
+        Map<String, String> sorted = new TreeMap<>();
+        for (Map.Entry<String, String> e : rawKvp.entrySet()) {
+            String name = e.getKey().toUpperCase();
+            if (!IGNORED_PARAMETERS.contains(name)) {
+                sorted.put(name, e.getValue());
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        if (LocalWorkspace.get() != null) {
+            sb.append(LocalWorkspace.get().getName()).append('/');
+        }
+        sb.append(bitmask ? "bitmask" : "translucent");
+        for (Map.Entry<String, String> e : sorted.entrySet()) {
+            sb.append('&').append(e.getKey()).append('=').append(e.getValue());
+        }
+        return sb.toString();
+    }
+
+    /** Returns the image itself if it's a {@link BufferedImage}, or a copy of it otherwise */
+    static BufferedImage toBufferedImage(RenderedImage image) {
+        if (image instanceof BufferedImage) {
+            return (BufferedImage) image;
+        }
+        BufferedImage copy =
+                new BufferedImage(
+                        image.getWidth(), image.getHeight(), BufferedImage.TYPE_4BYTE_ABGR);
+        Graphics2D graphics = copy.createGraphics();
+        try {
+            graphics.drawRenderedImage(
+                    image,
+                    AffineTransform.getTranslateInstance(-image.getMinX(), -image.getMinY()));
+        } finally {
+            graphics.dispose();
+        }
+        return copy;
+    }
+
+    /** Returns a subsampled copy of the image */
+    static BufferedImage sample(RenderedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double scale = Math.min(1, SAMPLE_SIZE / (double) Math.max(width, height));
+        int sw = Math.max(1, (int) Math.round(width * scale));
+        int sh = Math.max(1, (int) Math.round(height * scale));
+        BufferedImage sample = new BufferedImage(sw, sh, BufferedImage.TYPE_4BYTE_ABGR);
+        Graphics2D graphics = sample.createGraphics();
+        try {
+            // nearest neighbour, interpolation would add colors that are not in the map
+            graphics.setRenderingHint(
+                    RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            AffineTransform tx = AffineTransform.getScaleInstance(scale, scale);
+            tx.translate(-image.getMinX(), -image.getMinY());
+            graphics.drawRenderedImage(image, tx);
+        } finally {
+            graphics.dispose();
+        }
+        return sample;
+    }
+
+    /** Computes a palette out of the samples, stacked in a single image */
+    static IndexColorModel learn(List<BufferedImage> samples, boolean bitmask) {
+        int width = 0;
+        int height = 0;
+        for (BufferedImage sample : samples) {
+            width = Math.max(width, sample.getWidth());
+            height += sample.getHeight();
+        }
+        BufferedImage mosaic = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
+        Graphics2D graphics = mosaic.createGraphics();
+        try {
+            int y = 0;
+            for (BufferedImage sample : samples) {
+                graphics.drawImage(sample, 0, y, null);
+                y += sample.getHeight();
+            }
+        } finally {
+            graphics.dispose();
+        }
+
+        // same quantizers used for the images that are not cached
+        if (bitmask) {
+            ColorModel cm = ImageUtils.forceIndexed8Bitmask(mosaic, null).getColorModel();
+            return (IndexColorModel) cm;
+        } else {
+            return new Quantizer(256).subsample().buildColorIndexer(mosaic).toIndexColorModel();
+        }
+    }
+
+    /** The palette learned for a map, and the samples collected so far */
+    static class Entry {
+        final List<BufferedImage> samples = new ArrayList<>();
+
+        volatile IndexColorModel palette;
+
+        int refinements;
+
+        /** Estimated memory footprint, in bytes, read by the cache weigher */
+        volatile int weight = ENTRY_OVERHEAD;
+
+        synchronized void updateWeight() {
+            int weight = ENTRY_OVERHEAD;
+            for (BufferedImage sample : samples) {
+                weight += sample.getWidth() * sample.getHeight() * 4;
+            }
+            IndexColorModel palette = this.palette;
+            if (palette != null) {
+                weight += palette.getMapSize() * 4;
+            }
+            this.weight = weight;
+        }
+    }
+
+    //
+    // Catalog listener, any change in styles or layers can change the map colors
+    //
+
+    @Override
+    public void handleAddEvent(CatalogAddEvent event) throws CatalogException {
+        // a new layer or style does not change the existing maps
+    }
+
+    @Override
+    public void handleRemoveEvent(CatalogRemoveEvent event) throws CatalogException {
+        handleChange(event.getSource());
+    }
+
+    @Override
+    public void handleModifyEvent(CatalogModifyEvent event) throws CatalogException {
+        // wait for the post modify
+    }
+
+    @Override
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) throws CatalogException {
+        handleChange(event.getSource());
+    }
+
+    private void handleChange(Object source) {
+        if (source instanceof StyleInfo
+                || source instanceof LayerInfo
+                || source instanceof LayerGroupInfo
+                || source instanceof ResourceInfo) {
+            invalidateAll();
+        }
+    }
+
+    @Override
+    public void reloaded() {
+        invalidateAll();
+    }
+}
@@ -0,0 +1,402 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.Layer;
+import org.geotools.map.MapContent;
+import org.geotools.map.MapViewport;
+import org.geotools.map.StyleLayer;
+import org.geotools.renderer.RenderListener;
+import org.geotools.renderer.lite.StreamingRenderer;
+import org.geotools.styling.FeatureTypeStyle;
+import org.geotools.styling.Rule;
+import org.geotools.styling.Style;
+import org.geotools.styling.Symbolizer;
+import org.geotools.styling.TextSymbolizer;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * A {@link StreamingRenderer} that splits the map layers in groups, and renders them concurrently,
+ * each in its own buffer, compositing the buffers in order at the end.
+ *
+ * <p>The layers are grouped so that the output is the same as a sequential rendering:
+ *
+ * <ul>
+ *   <li>The first group is painted directly on the target graphics, and contains at least all the
+ *       layers up to the last one using a composite/blending operation, as these need to see the
+ *       layers below them
+ *   <li>The last group contains all the layers starting from the first one producing labels (or
+ *       label obstacles), so that labels are painted on top of all layers, and conflict resolution
+ *       happens among all of them
+ *   <li>If a layer uses z-ordering across layers ({@code sortByGroup}) the map is rendered
+ *       sequentially
+ * </ul>
+ *
+ * Render listeners are called in a serialized way, so the existing ones (e.g., {@link
+ * MaxErrorEnforcer}, {@link RenderExceptionStrategy}, {@link RenderTimeStatistics}) need not be
+ * thread safe, and {@link #stopRendering()} stops all the groups. The layers start in no particular
+ * order, {@link RenderTimeStatistics} is told their position in the map to keep reporting them in
+ * map order.
+ */
+public class ParallelLayerRenderer extends StreamingRenderer {
+
+    static final Logger LOGGER = Logging.getLogger(ParallelLayerRenderer.class);
+
+    private final ExecutorService layerPool;
+
+    private final int maxGroups;
+
+    private ExecutorService threadPool;
+
+    private final List<RenderListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final List<StreamingRenderer> activeRenderers = new CopyOnWriteArrayList<>();
+
+    private volatile boolean stopped;
+
+    /**
+     * @param layerPool The pool used to render the groups of layers (the first group is rendered
+     *     by the calling thread)
+     * @param maxGroups The maximum number of groups the layers are split into
+     */
+    public ParallelLayerRenderer(ExecutorService layerPool, int maxGroups) {
+        this.layerPool = layerPool;
+        this.maxGroups = maxGroups;
+    }
+
+    @Override
+    public void setThreadPool(ExecutorService threadPool) {
+        super.setThreadPool(threadPool);
+        this.threadPool = threadPool;
+    }
+
+    @Override
+    public void addRenderListener(RenderListener listener) {
+        super.addRenderListener(listener);
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeRenderListener(RenderListener listener) {
+        super.removeRenderListener(listener);
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void stopRendering() {
+        stopped = true;
+        super.stopRendering();
+        for (StreamingRenderer renderer : activeRenderers) {
+            renderer.stopRendering();
+        }
+    }
+
+    @Override
+    public int getMaxBackBufferMemory(int width, int height) {
+        int groups = getMapContent() != null ? groupLayers(getMapContent().layers()).size() : 1;
+        long layerBuffers = (groups - 1) * (long) width * height * 4;
+        long total = super.getMaxBackBufferMemory(width, height) + layerBuffers;
+        return (int) Math.min(total, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void paint(
+            Graphics2D graphics,
+            Rectangle paintArea,
+            ReferencedEnvelope mapArea,
+            AffineTransform worldToScreen) {
+        MapContent mapContent = getMapContent();
+        List<List<Layer>> groups =
+                mapContent != null ? groupLayers(mapContent.layers()) : new ArrayList<>();
+        if (groups.size() < 2) {
+            super.paint(graphics, paintArea, mapArea, worldToScreen);
+            return;
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(
+                    "Rendering "
+                            + mapContent.layers().size()
+                            + " layers in "
+                            + groups.size()
+                            + " parallel groups");
+        }
+
+        RenderListener forwarder = new SerializedRenderListener(mapContent.layers());
+        int last = groups.size() - 1;
+
+        // start rendering the upper groups in their own buffers
+        List<Future<BufferedImage>> futures = new ArrayList<>();
+        for (int i = 1; i < groups.size(); i++) {
+            StreamingRenderer renderer = buildGroupRenderer(groups.get(i), i == last, forwarder);
+            futures.add(
+                    layerPool.submit(
+                            () -> {
+                                BufferedImage image =
+                                        new BufferedImage(
+                                                paintArea.width,
+                                                paintArea.height,
+                                                BufferedImage.TYPE_INT_ARGB_PRE);
+                                Graphics2D g = image.createGraphics();
+                                try {
+                                    g.setRenderingHints(graphics.getRenderingHints());
+                                    g.translate(-paintArea.x, -paintArea.y);
+                                    paintGroup(renderer, g, paintArea, mapArea, worldToScreen);
+                                } finally {
+                                    g.dispose();
+                                }
+                                return image;
+                            }));
+        }
+
+        // the bottom group goes straight into the target graphics, on this thread
+        StreamingRenderer bottom = buildGroupRenderer(groups.get(0), false, forwarder);
+        paintGroup(bottom, graphics, paintArea, mapArea, worldToScreen);
+
+        // composite the other groups in order
+        for (Future<BufferedImage> future : futures) {
+            try {
+                BufferedImage image = future.get();
+                if (!stopped) {
+                    graphics.drawImage(image, paintArea.x, paintArea.y, null);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopRendering();
+                forwarder.errorOccurred(e);
+            } catch (ExecutionException e) {
+                stopRendering();
+                Throwable cause = e.getCause();
+                forwarder.errorOccurred(
+                        cause instanceof Exception ? (Exception) cause : new Exception(cause));
+            }
+        }
+    }
+
+    private void paintGroup(
+            StreamingRenderer renderer,
+            Graphics2D graphics,
+            Rectangle paintArea,
+            ReferencedEnvelope mapArea,
+            AffineTransform worldToScreen) {
+        MapContent content = renderer.getMapContent();
+        activeRenderers.add(renderer);
+        try {
+            // stop might have been called before the renderer was registered
+            if (!stopped) {
+                renderer.paint(graphics, paintArea, mapArea, worldToScreen);
+            }
+        } finally {
+            activeRenderers.remove(renderer);
+            // the layers are shared with the original map content, do not dispose them
+            for (Layer layer : new ArrayList<>(content.layers())) {
+                content.removeLayer(layer);
+            }
+            content.dispose();
+        }
+    }
+
+    /** Builds a renderer for a group, configured like this one but for the layers */
+    @SuppressWarnings("unchecked")
+    private StreamingRenderer buildGroupRenderer(
+            List<Layer> layers, boolean labels, RenderListener listener) {
+        MapContent parent = getMapContent();
+        MapContent content = new MapContent();
+        content.setViewport(new MapViewport(parent.getViewport().getBounds()));
+        content.addLayers(layers);
+
+        StreamingRenderer renderer = new StreamingRenderer();
+        renderer.setThreadPool(threadPool);
+        renderer.setMapContent(content);
+        RenderingHints java2dHints = getJava2DHints();
+        if (java2dHints != null) {
+            renderer.setJava2DHints(java2dHints);
+        }
+        Map<Object, Object> hints = new HashMap<>();
+        if (getRendererHints() != null) {
+            hints.putAll(getRendererHints());
+        }
+        if (!labels) {
+            // the label cache can be used by a single renderer, the one painting the labels
+            hints.remove(LABEL_CACHE_KEY);
+        }
+        renderer.setRendererHints(hints);
+        renderer.addRenderListener(listener);
+        return renderer;
+    }
+
+    /**
+     * Splits the layers into contiguous groups that can be rendered independently, see the class
+     * javadoc for the rules. Returns a single group if the layers cannot be split.
+     */
+    List<List<Layer>> groupLayers(List<Layer> layers) {
+        List<List<Layer>> groups = new ArrayList<>();
+        int size = layers.size();
+        if (size < 2 || maxGroups < 2) {
+            groups.add(layers);
+            return groups;
+        }
+
+        // find the range of layers that can start a new group
+        int lastBlending = 0;
+        int firstLabel = size;
+        for (int i = 0; i < size; i++) {
+            Layer layer = layers.get(i);
+            if (!(layer instanceof StyleLayer)) {
+                // cannot inspect the rendering, keep it sequential
+                groups.add(layers);
+                return groups;
+            }
+            StyleFeatures features = new StyleFeatures(((StyleLayer) layer).getStyle());
+            if (features.sortByGroup) {
+                groups.add(layers);
+                return groups;
+            }
+            if (features.blending) {
+                lastBlending = i;
+            }
+            if (features.labels && firstLabel == size) {
+                firstLabel = i;
+            }
+        }
+
+        // units that cannot be split: the bottom layers, each free layer, the label layers
+        List<List<Layer>> units = new ArrayList<>();
+        int start = lastBlending + 1;
+        int end = Math.max(start, firstLabel);
+        units.add(layers.subList(0, start));
+        for (int i = start; i < end; i++) {
+            units.add(layers.subList(i, i + 1));
+        }
+        if (end < size) {
+            units.add(layers.subList(end, size));
+        }
+
+        // merge the units into at most maxGroups groups, trying to balance the layer count
+        int target = (size + maxGroups - 1) / maxGroups;
+        List<Layer> current = new ArrayList<>();
+        for (List<Layer> unit : units) {
+            if (!current.isEmpty()
+                    && current.size() + unit.size() > target
+                    && groups.size() < maxGroups - 1) {
+                groups.add(current);
+                current = new ArrayList<>();
+            }
+            current.addAll(unit);
+        }
+        groups.add(current);
+        return groups;
+    }
+
+    /** The style features affecting the layer grouping */
+    static class StyleFeatures {
+        boolean labels;
+
+        boolean blending;
+
+        boolean sortByGroup;
+
+        StyleFeatures(Style style) {
+            if (style == null) {
+                return;
+            }
+            for (FeatureTypeStyle fts : style.featureTypeStyles()) {
+                Map<String, String> options = fts.getOptions();
+                if (options != null) {
+                    blending |=
+                            options.containsKey(FeatureTypeStyle.COMPOSITE)
+                                    || options.containsKey(FeatureTypeStyle.COMPOSITE_BASE);
+                    sortByGroup |= options.containsKey(FeatureTypeStyle.SORT_BY_GROUP);
+                }
+                for (Rule rule : fts.rules()) {
+                    for (Symbolizer symbolizer : rule.symbolizers()) {
+                        if (symbolizer instanceof TextSymbolizer
+                                || (symbolizer.getOptions() != null
+                                        && symbolizer.getOptions().containsKey("labelObstacle"))) {
+                            labels = true;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /** Forwards the events to the listeners of this renderer, one at a time */
+    class SerializedRenderListener implements RenderListener {
+
+        /** The position of the layers in the map */
+        private final Map<Layer, Integer> positions = new IdentityHashMap<>();
+
+        SerializedRenderListener(List<Layer> layers) {
+            for (int i = 0; i < layers.size(); i++) {
+                positions.put(layers.get(i), i);
+            }
+        }
+
+        @Override
+        public synchronized void featureRenderer(SimpleFeature feature) {
+            for (RenderListener listener : listeners) {
+                listener.featureRenderer(feature);
+            }
+        }
+
+        @Override
+        public synchronized void errorOccurred(Exception e) {
+            for (RenderListener listener : listeners) {
+                listener.errorOccurred(e);
+            }
+        }
+
+        @Override
+        public synchronized void layerStart(Layer layer) {
+            Integer position = positions.get(layer);
+            for (RenderListener listener : listeners) {
+                if (listener instanceof RenderTimeStatistics && position != null) {
+                    ((RenderTimeStatistics) listener).layerStart(position, layer);
+                } else {
+                    listener.layerStart(layer);
+                }
+            }
+        }
+
+        @Override
+        public synchronized void layerEnd(Layer layer) {
+            for (RenderListener listener : listeners) {
+                listener.layerEnd(layer);
+            }
+        }
+
+        @Override
+        public synchronized void labellingStart() {
+            for (RenderListener listener : listeners) {
+                listener.labellingStart();
+            }
+        }
+
+        @Override
+        public synchronized void labellingEnd() {
+            for (RenderListener listener : listeners) {
+                listener.labellingEnd();
+            }
+        }
+    }
+}
@@ -5,18 +5,31 @@
  */
 package org.geoserver.wms.map;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.geoserver.catalog.MetadataMap;
 import org.geoserver.config.ConfigurationListenerAdapter;
 import org.geoserver.config.GeoServer;
 import org.geoserver.config.GeoServerInfo;
@@ -30,10 +43,40 @@ import org.geoserver.wms.GetMapRequest;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.CRS.AxisOrder;
-import org.geotools.util.CanonicalSet;
+import org.geotools.util.logging.Logging;
 import org.locationtech.jts.geom.Envelope;
 
+/**
+ * Caches the tiles of the meta-tiles rendered for {@code tiled=true} GetMap requests, so that the
+ * other tiles of the same meta-tile can be served without rendering again.
+ *
+ * <p>The cache is bounded by the estimated memory footprint of the tiles, and entries expire after
+ * a short time to live, both can be configured via the {@link #MAX_WEIGHT_KEY} and {@link
+ * #TIME_TO_LIVE_KEY} keys in the global settings metadata. Concurrent requests for tiles in the
+ * same meta-tile are coalesced, only one of them renders the meta-tile while the others wait for
+ * the result, see {@link #getTiles(MetaTileKey, MetaTileRenderer)}.
+ */
 public class QuickTileCache implements TransactionListener, GeoServerLifecycleHandler {
+
+    static final Logger LOGGER = Logging.getLogger(QuickTileCache.class);
+
+    /** Key in the global settings metadata holding the maximum cache size, in bytes */
+    public static final String MAX_WEIGHT_KEY = "metaTileCacheMaxWeight";
+
+    /** Key in the global settings metadata holding the time to live of the tiles, in seconds */
+    public static final String TIME_TO_LIVE_KEY = "metaTileCacheTimeToLive";
+
+    /** Default maximum cache size, in bytes */
+    public static final long MAX_WEIGHT_DEFAULT = 64 * 1024 * 1024;
+
+    /** Default time to live, in seconds, enough to serve the other tiles of the meta-tile */
+    public static final long TIME_TO_LIVE_DEFAULT = 60;
+
+    /** Renders a meta-tile and splits it into tiles */
+    public interface MetaTileRenderer {
+        RenderedImage[] render() throws IOException;
+    }
+
     /**
      * Set of parameters that we can ignore, since they do not define a map, are either unrelated,
      * or define the tiling instead
@@ -52,12 +95,30 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
         ignoredParameters.add("EXCEPTIONS");
     }
 
-    /** Canonicalizer used to return the same object when two threads ask for the same meta-tile */
-    private CanonicalSet<MetaTileKey> metaTileKeys = CanonicalSet.newInstance(MetaTileKey.class);
+    private volatile Cache<MetaTileKey, CacheElement> tileCache =
+            buildCache(MAX_WEIGHT_DEFAULT, TIME_TO_LIVE_DEFAULT);
+
+    /** The meta-tiles being rendered, used to coalesce concurrent requests for the same one */
+    private final ConcurrentHashMap<MetaTileKey, CompletableFuture<RenderedImage[]>> inFlight =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Incremented on every invalidation, meta-tiles whose rendering started before an invalidation
+     * are not cached, as they might contain stale data
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /** The statistics of the caches replaced by a configuration change, summed up */
+    private CacheStats retiredStats = new CacheStats(0, 0, 0, 0, 0, 0);
+
+    private long maxWeight = MAX_WEIGHT_DEFAULT;
 
-    private WeakHashMap tileCache = new WeakHashMap();
+    private long timeToLive = TIME_TO_LIVE_DEFAULT;
 
     public QuickTileCache(GeoServer geoServer) {
+        if (geoServer.getGlobal() != null) {
+            configure(geoServer.getGlobal());
+        }
         geoServer.addListener(
                 new ConfigurationListenerAdapter() {
                     public void handleGlobalChange(
@@ -65,7 +126,8 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
                             List<String> propertyNames,
                             List<Object> oldValues,
                             List<Object> newValues) {
-                        tileCache.clear();
+                        invalidateAll();
+                        configure(global);
                     }
 
                     public void handleServiceChange(
@@ -73,11 +135,12 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
                             List<String> propertyNames,
                             List<Object> oldValues,
                             List<Object> newValues) {
-                        tileCache.clear();
+                        invalidateAll();
                     }
 
                     public void reloaded() {
-                        tileCache.clear();
+                        invalidateAll();
+                        configure(geoServer.getGlobal());
                     }
                 });
     }
@@ -85,6 +148,59 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
     /** For testing only */
     QuickTileCache() {}
 
+    /** For testing only */
+    QuickTileCache(long maxWeight, long timeToLive) {
+        this.maxWeight = maxWeight;
+        this.timeToLive = timeToLive;
+        this.tileCache = buildCache(maxWeight, timeToLive);
+    }
+
+    /** Sets up the cache bounds from the global settings metadata */
+    void configure(GeoServerInfo global) {
+        long maxWeight = MAX_WEIGHT_DEFAULT;
+        long timeToLive = TIME_TO_LIVE_DEFAULT;
+        MetadataMap metadata = global != null ? global.getMetadata() : null;
+        if (metadata != null) {
+            Long weight = metadata.get(MAX_WEIGHT_KEY, Long.class);
+            if (weight != null && weight >= 0) {
+                maxWeight = weight;
+            }
+            Long ttl = metadata.get(TIME_TO_LIVE_KEY, Long.class);
+            if (ttl != null && ttl >= 0) {
+                timeToLive = ttl;
+            }
+        }
+        synchronized (this) {
+            if (maxWeight != this.maxWeight || timeToLive != this.timeToLive) {
+                LOGGER.config(
+                        "Meta tile cache max weight set to "
+                                + maxWeight
+                                + " bytes, time to live "
+                                + timeToLive
+                                + " seconds");
+                this.maxWeight = maxWeight;
+                this.timeToLive = timeToLive;
+                this.retiredStats = retiredStats.plus(tileCache.stats());
+                this.tileCache = buildCache(maxWeight, timeToLive);
+            }
+        }
+    }
+
+    private static Cache<MetaTileKey, CacheElement> buildCache(long maxWeight, long timeToLive) {
+        CacheBuilder<MetaTileKey, CacheElement> builder =
+                CacheBuilder.newBuilder()
+                        // the weight bound is split among segments, with few large entries
+                        // a single one is needed to avoid evicting a meta tile right away
+                        .concurrencyLevel(1)
+                        .maximumWeight(maxWeight)
+                        .weigher((MetaTileKey k, CacheElement v) -> v.weight)
+                        .recordStats();
+        if (timeToLive > 0) {
+            builder.expireAfterWrite(timeToLive, TimeUnit.SECONDS);
+        }
+        return builder.build();
+    }
+
     /**
      * Given a tiled request, builds a key that can be used to access the cache looking for a
      * specific meta-tile, and also as a synchronization tool to avoid multiple requests to trigger
@@ -115,12 +231,7 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
         Point tileCoords = getTileCoordinates(bbox, origin);
         Point metaTileCoords = getMetaTileCoordinates(tileCoords);
         ReferencedEnvelope metaTileEnvelope = getMetaTileEnvelope(bbox, tileCoords, metaTileCoords);
-        MetaTileKey key = new MetaTileKey(mapKey, metaTileCoords, metaTileEnvelope);
-
-        // since this will be used for thread synchronization, we have to make
-        // sure two thread asking for the same meta tile will get the same key
-        // object
-        return metaTileKeys.unique(key);
+        return new MetaTileKey(mapKey, metaTileCoords, metaTileEnvelope);
     }
 
     private ReferencedEnvelope getMetaTileEnvelope(
@@ -346,8 +457,8 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
      * @param key
      * @param request
      */
-    public synchronized RenderedImage getTile(MetaTileKey key, GetMapRequest request) {
-        CacheElement ce = (CacheElement) tileCache.get(key);
+    public RenderedImage getTile(MetaTileKey key, GetMapRequest request) {
+        CacheElement ce = tileCache.getIfPresent(key);
 
         if (ce == null) {
             return null;
@@ -356,6 +467,56 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
         return getTile(key, request, ce.tiles);
     }
 
+    /**
+     * Returns the tiles of the meta-tile, from the cache if available, or else using the renderer.
+     * If another thread is already rendering the same meta-tile, waits for its result instead of
+     * rendering it again. Should that rendering fail, the current thread will try on its own.
+     *
+     * @param key The meta-tile key
+     * @param renderer Renders the meta-tile, called only if necessary
+     * @return The meta-tile tiles
+     */
+    public RenderedImage[] getTiles(MetaTileKey key, MetaTileRenderer renderer)
+            throws IOException {
+        while (true) {
+            CacheElement ce = tileCache.getIfPresent(key);
+            if (ce != null) {
+                return ce.tiles;
+            }
+
+            CompletableFuture<RenderedImage[]> future = new CompletableFuture<>();
+            CompletableFuture<RenderedImage[]> existing = inFlight.putIfAbsent(key, future);
+            if (existing == null) {
+                long startGeneration = generation.get();
+                try {
+                    RenderedImage[] tiles = renderer.render();
+                    if (startGeneration == generation.get()) {
+                        tileCache.put(key, new CacheElement(tiles));
+                    }
+                    future.complete(tiles);
+                    return tiles;
+                } catch (IOException | RuntimeException | Error e) {
+                    future.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    inFlight.remove(key, future);
+                }
+            }
+
+            try {
+                return existing.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for meta tile " + key);
+            } catch (ExecutionException e) {
+                // the other rendering failed, loop and try again
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.log(Level.FINE, "Concurrent rendering of meta tile failed", e);
+                }
+            }
+        }
+    }
+
     /**
      * @param key
      * @param request
@@ -379,16 +540,56 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
      * @param request
      * @param tiles
      */
-    public synchronized void storeTiles(MetaTileKey key, RenderedImage[] tiles) {
+    public void storeTiles(MetaTileKey key, RenderedImage[] tiles) {
         tileCache.put(key, new CacheElement(tiles));
     }
 
-    class CacheElement {
+    /** Removes all the tiles from the cache, and prevents in flight renderings from being cached */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        tileCache.invalidateAll();
+    }
+
+    /** Returns the number of meta-tiles in the cache */
+    public long size() {
+        return tileCache.size();
+    }
+
+    /**
+     * Returns the hit, miss and eviction statistics of the cache, accumulated across the
+     * configuration changes
+     */
+    public synchronized CacheStats getStatistics() {
+        return retiredStats.plus(tileCache.stats());
+    }
+
+    static class CacheElement {
         RenderedImage[] tiles;
 
+        /** Estimated memory footprint, in bytes */
+        int weight;
+
         public CacheElement(RenderedImage[] tiles) {
             this.tiles = tiles;
+            this.weight = estimateWeight(tiles);
+        }
+    }
+
+    /** Estimates the memory footprint of the tiles, based on their size and sample model */
+    static int estimateWeight(RenderedImage[] tiles) {
+        long weight = 0;
+        for (RenderedImage tile : tiles) {
+            if (tile == null) {
+                continue;
+            }
+            SampleModel sm = tile.getSampleModel();
+            int bitsPerPixel = 0;
+            for (int size : sm.getSampleSize()) {
+                bitsPerPixel += size;
+            }
+            weight += (long) tile.getWidth() * tile.getHeight() * Math.max(bitsPerPixel / 8, 1);
         }
+        return (int) Math.min(weight, Integer.MAX_VALUE);
     }
 
     public void dataStoreChange(TransactionEvent event) throws WFSException {
@@ -396,18 +597,18 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
         // contains a string with part of the map request where the layer
         // name is included, but we would have to parse it and consider
         // also that the namespace may be missing in the getmap request
-        tileCache.clear();
+        invalidateAll();
     }
 
     @Override
     public void onReset() {
         // data might have changed in the meantime
-        tileCache.clear();
+        invalidateAll();
     }
 
     @Override
     public void onDispose() {
-        tileCache.clear();
+        invalidateAll();
     }
 
     public void beforeReload() {
@@ -416,6 +617,6 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
 
     @Override
     public void onReload() {
-        tileCache.clear();
+        invalidateAll();
     }
 }
@@ -24,6 +24,7 @@ public class RenderTimeStatistics implements RenderListener {
     private Long endRenderingLabelsTimes;
     private int index = 0;
     private List<Integer> renderingLayersIdxs;
+    private Map<Integer, Integer> layerPositions;
 
     public RenderTimeStatistics() {
         this.layers = new LinkedList<>();
@@ -31,6 +32,7 @@ public class RenderTimeStatistics implements RenderListener {
         this.endRenderingLayersTimes = new HashMap<Integer, Long>();
         this.renderingLayersTimes = new HashMap<Integer, Long>();
         this.renderingLayersIdxs = new ArrayList<Integer>();
+        this.layerPositions = new HashMap<Integer, Integer>();
     }
 
     @Override
@@ -47,6 +49,16 @@ public class RenderTimeStatistics implements RenderListener {
         index++;
     }
 
+    /**
+     * Records the start of the layer at the given position in the map, for renderers that do not
+     * start the layers in map order. The statistics are sorted by position once rendering is
+     * complete.
+     */
+    public void layerStart(int position, Layer layer) {
+        layerPositions.put(index, position);
+        layerStart(layer);
+    }
+
     @Override
     public void layerEnd(Layer layer) {
         Integer key = layers.indexOf(layer);
@@ -76,9 +88,28 @@ public class RenderTimeStatistics implements RenderListener {
                 startRenderingLabelsTimes != null && endRenderingLabelsTimes != null
                         ? endRenderingLabelsTimes - startRenderingLabelsTimes
                         : 0L;
+        if (!layerPositions.isEmpty()) {
+            sortByPosition();
+        }
         addSelfAsRequestAttribute();
     }
 
+    /** Renumbers the layers and their rendering times following their position in the map */
+    private void sortByPosition() {
+        List<Integer> sorted = new ArrayList<>(renderingLayersIdxs);
+        sorted.sort(Comparator.comparing(idx -> layerPositions.getOrDefault(idx, idx)));
+        List<Layer> sortedLayers = new LinkedList<>();
+        Map<Integer, Long> sortedTimes = new HashMap<>();
+        for (int i = 0; i < sorted.size(); i++) {
+            Integer idx = sorted.get(i);
+            sortedLayers.add(layers.get(idx));
+            sortedTimes.put(i, renderingLayersTimes.get(idx));
+        }
+        layers = sortedLayers;
+        renderingLayersTimes = sortedTimes;
+        layerPositions.clear();
+    }
+
     public Long getRenderingTime(Integer layerId) {
         return renderingLayersTimes.get(layerId);
     }
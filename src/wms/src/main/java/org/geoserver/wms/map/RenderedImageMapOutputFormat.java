@@ -41,6 +41,7 @@ import javax.media.jai.ROIShape;
 import javax.media.jai.operator.ConstantDescriptor;
 import javax.media.jai.operator.MosaicDescriptor;
 import org.geoserver.catalog.LayerInfo;
+import org.geoserver.ows.Dispatcher;
 import org.geoserver.platform.GeoServerResourceLoader;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.platform.resource.Resource;
@@ -85,6 +86,7 @@ import org.geotools.renderer.lite.gridcoverage2d.GridCoverageRenderer;
 import org.geotools.styling.RasterSymbolizer;
 import org.geotools.styling.Style;
 import org.geotools.util.logging.Logging;
+import org.locationtech.jts.geom.Envelope;
 import org.opengis.coverage.grid.Format;
 import org.opengis.feature.Feature;
 import org.opengis.feature.type.FeatureType;
@@ -510,6 +512,22 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
             } catch (Exception e) {
                 throw new ServiceException(e);
             }
+        } else {
+            // meta tile rendered by the tile cache, sharing the labels with its neighbours?
+            try {
+                Envelope coreArea = SharedLabelIndex.getCoreArea(Dispatcher.REQUEST.get());
+                if (coreArea != null) {
+                    SharedLabelIndex index = SharedLabelIndex.get(mapContent);
+                    rendererParams.put(
+                            StreamingRenderer.LABEL_CACHE_KEY,
+                            new SharedLabelCache(
+                                    index, mapContent.getRenderingTransform(), coreArea));
+                }
+            } catch (ServiceException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new ServiceException(e);
+            }
         }
 
         boolean kmplacemark = false;
@@ -676,9 +694,14 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
 
     /**
      * Creates a {@link StreamingRenderer} instance (subclasses can provide their own specialized
-     * subclasses of {@link StreamingRenderer}
+     * subclasses of {@link StreamingRenderer}. When parallel layer rendering is enabled a {@link
+     * ParallelLayerRenderer} is returned.
      */
     protected StreamingRenderer buildRenderer() {
+        int threads = DefaultWebMapService.getParallelLayerRenderingThreads();
+        if (threads > 1) {
+            return new ParallelLayerRenderer(DefaultWebMapService.getLayerRenderingPool(), threads);
+        }
         return new StreamingRenderer();
     }
 
@@ -16,6 +16,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.List;
 import java.util.function.Function;
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.Operation;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wms.GetMapOutputFormat;
@@ -162,8 +163,12 @@ public abstract class RenderedImageMapResponse extends AbstractMapResponse {
             if (icm != null) {
                 image = forceIndexed8Bitmask(image, PaletteManager.getInverseColorMapOp(icm));
             } else if (palettedFormatCheck.apply(format)) {
-                // or format that needs palette to be applied?
-                image = forceIndexed8Bitmask(image, null);
+                // or format that needs palette to be applied, is there a learned one?
+                icm = getCachedPalette(image, mapContent, true);
+                image =
+                        forceIndexed8Bitmask(
+                                image,
+                                icm != null ? PaletteManager.getInverseColorMapOp(icm) : null);
             }
         } else {
             if (!(image.getColorModel() instanceof IndexColorModel)) {
@@ -175,8 +180,11 @@ public abstract class RenderedImageMapResponse extends AbstractMapResponse {
                                 .getRenderedImage();
                 ColorIndexer indexer = null;
 
-                // user provided palette?
-                if (mapContent.getPalette() != null) {
+                // no user provided palette, is there a learned one?
+                if (icm == null && palettedFormatCheck.apply(format)) {
+                    icm = getCachedPalette(image, mapContent, false);
+                }
+                if (icm != null) {
                     indexer = new CachingColorIndexer(new LRUColorIndexer(icm, 1024));
                 } else if (palettedFormatCheck.apply(format)) {
                     // build the palette and grab the optimized color indexer
@@ -193,6 +201,22 @@ public abstract class RenderedImageMapResponse extends AbstractMapResponse {
         return image;
     }
 
+    /**
+     * Returns the palette learned by the {@link PaletteCache} for this map, if the cache is enabled
+     * and has seen enough images of it, null otherwise
+     */
+    private IndexColorModel getCachedPalette(
+            RenderedImage image, WMSMapContent mapContent, boolean bitmask) {
+        if (image.getColorModel() instanceof IndexColorModel) {
+            return null;
+        }
+        PaletteCache cache = GeoServerExtensions.bean(PaletteCache.class);
+        if (cache == null || !cache.isEnabled()) {
+            return null;
+        }
+        return cache.getPalette(mapContent, image, bitmask);
+    }
+
     /**
      * Applies a transformation to 8 bits + palette in case the user requested a specific palette or
      * the palette format has been requested, applying a bitmask or translucent palette inverter
@@ -0,0 +1,96 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+import org.geotools.renderer.label.LabelCacheImpl;
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * A label cache consulting a {@link SharedLabelIndex} before placing labels: the areas of the
+ * labels painted by the neighbouring meta tiles are reserved, and the labels painted over the core
+ * area of this meta tile are added to the index once done. This prevents the labels placed in the
+ * buffer area from overlapping, and being cut by, the labels already painted in the neighbouring
+ * tiles.
+ *
+ * <p>Labels already recorded that cross into the core area are not reserved, as the current meta
+ * tile has to paint its part of them too, but nothing forces it to place them the same way. Point
+ * labels usually end up in the same position, while line and polygon labels depend on the
+ * geometries clipped to the meta tile, and can be placed elsewhere, showing up cut in the
+ * neighbouring tiles and duplicated in the current ones. The index only reduces these cases, it
+ * does not remove them.
+ */
+class SharedLabelCache extends LabelCacheImpl {
+
+    private final SharedLabelIndex index;
+
+    private final AffineTransform worldToScreen;
+
+    private final AffineTransform screenToWorld;
+
+    private final Envelope coreArea;
+
+    /**
+     * Builds a new shared label cache
+     *
+     * @param index the index shared with the other meta tiles
+     * @param worldToScreen the transformation from the map coordinates to the image ones
+     * @param coreArea the area of the meta tile, without the buffer, in map coordinates
+     */
+    public SharedLabelCache(
+            SharedLabelIndex index, AffineTransform worldToScreen, Envelope coreArea)
+            throws NoninvertibleTransformException {
+        this.index = index;
+        this.worldToScreen = worldToScreen;
+        this.screenToWorld = worldToScreen.createInverse();
+        this.coreArea = coreArea;
+    }
+
+    @Override
+    public void end(Graphics2D graphics, Rectangle displayArea) {
+        // keep away from the labels already painted by the neighbours
+        List<Rectangle2D> reserved = new ArrayList<>();
+        for (Envelope label : index.query(transform(displayArea, screenToWorld))) {
+            if (!label.intersects(coreArea)) {
+                reserved.add(transform(label, worldToScreen));
+            }
+        }
+        if (!reserved.isEmpty()) {
+            addToReservedArea(reserved);
+        }
+
+        LabelBoundsRecorder recorder = new LabelBoundsRecorder(graphics);
+        super.end(recorder, displayArea);
+
+        // labels painted only in the buffer are not visible in any tile, skip them
+        for (Rectangle2D bounds : recorder.getBounds()) {
+            Envelope label = transform(bounds, screenToWorld);
+            if (label.intersects(coreArea)) {
+                index.add(label);
+            }
+        }
+    }
+
+    private static Envelope transform(Rectangle2D bounds, AffineTransform tx) {
+        Rectangle2D r = tx.createTransformedShape(bounds).getBounds2D();
+        return new Envelope(r.getMinX(), r.getMaxX(), r.getMinY(), r.getMaxY());
+    }
+
+    private static Rectangle2D transform(Envelope envelope, AffineTransform tx) {
+        Rectangle2D r =
+                new Rectangle2D.Double(
+                        envelope.getMinX(),
+                        envelope.getMinY(),
+                        envelope.getWidth(),
+                        envelope.getHeight());
+        return tx.createTransformedShape(r).getBounds2D();
+    }
+}
@@ -0,0 +1,260 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import javax.servlet.http.HttpServletRequest;
+import org.geoserver.ows.LocalWorkspace;
+import org.geoserver.ows.Request;
+import org.geoserver.platform.ServiceException;
+import org.geoserver.wms.WMSMapContent;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.util.logging.Logging;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.quadtree.Quadtree;
+
+/**
+ * A spatial index of the labels placed by the meta tiles of a tile cache seeding, shared by all the
+ * meta tiles of the same map at the same resolution. Each meta tile reserves the areas of the
+ * labels already painted by its neighbours, so that it does not place labels in its buffer area
+ * that would collide with them, and then records the labels it painted over its own tiles.
+ *
+ * <p>The index is used when the GetMap request carries the {@link #CORE_AREA_KEY} HTTP request
+ * attribute, which is set by the tile cache on its own internal requests when the {@code
+ * sharedLabelIndex} WMS metadata flag is enabled. The indexes are released after {@link
+ * #TIME_TO_LIVE} seconds without being used, when the layers they contain change or their tiles are
+ * truncated. The labels kept by all the indexes together are capped to {@link #MAX_TOTAL_LABELS}.
+ */
+public class SharedLabelIndex {
+
+    static final Logger LOGGER = Logging.getLogger(SharedLabelIndex.class);
+
+    /**
+     * HTTP request attribute holding the area of the meta tile without the buffer, as {@code
+     * minx,miny,maxx,maxy}. Its presence enables the shared label index
+     */
+    public static final String CORE_AREA_KEY = "org.geoserver.wms.map.SharedLabelIndex.coreArea";
+
+    /** Time to live of an index that is not being used, in seconds */
+    static final long TIME_TO_LIVE =
+            Long.getLong("org.geoserver.wms.map.sharedLabelIndexTimeToLive", 600);
+
+    /** Maximum number of labels kept in a single index */
+    static final int MAX_LABELS =
+            Integer.getInteger("org.geoserver.wms.map.sharedLabelIndexMaxLabels", 100000);
+
+    /** Maximum number of labels kept by all the indexes together */
+    static final long MAX_TOTAL_LABELS =
+            Long.getLong("org.geoserver.wms.map.sharedLabelIndexMaxTotalLabels", 250000);
+
+    /** Maximum number of indexes kept in memory */
+    static final int MAX_INDEXES = 64;
+
+    /** Parameters changing from one meta tile to the next */
+    private static final Set<String> IGNORED_PARAMETERS = new HashSet<>();
+
+    static {
+        IGNORED_PARAMETERS.add("BBOX");
+        IGNORED_PARAMETERS.add("WIDTH");
+        IGNORED_PARAMETERS.add("HEIGHT");
+    }
+
+    /** Number of labels kept by all the indexes */
+    private static final AtomicLong TOTAL_LABELS = new AtomicLong();
+
+    private static final Cache<String, SharedLabelIndex> INDEXES =
+            CacheBuilder.newBuilder()
+                    .maximumSize(MAX_INDEXES)
+                    .expireAfterAccess(TIME_TO_LIVE, TimeUnit.SECONDS)
+                    .removalListener(
+                            (RemovalListener<String, SharedLabelIndex>)
+                                    n -> n.getValue().release())
+                    .build();
+
+    /**
+     * Returns the core area of the meta tile, or null if the request does not ask for a shared
+     * label index
+     *
+     * @throws ServiceException if the core area is not valid
+     */
+    public static Envelope getCoreArea(Request request) {
+        HttpServletRequest httpRequest = request != null ? request.getHttpRequest() : null;
+        Object value = httpRequest != null ? httpRequest.getAttribute(CORE_AREA_KEY) : null;
+        if (value == null || value.toString().trim().isEmpty()) {
+            return null;
+        }
+        String[] elements = value.toString().split(",");
+        if (elements.length != 4) {
+            throw invalidCoreArea(value, null);
+        }
+        double[] ordinates = new double[4];
+        for (int i = 0; i < 4; i++) {
+            try {
+                ordinates[i] = Double.parseDouble(elements[i].trim());
+            } catch (NumberFormatException e) {
+                throw invalidCoreArea(value, e);
+            }
+        }
+        return new Envelope(ordinates[0], ordinates[2], ordinates[1], ordinates[3]);
+    }
+
+    private static ServiceException invalidCoreArea(Object value, Throwable cause) {
+        return new ServiceException(
+                "Label index core area should contain minx,miny,maxx,maxy but was: " + value,
+                cause,
+                ServiceException.INVALID_PARAMETER_VALUE,
+                CORE_AREA_KEY);
+    }
+
+    /** Returns the index shared by all the meta tiles of the same map, at the same resolution */
+    public static SharedLabelIndex get(WMSMapContent mapContent) {
+        String key = getKey(mapContent);
+        try {
+            return INDEXES.get(key, () -> new SharedLabelIndex(getLayers(mapContent)));
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Drops all the indexes */
+    public static void clear() {
+        INDEXES.invalidateAll();
+    }
+
+    /** Drops the indexes of the maps containing the given layer */
+    public static void invalidate(String layerName) {
+        INDEXES.asMap().values().removeIf(index -> index.layers.contains(layerName));
+    }
+
+    /** Returns the number of labels kept by all the indexes */
+    static long getTotalLabels() {
+        return TOTAL_LABELS.get();
+    }
+
+    private static Set<String> getLayers(WMSMapContent mapContent) {
+        Set<String> layers = new HashSet<>();
+        Map<String, String> rawKvp = mapContent.getRequest().getRawKvp();
+        if (rawKvp != null) {
+            for (Map.Entry<String, String> e : rawKvp.entrySet()) {
+                if ("LAYERS".equalsIgnoreCase(e.getKey()) && e.getValue() != null) {
+                    for (String layer : e.getValue().split(",")) {
+                        // the tile cache uses the prefixed names, also on virtual services
+                        if (LocalWorkspace.get() != null && !layer.contains(":")) {
+                            layer = LocalWorkspace.get().getName() + ":" + layer;
+                        }
+                        layers.add(layer);
+                    }
+                }
+            }
+        }
+        return layers;
+    }
+
+    static String getKey(WMSMapContent mapContent) {
+        Map<String, String> sorted = new TreeMap<>();
+        Map<String, String> rawKvp = mapContent.getRequest().getRawKvp();
+        if (rawKvp != null) {
+            for (Map.Entry<String, String> e : rawKvp.entrySet()) {
+                String name = e.getKey().toUpperCase();
+                if (!IGNORED_PARAMETERS.contains(name)) {
+                    sorted.put(name, e.getValue());
+                }
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        if (LocalWorkspace.get() != null) {
+            sb.append(LocalWorkspace.get().getName()).append('/');
+        }
+        // labels placed at different zoom levels do not interact
+        ReferencedEnvelope bounds = mapContent.getRenderingArea();
+        double resolution = bounds.getWidth() / mapContent.getMapWidth();
+        sb.append(String.format(Locale.ENGLISH, "%.6g", resolution));
+        for (Map.Entry<String, String> e : sorted.entrySet()) {
+            sb.append('&').append(e.getKey()).append('=').append(e.getValue());
+        }
+        return sb.toString();
+    }
+
+    private final Set<String> layers;
+
+    private Quadtree labels = new Quadtree();
+
+    private boolean released;
+
+    private boolean full;
+
+    SharedLabelIndex(Set<String> layers) {
+        this.layers = layers;
+    }
+
+    /** Returns the bounds of the recorded labels intersecting the given area */
+    @SuppressWarnings("unchecked")
+    public synchronized List<Envelope> query(Envelope area) {
+        List<Envelope> result = new ArrayList<>();
+        for (Envelope label : (List<Envelope>) labels.query(area)) {
+            if (label.intersects(area)) {
+                result.add(label);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records the bounds of a label, unless the index or all the indexes together are already
+     * full, or the index has been dropped
+     */
+    public synchronized void add(Envelope label) {
+        if (released) {
+            return;
+        }
+        if (labels.size() >= MAX_LABELS) {
+            warnFull("the index reached " + MAX_LABELS + " labels");
+        } else if (TOTAL_LABELS.incrementAndGet() > MAX_TOTAL_LABELS) {
+            TOTAL_LABELS.decrementAndGet();
+            warnFull("the indexes reached " + MAX_TOTAL_LABELS + " labels overall");
+        } else {
+            labels.insert(label, label);
+        }
+    }
+
+    private void warnFull(String reason) {
+        if (!full) {
+            full = true;
+            LOGGER.warning(
+                    "Labels of "
+                            + layers
+                            + " are no longer shared across meta tiles, "
+                            + reason
+                            + ", labels might collide at the meta tile edges");
+        }
+    }
+
+    /** Returns the number of labels in the index */
+    public synchronized int size() {
+        return labels.size();
+    }
+
+    /** Frees the labels, once the index has been dropped from the cache */
+    private synchronized void release() {
+        if (!released) {
+            released = true;
+            TOTAL_LABELS.addAndGet(-labels.size());
+            labels = new Quadtree();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import org.geoserver.catalog.CatalogException;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.config.ConfigurationListenerAdapter;
+import org.geoserver.config.GeoServer;
+import org.geoserver.config.ServiceInfo;
+import org.geoserver.wms.WMSInfo;
+
+/**
+ * Drops the {@link SharedLabelIndex} indexes when the layers, styles or WMS configuration they
+ * depend on change, as the labels recorded in them might no longer be painted the same way
+ */
+public class SharedLabelIndexCleaner implements CatalogListener {
+
+    public SharedLabelIndexCleaner(GeoServer geoServer) {
+        geoServer.getCatalog().addListener(this);
+        geoServer.addListener(
+                new ConfigurationListenerAdapter() {
+                    public void handlePostServiceChange(ServiceInfo service) {
+                        if (service instanceof WMSInfo) {
+                            SharedLabelIndex.clear();
+                        }
+                    }
+
+                    public void reloaded() {
+                        SharedLabelIndex.clear();
+                    }
+                });
+    }
+
+    @Override
+    public void handleAddEvent(CatalogAddEvent event) throws CatalogException {
+        // a new layer or style does not change the existing maps
+    }
+
+    @Override
+    public void handleRemoveEvent(CatalogRemoveEvent event) throws CatalogException {
+        handleChange(event.getSource());
+    }
+
+    @Override
+    public void handleModifyEvent(CatalogModifyEvent event) throws CatalogException {
+        // wait for the post modify
+    }
+
+    @Override
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) throws CatalogException {
+        handleChange(event.getSource());
+    }
+
+    private void handleChange(Object source) {
+        if (source instanceof StyleInfo
+                || source instanceof LayerInfo
+                || source instanceof LayerGroupInfo
+                || source instanceof ResourceInfo) {
+            SharedLabelIndex.clear();
+        }
+    }
+
+    @Override
+    public void reloaded() {
+        SharedLabelIndex.clear();
+    }
+}
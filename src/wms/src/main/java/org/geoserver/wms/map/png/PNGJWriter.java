@@ -10,6 +10,7 @@ import it.geosolutions.imageio.plugins.png.PNGWriter;
 import java.awt.image.RenderedImage;
 import java.io.OutputStream;
 import org.geoserver.platform.ServiceException;
+import org.geoserver.wms.GetMapRequest;
 import org.geoserver.wms.WMSMapContent;
 import org.geotools.image.ImageWorker;
 import org.geotools.map.Layer;
@@ -24,10 +25,56 @@ import org.geotools.styling.Style;
  */
 public class PNGJWriter {
 
+    /** Format option selecting the encoding {@link Profile} */
+    public static final String PROFILE = "png_profile";
+
+    /** The encoding profiles */
+    public enum Profile {
+        /** Filtering and compression level chosen based on the map contents and configuration */
+        DEFAULT,
+        /** No scanline filtering and the lowest compression level, e.g., for tile seeding */
+        FAST
+    }
+
+    /** Deflate level used by the {@link Profile#FAST} profile */
+    static final int FAST_COMPRESSION_LEVEL = 1;
+
+    private final int threads;
+
+    public PNGJWriter() {
+        this(1);
+    }
+
+    /**
+     * Builds a writer using up to the given number of threads to encode each image. Values above
+     * one enable the parallel encoder, for the image types it supports
+     */
+    public PNGJWriter(int threads) {
+        this.threads = threads;
+    }
+
     public RenderedImage writePNG(
             RenderedImage image, OutputStream outStream, float quality, WMSMapContent mapContent) {
         // what kind of scaline filtering are we going to use?
-        FilterType filterType = getFilterType(mapContent);
+        FilterType filterType;
+        if (getProfile(mapContent) == Profile.FAST) {
+            filterType = FilterType.FILTER_NONE;
+            quality = 1 - FAST_COMPRESSION_LEVEL / 9f;
+        } else {
+            filterType = getFilterType(mapContent);
+        }
+
+        if (threads > 1 && ParallelPNGEncoder.isSupported(image)) {
+            int level = Math.round(9 * (1 - quality));
+            int filter = getParallelFilter(filterType);
+            try {
+                new ParallelPNGEncoder(threads, level, filter).encode(image, outStream);
+            } catch (Exception e) {
+                throw new ServiceException("Failed to encode the PNG", e);
+            }
+            return image;
+        }
+
         // Creation of a new PNGWriter object
         PNGWriter writer = new PNGWriter();
         // Check if a Scanline is supported by the writer
@@ -52,6 +99,18 @@ public class PNGJWriter {
         return output;
     }
 
+    /** Returns the encoding profile requested in the format options, if any */
+    private Profile getProfile(WMSMapContent mapContent) {
+        GetMapRequest request = mapContent != null ? mapContent.getRequest() : null;
+        if (request != null) {
+            Object profile = request.getFormatOptions().get(PROFILE);
+            if (profile != null && Profile.FAST.name().equalsIgnoreCase(profile.toString())) {
+                return Profile.FAST;
+            }
+        }
+        return Profile.DEFAULT;
+    }
+
     /**
      * SUB filtering is useful for raster images with "high" variation, otherwise we go for NONE,
      * empirically it provides better compression at lower effort
@@ -77,6 +136,22 @@ public class PNGJWriter {
         return FilterType.FILTER_NONE;
     }
 
+    /** Maps the filter type to the one used by the parallel encoder, which is not adaptive */
+    static int getParallelFilter(FilterType filterType) {
+        switch (filterType) {
+            case FILTER_SUB:
+                return ParallelPNGEncoder.FILTER_SUB;
+            case FILTER_UP:
+                return ParallelPNGEncoder.FILTER_UP;
+            case FILTER_AVERAGE:
+                return ParallelPNGEncoder.FILTER_AVERAGE;
+            case FILTER_PAETH:
+                return ParallelPNGEncoder.FILTER_PAETH;
+            default:
+                return ParallelPNGEncoder.FILTER_NONE;
+        }
+    }
+
     /**
      * Check if the style contains a "high change" raster symbolizer, that is, one that generates a
      * continuous set of values for which SUB filtering provides better results
@@ -0,0 +1,501 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map.png;
+
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Encodes 8 bit images in PNG using multiple threads, in the same way pigz does for gzip files.
+ * The image is split in stripes of rows, each stripe is filtered and deflated independently
+ * (priming the compressor with the tail of the previous stripe) and flushed on a byte boundary, so
+ * that the compressed stripes can be concatenated in a single zlib stream. Each stripe becomes an
+ * IDAT chunk, written in order as soon as it is ready.
+ *
+ * <p>Only 8 bit gray, gray-alpha, RGB, RGBA and up to 256 colors paletted images are supported,
+ * check with {@link #isSupported(RenderedImage)} before using the encoder. All the scanline filters
+ * are supported, the filters looking at the previous row read the last row of the previous stripe
+ * from the image. A single filter type is used for the whole image, no adaptive filtering.
+ *
+ * <p>The stripes are encoded by a pool shared by all the requests, sized after the number of cores
+ * (or the {@code org.geoserver.wms.pngEncoderPoolSize} system property). The calling thread
+ * encodes stripes too, so the image gets encoded even when the pool is saturated.
+ */
+class ParallelPNGEncoder {
+
+    static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+
+    /** The scanline filters supported by this encoder */
+    static final int FILTER_NONE = 0;
+
+    static final int FILTER_SUB = 1;
+
+    static final int FILTER_UP = 2;
+
+    static final int FILTER_AVERAGE = 3;
+
+    static final int FILTER_PAETH = 4;
+
+    /** Number of threads shared by all the images being encoded */
+    static final int POOL_SIZE =
+            Integer.getInteger(
+                    "org.geoserver.wms.pngEncoderPoolSize",
+                    Runtime.getRuntime().availableProcessors());
+
+    /** Target uncompressed size of a stripe, same as the pigz default block size */
+    static final int STRIPE_SIZE = 128 * 1024;
+
+    /** The deflate window, the amount of data used to prime the compressor of each stripe */
+    static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private static ExecutorService EXECUTOR;
+
+    static synchronized ExecutorService getExecutor() {
+        if (EXECUTOR == null) {
+            // no queue, workers are started only if there is an idle thread to run them
+            int size = Math.max(1, POOL_SIZE);
+            ThreadPoolExecutor executor =
+                    new ThreadPoolExecutor(
+                            size,
+                            size,
+                            60L,
+                            TimeUnit.SECONDS,
+                            new SynchronousQueue<>(),
+                            new EncoderThreadFactory());
+            executor.allowCoreThreadTimeOut(true);
+            EXECUTOR = executor;
+        }
+        return EXECUTOR;
+    }
+
+    private final int threads;
+
+    private final int compressionLevel;
+
+    private final int filter;
+
+    /**
+     * Builds a new encoder
+     *
+     * @param threads the maximum number of threads encoding an image
+     * @param compressionLevel the deflate compression level, between 0 and 9
+     * @param filter the scanline filter, between {@link #FILTER_NONE} and {@link #FILTER_PAETH}
+     */
+    public ParallelPNGEncoder(int threads, int compressionLevel, int filter) {
+        if (filter < FILTER_NONE || filter > FILTER_PAETH) {
+            throw new IllegalArgumentException("Unsupported scanline filter " + filter);
+        }
+        this.threads = Math.max(1, threads);
+        this.compressionLevel = Math.max(0, Math.min(9, compressionLevel));
+        this.filter = filter;
+    }
+
+    /** Returns true if the image can be encoded by this class */
+    public static boolean isSupported(RenderedImage image) {
+        SampleModel sm = image.getSampleModel();
+        ColorModel cm = image.getColorModel();
+        if (image.getWidth() <= 0
+                || image.getHeight() <= 0
+                || sm.getTransferType() != DataBuffer.TYPE_BYTE
+                || sm.getNumDataElements() != sm.getNumBands()) {
+            return false;
+        }
+        for (int size : sm.getSampleSize()) {
+            if (size != 8) {
+                return false;
+            }
+        }
+        if (cm instanceof IndexColorModel) {
+            return sm.getNumBands() == 1 && ((IndexColorModel) cm).getMapSize() <= 256;
+        } else if (cm instanceof ComponentColorModel) {
+            int bands = sm.getNumBands();
+            return bands >= 1
+                    && bands <= 4
+                    && cm.getNumComponents() == bands
+                    && !cm.isAlphaPremultiplied();
+        }
+        return false;
+    }
+
+    /** Encodes the image in PNG into the output stream */
+    public void encode(RenderedImage image, OutputStream out) throws IOException {
+        Layout layout = new Layout(image);
+        DataOutputStream dos = new DataOutputStream(out);
+        dos.write(SIGNATURE);
+        writeHeaders(image, dos);
+
+        // fire up the workers, each one grabbing the next stripe to encode until none is left,
+        // the calling thread is a worker too
+        int stripes = (layout.height + layout.stripeRows - 1) / layout.stripeRows;
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Stripe>[] results = new CompletableFuture[stripes];
+        for (int i = 0; i < stripes; i++) {
+            results[i] = new CompletableFuture<>();
+        }
+        AtomicInteger next = new AtomicInteger();
+        int workers = Math.min(threads, stripes) - 1;
+        for (int i = 0; i < workers; i++) {
+            try {
+                getExecutor()
+                        .execute(
+                                () -> {
+                                    int s;
+                                    while ((s = next.getAndIncrement()) < stripes) {
+                                        encodeStripe(layout, s, stripes, results[s]);
+                                    }
+                                });
+            } catch (RejectedExecutionException e) {
+                // the pool is saturated, go on with the workers started so far
+                break;
+            }
+        }
+
+        // write the stripes in order, combining their checksums, and encode the next stripe
+        // while waiting for the one to be written
+        try {
+            long adler = 1;
+            for (int i = 0; i < stripes; i++) {
+                int s;
+                while (!results[i].isDone() && (s = next.getAndIncrement()) < stripes) {
+                    encodeStripe(layout, s, stripes, results[s]);
+                }
+                Stripe stripe = results[i].get();
+                adler = adler32Combine(adler, stripe.adler, stripe.length);
+                byte[] data = stripe.data;
+                if (i == 0) {
+                    data = concat(zlibHeader(), data);
+                }
+                if (i == stripes - 1) {
+                    data = concat(data, ByteBuffer.allocate(4).putInt((int) adler).array());
+                }
+                writeChunk(dos, "IDAT", data);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while encoding the PNG image", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to encode the PNG image", e.getCause());
+        } finally {
+            // stop the workers in case of failure
+            next.set(stripes);
+        }
+        writeChunk(dos, "IEND", new byte[0]);
+        dos.flush();
+    }
+
+    private void writeHeaders(RenderedImage image, DataOutputStream dos) throws IOException {
+        ColorModel cm = image.getColorModel();
+        int colorType;
+        if (cm instanceof IndexColorModel) {
+            colorType = 3;
+        } else {
+            int bands = image.getSampleModel().getNumBands();
+            colorType = bands == 1 ? 0 : bands == 2 ? 4 : bands == 3 ? 2 : 6;
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(13);
+        DataOutputStream ihdr = new DataOutputStream(bos);
+        ihdr.writeInt(image.getWidth());
+        ihdr.writeInt(image.getHeight());
+        ihdr.writeByte(8); // bit depth
+        ihdr.writeByte(colorType);
+        ihdr.writeByte(0); // deflate compression
+        ihdr.writeByte(0); // adaptive filtering
+        ihdr.writeByte(0); // no interlace
+        writeChunk(dos, "IHDR", bos.toByteArray());
+
+        if (cm instanceof IndexColorModel) {
+            IndexColorModel icm = (IndexColorModel) cm;
+            int size = icm.getMapSize();
+            byte[] palette = new byte[size * 3];
+            byte[] alpha = new byte[size];
+            int lastTranslucent = -1;
+            for (int i = 0; i < size; i++) {
+                palette[i * 3] = (byte) icm.getRed(i);
+                palette[i * 3 + 1] = (byte) icm.getGreen(i);
+                palette[i * 3 + 2] = (byte) icm.getBlue(i);
+                alpha[i] = (byte) icm.getAlpha(i);
+                if (icm.getAlpha(i) != 255) {
+                    lastTranslucent = i;
+                }
+            }
+            writeChunk(dos, "PLTE", palette);
+            if (icm.getTransparency() != Transparency.OPAQUE && lastTranslucent >= 0) {
+                byte[] trns = new byte[lastTranslucent + 1];
+                System.arraycopy(alpha, 0, trns, 0, trns.length);
+                writeChunk(dos, "tRNS", trns);
+            }
+        }
+    }
+
+    private void encodeStripe(
+            Layout layout, int index, int stripes, CompletableFuture<Stripe> result) {
+        try {
+            result.complete(encodeStripe(layout, index, stripes));
+        } catch (Throwable t) {
+            result.completeExceptionally(t);
+        }
+    }
+
+    /** Filters and deflates a stripe, flushing the compressor on a byte boundary */
+    Stripe encodeStripe(Layout layout, int index, int stripes) {
+        int y0 = layout.minY + index * layout.stripeRows;
+        int y1 = Math.min(layout.minY + layout.height, y0 + layout.stripeRows);
+        byte[] filtered = filterRows(layout, y0, y1);
+
+        Deflater deflater = new Deflater(compressionLevel, true);
+        try {
+            if (index > 0) {
+                // prime the compressor with the end of the previous stripe, like pigz does
+                int dictionaryRows = (DICTIONARY_SIZE + layout.rowBytes - 1) / layout.rowBytes;
+                int dy0 = Math.max(layout.minY, y0 - dictionaryRows);
+                byte[] previous = filterRows(layout, dy0, y0);
+                int length = Math.min(DICTIONARY_SIZE, previous.length);
+                deflater.setDictionary(previous, previous.length - length, length);
+            }
+            deflater.setInput(filtered);
+            boolean last = index == stripes - 1;
+            if (last) {
+                deflater.finish();
+            }
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(filtered.length / 4 + 64);
+            byte[] buffer = new byte[16 * 1024];
+            if (last) {
+                while (!deflater.finished()) {
+                    int count = deflater.deflate(buffer);
+                    bos.write(buffer, 0, count);
+                }
+            } else {
+                int count;
+                do {
+                    count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    bos.write(buffer, 0, count);
+                } while (count == buffer.length);
+            }
+
+            Adler32 adler = new Adler32();
+            adler.update(filtered);
+            return new Stripe(bos.toByteArray(), adler.getValue(), filtered.length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /** Returns the filtered scanlines between y0 (included) and y1 (excluded) */
+    byte[] filterRows(Layout layout, int y0, int y1) {
+        int rows = y1 - y0;
+        byte[] result = new byte[rows * layout.rowBytes];
+        if (rows == 0) {
+            return result;
+        }
+        // the filters looking at the previous row need the last one of the previous stripe
+        boolean usePrevious = filter >= FILTER_UP && y0 > layout.minY;
+        int ry0 = usePrevious ? y0 - 1 : y0;
+        Raster raster =
+                layout.image.getData(new Rectangle(layout.minX, ry0, layout.width, y1 - ry0));
+        int pixelBytes = layout.bands;
+        byte[] row = new byte[layout.width * pixelBytes];
+        byte[] previous = new byte[row.length];
+        if (usePrevious) {
+            raster.getDataElements(layout.minX, ry0, layout.width, 1, previous);
+        }
+        int offset = 0;
+        for (int y = y0; y < y1; y++) {
+            raster.getDataElements(layout.minX, y, layout.width, 1, row);
+            result[offset++] = (byte) filter;
+            filterRow(row, previous, pixelBytes, result, offset);
+            offset += row.length;
+            byte[] swap = previous;
+            previous = row;
+            row = swap;
+        }
+        return result;
+    }
+
+    /** Filters a row given the previous one (all zeroes for the first row of the image) */
+    private void filterRow(byte[] row, byte[] previous, int pixelBytes, byte[] out, int offset) {
+        switch (filter) {
+            case FILTER_SUB:
+                System.arraycopy(row, 0, out, offset, pixelBytes);
+                for (int i = pixelBytes; i < row.length; i++) {
+                    out[offset + i] = (byte) (row[i] - row[i - pixelBytes]);
+                }
+                break;
+            case FILTER_UP:
+                for (int i = 0; i < row.length; i++) {
+                    out[offset + i] = (byte) (row[i] - previous[i]);
+                }
+                break;
+            case FILTER_AVERAGE:
+                for (int i = 0; i < row.length; i++) {
+                    int left = i >= pixelBytes ? row[i - pixelBytes] & 0xff : 0;
+                    out[offset + i] = (byte) (row[i] - ((left + (previous[i] & 0xff)) >> 1));
+                }
+                break;
+            case FILTER_PAETH:
+                for (int i = 0; i < row.length; i++) {
+                    int left = i >= pixelBytes ? row[i - pixelBytes] & 0xff : 0;
+                    int upLeft = i >= pixelBytes ? previous[i - pixelBytes] & 0xff : 0;
+                    int up = previous[i] & 0xff;
+                    out[offset + i] = (byte) (row[i] - paeth(left, up, upLeft));
+                }
+                break;
+            default:
+                System.arraycopy(row, 0, out, offset, row.length);
+        }
+    }
+
+    static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        } else if (pb <= pc) {
+            return b;
+        }
+        return c;
+    }
+
+    private byte[] zlibHeader() {
+        // CM = 8 (deflate) with a 32k window, the flags just report the compression effort
+        int effort;
+        if (compressionLevel <= 1) {
+            effort = 0;
+        } else if (compressionLevel <= 5) {
+            effort = 1;
+        } else if (compressionLevel == 6) {
+            effort = 2;
+        } else {
+            effort = 3;
+        }
+        int cmf = 0x78;
+        int flg = effort << 6;
+        flg += 31 - ((cmf << 8) + flg) % 31;
+        return new byte[] {(byte) cmf, (byte) flg};
+    }
+
+    static void writeChunk(DataOutputStream out, String type, byte[] data) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data);
+        out.writeInt(data.length);
+        out.write(typeBytes);
+        out.write(data);
+        out.writeInt((int) crc.getValue());
+    }
+
+    static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = new byte[a.length + b.length];
+        System.arraycopy(a, 0, result, 0, a.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    /**
+     * Combines the Adler-32 checksums of two consecutive sequences, given the length of the second
+     * one (a port of zlib's adler32_combine)
+     */
+    static long adler32Combine(long adler1, long adler2, long length2) {
+        final long base = 65521;
+        long rem = length2 % base;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (rem * sum1) % base;
+        sum1 += (adler2 & 0xffff) + base - 1;
+        sum2 += ((adler1 >>> 16) & 0xffff) + ((adler2 >>> 16) & 0xffff) + base - rem;
+        if (sum1 >= base) sum1 -= base;
+        if (sum1 >= base) sum1 -= base;
+        if (sum2 >= (base << 1)) sum2 -= (base << 1);
+        if (sum2 >= base) sum2 -= base;
+        return sum1 | (sum2 << 16);
+    }
+
+    /** The image geometry, shared by all stripes */
+    static class Layout {
+        final RenderedImage image;
+
+        final int minX;
+
+        final int minY;
+
+        final int width;
+
+        final int height;
+
+        final int bands;
+
+        /** Bytes of a filtered row, including the filter type byte */
+        final int rowBytes;
+
+        final int stripeRows;
+
+        Layout(RenderedImage image) {
+            this.image = image;
+            this.minX = image.getMinX();
+            this.minY = image.getMinY();
+            this.width = image.getWidth();
+            this.height = image.getHeight();
+            this.bands = image.getSampleModel().getNumBands();
+            this.rowBytes = width * bands + 1;
+            this.stripeRows = Math.max(1, STRIPE_SIZE / rowBytes);
+        }
+    }
+
+    /** A compressed stripe, along with the checksum and length of its uncompressed data */
+    static class Stripe {
+        final byte[] data;
+
+        final long adler;
+
+        final long length;
+
+        Stripe(byte[] data, long adler, long length) {
+            this.data = data;
+            this.adler = adler;
+            this.length = length;
+        }
+    }
+
+    static class EncoderThreadFactory implements ThreadFactory {
+        final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "png-encoder-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.util.HashMap;
+import java.util.Map;
+import org.geoserver.catalog.event.impl.CatalogPostModifyEventImpl;
+import org.geoserver.catalog.impl.StyleInfoImpl;
+import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.WMSMapContent;
+import org.junit.Test;
+
+public class PaletteCacheTest {
+
+    PaletteCache cache = new PaletteCache(3, PaletteCache.MAX_WEIGHT_DEFAULT, 0);
+
+    @Test
+    public void testLearnPalette() {
+        BufferedImage image = image();
+        for (int i = 0; i < 2; i++) {
+            assertNull(cache.getPalette(mapContent("roads", "0,0,10," + i), image, false));
+        }
+        IndexColorModel palette = cache.getPalette(mapContent("roads", "0,0,10,3"), image, false);
+        assertNotNull(palette);
+        assertTrue(palette.getMapSize() <= 256);
+        // the same palette is returned for any other extent
+        assertSame(palette, cache.getPalette(mapContent("roads", "5,5,20,20"), image, false));
+        // but not for a different style, or another kind of palette
+        assertNull(cache.getPalette(mapContent("rivers", "0,0,10,10"), image, false));
+        assertNull(cache.getPalette(mapContent("roads", "0,0,10,10"), image, true));
+    }
+
+    @Test
+    public void testBitmaskPalette() {
+        BufferedImage image = image();
+        for (int i = 0; i < 2; i++) {
+            assertNull(cache.getPalette(mapContent("roads", "0,0,10," + i), image, true));
+        }
+        IndexColorModel palette = cache.getPalette(mapContent("roads", "0,0,10,3"), image, true);
+        assertNotNull(palette);
+        // the colors painted in the image are all there
+        assertContains(palette, Color.RED);
+        assertContains(palette, Color.BLUE);
+    }
+
+    @Test
+    public void testSkipUninformativeImages() {
+        // empty and single color images are not used to learn the palette
+        BufferedImage empty = new BufferedImage(256, 256, BufferedImage.TYPE_4BYTE_ABGR);
+        BufferedImage flat = image(Color.RED, Color.RED);
+        assertFalse(PaletteCache.isInformative(PaletteCache.sample(empty)));
+        assertFalse(PaletteCache.isInformative(PaletteCache.sample(flat)));
+        for (int i = 0; i < 3; i++) {
+            assertNull(cache.getPalette(mapContent("roads", "0,0,10," + i), empty, false));
+            assertNull(cache.getPalette(mapContent("roads", "0,0,20," + i), flat, false));
+        }
+        BufferedImage image = image();
+        for (int i = 0; i < 2; i++) {
+            assertNull(cache.getPalette(mapContent("roads", "0,0,30," + i), image, false));
+        }
+        assertNotNull(cache.getPalette(mapContent("roads", "0,0,30,3"), image, false));
+    }
+
+    @Test
+    public void testRefinePalette() {
+        BufferedImage image = image();
+        for (int i = 0; i < 3; i++) {
+            cache.getPalette(mapContent("roads", "0,0,10," + i), image, false);
+        }
+        IndexColorModel palette = cache.getPalette(mapContent("roads", "0,0,10,10"), image, false);
+        assertNotNull(palette);
+
+        // the learned palette does not fit, the image is quantized on its own
+        BufferedImage green = image(Color.GREEN, Color.YELLOW);
+        double error = PaletteCache.getMappingError(palette, green, false);
+        assertTrue(error > PaletteCache.MAX_MAPPING_ERROR);
+        for (int i = 0; i < 2; i++) {
+            assertNull(cache.getPalette(mapContent("roads", "0,0,20," + i), green, false));
+        }
+        // until enough misfits are collected to learn the palette again
+        IndexColorModel refined = cache.getPalette(mapContent("roads", "0,0,20,3"), green, false);
+        assertNotNull(refined);
+        assertContains(refined, Color.GREEN);
+        assertContains(refined, Color.RED);
+        assertSame(refined, cache.getPalette(mapContent("roads", "0,0,20,4"), green, false));
+        assertSame(refined, cache.getPalette(mapContent("roads", "0,0,20,5"), image, false));
+    }
+
+    @Test
+    public void testSmallOffPaletteFeature() {
+        BufferedImage image = image();
+        for (int i = 0; i < 3; i++) {
+            cache.getPalette(mapContent("roads", "0,0,10," + i), image, false);
+        }
+        IndexColorModel palette = cache.getPalette(mapContent("roads", "0,0,10,10"), image, false);
+        assertNotNull(palette);
+
+        // a few pixels painted with a color missing from the palette, lost when subsampling
+        BufferedImage dot = image();
+        Graphics2D graphics = dot.createGraphics();
+        graphics.setColor(Color.GREEN);
+        graphics.fillRect(200, 200, 1, 1);
+        graphics.dispose();
+        BufferedImage sample = PaletteCache.sample(dot);
+        assertTrue(
+                PaletteCache.getMappingError(palette, sample, false)
+                        <= PaletteCache.MAX_MAPPING_ERROR);
+        double error = PaletteCache.getMappingError(palette, dot, false);
+        assertTrue(error > PaletteCache.MAX_MAPPING_ERROR);
+        assertNull(cache.getPalette(mapContent("roads", "0,0,20,20"), dot, false));
+    }
+
+    @Test
+    public void testWeightBound() {
+        // room for about one sample
+        PaletteCache bounded = new PaletteCache(3, 100 * 1024, 0);
+        BufferedImage image = image();
+        bounded.getPalette(mapContent("roads", "0,0,10,10"), image, false);
+        bounded.getPalette(mapContent("rivers", "0,0,10,10"), image, false);
+        assertTrue(bounded.getStatistics().evictionCount() > 0);
+    }
+
+    @Test
+    public void testInvalidateOnStyleChange() {
+        BufferedImage image = image();
+        for (int i = 0; i < 3; i++) {
+            cache.getPalette(mapContent("roads", "0,0,10," + i), image, false);
+        }
+        assertNotNull(cache.getPalette(mapContent("roads", "0,0,10,10"), image, false));
+
+        CatalogPostModifyEventImpl event = new CatalogPostModifyEventImpl();
+        event.setSource(new StyleInfoImpl(null));
+        cache.handlePostModifyEvent(event);
+        assertNull(cache.getPalette(mapContent("roads", "0,0,10,10"), image, false));
+    }
+
+    @Test
+    public void testKeyIgnoresExtent() {
+        String key = cache.getKey(mapContent("roads", "0,0,10,10"), false);
+        assertEquals(key, cache.getKey(mapContent("roads", "10,10,20,20"), false));
+        assertTrue(key.contains("STYLES=roads"));
+        assertTrue(!key.contains("BBOX"));
+    }
+
+    private void assertContains(IndexColorModel palette, Color color) {
+        for (int i = 0; i < palette.getMapSize(); i++) {
+            if ((palette.getRGB(i) & 0xFFFFFF) == (color.getRGB() & 0xFFFFFF)) {
+                return;
+            }
+        }
+        throw new AssertionError("Color " + color + " not found in the palette");
+    }
+
+    private WMSMapContent mapContent(String style, String bbox) {
+        Map<String, String> kvp = new HashMap<>();
+        kvp.put("REQUEST", "GetMap");
+        kvp.put("LAYERS", "topp:roads");
+        kvp.put("STYLES", style);
+        kvp.put("FORMAT", "image/png8");
+        kvp.put("BBOX", bbox);
+        kvp.put("WIDTH", "256");
+        kvp.put("HEIGHT", "256");
+        GetMapRequest request = new GetMapRequest();
+        request.setRawKvp(kvp);
+        return new WMSMapContent(request);
+    }
+
+    private BufferedImage image() {
+        return image(Color.RED, Color.BLUE);
+    }
+
+    private BufferedImage image(Color first, Color second) {
+        BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_4BYTE_ABGR);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(first);
+        graphics.fillRect(0, 0, 128, 256);
+        graphics.setColor(second);
+        graphics.fillRect(128, 0, 128, 128);
+        graphics.dispose();
+        return image;
+    }
+}
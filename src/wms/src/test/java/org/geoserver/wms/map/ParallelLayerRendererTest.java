@@ -0,0 +1,165 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.geotools.data.DataUtilities;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.Layer;
+import org.geotools.map.MapContent;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.renderer.lite.StreamingRenderer;
+import org.geotools.styling.FeatureTypeStyle;
+import org.geotools.styling.Style;
+import org.geotools.styling.StyleBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+public class ParallelLayerRendererTest {
+
+    static final StyleBuilder SB = new StyleBuilder();
+
+    SimpleFeatureType featureType;
+
+    ExecutorService pool;
+
+    @Before
+    public void setup() throws Exception {
+        featureType = DataUtilities.createType("squares", "geom:Polygon,label:String");
+        pool = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void cleanup() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testGroupPlainLayers() throws Exception {
+        List<Layer> layers = layers(fill(), fill(), fill(), fill());
+        List<List<Layer>> groups = new ParallelLayerRenderer(pool, 2).groupLayers(layers);
+        assertEquals(2, groups.size());
+        assertEquals(layers.subList(0, 2), groups.get(0));
+        assertEquals(layers.subList(2, 4), groups.get(1));
+    }
+
+    @Test
+    public void testLabelsInLastGroup() throws Exception {
+        List<Layer> layers = layers(fill(), fill(), label(), fill());
+        List<List<Layer>> groups = new ParallelLayerRenderer(pool, 4).groupLayers(layers);
+        assertEquals(3, groups.size());
+        assertEquals(layers.subList(2, 4), groups.get(2));
+    }
+
+    @Test
+    public void testBlendingInFirstGroup() throws Exception {
+        Style blending = fill();
+        Map<String, String> options = blending.featureTypeStyles().get(0).getOptions();
+        options.put(FeatureTypeStyle.COMPOSITE, "multiply");
+        List<Layer> layers = layers(fill(), fill(), blending, fill());
+        List<List<Layer>> groups = new ParallelLayerRenderer(pool, 4).groupLayers(layers);
+        assertEquals(2, groups.size());
+        assertEquals(layers.subList(0, 3), groups.get(0));
+        assertEquals(layers.subList(3, 4), groups.get(1));
+    }
+
+    @Test
+    public void testSortByGroupSequential() throws Exception {
+        Style sorted = fill();
+        sorted.featureTypeStyles().get(0).getOptions().put(FeatureTypeStyle.SORT_BY_GROUP, "g");
+        List<Layer> layers = layers(fill(), sorted, fill());
+        List<List<Layer>> groups = new ParallelLayerRenderer(pool, 4).groupLayers(layers);
+        assertEquals(1, groups.size());
+    }
+
+    @Test
+    public void testSameOutputAsSequential() throws Exception {
+        Color[] colors = {Color.RED, Color.GREEN, Color.BLUE, Color.YELLOW};
+        List<Layer> layers = new ArrayList<>();
+        for (int i = 0; i < colors.length; i++) {
+            Style style = SB.createStyle(SB.createPolygonSymbolizer(colors[i]));
+            layers.add(new FeatureLayer(DataUtilities.collection(square(i * 2)), style));
+        }
+        layers.add(new FeatureLayer(DataUtilities.collection(square(0)), label()));
+
+        BufferedImage sequential = paint(new StreamingRenderer(), layers);
+        BufferedImage parallel = paint(new ParallelLayerRenderer(pool, 4), layers);
+        int[] expected = sequential.getRGB(0, 0, 100, 100, null, 0, 100);
+        int[] actual = parallel.getRGB(0, 0, 100, 100, null, 0, 100);
+        assertArrayEquals(expected, actual);
+    }
+
+    private BufferedImage paint(StreamingRenderer renderer, List<Layer> layers) {
+        MapContent content = new MapContent();
+        try {
+            content.addLayers(layers);
+            ReferencedEnvelope bounds =
+                    new ReferencedEnvelope(0, 10, 0, 10, DefaultGeographicCRS.WGS84);
+            content.getViewport().setBounds(bounds);
+            BufferedImage image = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D graphics = image.createGraphics();
+            renderer.setMapContent(content);
+            renderer.paint(graphics, new Rectangle(100, 100), bounds);
+            graphics.dispose();
+            return image;
+        } finally {
+            // the layers are reused by the next rendering
+            for (Layer layer : layers) {
+                content.removeLayer(layer);
+            }
+            content.dispose();
+        }
+    }
+
+    private SimpleFeature square(int offset) {
+        GeometryFactory gf = new GeometryFactory();
+        Coordinate[] coords = {
+            new Coordinate(offset, offset),
+            new Coordinate(offset + 4, offset),
+            new Coordinate(offset + 4, offset + 4),
+            new Coordinate(offset, offset + 4),
+            new Coordinate(offset, offset)
+        };
+        return SimpleFeatureBuilder.build(
+                featureType,
+                new Object[] {gf.createPolygon(coords), "square" + offset},
+                "squares." + offset);
+    }
+
+    private List<Layer> layers(Style... styles) {
+        List<Layer> layers = new ArrayList<>();
+        for (Style style : styles) {
+            layers.add(new FeatureLayer(DataUtilities.collection(square(0)), style));
+        }
+        return layers;
+    }
+
+    private Style fill() {
+        return SB.createStyle(SB.createPolygonSymbolizer(Color.GRAY));
+    }
+
+    private Style label() {
+        return SB.createStyle(
+                SB.createTextSymbolizer(Color.BLACK, SB.createFont("Serif", 10), "label"));
+    }
+}
@@ -6,9 +6,28 @@
 package org.geoserver.wms.map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.awt.Point;
 import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.geoserver.wms.map.QuickTileCache.MapKey;
+import org.geoserver.wms.map.QuickTileCache.MetaTileKey;
+import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.junit.Test;
 import org.locationtech.jts.geom.Envelope;
 
@@ -68,4 +87,121 @@ public class QuickTileCacheTest {
         assertEquals(new Point(0, 2), cache.getTileOffsetsInMeta(box1, meta));
         assertEquals(new Point(1, 2), cache.getTileOffsetsInMeta(box2, meta));
     }
+
+    @Test
+    public void testConcurrentRenderingCoalesced() throws Exception {
+        MetaTileKey key = newKey(0, 0);
+        AtomicInteger renderings = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch latch = new CountDownLatch(1);
+        QuickTileCache.MetaTileRenderer renderer =
+                () -> {
+                    renderings.incrementAndGet();
+                    started.countDown();
+                    try {
+                        latch.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return newTiles();
+                };
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<RenderedImage[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> cache.getTiles(key, renderer)));
+            }
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            // wait for all the threads to miss the cache, the rendering is still blocked, so
+            // they all find it in flight and wait for it
+            long deadline = System.currentTimeMillis() + 10000;
+            while (cache.getStatistics().missCount() < 4) {
+                assertTrue(System.currentTimeMillis() < deadline);
+                Thread.yield();
+            }
+            for (Future<RenderedImage[]> future : futures) {
+                assertFalse(future.isDone());
+            }
+            latch.countDown();
+            RenderedImage[] first = futures.get(0).get();
+            for (Future<RenderedImage[]> future : futures) {
+                assertSame(first, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, renderings.get());
+        assertEquals(1, cache.size());
+
+        // now served from the cache
+        cache.getTiles(key, renderer);
+        assertEquals(1, renderings.get());
+        assertEquals(1, cache.getStatistics().hitCount());
+    }
+
+    @Test
+    public void testFailedRenderingNotCached() throws Exception {
+        MetaTileKey key = newKey(0, 0);
+        try {
+            cache.getTiles(
+                    key,
+                    () -> {
+                        throw new IOException("failed");
+                    });
+            fail("Should have failed");
+        } catch (IOException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        assertEquals(0, cache.size());
+        assertNotNull(cache.getTiles(key, this::newTiles));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testWeightBound() throws Exception {
+        // room for a single 3x3 meta tile of 256x256 RGBA tiles
+        QuickTileCache bounded = new QuickTileCache(3 * 1024 * 1024, 0);
+        AtomicInteger renderings = new AtomicInteger();
+        QuickTileCache.MetaTileRenderer renderer =
+                () -> {
+                    renderings.incrementAndGet();
+                    return newTiles();
+                };
+        bounded.getTiles(newKey(0, 0), renderer);
+        bounded.getTiles(newKey(3, 0), renderer);
+        assertEquals(1, bounded.size());
+        assertEquals(1, bounded.getStatistics().evictionCount());
+        // the first meta tile got evicted, and is rendered again
+        bounded.getTiles(newKey(0, 0), renderer);
+        assertEquals(3, renderings.get());
+    }
+
+    @Test
+    public void testInvalidateDuringRendering() throws Exception {
+        MetaTileKey key = newKey(0, 0);
+        cache.getTiles(
+                key,
+                () -> {
+                    // a transaction happens while rendering
+                    cache.dataStoreChange(null);
+                    return newTiles();
+                });
+        assertEquals(0, cache.size());
+    }
+
+    private MetaTileKey newKey(int x, int y) {
+        MapKey mapKey = new MapKey("layers=abcd", 1, new Point2D.Double(0, 0));
+        ReferencedEnvelope envelope =
+                new ReferencedEnvelope(x * 256, (x + 3) * 256, y * 256, (y + 3) * 256, null);
+        return new MetaTileKey(mapKey, new Point(x, y), envelope);
+    }
+
+    private RenderedImage[] newTiles() {
+        RenderedImage[] tiles = new RenderedImage[9];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = new BufferedImage(256, 256, BufferedImage.TYPE_4BYTE_ABGR);
+        }
+        return tiles;
+    }
 }
@@ -73,6 +73,21 @@ public class RenderTimeStatisticsTest {
         assertNotNull(attrs.getAttribute(RenderTimeStatistics.ID, 0));
     }
 
+    @Test
+    public void testRenderingTimeStatisticsMapOrder() {
+        RenderTimeStatistics statistics = new RenderTimeStatistics();
+        // the second layer starts and ends first, as it might happen rendering in parallel
+        statistics.layerStart(1, layers.get(1));
+        statistics.layerStart(0, layers.get(0));
+        statistics.layerEnd(layers.get(1));
+        statistics.layerEnd(layers.get(0));
+        statistics.renderingComplete();
+        assertEquals(Arrays.asList(0, 1), statistics.getRenderingLayersIdxs());
+        assertEquals(Arrays.asList("Layer1", "Layer2"), statistics.getLayerNames());
+        assertNotNull(statistics.getRenderingTime(0));
+        assertNotNull(statistics.getRenderingTime(1));
+    }
+
     public HttpServletRequest createMockHttpRequest(RenderTimeStatistics statistics) {
         HttpServletRequest httpReq = Mockito.mock(HttpServletRequest.class);
 
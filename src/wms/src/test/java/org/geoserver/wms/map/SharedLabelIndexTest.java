@@ -0,0 +1,256 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.geoserver.ows.Request;
+import org.geoserver.platform.ServiceException;
+import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.WMSMapContent;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.MapContent;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.renderer.lite.RendererUtilities;
+import org.geotools.renderer.lite.StreamingRenderer;
+import org.geotools.styling.StyleBuilder;
+import org.geotools.styling.TextSymbolizer;
+import org.junit.After;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class SharedLabelIndexTest {
+
+    @After
+    public void clearIndexes() {
+        SharedLabelIndex.clear();
+    }
+
+    @Test
+    public void testCoreArea() {
+        assertNull(SharedLabelIndex.getCoreArea(owsRequest(null)));
+        assertNull(SharedLabelIndex.getCoreArea(null));
+        Envelope core = SharedLabelIndex.getCoreArea(owsRequest("1,2,8,9"));
+        assertEquals(new Envelope(1, 8, 2, 9), core);
+    }
+
+    @Test
+    public void testInvalidCoreArea() {
+        try {
+            SharedLabelIndex.getCoreArea(owsRequest("1,2,8"));
+            fail("Expected a ServiceException");
+        } catch (ServiceException e) {
+            assertEquals(ServiceException.INVALID_PARAMETER_VALUE, e.getCode());
+            assertEquals(SharedLabelIndex.CORE_AREA_KEY, e.getLocator());
+        }
+        try {
+            SharedLabelIndex.getCoreArea(owsRequest("1,2,8,abc"));
+            fail("Expected a ServiceException");
+        } catch (ServiceException e) {
+            assertEquals(ServiceException.INVALID_PARAMETER_VALUE, e.getCode());
+        }
+    }
+
+    @Test
+    public void testSharedAcrossMetaTiles() {
+        SharedLabelIndex index = SharedLabelIndex.get(mapContent(0, 0, 10, 10));
+        // same resolution, another meta tile
+        assertSame(index, SharedLabelIndex.get(mapContent(10, 0, 20, 10)));
+        // another zoom level
+        assertNotEquals(index, SharedLabelIndex.get(mapContent(0, 0, 20, 20)));
+    }
+
+    @Test
+    public void testInvalidate() {
+        SharedLabelIndex index = SharedLabelIndex.get(mapContent(0, 0, 10, 10));
+        SharedLabelIndex.invalidate("topp:states");
+        assertSame(index, SharedLabelIndex.get(mapContent(0, 0, 10, 10)));
+        SharedLabelIndex.invalidate("topp:roads");
+        assertNotSame(index, SharedLabelIndex.get(mapContent(0, 0, 10, 10)));
+    }
+
+    @Test
+    public void testTotalLabels() {
+        SharedLabelIndex index = SharedLabelIndex.get(mapContent(0, 0, 10, 10));
+        SharedLabelIndex other = SharedLabelIndex.get(mapContent(0, 0, 20, 20));
+        index.add(new Envelope(0, 1, 0, 1));
+        index.add(new Envelope(5, 6, 5, 6));
+        other.add(new Envelope(0, 1, 0, 1));
+        assertEquals(3, SharedLabelIndex.getTotalLabels());
+
+        // dropped indexes give back their labels, and no longer record new ones
+        SharedLabelIndex.clear();
+        assertEquals(0, SharedLabelIndex.getTotalLabels());
+        index.add(new Envelope(2, 3, 2, 3));
+        assertEquals(0, index.size());
+        assertEquals(0, SharedLabelIndex.getTotalLabels());
+    }
+
+    @Test
+    public void testQuery() {
+        SharedLabelIndex index = SharedLabelIndex.get(mapContent(0, 0, 10, 10));
+        index.add(new Envelope(0, 1, 0, 1));
+        index.add(new Envelope(5, 6, 5, 6));
+        assertEquals(2, index.size());
+
+        List<Envelope> labels = index.query(new Envelope(4, 10, 4, 10));
+        assertEquals(1, labels.size());
+        assertEquals(new Envelope(5, 6, 5, 6), labels.get(0));
+        assertTrue(index.query(new Envelope(2, 3, 2, 3)).isEmpty());
+    }
+
+    @Test
+    public void testRecorder() {
+        BufferedImage image = new BufferedImage(100, 100, BufferedImage.TYPE_4BYTE_ABGR);
+        Graphics2D graphics = image.createGraphics();
+        LabelBoundsRecorder recorder = new LabelBoundsRecorder(graphics);
+        recorder.setColor(Color.BLACK);
+        recorder.setFont(new Font("Serif", Font.PLAIN, 12));
+        recorder.setTransform(AffineTransform.getTranslateInstance(10, 20));
+        recorder.fillRect(0, 0, 5, 5);
+        recorder.drawString("label", 0, 30);
+        graphics.dispose();
+
+        List<Rectangle2D> bounds = recorder.getBounds();
+        assertEquals(2, bounds.size());
+        assertEquals(new Rectangle2D.Double(10, 20, 5, 5), bounds.get(0));
+        Rectangle2D text = bounds.get(1);
+        assertTrue(text.getMinX() >= 10 && text.getMaxY() <= 52);
+        // painted on the actual graphics too
+        assertEquals(Color.BLACK.getRGB(), image.getRGB(12, 22));
+    }
+
+    @Test
+    public void testTwoMetaTiles() throws Exception {
+        // Q is painted by the first meta tile, in its core area, and falls in the buffer of the
+        // second one. R is past the first meta tile, and its label reaches back over Q
+        SimpleFeatureCollection features =
+                DataUtilities.collection(
+                        new SimpleFeature[] {
+                            label(19.5, "QQ", 1), label(27, "RRRRRRRRRRRR", 10)
+                        });
+        SharedLabelIndex index = SharedLabelIndex.get(mapContent(0, 0, 10, 10));
+        render(index, features, 0);
+        assertEquals(1, index.size());
+        Envelope q = index.query(new Envelope(-5, 25, 0, 10)).get(0);
+        assertTrue(q.getMaxX() <= 20);
+
+        // the second meta tile keeps R away from Q, it would be cut in the first meta tile
+        render(index, features, 20);
+        assertEquals(1, index.size());
+
+        // while on its own it paints R over Q
+        SharedLabelIndex other = SharedLabelIndex.get(mapContent(0, 0, 20, 20));
+        render(other, features, 20);
+        assertEquals(1, other.size());
+        Envelope r = other.query(new Envelope(15, 45, 0, 10)).get(0);
+        assertTrue(r.intersects(q));
+        assertTrue(r.getMinX() < 20);
+    }
+
+    /** Renders a meta tile whose core area starts at minX and is 20 wide, at 10 pixels per unit */
+    private void render(SharedLabelIndex index, SimpleFeatureCollection features, double minX)
+            throws Exception {
+        ReferencedEnvelope area =
+                new ReferencedEnvelope(minX - 5, minX + 25, 0, 10, DefaultGeographicCRS.WGS84);
+        Rectangle paintArea = new Rectangle(300, 100);
+        AffineTransform worldToScreen = RendererUtilities.worldToScreenTransform(area, paintArea);
+        Envelope core = new Envelope(minX, minX + 20, 0, 10);
+
+        StyleBuilder sb = new StyleBuilder();
+        TextSymbolizer ts =
+                sb.createTextSymbolizer(Color.BLACK, sb.createFont("Monospaced", 12), "name");
+        // labels ending at their point, so that R reaches over Q with any common font width
+        ts.setLabelPlacement(
+                sb.createPointPlacement(
+                        sb.createAnchorPoint(1, 0.5), null, sb.literalExpression(0)));
+        ts.setPriority(sb.attributeExpression("priority"));
+
+        MapContent map = new MapContent();
+        map.addLayer(new FeatureLayer(features, sb.createStyle(ts)));
+        BufferedImage image = new BufferedImage(300, 100, BufferedImage.TYPE_4BYTE_ABGR);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            StreamingRenderer renderer = new StreamingRenderer();
+            renderer.setMapContent(map);
+            Map<Object, Object> hints = new HashMap<>();
+            hints.put(
+                    StreamingRenderer.LABEL_CACHE_KEY,
+                    new SharedLabelCache(index, worldToScreen, core));
+            renderer.setRendererHints(hints);
+            renderer.paint(graphics, paintArea, area);
+        } finally {
+            graphics.dispose();
+            map.dispose();
+        }
+    }
+
+    private SimpleFeature label(double x, String name, int priority) throws Exception {
+        SimpleFeatureType type =
+                DataUtilities.createType("labels", "geom:Point,name:String,priority:Integer");
+        Point point = new GeometryFactory().createPoint(new Coordinate(x, 5));
+        return SimpleFeatureBuilder.build(type, new Object[] {point, name, priority}, null);
+    }
+
+    private Request owsRequest(String core) {
+        MockHttpServletRequest httpRequest = new MockHttpServletRequest();
+        if (core != null) {
+            httpRequest.setAttribute(SharedLabelIndex.CORE_AREA_KEY, core);
+        }
+        Request request = new Request();
+        request.setHttpRequest(httpRequest);
+        return request;
+    }
+
+    private WMSMapContent mapContent(double minX, double minY, double maxX, double maxY) {
+        GetMapRequest request = request(minX + "," + minY + "," + maxX + "," + maxY);
+        WMSMapContent mapContent = new WMSMapContent(request);
+        mapContent.setMapWidth(256);
+        mapContent.setMapHeight(256);
+        mapContent
+                .getViewport()
+                .setBounds(
+                        new ReferencedEnvelope(
+                                minX, maxX, minY, maxY, DefaultGeographicCRS.WGS84));
+        return mapContent;
+    }
+
+    private GetMapRequest request(String bbox) {
+        Map<String, String> kvp = new HashMap<>();
+        kvp.put("LAYERS", "topp:roads");
+        kvp.put("BBOX", bbox);
+        kvp.put("WIDTH", "256");
+        kvp.put("HEIGHT", "256");
+        GetMapRequest request = new GetMapRequest();
+        request.setRawKvp(kvp);
+        return request;
+    }
+}
@@ -0,0 +1,131 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map.png;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.zip.Adler32;
+import javax.imageio.ImageIO;
+import org.junit.Test;
+
+public class ParallelPNGEncoderTest {
+
+    @Test
+    public void testSupported() {
+        assertTrue(ParallelPNGEncoder.isSupported(image(BufferedImage.TYPE_4BYTE_ABGR)));
+        assertTrue(ParallelPNGEncoder.isSupported(image(BufferedImage.TYPE_3BYTE_BGR)));
+        assertTrue(ParallelPNGEncoder.isSupported(image(BufferedImage.TYPE_BYTE_GRAY)));
+        assertTrue(ParallelPNGEncoder.isSupported(image(BufferedImage.TYPE_BYTE_INDEXED)));
+        // packed and premultiplied images are left to PNGJ
+        assertFalse(ParallelPNGEncoder.isSupported(image(BufferedImage.TYPE_INT_ARGB)));
+        assertFalse(ParallelPNGEncoder.isSupported(image(BufferedImage.TYPE_4BYTE_ABGR_PRE)));
+        assertFalse(ParallelPNGEncoder.isSupported(image(BufferedImage.TYPE_BYTE_BINARY)));
+    }
+
+    @Test
+    public void testAdler32Combine() {
+        byte[] data = new byte[100000];
+        new Random(0).nextBytes(data);
+        Adler32 all = new Adler32();
+        all.update(data);
+        Adler32 first = new Adler32();
+        first.update(data, 0, 30000);
+        Adler32 second = new Adler32();
+        second.update(data, 30000, 70000);
+
+        long combined =
+                ParallelPNGEncoder.adler32Combine(first.getValue(), second.getValue(), 70000);
+        assertEquals(all.getValue(), combined);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        int[] types = {
+            BufferedImage.TYPE_4BYTE_ABGR,
+            BufferedImage.TYPE_3BYTE_BGR,
+            BufferedImage.TYPE_BYTE_GRAY,
+            BufferedImage.TYPE_BYTE_INDEXED
+        };
+        int[] filters = {
+            ParallelPNGEncoder.FILTER_NONE,
+            ParallelPNGEncoder.FILTER_SUB,
+            ParallelPNGEncoder.FILTER_UP,
+            ParallelPNGEncoder.FILTER_AVERAGE,
+            ParallelPNGEncoder.FILTER_PAETH
+        };
+        for (int type : types) {
+            BufferedImage image = image(type);
+            for (int filter : filters) {
+                for (int level : new int[] {0, 1, 6, 9}) {
+                    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                    new ParallelPNGEncoder(4, level, filter).encode(image, bos);
+                    BufferedImage decoded =
+                            ImageIO.read(new ByteArrayInputStream(bos.toByteArray()));
+                    assertSamePixels(image, decoded);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSingleStripe() throws Exception {
+        BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_4BYTE_ABGR);
+        draw(image);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new ParallelPNGEncoder(4, 6, ParallelPNGEncoder.FILTER_SUB).encode(image, bos);
+        assertSamePixels(image, ImageIO.read(new ByteArrayInputStream(bos.toByteArray())));
+    }
+
+    @Test
+    public void testMoreThreadsThanPool() throws Exception {
+        // asking for more threads than the pool has, the calling thread encodes the rest
+        BufferedImage image = image(BufferedImage.TYPE_4BYTE_ABGR);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new ParallelPNGEncoder(ParallelPNGEncoder.POOL_SIZE * 4, 6, ParallelPNGEncoder.FILTER_UP)
+                .encode(image, bos);
+        assertSamePixels(image, ImageIO.read(new ByteArrayInputStream(bos.toByteArray())));
+    }
+
+    private void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    /** An image tall enough to be split in several stripes */
+    private BufferedImage image(int type) {
+        BufferedImage image = new BufferedImage(300, 700, type);
+        draw(image);
+        return image;
+    }
+
+    private void draw(BufferedImage image) {
+        Random random = new Random(0);
+        Graphics2D graphics = image.createGraphics();
+        for (int i = 0; i < 200; i++) {
+            graphics.setColor(
+                    new Color(
+                            random.nextInt(256),
+                            random.nextInt(256),
+                            random.nextInt(256),
+                            random.nextInt(256)));
+            graphics.fillOval(
+                    random.nextInt(image.getWidth()), random.nextInt(image.getHeight()), 60, 40);
+        }
+        graphics.dispose();
+    }
+}
@@ -6,7 +6,9 @@
 package org.geoserver.wms.wms_1_3;
 
 import static org.custommonkey.xmlunit.XMLAssert.assertXpathEvaluatesTo;
+import static org.junit.Assert.assertEquals;
 
+import java.io.ByteArrayInputStream;
 import org.geoserver.catalog.DimensionDefaultValueSetting;
 import org.geoserver.catalog.DimensionDefaultValueSetting.Strategy;
 import org.geoserver.catalog.DimensionInfo;
@@ -14,6 +16,7 @@ import org.geoserver.catalog.DimensionPresentation;
 import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.catalog.ResourceInfo;
 import org.geoserver.wms.WMSDimensionsTestSupport;
+import org.geoserver.wms.capabilities.DimensionPrefetcher;
 import org.junit.Test;
 import org.w3c.dom.Document;
 
@@ -203,6 +206,34 @@ public class DimensionsVectorCapabilitiesTest extends WMSDimensionsTestSupport {
         assertXpathEvaluatesTo("0.0/3.0/2.0", "//wms:Layer/wms:Dimension", dom);
     }
 
+    @Test
+    public void testTimeElevationPrefetch() throws Exception {
+        setupVectorDimension(
+                ResourceInfo.TIME, "time", DimensionPresentation.LIST, null, null, null);
+        setupVectorDimension(
+                ResourceInfo.ELEVATION,
+                "elevation",
+                DimensionPresentation.LIST,
+                null,
+                UNITS,
+                UNIT_SYMBOL);
+
+        // the dimensions computed in background are written out just like the inline ones
+        String prefetched = getAsString("wms?request=getCapabilities&version=1.3.0");
+        DimensionPrefetcher.setPrefetchSize(0);
+        try {
+            String inline = getAsString("wms?request=getCapabilities&version=1.3.0");
+            assertEquals(inline, prefetched);
+        } finally {
+            DimensionPrefetcher.setPrefetchSize(DimensionPrefetcher.DEFAULT_PREFETCH_SIZE);
+        }
+
+        Document dom = dom(new ByteArrayInputStream(prefetched.getBytes()), false);
+        String layer = "//wms:Layer[wms:Name='sf:TimeElevation']";
+        assertXpathEvaluatesTo("2", "count(" + layer + "/wms:Dimension)", dom);
+        assertXpathEvaluatesTo("0.0,1.0,2.0,3.0", layer + "/wms:Dimension[@name='elevation']", dom);
+    }
+
     @Test
     public void testTimeList() throws Exception {
         setupVectorDimension(